@@ -16,18 +16,61 @@
 package com.google.gwt.core.ext.linker;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 /**
  * Provides stable ordering and de-duplication of artifacts.
+ * 
+ * Artifacts are also indexed by their concrete class, so that
+ * {@link #find(Class)} only looks at the artifacts of the matching classes. The
+ * index is built on the first call to <code>find</code> and kept up to date by
+ * later changes made through this set or its iterators.
  */
 public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
 
+  /**
+   * Keeps the index up to date when artifacts are removed while iterating.
+   */
+  private class IndexedIterator implements Iterator<Artifact<?>> {
+    private final Iterator<Artifact<?>> it = treeSet.iterator();
+    private Artifact<?> last;
+
+    public boolean hasNext() {
+      return it.hasNext();
+    }
+
+    public Artifact<?> next() {
+      return last = it.next();
+    }
+
+    public void remove() {
+      it.remove();
+      removeFromIndex(last);
+    }
+  }
+
+  /**
+   * The artifacts of each concrete class, or <code>null</code> if the index
+   * has not been built yet or must be rebuilt.
+   */
+  private transient Map<Class<?>, SortedSet<Artifact<?>>> index;
+
+  /**
+   * Set once a range view of a modifiable set has been handed out. Changes
+   * made through the view would not be seen by the index, so from then on
+   * {@link #find(Class)} scans the whole set.
+   */
+  private transient boolean indexDisabled;
+
   private SortedSet<Artifact<?>> treeSet = new TreeSet<Artifact<?>>();
 
   public ArtifactSet() {
@@ -38,15 +81,24 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
   }
 
   public boolean add(Artifact<?> o) {
-    return treeSet.add(o);
+    if (treeSet.add(o)) {
+      addToIndex(o);
+      return true;
+    }
+    return false;
   }
 
   public boolean addAll(Collection<? extends Artifact<?>> c) {
-    return treeSet.addAll(c);
+    boolean changed = false;
+    for (Artifact<?> artifact : c) {
+      changed |= add(artifact);
+    }
+    return changed;
   }
 
   public void clear() {
     treeSet.clear();
+    index = null;
   }
 
   public Comparator<? super Artifact<?>> comparator() {
@@ -83,14 +135,19 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
    */
   public <T extends Artifact<? super T>> SortedSet<T> find(
       Class<T> artifactType) {
-    // TODO make this sub-linear (but must retain order for styles/scripts!)
-    SortedSet<T> toReturn = new TreeSet<T>();
-    for (Artifact<?> artifact : this) {
-      if (artifactType.isInstance(artifact)) {
-        toReturn.add(artifactType.cast(artifact));
+    if (indexDisabled) {
+      SortedSet<T> toReturn = new TreeSet<T>();
+      for (Artifact<?> artifact : this) {
+        if (artifactType.isInstance(artifact)) {
+          toReturn.add(artifactType.cast(artifact));
+        }
       }
+      return toReturn;
     }
-    return toReturn;
+    if (isFrozen()) {
+      return findFrozen(artifactType);
+    }
+    return findIndexed(artifactType);
   }
 
   public Artifact<?> first() {
@@ -103,7 +160,7 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
    * UnsupportedOperationException.
    */
   public void freeze() {
-    if (treeSet instanceof TreeSet) {
+    if (!isFrozen()) {
       treeSet = Collections.unmodifiableSortedSet(treeSet);
     }
   }
@@ -114,6 +171,7 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
   }
 
   public SortedSet<Artifact<?>> headSet(Artifact<?> toElement) {
+    disableIndexUnlessFrozen();
     return treeSet.headSet(toElement);
   }
 
@@ -122,7 +180,7 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
   }
 
   public Iterator<Artifact<?>> iterator() {
-    return treeSet.iterator();
+    return new IndexedIterator();
   }
 
   public Artifact<?> last() {
@@ -130,11 +188,19 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
   }
 
   public boolean remove(Object o) {
-    return treeSet.remove(o);
+    if (treeSet.remove(o)) {
+      removeFromIndex(o);
+      return true;
+    }
+    return false;
   }
 
   public boolean removeAll(Collection<?> c) {
-    return treeSet.removeAll(c);
+    if (treeSet.removeAll(c)) {
+      index = null;
+      return true;
+    }
+    return false;
   }
 
   /**
@@ -144,13 +210,17 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
    * @return <code>true</code> if an equivalent Artifact was already present.
    */
   public boolean replace(Artifact<?> artifact) {
-    boolean toReturn = treeSet.remove(artifact);
-    treeSet.add(artifact);
+    boolean toReturn = remove(artifact);
+    add(artifact);
     return toReturn;
   }
 
   public boolean retainAll(Collection<?> c) {
-    return treeSet.retainAll(c);
+    if (treeSet.retainAll(c)) {
+      index = null;
+      return true;
+    }
+    return false;
   }
 
   public int size() {
@@ -159,10 +229,12 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
 
   public SortedSet<Artifact<?>> subSet(Artifact<?> fromElement,
       Artifact<?> toElement) {
+    disableIndexUnlessFrozen();
     return treeSet.subSet(fromElement, toElement);
   }
 
   public SortedSet<Artifact<?>> tailSet(Artifact<?> fromElement) {
+    disableIndexUnlessFrozen();
     return treeSet.tailSet(fromElement);
   }
 
@@ -178,4 +250,79 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
   public String toString() {
     return treeSet.toString();
   }
+
+  private void addToIndex(Artifact<?> artifact) {
+    if (index != null) {
+      SortedSet<Artifact<?>> partition = index.get(artifact.getClass());
+      if (partition == null) {
+        partition = new TreeSet<Artifact<?>>();
+        index.put(artifact.getClass(), partition);
+      }
+      partition.add(artifact);
+    }
+  }
+
+  private void disableIndexUnlessFrozen() {
+    if (!isFrozen()) {
+      indexDisabled = true;
+      index = null;
+    }
+  }
+
+  /**
+   * A frozen set may be shared by linkers running on several threads, so the
+   * index is built under a lock.
+   */
+  private synchronized <T extends Artifact<? super T>> SortedSet<T> findFrozen(
+      Class<T> artifactType) {
+    return findIndexed(artifactType);
+  }
+
+  /**
+   * Copies the artifacts of the matching classes. Each partition is already
+   * sorted, so a single matching partition is copied in linear time.
+   */
+  @SuppressWarnings("unchecked")
+  private <T extends Artifact<? super T>> SortedSet<T> findIndexed(
+      Class<T> artifactType) {
+    if (index == null) {
+      index = new HashMap<Class<?>, SortedSet<Artifact<?>>>();
+      for (Artifact<?> artifact : treeSet) {
+        addToIndex(artifact);
+      }
+    }
+    List<SortedSet<Artifact<?>>> matches = new ArrayList<SortedSet<Artifact<?>>>();
+    for (Map.Entry<Class<?>, SortedSet<Artifact<?>>> entry : index.entrySet()) {
+      if (artifactType.isAssignableFrom(entry.getKey())) {
+        matches.add(entry.getValue());
+      }
+    }
+    if (matches.size() == 1) {
+      return new TreeSet<T>((SortedSet<T>) (SortedSet<?>) matches.get(0));
+    }
+    SortedSet<T> toReturn = new TreeSet<T>();
+    for (SortedSet<Artifact<?>> partition : matches) {
+      toReturn.addAll((SortedSet<T>) (SortedSet<?>) partition);
+    }
+    return toReturn;
+  }
+
+  private boolean isFrozen() {
+    return !(treeSet instanceof TreeSet);
+  }
+
+  /**
+   * Removes an artifact equal to the given object from the index. It may not
+   * be of the same class, so each partition is checked.
+   */
+  private void removeFromIndex(Object o) {
+    if (index != null) {
+      for (Iterator<SortedSet<Artifact<?>>> it = index.values().iterator(); it.hasNext();) {
+        SortedSet<Artifact<?>> partition = it.next();
+        if (partition.remove(o) && partition.isEmpty()) {
+          it.remove();
+        }
+      }
+    }
+  }
 }
@@ -49,6 +49,19 @@ public class SyntheticArtifact extends EmittedArtifact {
     this.token = diskCache.writeByteArray(data);
   }
 
+  /**
+   * Creates an artifact from the rest of the data in <code>data</code>, which
+   * is copied to disk without being read into memory all at once. The caller
+   * remains responsible for closing the stream.
+   */
+  public SyntheticArtifact(Class<? extends Linker> linkerType,
+      String partialPath, InputStream data) {
+    super(linkerType, partialPath);
+    assert data != null;
+    this.lastModified = System.currentTimeMillis();
+    this.token = diskCache.transferFromStream(data);
+  }
+
   @Override
   public InputStream getContents(TreeLogger logger)
       throws UnableToCompleteException {
@@ -61,10 +61,16 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * An implementation of {@link LinkerContext} that is initialized from a
@@ -109,6 +115,13 @@ public class StandardLinkerContext extends Linker implements LinkerContext {
     }
   };
 
+  /**
+   * The number of threads that write artifacts into an output file set that
+   * can be written concurrently.
+   */
+  private static final int EMIT_THREADS = Integer.getInteger(
+      "gwt.linker.emitThreads", Runtime.getRuntime().availableProcessors());
+
   private final SortedSet<ConfigurationProperty> configurationProperties;
 
   private final JJSOptions jjsOptions;
@@ -478,30 +491,137 @@ public class StandardLinkerContext extends Linker implements LinkerContext {
     logger = logger.branch(TreeLogger.TRACE, "Linking " + publicness
         + " artifacts into " + out.getPathDescription(), null);
 
+    List<EmittedArtifact> toEmit = new ArrayList<EmittedArtifact>();
     for (EmittedArtifact artifact : artifacts.find(EmittedArtifact.class)) {
-      TreeLogger artifactLogger = logger.branch(TreeLogger.DEBUG,
-          "Emitting resource " + artifact.getPartialPath(), null);
+      if (artifact.isPrivate() == emitPrivates) {
+        toEmit.add(artifact);
+      }
+    }
 
-      if (artifact.isPrivate() != emitPrivates) {
-        continue;
+    if (EMIT_THREADS <= 1 || toEmit.size() <= 1
+        || !out.canWriteConcurrently()) {
+      for (EmittedArtifact artifact : toEmit) {
+        emitArtifact(logger, artifact, out);
       }
+      return;
+    }
 
-      String partialPath = artifact.getPartialPath();
-      if (artifact.isPrivate()) {
-        partialPath = getExtraPathForLinker(artifact.getLinker(), partialPath);
-        if (partialPath.startsWith("/")) {
-          partialPath = partialPath.substring(1);
+    /*
+     * Each artifact streams straight to its own file, so only one buffer per
+     * thread is in memory at a time. Files are opened on this thread, in
+     * artifact order, so that the entries of a jar come out in a stable order;
+     * at most one file per thread is open at once, so every open file is being
+     * written and a jar never waits on a file that no thread has started.
+     */
+    int threads = Math.min(EMIT_THREADS, toEmit.size());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    LinkedList<Future<Void>> writing = new LinkedList<Future<Void>>();
+    boolean failed = false;
+    try {
+      for (final EmittedArtifact artifact : toEmit) {
+        if (writing.size() == threads) {
+          failed |= !awaitArtifact(writing.removeFirst());
         }
+        final TreeLogger artifactLogger = branchForArtifact(logger, artifact);
+        final OutputStream artifactStream = openArtifact(artifactLogger,
+            artifact, out);
+        if (artifactStream != null) {
+          writing.add(executor.submit(new Callable<Void>() {
+            public Void call() throws UnableToCompleteException {
+              writeArtifact(artifactLogger, artifact, artifactStream);
+              return null;
+            }
+          }));
+        }
+      }
+      while (!writing.isEmpty()) {
+        failed |= !awaitArtifact(writing.removeFirst());
+      }
+      if (failed) {
+        throw new UnableToCompleteException();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(TreeLogger.ERROR, "Interrupted while emitting artifacts", e);
+      throw new UnableToCompleteException();
+    } finally {
+      // Let open files be finished, so that a jar can still be closed.
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Waits for an artifact to be written.
+   *
+   * @return <code>false</code> if the artifact could not be written
+   */
+  private boolean awaitArtifact(Future<Void> future)
+      throws InterruptedException {
+    try {
+      future.get();
+      return true;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
       }
+      // Already logged.
+      return false;
+    }
+  }
+
+  private TreeLogger branchForArtifact(TreeLogger logger,
+      EmittedArtifact artifact) {
+    return logger.branch(TreeLogger.DEBUG, "Emitting resource "
+        + artifact.getPartialPath(), null);
+  }
+
+  private void emitArtifact(TreeLogger logger, EmittedArtifact artifact,
+      OutputFileSet out) throws UnableToCompleteException {
+    TreeLogger artifactLogger = branchForArtifact(logger, artifact);
+    OutputStream artifactStream = openArtifact(artifactLogger, artifact, out);
+    if (artifactStream != null) {
+      writeArtifact(artifactLogger, artifact, artifactStream);
+    }
+  }
+
+  /**
+   * Opens the file for an artifact, or returns <code>null</code> if it could
+   * not be opened.
+   */
+  private OutputStream openArtifact(TreeLogger artifactLogger,
+      EmittedArtifact artifact, OutputFileSet out) {
+    String partialPath = artifact.getPartialPath();
+    if (artifact.isPrivate()) {
+      partialPath = getExtraPathForLinker(artifact.getLinker(), partialPath);
+      if (partialPath.startsWith("/")) {
+        partialPath = partialPath.substring(1);
+      }
+    }
+    try {
+      return out.openForWrite(partialPath, artifact.getLastModified());
+    } catch (IOException e) {
+      artifactLogger.log(TreeLogger.ERROR,
+          "Fatal error emitting this artifact", e);
+      return null;
+    }
+  }
+
+  private void writeArtifact(TreeLogger artifactLogger,
+      EmittedArtifact artifact, OutputStream artifactStream)
+      throws UnableToCompleteException {
+    try {
       try {
-        OutputStream artifactStream = out.openForWrite(partialPath,
-            artifact.getLastModified());
         artifact.writeTo(artifactLogger, artifactStream);
+      } finally {
+        // A jar waits for every file it has opened to be closed.
         artifactStream.close();
-      } catch (IOException e) {
-        artifactLogger.log(TreeLogger.ERROR,
-            "Fatal error emitting this artifact", e);
       }
+    } catch (IOException e) {
+      artifactLogger.log(TreeLogger.ERROR,
+          "Fatal error emitting this artifact", e);
     }
   }
 
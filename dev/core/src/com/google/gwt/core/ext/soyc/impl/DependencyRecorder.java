@@ -75,6 +75,8 @@ public class DependencyRecorder implements MultipleDependencyGraphRecorder {
   public void methodIsLiveBecause(JMethod liveMethod,
       ArrayList<JMethod> dependencyChain) {
     printMethodDependency(dependencyChain);
+    // A single graph can cover the whole program; don't buffer all of it.
+    maybeFlushOutput();
   }
 
   public void open() {
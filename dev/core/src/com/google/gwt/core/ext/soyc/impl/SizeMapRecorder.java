@@ -159,29 +159,12 @@ public class SizeMapRecorder {
   public static void recordMap(TreeLogger logger, OutputStream out,
       SizeBreakdown[] sizeBreakdowns, JavaToJavaScriptMap jjsmap,
       Map<JsName, String> obfuscateMap) throws IOException {
-    out = new GZIPOutputStream(out);
-    Writer writer = new OutputStreamWriter(out, Util.DEFAULT_ENCODING);
-
-    writer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-    writer.append("<sizemaps>\n");
-
+    SizeMapRecorder recorder = new SizeMapRecorder(out, jjsmap, obfuscateMap);
+    recorder.open();
     for (int i = 0; i < sizeBreakdowns.length; i++) {
-      writer.append("<sizemap fragment=\"" + i + "\" " + "size=\""
-          + sizeBreakdowns[i].getSize() + "\">\n");
-      for (Entry<JsName, Integer> sizeMapEntry : sizeBreakdowns[i].getSizeMap().entrySet()) {
-        JsName name = sizeMapEntry.getKey();
-        int size = sizeMapEntry.getValue();
-        TypedProgramReference typedRef = typedProgramReference(name, jjsmap,
-            obfuscateMap);
-        writer.append("  <size " + "type=\"" + escapeXml(typedRef.type)
-            + "\" " + "ref=\"" + escapeXml(typedRef.description) + "\" "
-            + "size=\"" + size + "\"/>\n");
-      }
-      writer.append("</sizemap>\n");
+      recorder.recordFragment(i, sizeBreakdowns[i]);
     }
-
-    writer.append("</sizemaps>");
-    writer.close();
+    recorder.close();
   }
 
   private static TypedProgramReference typedProgramReference(JsName name,
@@ -214,4 +197,54 @@ public class SizeMapRecorder {
 
     return new TypedProgramReference("var", name.getShortIdent());
   }
+
+  private final JavaToJavaScriptMap jjsmap;
+  private final Map<JsName, String> obfuscateMap;
+  private final OutputStream out;
+  private Writer writer;
+
+  /**
+   * Creates a recorder that writes a gzipped size map file to
+   * <code>out</code>. Each fragment's {@link SizeBreakdown} is written by
+   * {@link #recordFragment(int, SizeBreakdown)} as soon as the fragment has
+   * been generated, and need not be retained afterwards.
+   */
+  public SizeMapRecorder(OutputStream out, JavaToJavaScriptMap jjsmap,
+      Map<JsName, String> obfuscateMap) {
+    this.out = out;
+    this.jjsmap = jjsmap;
+    this.obfuscateMap = obfuscateMap;
+  }
+
+  public void close() throws IOException {
+    writer.append("</sizemaps>");
+    writer.close();
+  }
+
+  public void open() throws IOException {
+    writer = new OutputStreamWriter(new GZIPOutputStream(out),
+        Util.DEFAULT_ENCODING);
+    writer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    writer.append("<sizemaps>\n");
+  }
+
+  /**
+   * Records the size breakdown of one fragment. Fragments must be recorded in
+   * order.
+   */
+  public void recordFragment(int fragment, SizeBreakdown sizeBreakdown)
+      throws IOException {
+    writer.append("<sizemap fragment=\"" + fragment + "\" " + "size=\""
+        + sizeBreakdown.getSize() + "\">\n");
+    for (Entry<JsName, Integer> sizeMapEntry : sizeBreakdown.getSizeMap().entrySet()) {
+      JsName name = sizeMapEntry.getKey();
+      int size = sizeMapEntry.getValue();
+      TypedProgramReference typedRef = typedProgramReference(name, jjsmap,
+          obfuscateMap);
+      writer.append("  <size " + "type=\"" + escapeXml(typedRef.type)
+          + "\" " + "ref=\"" + escapeXml(typedRef.description) + "\" "
+          + "size=\"" + size + "\"/>\n");
+    }
+    writer.append("</sizemap>\n");
+  }
 }
@@ -35,7 +35,6 @@ import com.google.gwt.util.tools.Utility;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -73,92 +72,159 @@ public class StoryRecorder {
    */
   public static void recordStories(TreeLogger logger, OutputStream out,
       List<Map<Range, SourceInfo>> sourceInfoMaps, String[] js) {
-    new StoryRecorder().recordStoriesImpl(logger, out, sourceInfoMaps, js);
+    StoryRecorder recorder = new StoryRecorder(logger, out);
+    recorder.open();
+    int fragment = 0;
+    for (Map<Range, SourceInfo> sourceInfoMap : sourceInfoMaps) {
+      recorder.recordFragment(fragment, sourceInfoMap, js[fragment]);
+      fragment++;
+    }
+    recorder.close();
   }
 
   private StringBuilder builder;
 
+  private TreeSet<ClassMember> classesMutable;
+
   private int curHighestFragment = 0;
 
+  /**
+   * Set if writing failed; further fragments are then ignored.
+   */
+  private boolean failed;
+
+  private TreeSet<FunctionMember> functionsMutable;
+
   private OutputStream gzipStream;
-  
-  private String[] js;
+
+  /**
+   * The code of the fragment currently being recorded.
+   */
+  private String js;
 
   /**
    * Used by {@link #popAndRecord(Stack)} to determine start and end ranges.
    */
   private int lastEnd = 0;
 
+  private TreeLogger logger;
+
   /**
-   * This is a class field for convenience, but it should be deleted at the end
-   * of the constructor.
+   * Cleared by {@link #close()} to avoid lingering references to AST nodes.
+   */
+  private MemberFactory memberFactory;
+
+  /**
+   * Cleared by {@link #close()} to allow GC of the SourceInfo objects.
    */
   private transient Map<Correlation, Member> membersByCorrelation = new IdentityHashMap<Correlation, Member>();
-  
+
   /**
-   * This is a class field for convenience, but it should be deleted at the end
-   * of the constructor.
+   * The id of the next story; ids stay unique across fragments.
+   */
+  private int nextStoryId;
+
+  private final OutputStream out;
+
+  /**
+   * Cleared after each fragment.
+   */
+  private Set<SourceInfo> sourceInfoSeen;
+
+  /**
+   * Cleared after each fragment to allow GC of the SourceInfo objects.
    */
   private transient Map<SourceInfo, StoryImpl> storyCache = new IdentityHashMap<SourceInfo, StoryImpl>();
-  private Map<Story, Integer> storyIds = new HashMap<Story, Integer>();
 
-  private StoryRecorder() {
+  /**
+   * Creates a recorder that writes a gzipped stories file to <code>out</code>.
+   * Fragments are recorded one at a time with
+   * {@link #recordFragment(int, Map, String)} as soon as their code has been
+   * generated, so that only one fragment's source info map needs to be live at
+   * once.
+   */
+  public StoryRecorder(TreeLogger logger, OutputStream out) {
+    this.logger = logger.branch(TreeLogger.INFO,
+        "Creating Stories file for the compile report");
+    this.out = out;
   }
-  
-  protected void recordStoriesImpl(TreeLogger logger, OutputStream out,
-      List<Map<Range, SourceInfo>> sourceInfoMaps, String[] js) {
 
-    logger = logger.branch(TreeLogger.INFO, "Creating Stories file for the compile report");
+  /**
+   * Finishes the stories file and releases the recorder's references to the
+   * AST.
+   */
+  public void close() {
+    membersByCorrelation = null;
+    storyCache = null;
+    sourceInfoSeen = null;
+    memberFactory = null;
+    classesMutable = null;
+    functionsMutable = null;
+    js = null;
+    if (failed) {
+      return;
+    }
 
-    this.js = js;
+    try {
+      builder.append("</stories>\n</soyc>\n");
+      Util.writeUtf8(builder, gzipStream);
+      Utility.close(gzipStream);
+      logger.log(TreeLogger.INFO, "Done");
+    } catch (Throwable e) {
+      fail(e);
+    }
+    builder = null;
+  }
+
+  public void open() {
+    builder = new StringBuilder(MAX_STRING_BUILDER_SIZE * 2);
+    memberFactory = new MemberFactory();
+
+    // Record what we've seen so far
+    classesMutable = new TreeSet<ClassMember>(Member.SOURCE_NAME_COMPARATOR);
+    functionsMutable = new TreeSet<FunctionMember>(
+        Member.SOURCE_NAME_COMPARATOR);
+    sourceInfoSeen = new HashSet<SourceInfo>();
 
     try {
-      builder = new StringBuilder(MAX_STRING_BUILDER_SIZE * 2);
       gzipStream = new GZIPOutputStream(out);
+    } catch (Throwable e) {
+      fail(e);
+    }
 
-      /*
-       * Don't retain beyond the constructor to avoid lingering references to
-       * AST nodes.
-       */
-      MemberFactory memberFactory = new MemberFactory();
-
-      // Record what we've seen so far
-      TreeSet<ClassMember> classesMutable = new TreeSet<ClassMember>(
-          Member.SOURCE_NAME_COMPARATOR);
-      TreeSet<FunctionMember> functionsMutable = new TreeSet<FunctionMember>(
-          Member.SOURCE_NAME_COMPARATOR);
-      Set<SourceInfo> sourceInfoSeen = new HashSet<SourceInfo>();
-
-      builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<soyc>\n<stories>\n");
-
-      int fragment = 0;
-      for (Map<Range, SourceInfo> sourceInfoMap : sourceInfoMaps) {
-        lastEnd = 0;
-        analyzeFragment(memberFactory, classesMutable, functionsMutable,
-            sourceInfoMap, sourceInfoSeen, fragment++);
-        
-        // Flush output to improve memory locality
-        flushOutput();
-      }
-
-      builder.append("</stories>\n</soyc>\n");
+    builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<soyc>\n<stories>\n");
+  }
 
-      /*
-       * Clear the member fields that we don't need anymore to allow GC of the
-       * SourceInfo objects
-       */
-      membersByCorrelation = null;
-      storyCache = null;
+  /**
+   * Records the stories of one fragment. Fragments must be recorded in order.
+   * 
+   * @param fragment the fragment number
+   * @param sourceInfoMap the source info map of the fragment's code
+   * @param fragmentJs the fragment's code
+   */
+  public void recordFragment(int fragment,
+      Map<Range, SourceInfo> sourceInfoMap, String fragmentJs) {
+    if (failed) {
+      return;
+    }
+    assert fragment >= curHighestFragment;
 
-      Util.writeUtf8(builder, gzipStream);
-      Utility.close(gzipStream);
+    js = fragmentJs;
+    lastEnd = 0;
+    try {
+      analyzeFragment(memberFactory, classesMutable, functionsMutable,
+          sourceInfoMap, sourceInfoSeen, fragment);
 
-      logger.log(TreeLogger.INFO, "Done");
+      // Flush output to improve memory locality
+      flushOutput();
     } catch (Throwable e) {
-      logger.log(TreeLogger.ERROR, "Could not write dependency file.", e);
+      fail(e);
     }
+    js = null;
+    sourceInfoSeen.clear();
+    storyCache.clear();
   }
-  
+
   private void analyzeFragment(MemberFactory memberFactory,
       TreeSet<ClassMember> classesMutable,
       TreeSet<FunctionMember> functionsMutable,
@@ -254,13 +320,7 @@ public class StoryRecorder {
   }
 
   private void emitStory(StoryImpl story, Range range) throws IOException {
-    int storyNum;
-    if (storyIds.containsKey(story)) {
-      storyNum = storyIds.get(story);
-    } else {
-      storyNum = storyIds.size();
-      storyIds.put(story, storyNum);
-    }
+    int storyNum = story.getId();
 
     builder.append("<story id=\"story");
     builder.append(storyNum);
@@ -305,7 +365,7 @@ public class StoryRecorder {
 
     int start = range.getStart();
     int end = range.getEnd();
-    String jsCode = js[curHighestFragment];
+    String jsCode = js;
     if ((start == end) || ((end == start + 1) && jsCode.charAt(start) == '\n')) {
       builder.append("\"/>\n</story>\n");
     } else {
@@ -315,6 +375,12 @@ public class StoryRecorder {
     }
   }
 
+  private void fail(Throwable e) {
+    logger.log(TreeLogger.ERROR, "Could not write dependency file.", e);
+    failed = true;
+    Utility.close(gzipStream);
+  }
+
   private void flushOutput() throws IOException {
     // Flush output to improve memory locality
     if (builder.length() > MAX_STRING_BUILDER_SIZE) {
@@ -392,7 +458,7 @@ public class StoryRecorder {
         literalType = literalCorrelation.getLiteral().getDescription();
       }
 
-      theStory = new StoryImpl(storyCache.size(), members, origins,
+      theStory = new StoryImpl(nextStoryId++, members, origins,
           literalType, fragment, length);
       storyCache.put(info, theStory);
     } else {
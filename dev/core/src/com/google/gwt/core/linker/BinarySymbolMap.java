@@ -0,0 +1,419 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.linker;
+
+import com.google.gwt.core.ext.linker.SymbolData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A symbol map in a compact binary format that can be searched in place, so
+ * that a server deobfuscating stack traces for many permutations need not
+ * parse each text symbol map into a large in-memory table. A file can be
+ * memory-mapped with {@link #load(File)}; lookups binary search the sorted
+ * symbol records and decode only the matching record.
+ *
+ * The format, with all integers big-endian:
+ * <ul>
+ * <li>a header: magic number, version, symbol count, string count</li>
+ * <li>one fixed-size record per symbol, sorted by the UTF-8 bytes of the
+ * JavaScript symbol name: the string indexes of the symbol name, JSNI suffix,
+ * class name, member name and source URI (<code>-1</code> for
+ * <code>null</code>), then the source line, type id and flags</li>
+ * <li>the start offset of each string in the string data, plus the end
+ * offset</li>
+ * <li>the string data: each distinct string once, in UTF-8</li>
+ * </ul>
+ *
+ * A member's JSNI ident is usually its class name and member name followed by
+ * the method signature, if any, so only that signature is stored as the JSNI
+ * suffix; since signatures and source URIs are shared by many symbols, each
+ * record adds little more than its symbol name and member name. A JSNI ident
+ * of any other form is stored whole, with a flag.
+ *
+ * A loaded map may be used by several threads at once.
+ */
+public final class BinarySymbolMap {
+
+  /**
+   * A symbol decoded from a record.
+   */
+  private static class Symbol implements SymbolData {
+    private final String className;
+    private final int flags;
+    private final String jsniIdent;
+    private final String memberName;
+    private final int sourceLine;
+    private final String sourceUri;
+    private final String symbolName;
+    private final int typeId;
+
+    Symbol(String symbolName, String jsniIdent, String className,
+        String memberName, String sourceUri, int sourceLine, int typeId,
+        int flags) {
+      this.symbolName = symbolName;
+      this.jsniIdent = jsniIdent;
+      this.className = className;
+      this.memberName = memberName;
+      this.sourceUri = sourceUri;
+      this.sourceLine = sourceLine;
+      this.typeId = typeId;
+      this.flags = flags;
+    }
+
+    public String getClassName() {
+      return className;
+    }
+
+    public String getJsniIdent() {
+      return jsniIdent;
+    }
+
+    public String getMemberName() {
+      return memberName;
+    }
+
+    public int getSourceLine() {
+      return sourceLine;
+    }
+
+    public String getSourceUri() {
+      return sourceUri;
+    }
+
+    public String getSymbolName() {
+      return symbolName;
+    }
+
+    public int getTypeId() {
+      return typeId;
+    }
+
+    public boolean isClass() {
+      return (flags & FLAG_CLASS) != 0;
+    }
+
+    public boolean isField() {
+      return (flags & FLAG_FIELD) != 0;
+    }
+
+    public boolean isMethod() {
+      return (flags & FLAG_METHOD) != 0;
+    }
+
+    @Override
+    public String toString() {
+      return jsniIdent != null ? jsniIdent : className;
+    }
+  }
+
+  /**
+   * Orders UTF-8 encoded strings the way lookups compare them.
+   */
+  private static final Comparator<byte[]> BYTES_COMPARATOR = new Comparator<byte[]>() {
+    public int compare(byte[] a, byte[] b) {
+      int len = Math.min(a.length, b.length);
+      for (int i = 0; i < len; ++i) {
+        int diff = (a[i] & 0xff) - (b[i] & 0xff);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return a.length - b.length;
+    }
+  };
+
+  private static final int FLAG_CLASS = 1;
+
+  private static final int FLAG_FIELD = 2;
+
+  private static final int FLAG_FULL_JSNI_IDENT = 8;
+
+  private static final int FLAG_METHOD = 4;
+
+  private static final int HEADER_SIZE = 16;
+
+  private static final int MAGIC = 0x47534d42;
+
+  private static final int NO_STRING = -1;
+
+  private static final int RECORD_SIZE = 32;
+
+  private static final int VERSION = 1;
+
+  /**
+   * Loads a symbol map by mapping the file into memory.
+   */
+  public static BinarySymbolMap load(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      // The mapping remains valid after the file is closed.
+      return new BinarySymbolMap(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size()));
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Loads a symbol map by reading a stream into memory, for maps that are not
+   * available as files, such as servlet context resources. The stream is not
+   * closed.
+   */
+  public static BinarySymbolMap load(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[8192];
+    int n;
+    while ((n = in.read(buf)) > 0) {
+      out.write(buf, 0, n);
+    }
+    return new BinarySymbolMap(ByteBuffer.wrap(out.toByteArray()));
+  }
+
+  /**
+   * Writes symbols in the binary format. If several symbols have the same
+   * symbol name, the last one is kept, as when the text symbol map is read into
+   * a map.
+   */
+  public static void write(OutputStream out, SymbolData[] symbols)
+      throws IOException {
+    Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+    List<byte[]> strings = new ArrayList<byte[]>();
+
+    // Sort stably by name, keeping the last of each name.
+    final byte[][] names = new byte[symbols.length][];
+    Integer[] order = new Integer[symbols.length];
+    for (int i = 0; i < symbols.length; ++i) {
+      names[i] = toUtf8(symbols[i].getSymbolName());
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        int result = BYTES_COMPARATOR.compare(names[a], names[b]);
+        return result != 0 ? result : a - b;
+      }
+    });
+    List<SymbolData> sorted = new ArrayList<SymbolData>(symbols.length);
+    for (int i = 0; i < order.length; ++i) {
+      if (i + 1 < order.length
+          && Arrays.equals(names[order[i]], names[order[i + 1]])) {
+        continue;
+      }
+      sorted.add(symbols[order[i]]);
+    }
+
+    DataOutputStream data = new DataOutputStream(out);
+    ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(
+        sorted.size() * RECORD_SIZE);
+    DataOutputStream records = new DataOutputStream(recordBytes);
+    for (SymbolData symbol : sorted) {
+      int flags = (symbol.isClass() ? FLAG_CLASS : 0)
+          | (symbol.isField() ? FLAG_FIELD : 0)
+          | (symbol.isMethod() ? FLAG_METHOD : 0);
+      String jsniIdent = symbol.getJsniIdent();
+      if (jsniIdent != null) {
+        String prefix = jsniPrefix(symbol.getClassName(),
+            symbol.getMemberName());
+        if (jsniIdent.startsWith(prefix)) {
+          jsniIdent = jsniIdent.substring(prefix.length());
+        } else {
+          flags |= FLAG_FULL_JSNI_IDENT;
+        }
+      }
+      records.writeInt(intern(symbol.getSymbolName(), stringIndexes, strings));
+      records.writeInt(intern(jsniIdent, stringIndexes, strings));
+      records.writeInt(intern(symbol.getClassName(), stringIndexes, strings));
+      records.writeInt(intern(symbol.getMemberName(), stringIndexes, strings));
+      records.writeInt(intern(symbol.getSourceUri(), stringIndexes, strings));
+      records.writeInt(symbol.getSourceLine());
+      records.writeInt(symbol.getTypeId());
+      records.writeInt(flags);
+    }
+    records.flush();
+
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(sorted.size());
+    data.writeInt(strings.size());
+    recordBytes.writeTo(data);
+    int offset = 0;
+    for (byte[] string : strings) {
+      data.writeInt(offset);
+      offset += string.length;
+    }
+    data.writeInt(offset);
+    for (byte[] string : strings) {
+      data.write(string);
+    }
+    data.flush();
+  }
+
+  private static int intern(String string, Map<String, Integer> stringIndexes,
+      List<byte[]> strings) {
+    if (string == null) {
+      return NO_STRING;
+    }
+    Integer index = stringIndexes.get(string);
+    if (index == null) {
+      index = strings.size();
+      stringIndexes.put(string, index);
+      strings.add(toUtf8(string));
+    }
+    return index;
+  }
+
+  private static String jsniPrefix(String className, String memberName) {
+    return className + "::" + memberName;
+  }
+
+  private static byte[] toUtf8(String string) {
+    try {
+      return string.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException("UTF-8 is not supported", e);
+    }
+  }
+
+  private final ByteBuffer buffer;
+
+  private final int offsetsStart;
+
+  private final int stringsStart;
+
+  private final int symbolCount;
+
+  private BinarySymbolMap(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a binary symbol map");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported binary symbol map version "
+          + buffer.getInt(4));
+    }
+    symbolCount = buffer.getInt(8);
+    int stringCount = buffer.getInt(12);
+    long stringsStartLong = HEADER_SIZE + (long) symbolCount * RECORD_SIZE
+        + (stringCount + 1L) * 4;
+    if (symbolCount < 0 || stringCount < 0
+        || stringsStartLong > buffer.capacity()) {
+      throw new IOException("Corrupt binary symbol map");
+    }
+    offsetsStart = HEADER_SIZE + symbolCount * RECORD_SIZE;
+    stringsStart = (int) stringsStartLong;
+    if (stringsStart + buffer.getInt(stringsStart - 4) != buffer.capacity()) {
+      throw new IOException("Corrupt binary symbol map");
+    }
+  }
+
+  /**
+   * Returns the symbol with the given JavaScript name, or <code>null</code> if
+   * there is none.
+   */
+  public SymbolData get(String symbolName) {
+    byte[] key = toUtf8(symbolName);
+    int low = 0;
+    int high = symbolCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compareString(buffer.getInt(recordStart(mid)), key);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return readSymbol(mid);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of symbols in the map.
+   */
+  public int size() {
+    return symbolCount;
+  }
+
+  /**
+   * Compares a stored string with UTF-8 bytes, without decoding it.
+   */
+  private int compareString(int index, byte[] key) {
+    int start = stringsStart + buffer.getInt(offsetsStart + index * 4);
+    int length = stringsStart + buffer.getInt(offsetsStart + index * 4 + 4)
+        - start;
+    int len = Math.min(length, key.length);
+    for (int i = 0; i < len; ++i) {
+      int diff = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return length - key.length;
+  }
+
+  private String readString(int index) {
+    if (index == NO_STRING) {
+      return null;
+    }
+    int start = stringsStart + buffer.getInt(offsetsStart + index * 4);
+    int end = stringsStart + buffer.getInt(offsetsStart + index * 4 + 4);
+    byte[] bytes = new byte[end - start];
+    // A private view, so that concurrent lookups do not interfere.
+    ByteBuffer view = buffer.duplicate();
+    view.position(start);
+    view.get(bytes);
+    try {
+      return new String(bytes, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException("UTF-8 is not supported", e);
+    }
+  }
+
+  private SymbolData readSymbol(int i) {
+    int start = recordStart(i);
+    String className = readString(buffer.getInt(start + 8));
+    String memberName = readString(buffer.getInt(start + 12));
+    int flags = buffer.getInt(start + 28);
+    String jsniIdent = readString(buffer.getInt(start + 4));
+    if (jsniIdent != null && (flags & FLAG_FULL_JSNI_IDENT) == 0) {
+      jsniIdent = jsniPrefix(className, memberName) + jsniIdent;
+    }
+    return new Symbol(readString(buffer.getInt(start)), jsniIdent, className,
+        memberName, readString(buffer.getInt(start + 16)),
+        buffer.getInt(start + 20), buffer.getInt(start + 24), flags);
+  }
+
+  private int recordStart(int i) {
+    return HEADER_SIZE + i * RECORD_SIZE;
+  }
+}
@@ -21,6 +21,7 @@ import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.core.ext.linker.AbstractLinker;
 import com.google.gwt.core.ext.linker.ArtifactSet;
 import com.google.gwt.core.ext.linker.CompilationResult;
+import com.google.gwt.core.ext.linker.ConfigurationProperty;
 import com.google.gwt.core.ext.linker.EmittedArtifact;
 import com.google.gwt.core.ext.linker.LinkerOrder;
 import com.google.gwt.core.ext.linker.SelectionProperty;
@@ -29,6 +30,7 @@ import com.google.gwt.core.ext.linker.SymbolData;
 import com.google.gwt.core.ext.linker.LinkerOrder.Order;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Map;
@@ -39,17 +41,30 @@ import java.util.SortedMap;
  * as a private file. The names of the symbol maps files are computed by
  * appending {@value #STRONG_NAME_SUFFIX} to the value returned by
  * {@link CompilationResult#getStrongName()}.
+ * 
+ * If the <code>symbolMaps.binary</code> configuration property is
+ * <code>true</code>, each symbol map is also exported in the format read by
+ * {@link BinarySymbolMap}, with {@value #BINARY_STRONG_NAME_SUFFIX} appended
+ * to the strong name.
  */
 @LinkerOrder(Order.POST)
 @Shardable
 public class SymbolMapsLinker extends AbstractLinker {
 
+  /**
+   * This value is appended to the strong name of the CompilationResult to form
+   * the binary symbol map's filename.
+   */
+  public static final String BINARY_STRONG_NAME_SUFFIX = ".symbolMap.bin";
+
   /**
    * This value is appended to the strong name of the CompilationResult to form
    * the symbol map's filename.
    */
   public static final String STRONG_NAME_SUFFIX = ".symbolMap";
 
+  private static final String PROP_BINARY = "symbolMaps.binary";
+
   public static String propertyMapToString(
       Map<SelectionProperty, String> propertyMap) {
     StringWriter writer = new StringWriter();
@@ -59,6 +74,15 @@ public class SymbolMapsLinker extends AbstractLinker {
     return writer.toString();
   }
 
+  private static boolean isBinaryEnabled(LinkerContext context) {
+    for (ConfigurationProperty prop : context.getConfigurationProperties()) {
+      if (prop.getName().equals(PROP_BINARY)) {
+        return Boolean.parseBoolean(prop.getValues().get(0));
+      }
+    }
+    return false;
+  }
+
   private static void printPropertyMap(PrintWriter pw,
       Map<SelectionProperty, String> map) {
     boolean needsComma = false;
@@ -98,6 +122,7 @@ public class SymbolMapsLinker extends AbstractLinker {
     if (onePermutation) {
       artifacts = new ArtifactSet(artifacts);
 
+      boolean binary = isBinaryEnabled(context);
       ByteArrayOutputStream out = new ByteArrayOutputStream();
       for (CompilationResult result : artifacts.find(CompilationResult.class)) {
         PrintWriter pw = new PrintWriter(out);
@@ -107,11 +132,34 @@ public class SymbolMapsLinker extends AbstractLinker {
 
         doEmitSymbolMap(logger, artifacts, result, out);
         out.reset();
+
+        if (binary) {
+          try {
+            BinarySymbolMap.write(out, result.getSymbolMap());
+          } catch (IOException e) {
+            // Can't happen when writing to memory.
+            throw new RuntimeException(e);
+          }
+          doEmitBinarySymbolMap(logger, artifacts, result, out);
+          out.reset();
+        }
       }
     }
     return artifacts;
   }
 
+  /**
+   * Override to change the manner in which the binary symbol map is emitted.
+   */
+  protected void doEmitBinarySymbolMap(TreeLogger logger,
+      ArtifactSet artifacts, CompilationResult result,
+      ByteArrayOutputStream out) throws UnableToCompleteException {
+    EmittedArtifact symbolMapArtifact = emitBytes(logger, out.toByteArray(),
+        result.getStrongName() + BINARY_STRONG_NAME_SUFFIX);
+    symbolMapArtifact.setPrivate(true);
+    artifacts.add(symbolMapArtifact);
+  }
+
   /**
    * Override to change the manner in which the symbol map is emitted.
    */
@@ -18,6 +18,7 @@ package com.google.gwt.dev;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.dev.shell.log.SwingLoggerPanel;
+import com.google.gwt.dev.util.log.AsyncTreeLogger;
 import com.google.gwt.dev.util.log.PrintWriterTreeLogger;
 
 /**
@@ -32,6 +33,12 @@ public class CompileTaskRunner {
     boolean run(TreeLogger logger) throws UnableToCompleteException;
   }
 
+  /**
+   * Whether to write the log on a background thread, which helps when several
+   * permutations are compiled at once at a detailed log level.
+   */
+  private static final boolean ASYNC_LOG = Boolean.getBoolean("gwt.dev.asyncLog");
+
   /**
    * Runs the main action with an appropriate logger. If a gui-based TreeLogger
    * is used, this method will not return until its window is closed by the
@@ -78,6 +85,14 @@ public class CompileTaskRunner {
       }
       PrintWriterTreeLogger logger = new PrintWriterTreeLogger();
       logger.setMaxDetail(options.getLogLevel());
+      if (ASYNC_LOG) {
+        AsyncTreeLogger asyncLogger = new AsyncTreeLogger(logger);
+        try {
+          return doRun(asyncLogger, task);
+        } finally {
+          asyncLogger.close();
+        }
+      }
       return doRun(logger, task);
     }
   }
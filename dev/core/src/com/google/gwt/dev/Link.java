@@ -40,6 +40,7 @@ import com.google.gwt.dev.util.NullOutputFileSet;
 import com.google.gwt.dev.util.OutputFileSet;
 import com.google.gwt.dev.util.OutputFileSetOnDirectory;
 import com.google.gwt.dev.util.OutputFileSetOnJar;
+import com.google.gwt.dev.util.StreamingJarWriter;
 import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.arg.ArgHandlerExtraDir;
 import com.google.gwt.dev.util.arg.ArgHandlerWarDir;
@@ -51,6 +52,7 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -58,7 +60,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 
 /**
@@ -180,14 +181,11 @@ public class Link {
    * permutation. It sees the generated artifacts for one permutation compile,
    * and it runs the per-permutation part of each shardable linker.
    */
-  @SuppressWarnings("unchecked")
   public static void linkOnePermutationToJar(TreeLogger logger,
       ModuleDef module, ArtifactSet generatedArtifacts,
       PermutationResult permResult, File jarFile,
       PrecompileOptions precompileOptions) throws UnableToCompleteException {
     try {
-      JarOutputStream jar = new JarOutputStream(new FileOutputStream(jarFile));
-
       StandardLinkerContext linkerContext = new StandardLinkerContext(logger,
           module, precompileOptions);
 
@@ -201,42 +199,7 @@ public class Link {
 
       ArtifactSet linkedArtifacts = linkerContext.invokeLinkForOnePermutation(
           logger, compilation, permArtifacts);
-
-      // Write the data of emitted artifacts
-      for (EmittedArtifact art : linkedArtifacts.find(EmittedArtifact.class)) {
-        String jarEntryPath;
-        if (art.isPrivate()) {
-          String pathWithLinkerName = linkerContext.getExtraPathForLinker(
-              art.getLinker(), art.getPartialPath());
-          if (pathWithLinkerName.startsWith("/")) {
-            // This happens if the linker has no extra path
-            pathWithLinkerName = pathWithLinkerName.substring(1);
-          }
-          jarEntryPath = "aux/" + pathWithLinkerName;
-        } else {
-          jarEntryPath = "target/" + art.getPartialPath();
-        }
-        ZipEntry ze = new ZipEntry(jarEntryPath);
-        ze.setTime(art.getLastModified());
-        jar.putNextEntry(ze);
-        art.writeTo(logger, jar);
-        jar.closeEntry();
-      }
-
-      // Serialize artifacts marked as Transferable
-      int numSerializedArtifacts = 0;
-      // The raw type Artifact is to work around a Java compiler bug:
-      // http://bugs.sun.com/view_bug.do?bug_id=6548436
-      for (Artifact art : linkedArtifacts) {
-        if (art.isTransferableFromShards() && !(art instanceof EmittedArtifact)) {
-          String jarEntryPath = "arts/" + numSerializedArtifacts++;
-          jar.putNextEntry(new ZipEntry(jarEntryPath));
-          Util.writeObjectToStream(jar, art);
-          jar.closeEntry();
-        }
-      }
-
-      jar.close();
+      writeLinkedPermutation(logger, linkedArtifacts, linkerContext, jarFile);
     } catch (IOException e) {
       logger.log(TreeLogger.ERROR, "Error linking", e);
       throw new UnableToCompleteException();
@@ -323,8 +286,8 @@ public class Link {
         && (name.endsWith(".war") || name.endsWith(".jar") || name.endsWith(".zip"))) {
       return new OutputFileSetOnJar(dirOrJar, pathPrefix);
     } else {
-      Util.recursiveDelete(new File(dirOrJar, pathPrefix), true);
-      return new OutputFileSetOnDirectory(dirOrJar, pathPrefix);
+      // Files left from an earlier link are rewritten only if they change.
+      return new OutputFileSetOnDirectory(dirOrJar, pathPrefix, true);
     }
   }
 
@@ -372,6 +335,48 @@ public class Link {
     return softProperties;
   }
 
+  /**
+   * Links using a {@link LinkCache}, which requires all linkers to be
+   * shardable. Each permutation is linked to a jar as on a compile shard,
+   * unless the cache already holds one for the same permutation result; the
+   * final link then runs on the jars, as in a sharded build.
+   */
+  private static ArtifactSet doCachedLink(TreeLogger logger, ModuleDef module,
+      StandardLinkerContext linkerContext, ArtifactSet generatedArtifacts,
+      Permutation[] perms,
+      List<FileBackedObject<PermutationResult>> resultFiles,
+      LinkCache linkCache) throws UnableToCompleteException {
+    List<File> linkedFiles = new ArrayList<File>(perms.length);
+    ArtifactSet artifacts;
+    try {
+      int reused = 0;
+      for (int i = 0; i < perms.length; ++i) {
+        File linkedFile = linkCache.getLinkedPermutation(resultFiles.get(i).getFile());
+        if (linkedFile != null && linkedFile.isFile()) {
+          ++reused;
+        } else {
+          ArtifactSet newArtifacts = finishPermutation(logger, perms[i],
+              resultFiles.get(i), linkerContext, generatedArtifacts);
+          File tempFile = linkCache.createTempFile();
+          writeLinkedPermutation(logger, newArtifacts, linkerContext, tempFile);
+          linkedFile = linkCache.commit(logger, tempFile, linkedFile);
+        }
+        linkedFiles.add(linkedFile);
+      }
+      logger.log(TreeLogger.DEBUG, "Reused " + reused + " of " + perms.length
+          + " linked permutations");
+      linkCache.removeUnused();
+      artifacts = scanCompilePermResults(logger, linkedFiles);
+    } catch (IOException e) {
+      logger.log(TreeLogger.ERROR, "Error linking", e);
+      throw new UnableToCompleteException();
+    }
+
+    artifacts.addAll(linkerContext.getArtifactsForPublicResources(logger,
+        module));
+    return linkerContext.invokeFinalLink(logger, artifacts);
+  }
+
   /**
    * Emit final output.
    */
@@ -397,6 +402,13 @@ public class Link {
       ArtifactSet generatedArtifacts, Permutation[] perms,
       List<FileBackedObject<PermutationResult>> resultFiles)
       throws UnableToCompleteException {
+    LinkCache linkCache = LinkCache.get(logger, module, linkerContext,
+        generatedArtifacts);
+    if (linkCache != null) {
+      return doCachedLink(logger, module, linkerContext, generatedArtifacts,
+          perms, resultFiles, linkCache);
+    }
+
     ArtifactSet combinedArtifacts = new ArtifactSet();
     for (int i = 0; i < perms.length; ++i) {
       ArtifactSet newArtifacts = finishPermutation(logger, perms[i],
@@ -526,6 +538,66 @@ public class Link {
     return artifacts;
   }
 
+  /**
+   * Writes the output of the per-permutation link to a jar. Emitted artifacts
+   * are written as jar entries, and other artifacts marked as
+   * {@link com.google.gwt.core.ext.linker.Transferable} are serialized.
+   */
+  @SuppressWarnings("unchecked")
+  private static void writeLinkedPermutation(TreeLogger logger,
+      ArtifactSet linkedArtifacts, StandardLinkerContext linkerContext,
+      File jarFile) throws IOException, UnableToCompleteException {
+    /*
+     * Artifacts are written straight into the jar, which is compressed on
+     * another thread while the next artifact is produced.
+     */
+    StreamingJarWriter jar = new StreamingJarWriter(new FileOutputStream(
+        jarFile), jarFile.getName());
+    try {
+      // Write the data of emitted artifacts
+      for (EmittedArtifact art : linkedArtifacts.find(EmittedArtifact.class)) {
+        String jarEntryPath;
+        if (art.isPrivate()) {
+          String pathWithLinkerName = linkerContext.getExtraPathForLinker(
+              art.getLinker(), art.getPartialPath());
+          if (pathWithLinkerName.startsWith("/")) {
+            // This happens if the linker has no extra path
+            pathWithLinkerName = pathWithLinkerName.substring(1);
+          }
+          jarEntryPath = "aux/" + pathWithLinkerName;
+        } else {
+          jarEntryPath = "target/" + art.getPartialPath();
+        }
+        ZipEntry ze = new ZipEntry(jarEntryPath);
+        ze.setTime(art.getLastModified());
+        OutputStream entry = jar.openEntry(ze);
+        try {
+          art.writeTo(logger, entry);
+        } finally {
+          entry.close();
+        }
+      }
+
+      // Serialize artifacts marked as Transferable
+      int numSerializedArtifacts = 0;
+      // The raw type Artifact is to work around a Java compiler bug:
+      // http://bugs.sun.com/view_bug.do?bug_id=6548436
+      for (Artifact art : linkedArtifacts) {
+        if (art.isTransferableFromShards() && !(art instanceof EmittedArtifact)) {
+          String jarEntryPath = "arts/" + numSerializedArtifacts++;
+          OutputStream entry = jar.openEntry(new ZipEntry(jarEntryPath));
+          try {
+            Util.writeObjectToStream(entry, art);
+          } finally {
+            entry.close();
+          }
+        }
+      }
+    } finally {
+      jar.close();
+    }
+  }
+
   private final LinkOptionsImpl options;
 
   public Link(LinkOptions options) {
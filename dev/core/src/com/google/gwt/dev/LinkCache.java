@@ -0,0 +1,243 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.Linker;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.linker.Artifact;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.core.ext.linker.ConfigurationProperty;
+import com.google.gwt.core.ext.linker.EmittedArtifact;
+import com.google.gwt.core.ext.linker.SelectionProperty;
+import com.google.gwt.core.ext.linker.impl.StandardLinkerContext;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An on-disk cache of the output of the per-permutation part of the shardable
+ * linkers, so that linking again after a change that does not affect a
+ * permutation, such as an edit to a public resource, only reruns the final
+ * link.
+ *
+ * Each linked permutation is stored as a jar in the format that
+ * {@link Link#linkOnePermutationToJar} writes on compile shards, keyed by a
+ * hash of the permutation result file. The linker configuration, module
+ * properties and generated artifacts are summarized as a context key, and each
+ * context gets its own subdirectory. Contexts unused for a week are deleted,
+ * as are entries that the latest link of a context did not use.
+ *
+ * The cache is enabled by setting the <code>gwt.linker.cacheDir</code> system
+ * property to a directory.
+ */
+final class LinkCache {
+
+  private static final String CACHE_DIR = System.getProperty("gwt.linker.cacheDir");
+
+  private static final long STALE_CONTEXT_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+  /**
+   * Creates the cache for a linker context.
+   *
+   * @param logger logs problems with the cache directory
+   * @param cacheDir the directory shared by all contexts
+   * @param contextKey see {@link #computeContextKey}
+   * @return the cache, or <code>null</code> if the directory is unusable
+   */
+  static LinkCache create(TreeLogger logger, File cacheDir, String contextKey) {
+    File contextDir = new File(cacheDir, contextKey);
+    if (!contextDir.isDirectory() && !contextDir.mkdirs()) {
+      logger.log(TreeLogger.WARN, "Unable to create link cache " + contextDir
+          + "; linked permutations will not be cached");
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    contextDir.setLastModified(now);
+    File[] contexts = cacheDir.listFiles();
+    if (contexts != null) {
+      for (File context : contexts) {
+        if (context.isDirectory() && !context.equals(contextDir)
+            && context.lastModified() < now - STALE_CONTEXT_MILLIS) {
+          Util.recursiveDelete(context, false);
+        }
+      }
+    }
+    return new LinkCache(contextDir);
+  }
+
+  /**
+   * Returns the cache for a linker context, or <code>null</code> if caching is
+   * not enabled or the context cannot be cached.
+   */
+  static LinkCache get(TreeLogger logger, ModuleDef module,
+      StandardLinkerContext linkerContext, ArtifactSet generatedArtifacts)
+      throws UnableToCompleteException {
+    if (CACHE_DIR == null) {
+      return null;
+    }
+    if (!linkerContext.allLinkersAreShardable()) {
+      logger.log(TreeLogger.DEBUG,
+          "Not using the link cache, since some linkers are not shardable");
+      return null;
+    }
+    return create(logger, new File(CACHE_DIR), computeContextKey(logger,
+        module, linkerContext, generatedArtifacts));
+  }
+
+  /**
+   * Summarizes everything other than the permutation result that the
+   * per-permutation link depends on: the linkers, the module's properties and
+   * the generated artifacts.
+   */
+  static String computeContextKey(TreeLogger logger, ModuleDef module,
+      StandardLinkerContext linkerContext, ArtifactSet generatedArtifacts)
+      throws UnableToCompleteException {
+    List<byte[]> contents = new ArrayList<byte[]>();
+    StringBuilder sb = new StringBuilder();
+    sb.append(linkerContext.getModuleName()).append('\n');
+    sb.append(linkerContext.getModuleFunctionName()).append('\n');
+    sb.append(linkerContext.getModuleLastModified()).append('\n');
+    sb.append(linkerContext.isOutputCompact()).append('\n');
+    sb.append(module.getActivePrimaryLinker()).append('\n');
+    for (Class<? extends Linker> linker : module.getActiveLinkers()) {
+      sb.append(linker.getName()).append(' ');
+      sb.append(getClassLastModified(linker)).append('\n');
+    }
+    for (SelectionProperty prop : linkerContext.getProperties()) {
+      sb.append(prop.getName()).append('=').append(prop.tryGetValue());
+      sb.append(' ').append(prop.isDerived()).append(' ');
+      sb.append(prop.getPossibleValues()).append(' ');
+      sb.append(prop.getPropertyProvider()).append('\n');
+    }
+    for (ConfigurationProperty prop : linkerContext.getConfigurationProperties()) {
+      sb.append(prop.getName()).append('=').append(prop.getValues());
+      sb.append('\n');
+    }
+    contents.add(Util.getBytes(sb.toString()));
+
+    for (Artifact<?> artifact : generatedArtifacts) {
+      if (artifact instanceof EmittedArtifact) {
+        EmittedArtifact emitted = (EmittedArtifact) artifact;
+        contents.add(Util.getBytes(emitted.getPartialPath() + ' '
+            + emitted.isPrivate()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        emitted.writeTo(logger, out);
+        contents.add(out.toByteArray());
+      } else {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+          Util.writeObjectToStream(out, artifact);
+        } catch (IOException e) {
+          logger.log(TreeLogger.ERROR, "Unable to serialize " + artifact, e);
+          throw new UnableToCompleteException();
+        }
+        contents.add(out.toByteArray());
+      }
+    }
+    return Util.computeStrongName(contents.toArray(new byte[contents.size()][]));
+  }
+
+  /**
+   * Returns when a class file was last modified, so that a change to a linker
+   * does not reuse output from the old version; 0 if unknown.
+   */
+  static long getClassLastModified(Class<?> clazz) {
+    String name = clazz.getName();
+    URL url = clazz.getResource(name.substring(name.lastIndexOf('.') + 1)
+        + ".class");
+    if (url == null) {
+      return 0;
+    }
+    try {
+      return url.openConnection().getLastModified();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  private final File contextDir;
+
+  private final Set<File> used = new HashSet<File>();
+
+  // @VisibleForTesting
+  LinkCache(File contextDir) {
+    this.contextDir = contextDir;
+  }
+
+  /**
+   * Stores a linked permutation written to a temporary file from
+   * {@link #createTempFile()}. Failures are logged and otherwise ignored,
+   * since the permutation can always be linked again.
+   *
+   * @param linkedFile the file from {@link #getLinkedPermutation(File)}
+   * @return the cached file, or the temporary file if it could not be stored
+   */
+  File commit(TreeLogger logger, File tempFile, File linkedFile) {
+    if (linkedFile != null) {
+      if (tempFile.renameTo(linkedFile)) {
+        return linkedFile;
+      }
+      logger.log(TreeLogger.DEBUG, "Unable to cache linked permutation "
+          + linkedFile);
+    }
+    used.add(tempFile);
+    return tempFile;
+  }
+
+  File createTempFile() throws IOException {
+    return File.createTempFile("link", ".tmp", contextDir);
+  }
+
+  /**
+   * Returns the cache file for a permutation result, which exists if the
+   * permutation has already been linked, or <code>null</code> if the result
+   * file cannot be read.
+   */
+  File getLinkedPermutation(File resultFile) {
+    byte[] bytes = Util.readFileAsBytes(resultFile);
+    if (bytes == null) {
+      return null;
+    }
+    File file = new File(contextDir, Util.computeStrongName(bytes) + ".jar");
+    used.add(file);
+    return file;
+  }
+
+  /**
+   * Deletes the files in this context that were not returned by
+   * {@link #getLinkedPermutation(File)}, including leftover temporary files
+   * from links that failed.
+   */
+  void removeUnused() {
+    File[] files = contextDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!used.contains(file)) {
+          file.delete();
+        }
+      }
+    }
+  }
+}
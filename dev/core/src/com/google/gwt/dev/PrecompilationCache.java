@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.Property;
+import com.google.gwt.dev.cfg.PropertyPermutations;
+import com.google.gwt.dev.cfg.Rule;
+import com.google.gwt.dev.cfg.RuleGenerateWith;
+import com.google.gwt.dev.jjs.JJSOptions;
+import com.google.gwt.dev.jjs.JJSOptionsImpl;
+import com.google.gwt.dev.jjs.JavaToJavaScriptCompiler;
+import com.google.gwt.dev.resource.Resource;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An on-disk cache of precompilation results, so that precompiling a module
+ * whose client code has not changed since an earlier precompile, for example
+ * after a change to server code only, reads the earlier result instead of
+ * compiling and optimizing the whole program again.
+ *
+ * Each result is keyed by a hash of everything a precompile reads: the
+ * contents of every resource on the module's source path, the module's
+ * properties, rules and entry points, the permutations, the compiler options,
+ * and the versions of the compiler and of the generators. Generated units are
+ * not hashed themselves, since the generators produce them from the other
+ * inputs. Generators that read files outside the source path are not tracked.
+ * Entries unused for a week are deleted.
+ *
+ * The cache is enabled by setting the <code>gwt.jjs.precompileCacheDir</code>
+ * system property to a directory.
+ */
+final class PrecompilationCache {
+
+  private static final String CACHE_DIR = System.getProperty("gwt.jjs.precompileCacheDir");
+
+  private static final long STALE_ENTRY_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+  /**
+   * Returns the cache entry for a precompile, or <code>null</code> if caching
+   * is not enabled.
+   */
+  static PrecompilationCache get(TreeLogger logger, ModuleDef module,
+      int permutationBase, PropertyPermutations permutations,
+      JJSOptions jjsOptions) throws UnableToCompleteException {
+    if (CACHE_DIR == null) {
+      return null;
+    }
+    return create(logger, new File(CACHE_DIR), computeKey(logger, module,
+        permutationBase, permutations, jjsOptions));
+  }
+
+  /**
+   * Returns the cache entry for a key, or <code>null</code> if the cache
+   * directory is unusable.
+   */
+  static PrecompilationCache create(TreeLogger logger, File cacheDir,
+      String key) {
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      logger.log(TreeLogger.WARN, "Unable to create precompilation cache "
+          + cacheDir + "; precompilations will not be cached");
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    File[] entries = cacheDir.listFiles();
+    if (entries != null) {
+      for (File entry : entries) {
+        if (entry.lastModified() < now - STALE_ENTRY_MILLIS) {
+          entry.delete();
+        }
+      }
+    }
+    return new PrecompilationCache(new File(cacheDir, key + ".ser"));
+  }
+
+  /**
+   * Hashes the inputs of a precompile.
+   */
+  static String computeKey(TreeLogger logger, ModuleDef module,
+      int permutationBase, PropertyPermutations permutations,
+      JJSOptions jjsOptions) throws UnableToCompleteException {
+    MessageDigest md5;
+    try {
+      md5 = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("Error initializing MD5", e);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(About.getGwtVersionNum()).append(' ');
+    sb.append(LinkCache.getClassLastModified(JavaToJavaScriptCompiler.class));
+    sb.append('\n');
+    sb.append(module.getName()).append('\n');
+    for (String entryPoint : module.getEntryPointTypeNames()) {
+      sb.append(entryPoint).append(' ');
+    }
+    sb.append('\n');
+    sb.append(permutationBase).append('\n');
+    for (BindingProperty prop : permutations.getOrderedProperties()) {
+      sb.append(prop.getName()).append(' ');
+    }
+    sb.append('\n');
+    for (Iterator<String[]> it = permutations.iterator(); it.hasNext();) {
+      for (String value : it.next()) {
+        sb.append(value).append(' ');
+      }
+      sb.append('\n');
+    }
+    md5.update(Util.getBytes(sb.toString()));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      for (Property prop : module.getProperties()) {
+        Util.writeObjectToStream(out, prop);
+      }
+      for (Iterator<Rule> it = module.getRules().iterator(); it.hasNext();) {
+        Rule rule = it.next();
+        out.write(Util.getBytes(rule.toString()));
+        if (rule instanceof RuleGenerateWith) {
+          long lastModified = LinkCache.getClassLastModified(
+              ((RuleGenerateWith) rule).getGeneratorClass());
+          out.write(Util.getBytes(String.valueOf(lastModified)));
+        }
+        Util.writeObjectToStream(out, rule.getRootCondition());
+      }
+      Util.writeObjectToStream(out, new JJSOptionsImpl(jjsOptions));
+    } catch (IOException e) {
+      logger.log(TreeLogger.ERROR, "Unable to serialize module properties", e);
+      throw new UnableToCompleteException();
+    }
+    md5.update(out.toByteArray());
+
+    // Sorted, so that the key does not depend on the order of the class path.
+    Map<String, Resource> resources = new TreeMap<String, Resource>(
+        module.getResourcesOracle().getResourceMap());
+    byte[] buf = new byte[8192];
+    for (Resource resource : resources.values()) {
+      md5.update(Util.getBytes(resource.getPath() + '\n'));
+      InputStream in = resource.openContents();
+      if (in == null) {
+        continue;
+      }
+      try {
+        int n;
+        while ((n = in.read(buf)) > 0) {
+          md5.update(buf, 0, n);
+        }
+      } catch (IOException e) {
+        logger.log(TreeLogger.ERROR, "Unable to read " + resource, e);
+        throw new UnableToCompleteException();
+      } finally {
+        Utility.close(in);
+      }
+    }
+    return Util.toHexString(md5.digest());
+  }
+
+  private final File file;
+
+  // @VisibleForTesting
+  PrecompilationCache(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Returns the cached precompilation, or <code>null</code> if there is none.
+   */
+  Precompilation load(TreeLogger logger) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      Precompilation precompilation = Util.readFileAsObject(file,
+          Precompilation.class);
+      file.setLastModified(System.currentTimeMillis());
+      return precompilation;
+    } catch (ClassNotFoundException e) {
+      logger.log(TreeLogger.DEBUG, "Unable to read cached precompilation "
+          + file, e);
+    } catch (IOException e) {
+      logger.log(TreeLogger.DEBUG, "Unable to read cached precompilation "
+          + file, e);
+    }
+    file.delete();
+    return null;
+  }
+
+  /**
+   * Caches a precompilation. Failures are logged and otherwise ignored, since
+   * the precompilation can always be redone.
+   */
+  void store(TreeLogger logger, Precompilation precompilation) {
+    File tempFile = null;
+    try {
+      tempFile = File.createTempFile("precompilation", ".tmp",
+          file.getParentFile());
+      Util.writeObjectAsFile(TreeLogger.NULL, tempFile, precompilation);
+      if (tempFile.renameTo(file)) {
+        return;
+      }
+      logger.log(TreeLogger.DEBUG, "Unable to cache precompilation " + file);
+    } catch (IOException e) {
+      logger.log(TreeLogger.DEBUG, "Unable to cache precompilation " + file, e);
+    } catch (UnableToCompleteException e) {
+      logger.log(TreeLogger.DEBUG, "Unable to cache precompilation " + file);
+    }
+    if (tempFile != null) {
+      tempFile.delete();
+    }
+  }
+}
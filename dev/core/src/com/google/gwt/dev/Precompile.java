@@ -21,6 +21,7 @@ import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.core.ext.linker.ArtifactSet;
 import com.google.gwt.core.ext.linker.impl.StandardLinkerContext;
 import com.google.gwt.dev.CompileTaskRunner.CompileTask;
+import com.google.gwt.dev.RebindAnswerCache.RecordingPropertyOracle;
 import com.google.gwt.dev.cfg.BindingProperty;
 import com.google.gwt.dev.cfg.ConfigurationProperty;
 import com.google.gwt.dev.cfg.ModuleDef;
@@ -75,6 +76,7 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -291,10 +293,12 @@ public class Precompile {
   private static class DistillerRebindPermutationOracle implements
       RebindPermutationOracle {
 
+    private final RebindAnswerCache answerCache = new RebindAnswerCache();
     private CompilationState compilationState;
     private StandardGeneratorContext generatorContext;
     private final Permutation[] permutations;
     private final StaticPropertyOracle[] propertyOracles;
+    private final RecordingPropertyOracle[] recordingOracles;
     private final RebindOracle[] rebindOracles;
 
     public DistillerRebindPermutationOracle(ModuleDef module,
@@ -303,6 +307,7 @@ public class Precompile {
       this.compilationState = compilationState;
       permutations = new Permutation[perms.size()];
       propertyOracles = new StaticPropertyOracle[perms.size()];
+      recordingOracles = new RecordingPropertyOracle[perms.size()];
       rebindOracles = new RebindOracle[perms.size()];
       generatorContext = new StandardGeneratorContext(compilationState, module,
           genDir, generatorArtifacts);
@@ -314,7 +319,8 @@ public class Precompile {
         String[] orderedPropValues = perms.getOrderedPropertyValues(i);
         propertyOracles[i] = new StaticPropertyOracle(orderedProps,
             orderedPropValues, configProps);
-        rebindOracles[i] = new StandardRebindOracle(propertyOracles[i], rules,
+        recordingOracles[i] = new RecordingPropertyOracle(propertyOracles[i]);
+        rebindOracles[i] = new StandardRebindOracle(recordingOracles[i], rules,
             generatorContext);
         permutations[i] = new Permutation(i, propertyOracles[i]);
       }
@@ -336,7 +342,24 @@ public class Precompile {
       Set<String> answers = new HashSet<String>();
 
       for (int i = 0; i < getPermuationCount(); ++i) {
-        String resultTypeName = rebindOracles[i].rebind(logger, requestTypeName);
+        /*
+         * Reuse the answer from a permutation that agrees on every property
+         * that the rules and generators looked at.
+         */
+        String resultTypeName = answerCache.get(requestTypeName,
+            propertyOracles[i]);
+        if (resultTypeName == null) {
+          recordingOracles[i].startRecording();
+          try {
+            resultTypeName = rebindOracles[i].rebind(logger, requestTypeName);
+          } finally {
+            BitSet reads = recordingOracles[i].stopRecording();
+            if (resultTypeName != null) {
+              answerCache.put(requestTypeName, propertyOracles[i], reads,
+                  resultTypeName);
+            }
+          }
+        }
         answers.add(resultTypeName);
         // Record the correct answer into each permutation.
         permutations[i].putRebindAnswer(requestTypeName, resultTypeName);
@@ -367,6 +390,12 @@ public class Precompile {
     public RebindOracle getRebindOracle(int permNumber) {
       return rebindOracles[permNumber];
     }
+
+    public void logAnswerCacheStats(TreeLogger logger) {
+      int hits = answerCache.getHits();
+      logger.log(TreeLogger.DEBUG, "Reused " + hits + " of "
+          + (hits + answerCache.getMisses()) + " rebind answers");
+    }
   }
 
   /**
@@ -495,6 +524,24 @@ public class Precompile {
       PropertyPermutations allPermutations, File genDir, File dumpSignatureFile) {
 
     try {
+      /*
+       * A cached precompilation would not write the generated sources or the
+       * signatures.
+       */
+      PrecompilationCache cache = null;
+      if (genDir == null && dumpSignatureFile == null) {
+        cache = PrecompilationCache.get(logger, module, permutationBase,
+            allPermutations, jjsOptions);
+        if (cache != null) {
+          Precompilation cached = cache.load(logger);
+          if (cached != null) {
+            logger.log(TreeLogger.INFO,
+                "Reusing the precompilation of unchanged sources");
+            return cached;
+          }
+        }
+      }
+
       CompilationState compilationState = module.getCompilationState(logger);
       if (dumpSignatureFile != null) {
         // Dump early to avoid generated types.
@@ -517,6 +564,7 @@ public class Precompile {
       UnifiedAst unifiedAst = getCompiler(module).precompile(logger, module,
           rpo, declEntryPts, null, jjsOptions, rpo.getPermuationCount() == 1);
       PerfLogger.end();
+      rpo.logAnswerCacheStats(logger);
 
       // Merge all identical permutations together.
       List<Permutation> permutations = new ArrayList<Permutation>(
@@ -539,8 +587,12 @@ public class Precompile {
         }
       }
 
-      return new Precompilation(unifiedAst, merged.values(), permutationBase,
-          generatedArtifacts);
+      Precompilation precompilation = new Precompilation(unifiedAst,
+          merged.values(), permutationBase, generatedArtifacts);
+      if (cache != null) {
+        cache.store(logger, precompilation);
+      }
+      return precompilation;
     } catch (UnableToCompleteException e) {
       // We intentionally don't pass in the exception here since the real
       // cause has been logged.
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.BadPropertyValueException;
+import com.google.gwt.core.ext.ConfigurationProperty;
+import com.google.gwt.core.ext.PropertyOracle;
+import com.google.gwt.core.ext.SelectionProperty;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the answer to each rebind request along with the binding property
+ * values that were read while computing it. Rules and generators only see a
+ * permutation through its property oracle, so any other permutation that has
+ * the same values for those properties gets the same answer, and need not run
+ * the rules and generators again. With many permutations, most rebind requests
+ * depend on only one or two properties, so most answers are reused.
+ */
+class RebindAnswerCache {
+
+  /**
+   * A permutation's property oracle that records which binding properties are
+   * read while recording is on.
+   */
+  static class RecordingPropertyOracle implements PropertyOracle {
+    private final StaticPropertyOracle delegate;
+    private BitSet reads;
+
+    public RecordingPropertyOracle(StaticPropertyOracle delegate) {
+      this.delegate = delegate;
+    }
+
+    public ConfigurationProperty getConfigurationProperty(String propertyName)
+        throws BadPropertyValueException {
+      // Configuration properties are the same in every permutation.
+      return delegate.getConfigurationProperty(propertyName);
+    }
+
+    public StaticPropertyOracle getDelegate() {
+      return delegate;
+    }
+
+    @Deprecated
+    public String getPropertyValue(TreeLogger logger, String propertyName)
+        throws BadPropertyValueException {
+      recordRead(propertyName);
+      return delegate.getPropertyValue(logger, propertyName);
+    }
+
+    @Deprecated
+    public String[] getPropertyValueSet(TreeLogger logger, String propertyName)
+        throws BadPropertyValueException {
+      // The defined values are the same in every permutation.
+      return delegate.getPropertyValueSet(logger, propertyName);
+    }
+
+    public SelectionProperty getSelectionProperty(TreeLogger logger,
+        String propertyName) throws BadPropertyValueException {
+      recordRead(propertyName);
+      return delegate.getSelectionProperty(logger, propertyName);
+    }
+
+    /**
+     * Starts recording reads, forgetting any earlier ones.
+     */
+    void startRecording() {
+      reads = new BitSet();
+    }
+
+    /**
+     * Stops recording and returns the indexes of the binding properties read.
+     */
+    BitSet stopRecording() {
+      BitSet toReturn = reads;
+      reads = null;
+      return toReturn;
+    }
+
+    private void recordRead(String propertyName) {
+      if (reads == null) {
+        return;
+      }
+      BindingProperty[] props = delegate.getOrderedProps();
+      for (int i = 0; i < props.length; ++i) {
+        if (props[i].getName().equals(propertyName)) {
+          reads.set(i);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * An answer and the property values it depends on.
+   */
+  private static class Entry {
+    private final String answer;
+    private final int[] propIndexes;
+    private final String[] propValues;
+
+    public Entry(String answer, int[] propIndexes, String[] propValues) {
+      this.answer = answer;
+      this.propIndexes = propIndexes;
+      this.propValues = propValues;
+    }
+
+    public boolean matches(String[] orderedPropValues) {
+      for (int i = 0; i < propIndexes.length; ++i) {
+        if (!propValues[i].equals(orderedPropValues[propIndexes[i]])) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private final Map<String, List<Entry>> entries = new HashMap<String, List<Entry>>();
+
+  private int hits;
+
+  private int misses;
+
+  /**
+   * Returns the answer already computed for a permutation with the same values
+   * of the properties it depends on, or <code>null</code>.
+   */
+  public String get(String requestTypeName, StaticPropertyOracle oracle) {
+    List<Entry> list = entries.get(requestTypeName);
+    if (list != null) {
+      String[] orderedPropValues = oracle.getOrderedPropValues();
+      for (Entry entry : list) {
+        if (entry.matches(orderedPropValues)) {
+          ++hits;
+          return entry.answer;
+        }
+      }
+    }
+    ++misses;
+    return null;
+  }
+
+  public int getHits() {
+    return hits;
+  }
+
+  public int getMisses() {
+    return misses;
+  }
+
+  /**
+   * Records an answer computed for a permutation.
+   *
+   * @param reads the indexes of the binding properties read to compute it
+   */
+  public void put(String requestTypeName, StaticPropertyOracle oracle,
+      BitSet reads, String answer) {
+    String[] orderedPropValues = oracle.getOrderedPropValues();
+    int[] propIndexes = new int[reads.cardinality()];
+    String[] propValues = new String[propIndexes.length];
+    int j = 0;
+    for (int i = reads.nextSetBit(0); i >= 0; i = reads.nextSetBit(i + 1)) {
+      propIndexes[j] = i;
+      propValues[j++] = orderedPropValues[i];
+    }
+    List<Entry> list = entries.get(requestTypeName);
+    if (list == null) {
+      list = new ArrayList<Entry>();
+      entries.put(requestTypeName, list);
+    }
+    list.add(new Entry(answer, propIndexes, propValues));
+  }
+}
@@ -23,6 +23,7 @@ import com.google.gwt.core.ext.linker.LinkerOrder.Order;
 import com.google.gwt.core.ext.typeinfo.TypeOracle;
 import com.google.gwt.dev.javac.CompilationState;
 import com.google.gwt.dev.javac.CompilationStateBuilder;
+import com.google.gwt.dev.javac.CompilationUnit;
 import com.google.gwt.dev.resource.Resource;
 import com.google.gwt.dev.resource.ResourceOracle;
 import com.google.gwt.dev.resource.impl.DefaultFilters;
@@ -292,6 +293,18 @@ public class ModuleDef implements PublicOracle {
     return compilationState;
   }
 
+  /**
+   * Rescans the module's source path and compiles its current source into
+   * units, without building a new {@link CompilationState}. Unchanged units are
+   * reused from earlier builds.
+   */
+  public synchronized Map<String, CompilationUnit> getCompilationUnits(
+      TreeLogger logger) {
+    lazySourceOracle.refresh(logger);
+    return CompilationStateBuilder.buildUnitsFrom(logger,
+        lazySourceOracle.getResources());
+  }
+
   public synchronized String[] getEntryPointTypeNames() {
     final int n = entryPointTypeNames.size();
     return entryPointTypeNames.toArray(new String[n]);
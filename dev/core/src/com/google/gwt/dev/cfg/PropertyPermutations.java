@@ -26,6 +26,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -36,24 +37,123 @@ import java.util.TreeMap;
  * that permutation. That list of property values is represented as an array of
  * Strings corresponding to the list of properties returned by
  * {@link Properties#getBindingProperties()}.
+ * 
+ * Permutations are enumerated lazily, so that callers that only iterate over
+ * them, such as {@link #collapseProperties()}, never hold the whole list.
  */
 public class PropertyPermutations implements Iterable<String[]> {
 
   /**
-   * Returns the list of all permutations. This method must return results in a
-   * consistently sorted order over multiple invocations.
+   * Enumerates permutations in the same order that a depth-first walk over the
+   * allowed values of each property would, without materializing them all.
    */
-  private static List<String[]> allPermutationsOf(Properties properties,
-      Set<String> activeLinkerNames) {
-    BindingProperty[] bindingProperties = getOrderedPropertiesOf(properties);
+  private static class PermutationIterator implements Iterator<String[]> {
+    private final Set<String> activeLinkerNames;
+    private final String[] current;
+    private final int[] indexes;
+    private String[] next;
+    private final String[][] options;
+    private final BindingProperty[] properties;
+
+    public PermutationIterator(BindingProperty[] properties,
+        Set<String> activeLinkerNames) {
+      this.properties = properties;
+      this.activeLinkerNames = activeLinkerNames;
+      current = new String[properties.length];
+      indexes = new int[properties.length];
+      options = new String[properties.length][];
+      next = properties.length == 0 ? current : fillFrom(0);
+    }
+
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    public String[] next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      String[] toReturn = next.clone();
+      next = properties.length == 0 ? null : advanceFrom(properties.length - 1);
+      return toReturn;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Moves to the next value of the deepest property at or above
+     * <code>whichProp</code> that has one, and fills in the properties after
+     * it. Returns <code>null</code> when all permutations have been seen.
+     */
+    private String[] advanceFrom(int whichProp) {
+      while (whichProp >= 0
+          && ++indexes[whichProp] >= options[whichProp].length) {
+        --whichProp;
+      }
+      if (whichProp < 0) {
+        return null;
+      }
+      current[whichProp] = options[whichProp][indexes[whichProp]];
+      return fillFrom(whichProp + 1);
+    }
 
-    List<String[]> permutations = new ArrayList<String[]>();
-    if (bindingProperties.length > 0) {
-      permute(bindingProperties, activeLinkerNames, null, 0, permutations);
+    /**
+     * Gives each property from <code>whichProp</code> on its first allowed
+     * value, given the values of the properties before it.
+     */
+    private String[] fillFrom(int whichProp) {
+      for (; whichProp < properties.length; ++whichProp) {
+        options[whichProp] = getAllowedValues(properties, activeLinkerNames,
+            current, whichProp);
+        indexes[whichProp] = 0;
+        if (options[whichProp].length == 0) {
+          // No permutations with this prefix.
+          return advanceFrom(whichProp - 1);
+        }
+        current[whichProp] = options[whichProp][0];
+      }
+      return current;
+    }
+  }
+
+  /**
+   * Returns the values that a property may take, given the values of the
+   * properties before it.
+   */
+  private static String[] getAllowedValues(BindingProperty[] properties,
+      Set<String> activeLinkerNames, String[] values, int whichProp) {
+    BindingProperty prop = properties[whichProp];
+
+    // Find the last-one-wins Condition
+    Condition winner = null;
+    if (prop.getConditionalValues().size() == 1) {
+      winner = prop.getRootCondition();
     } else {
-      permutations.add(new String[0]);
+      BindingProperty[] answerable = new BindingProperty[whichProp];
+      System.arraycopy(properties, 0, answerable, 0, whichProp);
+      String[] soFar = new String[whichProp];
+      System.arraycopy(values, 0, soFar, 0, whichProp);
+      PropertyOracle propertyOracle = new StaticPropertyOracle(answerable,
+          soFar, new ConfigurationProperty[0]);
+
+      for (Condition cond : prop.getConditionalValues().keySet()) {
+        try {
+          if (cond.isTrue(TreeLogger.NULL, new DeferredBindingQuery(
+              propertyOracle, activeLinkerNames))) {
+            winner = cond;
+          }
+        } catch (UnableToCompleteException e) {
+          throw new IllegalStateException(
+              "Should never get here for simple properties", e);
+        }
+      }
     }
-    return permutations;
+
+    assert winner != null;
+
+    return prop.getAllowedValues(winner);
   }
 
   private static BindingProperty[] getOrderedPropertiesOf(Properties properties) {
@@ -97,71 +197,29 @@ public class PropertyPermutations implements Iterable<String[]> {
         new BindingProperty[evaluationOrder.size()]);
   }
 
-  private static void permute(BindingProperty[] properties,
-      Set<String> activeLinkerNames, String[] soFar, int whichProp,
-      List<String[]> permutations) {
-    int lastProp = properties.length - 1;
-
-    BindingProperty prop = properties[whichProp];
-
-    // Find the last-one-wins Condition
-    Condition winner = null;
-    if (prop.getConditionalValues().size() == 1) {
-      winner = prop.getRootCondition();
-    } else {
-      BindingProperty[] answerable = new BindingProperty[soFar.length];
-      System.arraycopy(properties, 0, answerable, 0, soFar.length);
-      PropertyOracle propertyOracle = new StaticPropertyOracle(answerable,
-          soFar, new ConfigurationProperty[0]);
-
-      for (Condition cond : prop.getConditionalValues().keySet()) {
-        try {
-          if (cond.isTrue(TreeLogger.NULL, new DeferredBindingQuery(
-              propertyOracle, activeLinkerNames))) {
-            winner = cond;
-          }
-        } catch (UnableToCompleteException e) {
-          throw new IllegalStateException(
-              "Should never get here for simple properties", e);
-        }
-      }
-    }
-
-    assert winner != null;
+  private final Set<String> activeLinkerNames;
 
-    String[] options = prop.getAllowedValues(winner);
-    for (int i = 0; i < options.length; i++) {
-      String knownValue = options[i];
-
-      String[] nextStep = new String[whichProp + 1];
-      if (whichProp > 0) {
-        System.arraycopy(soFar, 0, nextStep, 0, soFar.length);
-      }
-      nextStep[whichProp] = knownValue;
-
-      if (whichProp < lastProp) {
-        permute(properties, activeLinkerNames, nextStep, whichProp + 1,
-            permutations);
-      } else {
-        // Finished this permutation.
-        permutations.add(nextStep);
-      }
-    }
-  }
+  private final BindingProperty[] orderedProperties;
 
   private final Properties properties;
-  private final List<String[]> values;
+
+  /**
+   * The permutations, or <code>null</code> if they have not been needed as a
+   * list yet.
+   */
+  private List<String[]> values;
 
   public PropertyPermutations(Properties properties,
       Set<String> activeLinkerNames) {
     this.properties = properties;
-    this.values = allPermutationsOf(properties, activeLinkerNames);
+    this.activeLinkerNames = activeLinkerNames;
+    this.orderedProperties = getOrderedPropertiesOf(properties);
   }
 
   public PropertyPermutations(PropertyPermutations allPermutations,
       int firstPerm, int numPerms) {
-    this.properties = allPermutations.properties;
-    values = allPermutations.values.subList(firstPerm, firstPerm + numPerms);
+    this(allPermutations, allPermutations.getValues().subList(firstPerm,
+        firstPerm + numPerms));
   }
 
   /**
@@ -170,6 +228,8 @@ public class PropertyPermutations implements Iterable<String[]> {
   public PropertyPermutations(PropertyPermutations allPermutations,
       List<String[]> values) {
     this.properties = allPermutations.properties;
+    this.activeLinkerNames = allPermutations.activeLinkerNames;
+    this.orderedProperties = allPermutations.orderedProperties;
     this.values = values;
   }
 
@@ -185,10 +245,10 @@ public class PropertyPermutations implements Iterable<String[]> {
     // Loop over all possible property value permutations
     for (Iterator<String[]> it = iterator(); it.hasNext();) {
       String[] propertyValues = it.next();
-      assert propertyValues.length == getOrderedProperties().length;
+      assert propertyValues.length == orderedProperties.length;
 
       StaticPropertyOracle oracle = new StaticPropertyOracle(
-          getOrderedProperties(), propertyValues, new ConfigurationProperty[0]);
+          orderedProperties, propertyValues, new ConfigurationProperty[0]);
       CollapsedPropertyKey key = new CollapsedPropertyKey(
           oracle);
 
@@ -211,23 +271,38 @@ public class PropertyPermutations implements Iterable<String[]> {
   }
 
   public BindingProperty[] getOrderedProperties() {
-    return getOrderedPropertiesOf(properties);
+    return orderedProperties;
   }
 
   public String[] getOrderedPropertyValues(int permutation) {
-    return values.get(permutation);
+    return getValues().get(permutation);
   }
 
   /**
    * Enumerates each permutation as an array of strings such that the index of
    * each string in the array corresponds to the property at the same index in
-   * the array returned from {@link #getOrderedProperties()}.
+   * the array returned from {@link #getOrderedProperties()}. The permutations
+   * are returned in a consistently sorted order over multiple invocations.
    */
   public Iterator<String[]> iterator() {
-    return values.iterator();
+    if (values != null) {
+      return values.iterator();
+    }
+    return new PermutationIterator(orderedProperties, activeLinkerNames);
   }
 
   public int size() {
-    return values.size();
+    return getValues().size();
+  }
+
+  private List<String[]> getValues() {
+    if (values == null) {
+      List<String[]> permutations = new ArrayList<String[]>();
+      for (Iterator<String[]> it = iterator(); it.hasNext();) {
+        permutations.add(it.next());
+      }
+      values = permutations;
+    }
+    return values;
   }
 }
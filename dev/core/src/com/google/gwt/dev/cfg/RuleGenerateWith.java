@@ -33,6 +33,10 @@ public class RuleGenerateWith extends Rule {
     this.generatorClass = generatorClass;
   }
 
+  public Class<? extends Generator> getGeneratorClass() {
+    return generatorClass;
+  }
+
   public String realize(TreeLogger logger, StandardGeneratorContext context,
       String typeName) throws UnableToCompleteException {
     return context.runGenerator(logger, generatorClass, typeName);
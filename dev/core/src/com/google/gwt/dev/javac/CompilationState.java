@@ -142,6 +142,27 @@ public class CompilationState {
     return mediator.getTypeOracle();
   }
 
+  /**
+   * Replaces existing units with recompiled versions, for hot swapping. The
+   * type oracle is not updated, so the recompiled units must declare exactly
+   * the same types and members as the units they replace; see
+   * {@link HotSwapChanges}.
+   */
+  public void swapUnits(Collection<CompilationUnit> units) {
+    for (CompilationUnit unit : units) {
+      CompilationUnit oldUnit = unitMap.put(unit.getTypeName(), unit);
+      assert oldUnit != null : "Not an existing unit: " + unit;
+      for (CompiledClass compiledClass : oldUnit.getCompiledClasses()) {
+        classFileMap.remove(compiledClass.getInternalName());
+        classFileMapBySource.remove(compiledClass.getSourceName());
+      }
+      for (CompiledClass compiledClass : unit.getCompiledClasses()) {
+        classFileMap.put(compiledClass.getInternalName(), compiledClass);
+        classFileMapBySource.put(compiledClass.getSourceName(), compiledClass);
+      }
+    }
+  }
+
   private void assimilateUnits(TreeLogger logger,
       Collection<CompilationUnit> units, Iterable<JribbleUnit> jribbleUnits) {
     for (CompilationUnit unit : units) {
@@ -188,6 +188,16 @@ public class CompilationStateBuilder {
     return instance.doBuildFrom(logger, resources);
   }
 
+  /**
+   * Compiles units for the given resources like {@link #buildFrom}, without
+   * building a new {@link CompilationState} and type oracle. Units whose source
+   * has not changed are reused, so this is cheap when nothing has changed.
+   */
+  public static Map<String, CompilationUnit> buildUnitsFrom(TreeLogger logger,
+      Set<Resource> resources) {
+    return instance.doBuildUnitsFrom(logger, resources);
+  }
+
   public static CompilationStateBuilder get() {
     return instance;
   }
@@ -250,6 +260,23 @@ public class CompilationStateBuilder {
    */
   public synchronized CompilationState doBuildFrom(TreeLogger logger,
       Set<Resource> resources) {
+    CompileMoreLater compileMoreLater = new CompileMoreLater();
+    Map<String, CompilationUnit> resultUnits = buildUnits(logger, resources,
+        compileMoreLater);
+    return new CompilationState(logger,  resultUnits.values(), parseAllLooseJava(logger,
+        resources),compileMoreLater);
+  }
+
+  /**
+   * Compiles units for the given resources, reusing unchanged units.
+   */
+  public synchronized Map<String, CompilationUnit> doBuildUnitsFrom(
+      TreeLogger logger, Set<Resource> resources) {
+    return buildUnits(logger, resources, new CompileMoreLater());
+  }
+
+  private Map<String, CompilationUnit> buildUnits(TreeLogger logger,
+      Set<Resource> resources, CompileMoreLater compileMoreLater) {
     Map<String, CompilationUnit> resultUnits = new HashMap<String, CompilationUnit>();
 
     // For each incoming Java source file...
@@ -274,7 +301,6 @@ public class CompilationStateBuilder {
         resultUnits.values());
 
     // Compile everything else.
-    CompileMoreLater compileMoreLater = new CompileMoreLater();
     List<CompilationUnitBuilder> builders = new ArrayList<CompilationUnitBuilder>();
     for (Resource resource : resources) {
       if (isJribbleFile(resource)) {
@@ -295,8 +321,7 @@ public class CompilationStateBuilder {
     // Invalidate units with invalid refs.
     invalidateUnitsWithInvalidRefs(logger, resultUnits,
         Collections.<ContentId> emptySet());
-    return new CompilationState(logger,  resultUnits.values(), parseAllLooseJava(logger,
-        resources),compileMoreLater);
+    return resultUnits;
   }
 
   private Iterable<JribbleUnit> parseAllLooseJava(TreeLogger logger,
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.javac;
+
+import com.google.gwt.dev.asm.AnnotationVisitor;
+import com.google.gwt.dev.asm.ClassReader;
+import com.google.gwt.dev.asm.FieldVisitor;
+import com.google.gwt.dev.asm.MethodVisitor;
+import com.google.gwt.dev.asm.commons.EmptyVisitor;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The differences between the units of a running module and freshly compiled
+ * units, and whether they can be applied by redefining classes in place.
+ *
+ * Changes are compatible when every changed unit declares exactly the same
+ * classes, and every class has the same shape: the same modifiers, supertypes,
+ * fields, method signatures and annotations, so that only method bodies
+ * differ. The type oracle, generators and the class rewriter only depend on
+ * shapes, so none of them are affected by compatible changes.
+ */
+public class HotSwapChanges {
+
+  /**
+   * Records a class header, field or method, including its annotations.
+   */
+  private static class Recorder extends EmptyVisitor {
+    private final StringBuilder sb;
+
+    public Recorder(StringBuilder sb) {
+      this.sb = sb;
+    }
+
+    @Override
+    public void visit(String name, Object value) {
+      append("value", name, valueToString(value));
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+      append("annotation", desc, visible);
+      return this;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String name, String desc) {
+      append("annotation", name, desc);
+      return this;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotationDefault() {
+      append("default");
+      return this;
+    }
+
+    @Override
+    public AnnotationVisitor visitArray(String name) {
+      append("array", name);
+      return this;
+    }
+
+    @Override
+    public void visitEnd() {
+      append("end");
+    }
+
+    @Override
+    public void visitEnum(String name, String desc, String value) {
+      append("enum", name, desc, value);
+    }
+
+    @Override
+    public AnnotationVisitor visitParameterAnnotation(int parameter,
+        String desc, boolean visible) {
+      append("parameter", parameter, desc, visible);
+      return this;
+    }
+
+    protected void append(Object... parts) {
+      for (Object part : parts) {
+        sb.append(' ').append(part);
+      }
+    }
+
+    private String valueToString(Object value) {
+      if (value != null && value.getClass().isArray()) {
+        StringBuilder toReturn = new StringBuilder("[");
+        for (int i = 0, n = Array.getLength(value); i < n; ++i) {
+          toReturn.append(Array.get(value, i)).append(',');
+        }
+        return toReturn.append(']').toString();
+      }
+      return String.valueOf(value);
+    }
+  }
+
+  /**
+   * Records everything about a class except its method bodies.
+   */
+  private static class ShapeRecorder extends Recorder {
+    private final StringBuilder header;
+    private final List<StringBuilder> members = new ArrayList<StringBuilder>();
+
+    public ShapeRecorder() {
+      this(new StringBuilder());
+    }
+
+    private ShapeRecorder(StringBuilder header) {
+      super(header);
+      this.header = header;
+    }
+
+    public String getShape() {
+      List<String> toReturn = new ArrayList<String>();
+      for (StringBuilder member : members) {
+        toReturn.add(member.toString());
+      }
+      // Member order does not matter to the JVM or the type oracle.
+      Collections.sort(toReturn);
+      return header + " " + toReturn;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature,
+        String superName, String[] interfaces) {
+      append("class", access, name, signature, superName,
+          Arrays.toString(interfaces));
+    }
+
+    @Override
+    public void visitEnd() {
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc,
+        String signature, Object value) {
+      Recorder member = startMember();
+      member.append("field", access, name, desc, signature,
+          member.valueToString(value));
+      return member;
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName,
+        String innerName, int access) {
+      append("inner", name, outerName, innerName, access);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc,
+        String signature, String[] exceptions) {
+      Recorder member = startMember();
+      member.append("method", access, name, desc, signature,
+          Arrays.toString(exceptions));
+      return member;
+    }
+
+    @Override
+    public void visitOuterClass(String owner, String name, String desc) {
+      append("outer", owner, name, desc);
+    }
+
+    private Recorder startMember() {
+      StringBuilder member = new StringBuilder();
+      members.add(member);
+      return new Recorder(member);
+    }
+  }
+
+  /**
+   * Compares the units of a running module with freshly compiled units.
+   *
+   * @param state the compilation state of the running module
+   * @param newUnits freshly compiled units for the module's source, mapped by
+   *          type name, as built by
+   *          {@link CompilationStateBuilder#buildUnitsFrom}
+   */
+  public static HotSwapChanges compute(CompilationState state,
+      Map<String, CompilationUnit> newUnits) {
+    HotSwapChanges changes = new HotSwapChanges();
+    Map<String, CompilationUnit> oldUnits = state.getCompilationUnitMap();
+    for (CompilationUnit oldUnit : oldUnits.values()) {
+      if (!oldUnit.isGenerated() && !newUnits.containsKey(oldUnit.getTypeName())) {
+        changes.setIncompatible(oldUnit.getTypeName()
+            + " was removed or no longer compiles");
+        return changes;
+      }
+    }
+    for (CompilationUnit newUnit : newUnits.values()) {
+      CompilationUnit oldUnit = oldUnits.get(newUnit.getTypeName());
+      if (oldUnit == newUnit) {
+        continue;
+      }
+      if (oldUnit == null) {
+        changes.setIncompatible(newUnit.getTypeName() + " was added");
+        return changes;
+      }
+      if (!newUnit.isCompiled()) {
+        changes.setIncompatible(newUnit.getTypeName() + " does not compile");
+        return changes;
+      }
+      if (!changes.addChangedUnit(oldUnit, newUnit)) {
+        return changes;
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * Returns the internal names of the classes of <code>newUnit</code> whose
+   * bytes differ from the same classes in <code>oldUnit</code>, which it
+   * replaced in a compilation state.
+   */
+  public static List<String> getChangedClassNames(CompilationUnit oldUnit,
+      CompilationUnit newUnit) {
+    Map<String, byte[]> oldBytes = new HashMap<String, byte[]>();
+    for (CompiledClass oldClass : oldUnit.getCompiledClasses()) {
+      oldBytes.put(oldClass.getInternalName(), oldClass.getBytes());
+    }
+    List<String> toReturn = new ArrayList<String>();
+    for (CompiledClass newClass : newUnit.getCompiledClasses()) {
+      if (!Arrays.equals(oldBytes.get(newClass.getInternalName()),
+          newClass.getBytes())) {
+        toReturn.add(newClass.getInternalName());
+      }
+    }
+    return toReturn;
+  }
+
+  /**
+   * Returns a description of a class's shape: everything about it except its
+   * method bodies and debugging information. Two classes with equal shapes can
+   * replace each other without affecting any other class.
+   */
+  static String getShape(byte[] classBytes) {
+    ShapeRecorder recorder = new ShapeRecorder();
+    new ClassReader(classBytes).accept(recorder, ClassReader.SKIP_CODE
+        | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return recorder.getShape();
+  }
+
+  private final Map<String, byte[]> changedClasses = new HashMap<String, byte[]>();
+
+  private final List<CompilationUnit> changedUnits = new ArrayList<CompilationUnit>();
+
+  private String incompatibility;
+
+  private final List<CompilationUnit> replacedUnits = new ArrayList<CompilationUnit>();
+
+  private HotSwapChanges() {
+  }
+
+  /**
+   * Returns the new bytes of each class whose code changed, mapped by internal
+   * name. Only valid if {@link #isCompatible()}.
+   */
+  public Map<String, byte[]> getChangedClasses() {
+    return Collections.unmodifiableMap(changedClasses);
+  }
+
+  /**
+   * Returns the recompiled units, in the same order as
+   * {@link #getReplacedUnits()}. Only valid if {@link #isCompatible()}.
+   */
+  public List<CompilationUnit> getChangedUnits() {
+    return Collections.unmodifiableList(changedUnits);
+  }
+
+  /**
+   * Returns why the changes cannot be hot swapped, or <code>null</code> if
+   * they can.
+   */
+  public String getIncompatibility() {
+    return incompatibility;
+  }
+
+  /**
+   * Returns the units of the running module that the recompiled units replace.
+   */
+  public List<CompilationUnit> getReplacedUnits() {
+    return Collections.unmodifiableList(replacedUnits);
+  }
+
+  public boolean isCompatible() {
+    return incompatibility == null;
+  }
+
+  public boolean isEmpty() {
+    return isCompatible() && changedUnits.isEmpty();
+  }
+
+  private boolean addChangedUnit(CompilationUnit oldUnit,
+      CompilationUnit newUnit) {
+    Map<String, CompiledClass> oldClasses = new HashMap<String, CompiledClass>();
+    for (CompiledClass oldClass : oldUnit.getCompiledClasses()) {
+      oldClasses.put(oldClass.getInternalName(), oldClass);
+    }
+    if (oldClasses.size() != newUnit.getCompiledClasses().size()) {
+      setIncompatible(newUnit.getTypeName() + " adds or removes classes");
+      return false;
+    }
+    for (CompiledClass newClass : newUnit.getCompiledClasses()) {
+      CompiledClass oldClass = oldClasses.get(newClass.getInternalName());
+      if (oldClass == null) {
+        setIncompatible(newClass.getSourceName() + " was added");
+        return false;
+      }
+      byte[] oldBytes = oldClass.getBytes();
+      byte[] newBytes = newClass.getBytes();
+      if (Arrays.equals(oldBytes, newBytes)) {
+        continue;
+      }
+      if (!getShape(oldBytes).equals(getShape(newBytes))) {
+        setIncompatible(newClass.getSourceName()
+            + " changed more than method bodies");
+        return false;
+      }
+      changedClasses.put(newClass.getInternalName(), newBytes);
+    }
+    replacedUnits.add(oldUnit);
+    changedUnits.add(newUnit);
+    return true;
+  }
+
+  private void setIncompatible(String incompatibility) {
+    this.incompatibility = incompatibility;
+    changedClasses.clear();
+    changedUnits.clear();
+    replacedUnits.clear();
+  }
+}
@@ -27,7 +27,6 @@ import com.google.gwt.core.ext.linker.StatementRanges;
 import com.google.gwt.core.ext.linker.SymbolData;
 import com.google.gwt.core.ext.linker.SyntheticArtifact;
 import com.google.gwt.core.ext.linker.impl.StandardSymbolData;
-import com.google.gwt.core.ext.soyc.Range;
 import com.google.gwt.core.ext.soyc.impl.DependencyRecorder;
 import com.google.gwt.core.ext.soyc.impl.SizeMapRecorder;
 import com.google.gwt.core.ext.soyc.impl.SplitPointRecorder;
@@ -97,7 +96,6 @@ import com.google.gwt.dev.jjs.impl.SameParameterValueOptimizer;
 import com.google.gwt.dev.jjs.impl.SourceGenerationVisitor;
 import com.google.gwt.dev.jjs.impl.TypeMap;
 import com.google.gwt.dev.jjs.impl.TypeTightener;
-import com.google.gwt.dev.jjs.impl.CodeSplitter.MultipleDependencyGraphRecorder;
 import com.google.gwt.dev.jjs.impl.gflow.DataflowOptimizer;
 import com.google.gwt.dev.js.EvalFunctionsAtTopScope;
 import com.google.gwt.dev.js.JsBreakUpLargeVarStatements;
@@ -115,7 +113,6 @@ import com.google.gwt.dev.js.JsStringInterner;
 import com.google.gwt.dev.js.JsSymbolResolver;
 import com.google.gwt.dev.js.JsUnusedFunctionRemover;
 import com.google.gwt.dev.js.JsVerboseNamer;
-import com.google.gwt.dev.js.SizeBreakdown;
 import com.google.gwt.dev.js.ast.JsBlock;
 import com.google.gwt.dev.js.ast.JsName;
 import com.google.gwt.dev.js.ast.JsProgram;
@@ -130,6 +127,7 @@ import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.collect.Maps;
 import com.google.gwt.soyc.SoycDashboard;
 import com.google.gwt.soyc.io.ArtifactsOutputDirectory;
+import com.google.gwt.util.tools.Utility;
 
 import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.internal.compiler.CompilationResult;
@@ -137,9 +135,13 @@ import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
 import org.xml.sax.SAXException;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -211,6 +213,64 @@ public class JavaToJavaScriptCompiler {
     }
   }
 
+  /**
+   * A compile report file that is written to a temporary file as it is
+   * recorded, so that it never has to be held in memory.
+   */
+  private static class SoycOutput {
+    private final File file;
+    private final OutputStream out;
+
+    /**
+     * Creates the temporary file, and adds this output to <code>outputs</code>
+     * so that the file can be discarded if the compile fails.
+     */
+    public SoycOutput(List<SoycOutput> outputs) throws IOException {
+      file = File.createTempFile("gwt-soyc", ".xml.gz");
+      try {
+        out = new BufferedOutputStream(new FileOutputStream(file));
+      } catch (IOException e) {
+        file.delete();
+        throw e;
+      }
+      outputs.add(this);
+    }
+
+    /**
+     * Closes and deletes the temporary file, unless it has already been moved
+     * into an artifact.
+     */
+    public void discard() {
+      Utility.close(out);
+      file.delete();
+    }
+
+    public OutputStream getStream() {
+      return out;
+    }
+
+    /**
+     * Closes the file and moves its contents into an artifact; returns
+     * <code>null</code> if nothing was recorded.
+     */
+    public SyntheticArtifact toArtifact(String partialPath) throws IOException {
+      out.close();
+      try {
+        if (file.length() == 0) {
+          return null;
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+          return new SyntheticArtifact(SoycReportLinker.class, partialPath, in);
+        } finally {
+          Utility.close(in);
+        }
+      } finally {
+        file.delete();
+      }
+    }
+  }
+
   /**
    * Compiles a particular permutation, based on a precompiled unified AST.
    * 
@@ -231,6 +291,7 @@ public class JavaToJavaScriptCompiler {
     logger.log(TreeLogger.INFO, "Compiling permutation " + permutationId
         + "...");
     long permStart = System.currentTimeMillis();
+    List<SoycOutput> soycOutputs = new ArrayList<SoycOutput>();
     try {
       if (JProgram.isTracingEnabled()) {
         System.out.println("------------------------------------------------------------");
@@ -311,15 +372,21 @@ public class JavaToJavaScriptCompiler {
       // (10) Split up the program into fragments
       SyntheticArtifact dependencies = null;
       if (options.isRunAsyncEnabled()) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        CodeSplitter.exec(logger, jprogram, jsProgram, map,
-            chooseDependencyRecorder(options.isSoycEnabled(), baos));
-        if (baos.size() == 0 && options.isSoycEnabled()) {
-          recordNonSplitDependencies(jprogram, baos);
-        }
-        if (baos.size() > 0) {
-          dependencies = new SyntheticArtifact(SoycReportLinker.class,
-              "dependencies" + permutationId + ".xml.gz", baos.toByteArray());
+        if (options.isSoycEnabled()) {
+          SoycOutput dependenciesOut = new SoycOutput(soycOutputs);
+          CodeSplitter.exec(logger, jprogram, jsProgram, map,
+              new DependencyRecorder(dependenciesOut.getStream()));
+          dependencies = dependenciesOut.toArtifact("dependencies"
+              + permutationId + ".xml.gz");
+          if (dependencies == null) {
+            dependenciesOut = new SoycOutput(soycOutputs);
+            recordNonSplitDependencies(jprogram, dependenciesOut.getStream());
+            dependencies = dependenciesOut.toArtifact("dependencies"
+                + permutationId + ".xml.gz");
+          }
+        } else {
+          CodeSplitter.exec(logger, jprogram, jsProgram, map,
+              CodeSplitter.NULL_RECORDER);
         }
       }
 
@@ -390,23 +457,50 @@ public class JavaToJavaScriptCompiler {
       // (12) Generate the final output text.
       String[] js = new String[jsProgram.getFragmentCount()];
       StatementRanges[] ranges = new StatementRanges[js.length];
-      SizeBreakdown[] sizeBreakdowns = options.isSoycEnabled()
-          ? new SizeBreakdown[js.length] : null;
-      List<Map<Range, SourceInfo>> sourceInfoMaps = options.isSoycExtra()
-          ? new ArrayList<Map<Range, SourceInfo>>() : null;
+
+      /*
+       * The compile report recorders stream each fragment's data out as soon
+       * as it is generated, rather than holding it for the whole program.
+       */
+      SoycOutput sizeMapsOut = null;
+      SizeMapRecorder sizeMapRecorder = null;
+      if (options.isSoycEnabled()) {
+        sizeMapsOut = new SoycOutput(soycOutputs);
+        sizeMapRecorder = new SizeMapRecorder(sizeMapsOut.getStream(), map,
+            obfuscateMap);
+        sizeMapRecorder.open();
+      }
+      SoycOutput storiesOut = null;
+      StoryRecorder storyRecorder = null;
+      if (options.isSoycExtra()) {
+        storiesOut = new SoycOutput(soycOutputs);
+        storyRecorder = new StoryRecorder(logger, storiesOut.getStream());
+        storyRecorder.open();
+      }
       generateJavaScriptCode(options, jsProgram, map, js, ranges,
-          sizeBreakdowns, sourceInfoMaps, splitBlocks);
+          sizeMapRecorder, storyRecorder, splitBlocks);
+      if (sizeMapRecorder != null) {
+        sizeMapRecorder.close();
+      }
+      if (storyRecorder != null) {
+        storyRecorder.close();
+      }
+      Memory.maybeDumpMemory("JsGenerated");
 
       PermutationResult toReturn = new PermutationResultImpl(js, permutation,
           makeSymbolMap(symbolTable), ranges);
       toReturn.addArtifacts(makeSoycArtifacts(logger, permutationId, jprogram,
-          js, sizeBreakdowns, sourceInfoMaps, dependencies, map, obfuscateMap));
+          soycOutputs, sizeMapsOut, storiesOut, dependencies));
 
       logger.log(TreeLogger.TRACE, "Permutation took "
           + (System.currentTimeMillis() - permStart) + " ms");
       return toReturn;
     } catch (Throwable e) {
       throw logAndTranslateException(logger, e);
+    } finally {
+      for (SoycOutput soycOutput : soycOutputs) {
+        soycOutput.discard();
+      }
     }
   }
 
@@ -751,15 +845,6 @@ public class JavaToJavaScriptCompiler {
     }
   }
 
-  private static MultipleDependencyGraphRecorder chooseDependencyRecorder(
-      boolean soycEnabled, OutputStream out) {
-    MultipleDependencyGraphRecorder dependencyRecorder = CodeSplitter.NULL_RECORDER;
-    if (soycEnabled) {
-      dependencyRecorder = new DependencyRecorder(out);
-    }
-    return dependencyRecorder;
-  }
-
   private static JMethodCall createReboundModuleLoad(TreeLogger logger,
       JDeclaredType reboundEntryType, String originalMainClassName,
       JDeclaredType enclosingType) throws UnableToCompleteException {
@@ -929,21 +1014,21 @@ public class JavaToJavaScriptCompiler {
    *          from
    * @param js An array to hold the output JavaScript
    * @param ranges An array to hold the statement ranges for that JavaScript
-   * @param sizeBreakdowns An array to hold the size breakdowns for that
-   *          JavaScript
-   * @param sourceInfoMaps An array to hold the source info maps for that
-   *          JavaScript
+   * @param sizeMapRecorder If not <code>null</code>, receives the size
+   *          breakdown of each fragment
+   * @param storyRecorder If not <code>null</code>, receives the source info
+   *          map of each fragment
    * @param splitBlocks true if current permutation is for IE6 or unknown
    */
   private static void generateJavaScriptCode(JJSOptions options,
       JsProgram jsProgram, JavaToJavaScriptMap jjsMap, String[] js,
-      StatementRanges[] ranges, SizeBreakdown[] sizeBreakdowns,
-      List<Map<Range, SourceInfo>> sourceInfoMaps, boolean splitBlocks) {
+      StatementRanges[] ranges, SizeMapRecorder sizeMapRecorder,
+      StoryRecorder storyRecorder, boolean splitBlocks) throws IOException {
     for (int i = 0; i < js.length; i++) {
       DefaultTextOutput out = new DefaultTextOutput(
           options.getOutput().shouldMinimize());
       JsSourceGenerationVisitorWithSizeBreakdown v;
-      if (sourceInfoMaps != null) {
+      if (storyRecorder != null) {
         v = new JsReportGenerationVisitor(out, jjsMap);
       } else {
         v = new JsSourceGenerationVisitorWithSizeBreakdown(out, jjsMap);
@@ -968,11 +1053,12 @@ public class JavaToJavaScriptCompiler {
         ieXformer.exec();
       }
       js[i] = ieXformer.getJs();
-      if (sizeBreakdowns != null) {
-        sizeBreakdowns[i] = v.getSizeBreakdown();
+      if (sizeMapRecorder != null) {
+        sizeMapRecorder.recordFragment(i, v.getSizeBreakdown());
       }
-      if (sourceInfoMaps != null) {
-        sourceInfoMaps.add(((JsReportGenerationVisitor) v).getSourceInfoMap());
+      if (storyRecorder != null) {
+        storyRecorder.recordFragment(i,
+            ((JsReportGenerationVisitor) v).getSourceInfoMap(), js[i]);
       }
       ranges[i] = ieXformer.getStatementRanges();
     }
@@ -1022,45 +1108,38 @@ public class JavaToJavaScriptCompiler {
   }
 
   private static Collection<? extends Artifact<?>> makeSoycArtifacts(
-      TreeLogger logger, int permutationId, JProgram jprogram, String[] js,
-      SizeBreakdown[] sizeBreakdowns,
-      List<Map<Range, SourceInfo>> sourceInfoMaps,
-      SyntheticArtifact dependencies, JavaToJavaScriptMap jjsmap,
-      Map<JsName, String> obfuscateMap) throws IOException,
+      TreeLogger logger, int permutationId, JProgram jprogram,
+      List<SoycOutput> soycOutputs, SoycOutput sizeMapsOut,
+      SoycOutput storiesOut,
+      SyntheticArtifact dependencies) throws IOException,
       UnableToCompleteException {
     List<SyntheticArtifact> soycArtifacts = new ArrayList<SyntheticArtifact>();
 
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
     PerfLogger.start("Recording compile report output");
 
     PerfLogger.start("Record split points");
-    SplitPointRecorder.recordSplitPoints(jprogram, baos, logger);
-    SyntheticArtifact splitPoints = new SyntheticArtifact(
-        SoycReportLinker.class, "splitPoints" + permutationId + ".xml.gz",
-        baos.toByteArray());
+    SoycOutput splitPointsOut = new SoycOutput(soycOutputs);
+    SplitPointRecorder.recordSplitPoints(jprogram, splitPointsOut.getStream(),
+        logger);
+    SyntheticArtifact splitPoints = splitPointsOut.toArtifact("splitPoints"
+        + permutationId + ".xml.gz");
     soycArtifacts.add(splitPoints);
     PerfLogger.end();
 
     SyntheticArtifact sizeMaps = null;
-    if (sizeBreakdowns != null) {
-      PerfLogger.start("Record size map");
-      baos.reset();
-      SizeMapRecorder.recordMap(logger, baos, sizeBreakdowns, jjsmap,
-          obfuscateMap);
-      sizeMaps = new SyntheticArtifact(SoycReportLinker.class, "stories"
-          + permutationId + ".xml.gz", baos.toByteArray());
-      soycArtifacts.add(sizeMaps);
-      PerfLogger.end();
+    if (sizeMapsOut != null) {
+      sizeMaps = sizeMapsOut.toArtifact("stories" + permutationId + ".xml.gz");
+      if (sizeMaps != null) {
+        soycArtifacts.add(sizeMaps);
+      }
     }
 
-    if (sourceInfoMaps != null) {
-      PerfLogger.start("Record detailed stories");
-      baos.reset();
-      StoryRecorder.recordStories(logger, baos, sourceInfoMaps, js);
-      soycArtifacts.add(new SyntheticArtifact(SoycReportLinker.class,
-          "detailedStories" + permutationId + ".xml.gz", baos.toByteArray()));
-      PerfLogger.end();
+    if (storiesOut != null) {
+      SyntheticArtifact stories = storiesOut.toArtifact("detailedStories"
+          + permutationId + ".xml.gz");
+      if (stories != null) {
+        soycArtifacts.add(stories);
+      }
     }
 
     if (dependencies != null) {
@@ -1073,7 +1152,7 @@ public class JavaToJavaScriptCompiler {
     }
     PerfLogger.end();
 
-    if (sizeBreakdowns != null) {
+    if (sizeMaps != null) {
       PerfLogger.start("Generating compile report");
       ArtifactsOutputDirectory outDir = new ArtifactsOutputDirectory();
       SoycDashboard dashboard = new SoycDashboard(outDir);
@@ -16,6 +16,7 @@
 package com.google.gwt.dev.jjs;
 
 import com.google.gwt.dev.jjs.Correlation.Axis;
+import com.google.gwt.dev.util.collect.Lists;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -44,9 +45,10 @@ public class SourceInfoCorrelation implements SourceInfo, Serializable {
   }
 
   /**
-   * Any Correlation associated with the SourceInfo.
+   * Any Correlation associated with the SourceInfo. Most nodes carry zero or
+   * one, so this is a {@link Lists} list rather than an ArrayList.
    */
-  private final List<Correlation> allCorrelations;
+  private List<Correlation> allCorrelations;
 
   /**
    * Holds the origin data for the SourceInfo.
@@ -56,14 +58,13 @@ public class SourceInfoCorrelation implements SourceInfo, Serializable {
   /**
    * Records the first Correlation on any given Axis applied to the SourceInfo.
    * Each index of this array corresponds to the Correlation.Axis with the same
-   * ordinal().
+   * ordinal(). Allocated when the first Correlation is added.
    */
-  private final Correlation[] primaryCorrelations;
+  private Correlation[] primaryCorrelations;
 
   public SourceInfoCorrelation(SourceOrigin origin) {
     this.origin = origin;
-    allCorrelations = new ArrayList<Correlation>();
-    primaryCorrelations = new Correlation[numCorrelationAxes()];
+    allCorrelations = Lists.create();
   }
 
   private SourceInfoCorrelation(SourceInfoCorrelation parent, String caller,
@@ -72,10 +73,9 @@ public class SourceInfoCorrelation implements SourceInfo, Serializable {
     assert caller != null;
     this.origin = parent.origin;
 
-    this.allCorrelations = new ArrayList<Correlation>(parent.allCorrelations);
-    primaryCorrelations = new Correlation[numCorrelationAxes()];
-    for (int i = 0; i < numCorrelationAxes(); i++) {
-      primaryCorrelations[i] = parent.primaryCorrelations[i];
+    this.allCorrelations = Lists.create(parent.allCorrelations);
+    if (parent.primaryCorrelations != null) {
+      primaryCorrelations = parent.primaryCorrelations.clone();
     }
 
     merge(additionalAncestors);
@@ -86,13 +86,9 @@ public class SourceInfoCorrelation implements SourceInfo, Serializable {
    */
   public void addCorrelation(Correlation c) {
     if (!isAlreadyInAllCorrelations(c)) {
-      allCorrelations.add(c);
-    }
-
-    int index = c.getAxis().ordinal();
-    if (primaryCorrelations[index] == null) {
-      primaryCorrelations[index] = c;
+      allCorrelations = Lists.add(allCorrelations, c);
     }
+    maybeSetPrimaryCorrelation(c);
   }
 
   /**
@@ -151,6 +147,9 @@ public class SourceInfoCorrelation implements SourceInfo, Serializable {
    * <code>null</code> if no Correlation has been set on the given axis.
    */
   public Correlation getPrimaryCorrelation(Axis axis) {
+    if (primaryCorrelations == null) {
+      return null;
+    }
     return primaryCorrelations[axis.ordinal()];
   }
 
@@ -160,7 +159,7 @@ public class SourceInfoCorrelation implements SourceInfo, Serializable {
    */
   public Set<Correlation> getPrimaryCorrelations() {
     HashSet<Correlation> toReturn = new HashSet<Correlation>();
-    for (Correlation c : primaryCorrelations) {
+    for (Correlation c : getPrimaryCorrelationsArray()) {
       if (c != null) {
         toReturn.add(c);
       }
@@ -169,6 +168,9 @@ public class SourceInfoCorrelation implements SourceInfo, Serializable {
   }
   
   public Correlation[] getPrimaryCorrelationsArray() {
+    if (primaryCorrelations == null) {
+      return SourceOrigin.NO_CORRELATIONS;
+    }
     return primaryCorrelations;
   }
 
@@ -215,14 +217,13 @@ public class SourceInfoCorrelation implements SourceInfo, Serializable {
 
       for (Correlation c : info.getAllCorrelations()) {
         if (!isAlreadyInAllCorrelations(c)) {
-          allCorrelations.add(c);
+          allCorrelations = Lists.add(allCorrelations, c);
         }
       }
 
-      for (Correlation c : info.getPrimaryCorrelations()) {
-        int i = c.getAxis().ordinal();
-        if (primaryCorrelations[i] == null) {
-          primaryCorrelations[i] = c;
+      for (Correlation c : info.getPrimaryCorrelationsArray()) {
+        if (c != null) {
+          maybeSetPrimaryCorrelation(c);
         }
       }
     }
@@ -244,4 +245,14 @@ public class SourceInfoCorrelation implements SourceInfo, Serializable {
     }
     return alreadyThere;
   }
+
+  private void maybeSetPrimaryCorrelation(Correlation c) {
+    if (primaryCorrelations == null) {
+      primaryCorrelations = new Correlation[numCorrelationAxes()];
+    }
+    int index = c.getAxis().ordinal();
+    if (primaryCorrelations[index] == null) {
+      primaryCorrelations[index] = c;
+    }
+  }
 }
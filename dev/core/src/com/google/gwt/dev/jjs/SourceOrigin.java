@@ -17,11 +17,13 @@ package com.google.gwt.dev.jjs;
 
 import com.google.gwt.dev.jjs.Correlation.Axis;
 
+import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.Map.Entry;
 
 /**
@@ -66,6 +68,11 @@ public class SourceOrigin implements SourceInfo {
     }
   };
 
+  /**
+   * Shared by all origins, since callers may not modify the returned array.
+   */
+  static final Correlation[] NO_CORRELATIONS = new Correlation[0];
+
   /**
    * Cache to reuse recently-created origins. This is very useful for JS nodes,
    * since {@link com.google.gwt.dev.js.JsParser} currently only provides line
@@ -81,6 +88,11 @@ public class SourceOrigin implements SourceInfo {
     }
   });
 
+  /**
+   * The file name shared by all origins in each file.
+   */
+  private static final Map<String, WeakReference<String>> FILE_NAMES = new WeakHashMap<String, WeakReference<String>>();
+
   /**
    * Creates SourceOrigin nodes.
    */
@@ -90,7 +102,8 @@ public class SourceOrigin implements SourceInfo {
       return create(startLine, fileName);
     }
 
-    return new SourceOriginPos(fileName, startLine, startPos, endPos);
+    return new SourceOriginPos(internFileName(fileName), startLine, startPos,
+        endPos);
   }
 
   /**
@@ -99,7 +112,8 @@ public class SourceOrigin implements SourceInfo {
    */
   public static SourceOrigin create(int startLine, String fileName) {
 
-    SourceOrigin newInstance = new SourceOrigin(fileName, startLine);
+    SourceOrigin newInstance = new SourceOrigin(internFileName(fileName),
+        startLine);
     SourceOrigin canonical = CANONICAL_SOURCE_ORIGINS.get(newInstance);
 
     assert canonical == null
@@ -113,6 +127,24 @@ public class SourceOrigin implements SourceInfo {
     }
   }
 
+  /**
+   * Every node in a compilation unit is created with its own copy of the file
+   * name (the JDT hands us a fresh <code>char[]</code> each time), so share a
+   * single instance per file. Unlike {@link String#intern()}, this keeps the
+   * names on the heap, and only while some origin still uses them.
+   */
+  private static String internFileName(String fileName) {
+    synchronized (FILE_NAMES) {
+      WeakReference<String> ref = FILE_NAMES.get(fileName);
+      String canonical = (ref == null) ? null : ref.get();
+      if (canonical == null) {
+        canonical = fileName;
+        FILE_NAMES.put(canonical, new WeakReference<String>(canonical));
+      }
+      return canonical;
+    }
+  }
+
   // TODO: Add Module and Generator tracking
   private final String fileName;
   private final int startLine;
@@ -168,7 +200,7 @@ public class SourceOrigin implements SourceInfo {
   }
   
   public Correlation[] getPrimaryCorrelationsArray() {
-    return new Correlation[0];
+    return NO_CORRELATIONS;
   }
 
   public int getStartLine() {
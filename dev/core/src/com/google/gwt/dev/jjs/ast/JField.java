@@ -40,6 +40,11 @@ public class JField extends JVariable implements CanBeStatic, HasEnclosingType {
     }
   }
 
+  /**
+   * Assigned by {@link JProgram#getDenseId(JField)}.
+   */
+  transient int denseId;
+
   private final JDeclaredType enclosingType;
   private final boolean isCompileTimeConstant;
   private final boolean isStatic;
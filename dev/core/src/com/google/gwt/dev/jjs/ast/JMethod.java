@@ -48,6 +48,11 @@ public class JMethod extends JNode implements HasAnnotations, HasEnclosingType,
    * Special serialization treatment.
    */
   private transient JAbstractMethodBody body = null;
+
+  /**
+   * Assigned by {@link JProgram#getDenseId(JMethod)}.
+   */
+  transient int denseId;
   private final JDeclaredType enclosingType;
   private final boolean isAbstract;
   private boolean isFinal;
@@ -295,6 +295,14 @@ public class JProgram extends JNode {
    */
   private final CorrelationFactory correlator;
 
+  /**
+   * Methods, fields, and reference types indexed by their dense id. Slot 0 is
+   * reserved for the shared {@link JNullType#INSTANCE}, whose id cannot be
+   * stored on the node itself; so 0 on a node means it has no id yet. Not
+   * serialized, since ids are handed out again on demand.
+   */
+  private transient ArrayList<JNode> denseIdNodes = createDenseIdNodes();
+
   /**
    * Each entry is a HashMap(JType => JArrayType), arranged such that the number
    * of dimensions is that index (plus one) at which the JArrayTypes having that
@@ -787,6 +795,58 @@ public class JProgram extends JNode {
     return allTypes;
   }
 
+  /**
+   * Returns a small non-negative integer that uniquely identifies
+   * <code>field</code> within this program, assigning one on first use. Dense
+   * ids are shared between fields, methods, and reference types and are never
+   * reused, so analyses can track sets of them as bit sets.
+   */
+  public int getDenseId(JField field) {
+    if (field.denseId == 0) {
+      field.denseId = assignDenseId(field);
+    }
+    return field.denseId;
+  }
+
+  /**
+   * Returns the dense id for <code>method</code>. See
+   * {@link #getDenseId(JField)}.
+   */
+  public int getDenseId(JMethod method) {
+    if (method.denseId == 0) {
+      method.denseId = assignDenseId(method);
+    }
+    return method.denseId;
+  }
+
+  /**
+   * Returns the dense id for <code>type</code>. See
+   * {@link #getDenseId(JField)}.
+   */
+  public int getDenseId(JReferenceType type) {
+    if (type == JNullType.INSTANCE) {
+      return 0;
+    }
+    if (type.denseId == 0) {
+      type.denseId = assignDenseId(type);
+    }
+    return type.denseId;
+  }
+
+  /**
+   * Returns one more than the largest dense id handed out so far.
+   */
+  public int getDenseIdCount() {
+    return denseIdNodes.size();
+  }
+
+  /**
+   * Returns the node that was assigned dense id <code>id</code>.
+   */
+  public JNode getDenseIdNode(int id) {
+    return denseIdNodes.get(id);
+  }
+
   public int getEntryCount(int fragment) {
     return entryMethods.get(fragment).size();
   }
@@ -1264,6 +1324,25 @@ public class JProgram extends JNode {
     return type1;
   }
 
+  /**
+   * Forgets every dense id, so that nodes removed from the program are no
+   * longer referenced. Ids are handed out again on demand; sets of nodes keyed
+   * by the old ids must not be used afterward.
+   */
+  public void resetDenseIds() {
+    for (int i = 1, c = denseIdNodes.size(); i < c; ++i) {
+      JNode node = denseIdNodes.get(i);
+      if (node instanceof JField) {
+        ((JField) node).denseId = 0;
+      } else if (node instanceof JMethod) {
+        ((JMethod) node).denseId = 0;
+      } else {
+        ((JReferenceType) node).denseId = 0;
+      }
+    }
+    denseIdNodes = createDenseIdNodes();
+  }
+
   public void traverse(JVisitor visitor, Context ctx) {
     if (visitor.visit(this, ctx)) {
       visitor.accept(allTypes);
@@ -1271,6 +1350,18 @@ public class JProgram extends JNode {
     visitor.endVisit(this, ctx);
   }
 
+  private static ArrayList<JNode> createDenseIdNodes() {
+    ArrayList<JNode> nodes = new ArrayList<JNode>();
+    nodes.add(JNullType.INSTANCE);
+    return nodes;
+  }
+
+  private int assignDenseId(JNode node) {
+    int id = denseIdNodes.size();
+    denseIdNodes.add(node);
+    return id;
+  }
+
   private int classifyType(JReferenceType type) {
     assert !(type instanceof JNonNullType);
     if (type instanceof JNullType) {
@@ -1329,6 +1420,7 @@ public class JProgram extends JNode {
       type.readMethodBodies(stream);
     }
     stream.defaultReadObject();
+    denseIdNodes = createDenseIdNodes();
   }
 
   /**
@@ -22,6 +22,11 @@ import com.google.gwt.dev.jjs.SourceInfo;
  */
 public abstract class JReferenceType extends JType implements CanBeAbstract {
 
+  /**
+   * Assigned by {@link JProgram#getDenseId(JReferenceType)}.
+   */
+  transient int denseId;
+
   /**
    * This type's super class.
    */
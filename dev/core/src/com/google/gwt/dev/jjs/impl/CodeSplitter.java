@@ -451,7 +451,7 @@ public class CodeSplitter {
     dependencyRecorder.startDependencyGraph("initial", null);
 
     ControlFlowAnalyzer cfa = new ControlFlowAnalyzer(jprogram);
-    cfa.setDependencyRecorder(dependencyRecorder);
+    recordDependencies(cfa, dependencyRecorder);
     traverseEntry(jprogram, cfa, 0);
     traverseClassArray(jprogram, cfa);
 
@@ -543,6 +543,18 @@ public class CodeSplitter {
     logger.log(TreeLogger.TRACE, message.toString());
   }
 
+  /**
+   * Attach <code>recorder</code> to <code>cfa</code>, unless it is the
+   * {@link #NULL_RECORDER}. Leaving the analyzer without a recorder lets it use
+   * its cheaper worklist traversal.
+   */
+  private static void recordDependencies(ControlFlowAnalyzer cfa,
+      MultipleDependencyGraphRecorder recorder) {
+    if (recorder != NULL_RECORDER) {
+      cfa.setDependencyRecorder(recorder);
+    }
+  }
+
   /**
    * Reverses a runAsync map, returning a map from methods to the split point
    * numbers invoked from within that method.
@@ -727,7 +739,7 @@ public class CodeSplitter {
           dependencyGraphNameAfterInitialSequence);
       ControlFlowAnalyzer cfa = new ControlFlowAnalyzer(
           liveAfterInitialSequence);
-      cfa.setDependencyRecorder(dependencyRecorder);
+      recordDependencies(cfa, dependencyRecorder);
       traverseAllButEntry(cfa, entry);
       // Traverse leftoversFragmentHasLoaded, because it should not
       // go into any of the exclusive fragments.
@@ -745,7 +757,7 @@ public class CodeSplitter {
   private ControlFlowAnalyzer computeCompleteCfa() {
     dependencyRecorder.startDependencyGraph("total", null);
     ControlFlowAnalyzer everything = new ControlFlowAnalyzer(jprogram);
-    everything.setDependencyRecorder(dependencyRecorder);
+    recordDependencies(everything, dependencyRecorder);
     for (int entry = 0; entry < numEntries; entry++) {
       traverseEntry(everything, entry);
     }
@@ -66,6 +66,15 @@ import java.util.Set;
 /**
  * This class finds out what code in a program is live based on starting
  * execution at a specified location.
+ * 
+ * <p>
+ * Live methods, fields, and types are tracked as bit sets over
+ * {@link JProgram#getDenseId(JMethod) dense ids}, which makes copying an
+ * analyzer (as {@link CodeSplitter} does for every split point) and membership
+ * tests cheap. Unless a {@link DependencyRecorder} needs the exact chain of
+ * method rescues, newly live methods and types are visited from a worklist
+ * rather than recursively.
+ * </p>
  */
 public class ControlFlowAnalyzer {
   /**
@@ -84,12 +93,15 @@ public class ControlFlowAnalyzer {
    * Marks as "referenced" any types, methods, and fields that are reachable.
    * Also marks as "instantiable" any the classes and interfaces that can
    * possibly be instantiated.
-   * 
-   * TODO(later): make RescueVisitor use less stack?
    */
   private class RescueVisitor extends JVisitor {
     private ArrayList<JMethod> curMethodStack = new ArrayList<JMethod>();
 
+    /**
+     * Methods and types that have been rescued but not yet visited.
+     */
+    private final ArrayList<JNode> worklist = new ArrayList<JNode>();
+
     @Override
     public boolean visit(JArrayType type, Context ctx) {
       assert (referencedTypes.contains(type));
@@ -433,6 +445,15 @@ public class ControlFlowAnalyzer {
       return true;
     }
 
+    /**
+     * Visit everything that was rescued but not yet visited.
+     */
+    void drainWorklist() {
+      while (!worklist.isEmpty()) {
+        accept(worklist.remove(worklist.size() - 1));
+      }
+    }
+
     private boolean isStaticFieldInitializedToLiteral(JVariable var) {
       if (var instanceof JField) {
         JField field = (JField) var;
@@ -493,7 +514,7 @@ public class ControlFlowAnalyzer {
             curMethodStack.add(method);
             dependencyRecorder.methodIsLiveBecause(method, curMethodStack);
           }
-          accept(method);
+          visitNowOrLater(method);
           if (dependencyRecorder != null) {
             curMethodStack.remove(curMethodStack.size() - 1);
           }
@@ -548,7 +569,7 @@ public class ControlFlowAnalyzer {
       }
 
       if (doVisit) {
-        accept(type);
+        visitNowOrLater(type);
 
         if (type instanceof JDeclaredType) {
           for (JNode artificial : ((JDeclaredType) type).getArtificialRescues()) {
@@ -685,14 +706,35 @@ public class ControlFlowAnalyzer {
         }
       }
     }
+
+    /**
+     * Visit a newly rescued method or type. When dependencies are being
+     * recorded, the visit happens immediately so that the recorder sees the
+     * chain of methods that made <code>node</code> live; otherwise it is
+     * deferred to the worklist to keep the stack shallow.
+     */
+    private void visitNowOrLater(JNode node) {
+      if (dependencyRecorder != null) {
+        accept(node);
+      } else {
+        worklist.add(node);
+      }
+    }
   }
 
+  /**
+   * Set this system property to track live nodes in hash sets instead of bit
+   * sets. Combined with {@code gwt.perflog} and {@code gwt.memory.usage}, this
+   * allows comparing the time and memory used by the two representations.
+   */
+  private static final boolean USE_HASH_SETS = Boolean.getBoolean("gwt.jjs.cfaHashSets");
+
   private DependencyRecorder dependencyRecorder;
 
-  private Set<JField> fieldsWritten = new HashSet<JField>();
-  private Set<JReferenceType> instantiatedTypes = new HashSet<JReferenceType>();
-  private Set<JNode> liveFieldsAndMethods = new HashSet<JNode>();
-  private Set<String> liveStrings = new HashSet<String>();
+  private Set<JField> fieldsWritten;
+  private Set<JReferenceType> instantiatedTypes;
+  private Set<JNode> liveFieldsAndMethods;
+  private Set<String> liveStrings;
 
   /**
    * Schrodinger's methods... aka "limbo". :) These are instance methods that
@@ -700,7 +742,7 @@ public class ControlFlowAnalyzer {
    * these methods into purgatory until/unless the enclosing type is found to be
    * instantiable.
    */
-  private Set<JMethod> methodsLiveExceptForInstantiability = new HashSet<JMethod>();
+  private Set<JMethod> methodsLiveExceptForInstantiability;
 
   /**
    * A precomputed map of all instance methods onto a set of methods that
@@ -710,25 +752,30 @@ public class ControlFlowAnalyzer {
 
   private final JProgram program;
 
-  private Set<JReferenceType> referencedTypes = new HashSet<JReferenceType>();
+  private Set<JReferenceType> referencedTypes;
   private final RescueVisitor rescuer = new RescueVisitor();
   private JMethod stringValueOfChar = null;
 
   public ControlFlowAnalyzer(ControlFlowAnalyzer cfa) {
     program = cfa.program;
-    fieldsWritten = new HashSet<JField>(cfa.fieldsWritten);
-    instantiatedTypes = new HashSet<JReferenceType>(cfa.instantiatedTypes);
-    liveFieldsAndMethods = new HashSet<JNode>(cfa.liveFieldsAndMethods);
-    referencedTypes = new HashSet<JReferenceType>(cfa.referencedTypes);
+    fieldsWritten = copyNodeSet(cfa.fieldsWritten);
+    instantiatedTypes = copyNodeSet(cfa.instantiatedTypes);
+    liveFieldsAndMethods = copyNodeSet(cfa.liveFieldsAndMethods);
+    referencedTypes = copyNodeSet(cfa.referencedTypes);
     stringValueOfChar = cfa.stringValueOfChar;
     liveStrings = new HashSet<String>(cfa.liveStrings);
-    methodsLiveExceptForInstantiability = new HashSet<JMethod>(
-        cfa.methodsLiveExceptForInstantiability);
+    methodsLiveExceptForInstantiability = copyNodeSet(cfa.methodsLiveExceptForInstantiability);
     methodsThatOverrideMe = cfa.methodsThatOverrideMe;
   }
 
   public ControlFlowAnalyzer(JProgram program) {
     this.program = program;
+    fieldsWritten = newNodeSet();
+    instantiatedTypes = newNodeSet();
+    liveFieldsAndMethods = newNodeSet();
+    referencedTypes = newNodeSet();
+    liveStrings = new HashSet<String>();
+    methodsLiveExceptForInstantiability = newNodeSet();
     buildMethodsOverriding();
   }
 
@@ -782,6 +829,7 @@ public class ControlFlowAnalyzer {
    */
   public void traverseFrom(JExpression expr) {
     rescuer.accept(expr);
+    rescuer.drainWorklist();
   }
 
   /**
@@ -789,6 +837,7 @@ public class ControlFlowAnalyzer {
    */
   public void traverseFrom(JMethod method) {
     rescuer.rescue(method);
+    rescuer.drainWorklist();
   }
 
   /**
@@ -797,6 +846,7 @@ public class ControlFlowAnalyzer {
    */
   public void traverseFromInstantiationOf(JDeclaredType type) {
     rescuer.rescue(type, true, true);
+    rescuer.drainWorklist();
   }
 
   public void traverseFromLeftoversFragmentHasLoaded() {
@@ -807,6 +857,7 @@ public class ControlFlowAnalyzer {
 
   public void traverseFromReferenceTo(JDeclaredType type) {
     rescuer.rescue(type, true, false);
+    rescuer.drainWorklist();
   }
 
   private void buildMethodsOverriding() {
@@ -824,4 +875,19 @@ public class ControlFlowAnalyzer {
       }
     }
   }
+
+  @SuppressWarnings("unchecked")
+  private <T extends JNode> Set<T> copyNodeSet(Set<T> set) {
+    if (set instanceof JNodeBitSet<?>) {
+      return new JNodeBitSet<T>((JNodeBitSet<T>) set);
+    }
+    return new HashSet<T>(set);
+  }
+
+  private <T extends JNode> Set<T> newNodeSet() {
+    if (USE_HASH_SETS) {
+      return new HashSet<T>();
+    }
+    return new JNodeBitSet<T>(program);
+  }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.ast.JField;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JNode;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.jjs.ast.JReferenceType;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A set of AST nodes backed by a {@link BitSet} over
+ * {@link JProgram#getDenseId(JMethod) dense ids}. Methods, fields, and
+ * reference types are stored as single bits; any other node (such as a local or
+ * a parameter) falls back to a hash set. Iteration visits the dense nodes in id
+ * order, which is also the order in which they were first seen by the program.
+ *
+ * @param <T> the type of node in the set
+ */
+class JNodeBitSet<T extends JNode> extends AbstractSet<T> {
+
+  private class BitSetIterator implements Iterator<T> {
+    private int lastId = -1;
+    private boolean lastWasDense;
+    private int nextId = bits.nextSetBit(0);
+    private final Iterator<T> others = (nonDense == null) ? null
+        : nonDense.iterator();
+
+    public boolean hasNext() {
+      if (nextId >= 0) {
+        return true;
+      }
+      return others != null && others.hasNext();
+    }
+
+    @SuppressWarnings("unchecked")
+    public T next() {
+      if (nextId >= 0) {
+        lastId = nextId;
+        lastWasDense = true;
+        nextId = bits.nextSetBit(nextId + 1);
+        return (T) program.getDenseIdNode(lastId);
+      }
+      if (others != null && others.hasNext()) {
+        lastWasDense = false;
+        return others.next();
+      }
+      throw new NoSuchElementException();
+    }
+
+    public void remove() {
+      if (lastWasDense) {
+        if (lastId < 0 || !bits.get(lastId)) {
+          throw new IllegalStateException();
+        }
+        bits.clear(lastId);
+      } else if (others != null) {
+        others.remove();
+      } else {
+        throw new IllegalStateException();
+      }
+    }
+  }
+
+  private final BitSet bits;
+
+  /**
+   * Nodes that have no dense id; lazily created since most sets never need it.
+   */
+  private Set<T> nonDense;
+
+  private final JProgram program;
+
+  public JNodeBitSet(JNodeBitSet<T> other) {
+    this.program = other.program;
+    this.bits = (BitSet) other.bits.clone();
+    if (other.nonDense != null) {
+      this.nonDense = new HashSet<T>(other.nonDense);
+    }
+  }
+
+  public JNodeBitSet(JProgram program) {
+    this.program = program;
+    this.bits = new BitSet(program.getDenseIdCount());
+  }
+
+  @Override
+  public boolean add(T node) {
+    int id = denseIdOf(node);
+    if (id < 0) {
+      if (nonDense == null) {
+        nonDense = new HashSet<T>();
+      }
+      return nonDense.add(node);
+    }
+    if (bits.get(id)) {
+      return false;
+    }
+    bits.set(id);
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    bits.clear();
+    nonDense = null;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    int id = denseIdOf(o);
+    if (id < 0) {
+      return nonDense != null && nonDense.contains(o);
+    }
+    return bits.get(id);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return bits.isEmpty() && (nonDense == null || nonDense.isEmpty());
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new BitSetIterator();
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    int id = denseIdOf(o);
+    if (id < 0) {
+      return nonDense != null && nonDense.remove(o);
+    }
+    if (!bits.get(id)) {
+      return false;
+    }
+    bits.clear(id);
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return bits.cardinality() + (nonDense == null ? 0 : nonDense.size());
+  }
+
+  /**
+   * Returns the dense id of <code>o</code>, or <code>-1</code> if it is not a
+   * kind of node that has one.
+   */
+  private int denseIdOf(Object o) {
+    if (o instanceof JMethod) {
+      return program.getDenseId((JMethod) o);
+    } else if (o instanceof JField) {
+      return program.getDenseId((JField) o);
+    } else if (o instanceof JReferenceType) {
+      return program.getDenseId((JReferenceType) o);
+    }
+    return -1;
+  }
+}
@@ -636,6 +636,7 @@ public class Pruner {
   private boolean execImpl() {
     boolean madeChanges = false;
     while (true) {
+      PerfCounter.start("Pruner.execImpl.liveness");
       ControlFlowAnalyzer livenessAnalyzer = new ControlFlowAnalyzer(program);
       if (saveCodeGenTypes) {
         /*
@@ -649,6 +650,7 @@ public class Pruner {
         livenessAnalyzer.traverseFrom(method);
       }
       livenessAnalyzer.traverseFromLeftoversFragmentHasLoaded();
+      PerfCounter.end("Pruner.execImpl.liveness");
 
       program.typeOracle.setInstantiatedTypes(livenessAnalyzer.getInstantiatedTypes());
 
@@ -667,6 +669,10 @@ public class Pruner {
 
       madeChanges = true;
     }
+    if (madeChanges) {
+      // Release the pruned nodes.
+      program.resetDenseIds();
+    }
     return madeChanges;
   }
 
@@ -15,13 +15,28 @@
  */
 package com.google.gwt.dev.js;
 
+import com.google.gwt.dev.js.ast.JsBlock;
+import com.google.gwt.dev.js.ast.JsCatch;
+import com.google.gwt.dev.js.ast.JsContext;
+import com.google.gwt.dev.js.ast.JsExpression;
+import com.google.gwt.dev.js.ast.JsFunction;
 import com.google.gwt.dev.js.ast.JsName;
+import com.google.gwt.dev.js.ast.JsNameOf;
+import com.google.gwt.dev.js.ast.JsNameRef;
+import com.google.gwt.dev.js.ast.JsParameter;
 import com.google.gwt.dev.js.ast.JsProgram;
 import com.google.gwt.dev.js.ast.JsRootScope;
 import com.google.gwt.dev.js.ast.JsScope;
+import com.google.gwt.dev.js.ast.JsVisitor;
+import com.google.gwt.dev.js.ast.JsVars.JsVar;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A namer that uses short, unrecognizable idents to minimize generated code
@@ -29,6 +44,84 @@ import java.util.List;
  */
 public class JsObfuscateNamer {
 
+  /**
+   * Counts how many times each name is declared or referenced in each fragment
+   * of the program.
+   */
+  private static class ReferenceCounter extends JsVisitor {
+    private final Map<JsName, int[]> counts = new IdentityHashMap<JsName, int[]>();
+    private int fragment;
+    private final int fragmentCount;
+
+    public ReferenceCounter(int fragmentCount) {
+      this.fragmentCount = fragmentCount;
+    }
+
+    public void countFragment(int fragment, JsBlock block) {
+      this.fragment = fragment;
+      accept(block);
+    }
+
+    @Override
+    public void endVisit(JsCatch x, JsContext<JsCatch> ctx) {
+      count(x.getParameter().getName());
+    }
+
+    @Override
+    public void endVisit(JsFunction x, JsContext<JsExpression> ctx) {
+      count(x.getName());
+    }
+
+    @Override
+    public void endVisit(JsNameOf x, JsContext<JsExpression> ctx) {
+      count(x.getName());
+    }
+
+    @Override
+    public void endVisit(JsNameRef x, JsContext<JsExpression> ctx) {
+      count(x.getName());
+    }
+
+    @Override
+    public void endVisit(JsParameter x, JsContext<JsParameter> ctx) {
+      count(x.getName());
+    }
+
+    @Override
+    public void endVisit(JsVar x, JsContext<JsVar> ctx) {
+      count(x.getName());
+    }
+
+    private void count(JsName name) {
+      if (name == null) {
+        return;
+      }
+      int[] count = counts.get(name);
+      if (count == null) {
+        // One slot per fragment, then the total.
+        count = new int[fragmentCount + 1];
+        counts.put(name, count);
+      }
+      ++count[fragment];
+      ++count[fragmentCount];
+    }
+
+    private int getCount(JsName name, int fragment) {
+      int[] count = counts.get(name);
+      return count == null ? 0 : count[fragment];
+    }
+
+    private int getTotalCount(JsName name) {
+      return getCount(name, fragmentCount);
+    }
+  }
+
+  /**
+   * Set this system property to hand out the shortest idents in each scope to
+   * its most frequently referenced names, instead of in declaration order.
+   */
+  private static final boolean FREQUENCY_NAMING = Boolean.getBoolean("gwt.jjs.frequencyNaming");
+
   /**
    * A lookup table of base-64 chars we use to encode idents.
    */
@@ -40,7 +133,11 @@ public class JsObfuscateNamer {
       '2', '3', '4', '5', '6', '7', '8', '9'};
       
   public static void exec(JsProgram program) {
-    new JsObfuscateNamer(program).execImpl();
+    exec(program, FREQUENCY_NAMING);
+  }
+
+  public static void exec(JsProgram program, boolean byFrequency) {
+    new JsObfuscateNamer(program, byFrequency).execImpl();
   }
 
   /**
@@ -48,6 +145,11 @@ public class JsObfuscateNamer {
    */
   private int maxChildId = 0;
 
+  /**
+   * If not <code>null</code>, orders the names within each scope.
+   */
+  private final Comparator<JsName> nameOrder;
+
   private final JsProgram program;
 
   /**
@@ -56,13 +158,62 @@ public class JsObfuscateNamer {
   private final char[] sIdentBuf = new char[6];
 
   public JsObfuscateNamer(JsProgram program) {
+    this(program, false);
+  }
+
+  public JsObfuscateNamer(JsProgram program, boolean byFrequency) {
     this.program = program;
+    if (byFrequency) {
+      final ReferenceCounter counter = new ReferenceCounter(
+          program.getFragmentCount());
+      for (int i = 0; i < program.getFragmentCount(); i++) {
+        counter.countFragment(i, program.getFragmentBlock(i));
+      }
+      /*
+       * The initial fragment is always downloaded, so the names it uses most
+       * get the shortest idents; the rest are ordered by their use in the
+       * whole program.
+       */
+      nameOrder = new Comparator<JsName>() {
+        public int compare(JsName a, JsName b) {
+          int c = compareCounts(counter.getCount(a, 0), counter.getCount(b, 0));
+          if (c == 0) {
+            c = compareCounts(counter.getTotalCount(a),
+                counter.getTotalCount(b));
+          }
+          return c;
+        }
+
+        private int compareCounts(int countA, int countB) {
+          return countA > countB ? -1 : (countA == countB ? 0 : 1);
+        }
+      };
+    } else {
+      nameOrder = null;
+    }
   }
 
   private void execImpl() {
     visit(program.getRootScope());
   }
 
+  /**
+   * Returns the names of <code>scope</code> in the order in which they should
+   * be assigned idents.
+   */
+  private Iterator<JsName> getNamesInOrder(JsScope scope) {
+    if (nameOrder == null) {
+      return scope.getAllNames();
+    }
+    List<JsName> names = new ArrayList<JsName>();
+    for (Iterator<JsName> it = scope.getAllNames(); it.hasNext();) {
+      names.add(it.next());
+    }
+    // Stable, so equally hot names keep their declaration order.
+    Collections.sort(names, nameOrder);
+    return names.iterator();
+  }
+
   private boolean isLegal(JsScope scope, String newIdent) {
     if (JsKeywords.isKeyword(newIdent)) {
       return false;
@@ -117,7 +268,7 @@ public class JsObfuscateNamer {
 
     // Visit my idents.
     int curId = maxChildId;
-    for (Iterator<JsName> it = scope.getAllNames(); it.hasNext();) {
+    for (Iterator<JsName> it = getNamesInOrder(scope); it.hasNext();) {
       JsName name = it.next();
       if (!name.isObfuscatable()) {
         // Unobfuscatable names become themselves.
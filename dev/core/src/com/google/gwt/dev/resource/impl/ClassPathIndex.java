@@ -0,0 +1,298 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.resource.impl;
+
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An on-disk index of what each class path entry contains, so that starting a
+ * new process need not enumerate every jar and walk every directory again.
+ *
+ * The index of a zip file lists its resources and their timestamps, and is
+ * valid while the file's size and timestamp are unchanged. The index of a
+ * directory lists each subdirectory's children, and each listing is valid
+ * while that subdirectory's timestamp is unchanged; see
+ * {@link DirectoryListing}.
+ *
+ * The index is enabled by setting the <code>gwt.dev.classPathIndexDir</code>
+ * system property to the directory to keep it in. Problems reading or writing
+ * it are ignored, since the class path can always be scanned again.
+ */
+final class ClassPathIndex {
+
+  /**
+   * The children of one directory, as listed at a given time.
+   */
+  static final class DirectoryListing {
+
+    /**
+     * A directory's timestamp may not change when it is modified again within
+     * this many milliseconds, depending on the file system.
+     */
+    private static final long TIMESTAMP_RESOLUTION = 2000;
+
+    final String[] dirs;
+    final String[] files;
+    final long lastModified;
+    final long listedAt;
+
+    DirectoryListing(long lastModified, long listedAt, String[] files,
+        String[] dirs) {
+      this.lastModified = lastModified;
+      this.listedAt = listedAt;
+      this.files = files;
+      this.dirs = dirs;
+    }
+
+    /**
+     * Returns whether the listing still describes a directory whose timestamp
+     * is <code>lastModified</code>. A listing taken shortly after the
+     * directory last changed is never trusted, since a later change might not
+     * have moved the timestamp.
+     */
+    boolean isValid(long currentLastModified) {
+      return currentLastModified == lastModified && lastModified != 0
+          && listedAt - lastModified > TIMESTAMP_RESOLUTION;
+    }
+  }
+
+  private static final String INDEX_DIR = System.getProperty("gwt.dev.classPathIndexDir");
+
+  private static final int MAGIC = 0x47435049;
+
+  private static final int VERSION = 1;
+
+  private static ClassPathIndex instance;
+
+  /**
+   * Returns the index, or <code>null</code> if it is not enabled.
+   */
+  static synchronized ClassPathIndex get() {
+    if (instance == null && INDEX_DIR != null) {
+      instance = new ClassPathIndex(new File(INDEX_DIR));
+    }
+    return instance;
+  }
+
+  private final File indexDir;
+
+  // @VisibleForTesting
+  ClassPathIndex(File indexDir) {
+    this.indexDir = indexDir;
+  }
+
+  /**
+   * Returns the listings of a directory and its subdirectories, keyed by
+   * their paths relative to <code>dir</code>, or an empty map if none are
+   * indexed. The caller must validate each listing before using it.
+   */
+  Map<String, DirectoryListing> readDirectory(File dir) {
+    Map<String, DirectoryListing> listings = new HashMap<String, DirectoryListing>();
+    DataInputStream in = open(dir, ".dirs");
+    if (in == null) {
+      return listings;
+    }
+    try {
+      int count = in.readInt();
+      for (int i = 0; i < count; ++i) {
+        String path = in.readUTF();
+        long lastModified = in.readLong();
+        long listedAt = in.readLong();
+        String[] files = readStrings(in);
+        String[] dirs = readStrings(in);
+        listings.put(path, new DirectoryListing(lastModified, listedAt, files,
+            dirs));
+      }
+      return listings;
+    } catch (IOException e) {
+      return new HashMap<String, DirectoryListing>();
+    } finally {
+      Utility.close(in);
+    }
+  }
+
+  /**
+   * Returns the timestamps of the resources in a zip file, keyed by path, or
+   * <code>null</code> if the file is not indexed or has changed since.
+   */
+  Map<String, Long> readZipFile(File zipFile) {
+    DataInputStream in = open(zipFile, ".zip");
+    if (in == null) {
+      return null;
+    }
+    try {
+      if (in.readLong() != zipFile.length()
+          || in.readLong() != zipFile.lastModified()) {
+        return null;
+      }
+      int count = in.readInt();
+      Map<String, Long> entries = new HashMap<String, Long>(count * 4 / 3 + 1);
+      for (int i = 0; i < count; ++i) {
+        entries.put(in.readUTF(), in.readLong());
+      }
+      return entries;
+    } catch (IOException e) {
+      return null;
+    } finally {
+      Utility.close(in);
+    }
+  }
+
+  void writeDirectory(File dir, Map<String, DirectoryListing> listings) {
+    DataOutputStream out = null;
+    File tempFile = null;
+    try {
+      tempFile = createTempFile(dir);
+      out = create(tempFile, dir);
+      out.writeInt(listings.size());
+      for (Map.Entry<String, DirectoryListing> entry : listings.entrySet()) {
+        DirectoryListing listing = entry.getValue();
+        out.writeUTF(entry.getKey());
+        out.writeLong(listing.lastModified);
+        out.writeLong(listing.listedAt);
+        writeStrings(out, listing.files);
+        writeStrings(out, listing.dirs);
+      }
+      out.close();
+      out = null;
+      tempFile = commit(tempFile, dir, ".dirs");
+    } catch (IOException e) {
+      // The directory will be walked again next time.
+    } finally {
+      Utility.close(out);
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  void writeZipFile(File zipFile, Map<String, Long> entries) {
+    DataOutputStream out = null;
+    File tempFile = null;
+    try {
+      tempFile = createTempFile(zipFile);
+      out = create(tempFile, zipFile);
+      out.writeLong(zipFile.length());
+      out.writeLong(zipFile.lastModified());
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Long> entry : entries.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeLong(entry.getValue());
+      }
+      out.close();
+      out = null;
+      tempFile = commit(tempFile, zipFile, ".zip");
+    } catch (IOException e) {
+      // The zip file will be enumerated again next time.
+    } finally {
+      Utility.close(out);
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Renames a fully written index into place, so that a concurrent reader
+   * never sees a partial index.
+   *
+   * @return the temporary file if it is left to delete
+   */
+  private File commit(File tempFile, File entry, String suffix) {
+    File indexFile = getIndexFile(entry, suffix);
+    indexFile.delete();
+    return tempFile.renameTo(indexFile) ? null : tempFile;
+  }
+
+  private DataOutputStream create(File tempFile, File entry)
+      throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(tempFile)));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeUTF(entry.getAbsolutePath());
+    return out;
+  }
+
+  private File createTempFile(File entry) throws IOException {
+    if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+      throw new IOException("Unable to create " + indexDir);
+    }
+    return File.createTempFile(entry.getName(), ".tmp", indexDir);
+  }
+
+  private File getIndexFile(File entry, String suffix) {
+    String key = Util.computeStrongName(Util.getBytes(entry.getAbsolutePath()));
+    return new File(indexDir, key + suffix);
+  }
+
+  /**
+   * Opens the index of a class path entry, checking that it is really the
+   * entry's index.
+   *
+   * @return the stream, positioned after the header, or <code>null</code>
+   */
+  private DataInputStream open(File entry, String suffix) {
+    File indexFile = getIndexFile(entry, suffix);
+    if (!indexFile.isFile()) {
+      return null;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+          indexFile)));
+      if (in.readInt() == MAGIC && in.readInt() == VERSION
+          && in.readUTF().equals(entry.getAbsolutePath())) {
+        DataInputStream result = in;
+        in = null;
+        return result;
+      }
+    } catch (IOException e) {
+      // Treat as not indexed.
+    } finally {
+      Utility.close(in);
+    }
+    return null;
+  }
+
+  private String[] readStrings(DataInputStream in) throws IOException {
+    String[] strings = new String[in.readInt()];
+    for (int i = 0; i < strings.length; ++i) {
+      strings[i] = in.readUTF();
+    }
+    return strings;
+  }
+
+  private void writeStrings(DataOutputStream out, String[] strings)
+      throws IOException {
+    out.writeInt(strings.length);
+    for (String string : strings) {
+      out.writeUTF(string);
+    }
+  }
+}
@@ -16,11 +16,18 @@
 package com.google.gwt.dev.resource.impl;
 
 import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.resource.impl.ClassPathIndex.DirectoryListing;
+import com.google.gwt.dev.util.collect.IdentityHashSet;
 import com.google.gwt.dev.util.msg.Message1String;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * TODO(bruce): write me.
@@ -39,20 +46,137 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
 
     static final Message1String INCLUDING_FILE = new Message1String(
         TreeLogger.DEBUG, "Including file: $0");
+
+    static final Message1String LISTING_DIR = new Message1String(
+        TreeLogger.SPAM, "Listing changed dir: $0");
+  }
+
+  /**
+   * The resources found for a path prefix set, and the directories visited to
+   * find them.
+   */
+  private static class Snapshot {
+    final Map<String, File> dirs;
+    final int prefixSetSize;
+    final Map<AbstractResource, PathPrefix> resources;
+
+    Snapshot(int prefixSetSize, Map<AbstractResource, PathPrefix> resources,
+        Map<String, File> dirs) {
+      this.prefixSetSize = prefixSetSize;
+      this.resources = resources;
+      this.dirs = dirs;
+    }
   }
 
+  /**
+   * What a watched entry polls: the directories and files behind its
+   * snapshots.
+   */
+  private static class WatchList {
+    final File[] dirs;
+    final DirectoryListing[] listings;
+    final FileResource[] resources;
+
+    WatchList(File[] dirs, DirectoryListing[] listings,
+        FileResource[] resources) {
+      this.dirs = dirs;
+      this.listings = listings;
+      this.resources = resources;
+    }
+  }
+
+  private static final String[] NO_NAMES = new String[0];
+
+  /**
+   * Set by {@link #poll()} when a watched directory or file has changed since
+   * the snapshots were taken.
+   */
+  private volatile boolean changed;
+
   private final File dir;
 
+  private final ClassPathIndex index;
+
+  /**
+   * The last listing of each directory seen, keyed by its abstract path name.
+   * A directory is listed again only when its timestamp changes, so a refresh
+   * costs one check per directory plus the work to list those that changed.
+   */
+  private Map<String, DirectoryListing> listings;
+
+  private boolean listingsChanged;
+
+  /**
+   * The resources found so far by a watched entry, keyed by abstract path
+   * name, so that a rescan finds the same resource objects for the files that
+   * have not changed.
+   */
+  private final Map<String, FileResource> resourcesByPath = new HashMap<String, FileResource>();
+
+  /**
+   * For a watched entry, the resources most recently found for each path
+   * prefix set, which remain current until {@link #changed} is set.
+   */
+  private final Map<PathPrefixSet, Snapshot> snapshots = new IdentityHashMap<PathPrefixSet, Snapshot>();
+
+  private boolean registered;
+
+  private final ResourceWatcher watcher;
+
+  private volatile WatchList watchList;
+
   public DirectoryClassPathEntry(File dir) {
+    this(dir, ClassPathIndex.get(), ResourceWatcher.get());
+  }
+
+  // @VisibleForTesting
+  DirectoryClassPathEntry(File dir, ClassPathIndex index,
+      ResourceWatcher watcher) {
     this.dir = dir;
+    this.index = index;
+    this.watcher = watcher;
   }
 
+  /**
+   * Finds the applicable resources as described by the superclass. A watched
+   * entry returns the same map as the previous call for the same path prefix
+   * set, without touching the file system, until it sees a change.
+   */
   @Override
-  public Map<AbstractResource, PathPrefix> findApplicableResources(
+  public synchronized Map<AbstractResource, PathPrefix> findApplicableResources(
       TreeLogger logger, PathPrefixSet pathPrefixSet) {
-    Map<AbstractResource, PathPrefix> results = new IdentityHashMap<AbstractResource, PathPrefix>();
-    descendToFindResources(logger, pathPrefixSet, results, dir, "");
-    return results;
+    if (listings == null) {
+      listings = index == null ? new HashMap<String, DirectoryListing>()
+          : index.readDirectory(dir);
+    }
+    if (watcher == null) {
+      Map<AbstractResource, PathPrefix> results = new IdentityHashMap<AbstractResource, PathPrefix>();
+      descendToFindResources(logger, pathPrefixSet, results, null, dir, "");
+      writeListings();
+      return results;
+    }
+
+    if (changed) {
+      // Clear the flag first so that changes made during the rescan are seen.
+      changed = false;
+      snapshots.clear();
+      for (Iterator<FileResource> it = resourcesByPath.values().iterator(); it.hasNext();) {
+        if (it.next().isStale()) {
+          it.remove();
+        }
+      }
+    }
+    Snapshot snapshot = snapshots.get(pathPrefixSet);
+    if (snapshot == null || snapshot.prefixSetSize != pathPrefixSet.getSize()) {
+      Map<AbstractResource, PathPrefix> results = new IdentityHashMap<AbstractResource, PathPrefix>();
+      Map<String, File> dirs = new HashMap<String, File>();
+      descendToFindResources(logger, pathPrefixSet, results, dirs, dir, "");
+      writeListings();
+      snapshot = new Snapshot(pathPrefixSet.getSize(), results, dirs);
+      snapshots.put(pathPrefixSet, snapshot);
+      updateWatchList();
+    }
+    return snapshot.resources;
   }
 
   @Override
@@ -60,45 +184,175 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
     return dir.getAbsoluteFile().toURI().toString();
   }
 
+  /**
+   * Returns whether this entry is watched for changes by a
+   * {@link ResourceWatcher}.
+   */
+  boolean isWatched() {
+    return watcher != null;
+  }
+
+  /**
+   * Checks whether any directory or file behind this entry's snapshots has
+   * changed. Files that have changed are marked stale. Called by the
+   * {@link ResourceWatcher}, without holding the lock.
+   */
+  void poll() {
+    WatchList toPoll = watchList;
+    if (changed || toPoll == null) {
+      return;
+    }
+    boolean sawChange = false;
+    for (int i = 0; i < toPoll.dirs.length; ++i) {
+      if (!toPoll.listings[i].isValid(toPoll.dirs[i].lastModified())) {
+        sawChange = true;
+        break;
+      }
+    }
+    for (FileResource resource : toPoll.resources) {
+      if (resource.checkStale()) {
+        sawChange = true;
+      }
+    }
+    if (sawChange) {
+      changed = true;
+    }
+  }
+
   /**
    * @param logger logs progress
    * @param resources the accumulating set of resources (each with the
    *          corresponding pathPrefix) found
+   * @param dirs if not <code>null</code>, accumulates the directories visited
    * @param dir the file or directory to consider
    * @param dirPath the abstract path name associated with 'parent', which
    *          explicitly does not include the classpath entry in its path
    */
   private void descendToFindResources(TreeLogger logger,
       PathPrefixSet pathPrefixSet, Map<AbstractResource, PathPrefix> resources,
-      File dir, String dirPath) {
-    assert (dir.isDirectory());
-
+      Map<String, File> dirs, File dir, String dirPath) {
     // Assert: this directory is included in the path prefix set.
 
+    DirectoryListing listing = getListing(logger, dir, dirPath);
+    if (dirs != null) {
+      dirs.put(dirPath, dir);
+    }
+    for (String name : listing.dirs) {
+      File child = new File(dir, name);
+      String childDirPath = dirPath + name + "/";
+      if (pathPrefixSet.includesDirectory(childDirPath)) {
+        Messages.DESCENDING_INTO_DIR.log(logger, child.getAbsolutePath(), null);
+        descendToFindResources(logger, pathPrefixSet, resources, dirs, child,
+            childDirPath);
+      } else {
+        Messages.NOT_DESCENDING_INTO_DIR.log(logger, child.getAbsolutePath(),
+            null);
+      }
+    }
+    for (String name : listing.files) {
+      String childPath = dirPath + name;
+      PathPrefix prefix = null;
+      if ((prefix = pathPrefixSet.includesResource(childPath)) != null) {
+        Messages.INCLUDING_FILE.log(logger, childPath, null);
+        resources.put(getResource(childPath, new File(dir, name)), prefix);
+      } else {
+        Messages.EXCLUDING_FILE.log(logger, childPath, null);
+      }
+    }
+  }
+
+  /**
+   * Returns the children of a directory, listing it again only if it has
+   * changed since the last time.
+   */
+  private DirectoryListing getListing(TreeLogger logger, File dir,
+      String dirPath) {
+    long lastModified = dir.lastModified();
+    DirectoryListing listing = listings.get(dirPath);
+    if (listing != null && listing.isValid(lastModified)) {
+      return listing;
+    }
+
+    Messages.LISTING_DIR.log(logger, dir.getAbsolutePath(), null);
+    long listedAt = System.currentTimeMillis();
     File[] children = dir.listFiles();
-    for (File child : children) {
-      String childPath = dirPath + child.getName();
-      if (child.isDirectory()) {
-        String childDirPath = childPath + "/";
-        if (pathPrefixSet.includesDirectory(childDirPath)) {
-          Messages.DESCENDING_INTO_DIR.log(logger, child.getAbsolutePath(),
-              null);
-          descendToFindResources(logger, pathPrefixSet, resources, child,
-              childDirPath);
+    List<String> files = new ArrayList<String>();
+    List<String> dirs = new ArrayList<String>();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          dirs.add(child.getName());
         } else {
-          Messages.NOT_DESCENDING_INTO_DIR.log(logger, child.getAbsolutePath(),
-              null);
+          files.add(child.getName());
         }
-      } else {
-        PathPrefix prefix = null;
-        if ((prefix = pathPrefixSet.includesResource(childPath)) != null) {
-          Messages.INCLUDING_FILE.log(logger, childPath, null);
-          FileResource r = new FileResource(this, childPath, child);
-          resources.put(r, prefix);
-        } else {
-          Messages.EXCLUDING_FILE.log(logger, childPath, null);
+      }
+    }
+    DirectoryListing newListing = new DirectoryListing(lastModified, listedAt,
+        files.toArray(NO_NAMES), dirs.toArray(NO_NAMES));
+    if (listing != null) {
+      // Forget the listings of subdirectories that have gone away.
+      for (String name : listing.dirs) {
+        if (!dirs.contains(name)) {
+          removeListings(dirPath + name + "/");
         }
       }
     }
+    listings.put(dirPath, newListing);
+    listingsChanged = true;
+    return newListing;
+  }
+
+  private FileResource getResource(String path, File file) {
+    if (watcher == null) {
+      return new FileResource(this, path, file);
+    }
+    FileResource resource = resourcesByPath.get(path);
+    if (resource == null || resource.isStale()) {
+      resource = new FileResource(this, path, file);
+      resourcesByPath.put(path, resource);
+    }
+    return resource;
+  }
+
+  private void removeListings(String dirPathPrefix) {
+    for (Iterator<String> it = listings.keySet().iterator(); it.hasNext();) {
+      if (it.next().startsWith(dirPathPrefix)) {
+        it.remove();
+      }
+    }
+  }
+
+  private void updateWatchList() {
+    Map<String, File> dirs = new HashMap<String, File>();
+    Set<FileResource> resources = new IdentityHashSet<FileResource>();
+    for (Snapshot snapshot : snapshots.values()) {
+      dirs.putAll(snapshot.dirs);
+      for (AbstractResource resource : snapshot.resources.keySet()) {
+        resources.add((FileResource) resource);
+      }
+    }
+    File[] dirArray = new File[dirs.size()];
+    DirectoryListing[] listingArray = new DirectoryListing[dirs.size()];
+    int i = 0;
+    for (Map.Entry<String, File> entry : dirs.entrySet()) {
+      dirArray[i] = entry.getValue();
+      listingArray[i] = listings.get(entry.getKey());
+      ++i;
+    }
+    watchList = new WatchList(dirArray, listingArray,
+        resources.toArray(new FileResource[resources.size()]));
+    if (!registered) {
+      watcher.register(this);
+      registered = true;
+    }
+  }
+
+  private void writeListings() {
+    if (listingsChanged) {
+      if (index != null) {
+        index.writeDirectory(dir, listings);
+      }
+      listingsChanged = false;
+    }
   }
 }
@@ -28,15 +28,23 @@ public class FileResource extends AbstractResource {
   private final String abstractPathName;
   private final DirectoryClassPathEntry classPathEntry;
   private final File file;
+  private final long lastModified;
+  private String location;
   private final long modificationSeconds;
 
+  /**
+   * Set when a watched class path entry sees the file change.
+   */
+  private volatile boolean stale;
+
   public FileResource(DirectoryClassPathEntry classPathEntry,
       String abstractPathName, File file) {
     assert (file.isFile());
     this.classPathEntry = classPathEntry;
     this.abstractPathName = abstractPathName;
     this.file = file;
-    this.modificationSeconds = lastModifiedSeconds(file);
+    this.lastModified = file.lastModified();
+    this.modificationSeconds = lastModified / 1000;
   }
 
   @Override
@@ -44,14 +52,26 @@ public class FileResource extends AbstractResource {
     return classPathEntry;
   }
 
+  /**
+   * Returns the current timestamp of the file, or, if the class path entry is
+   * watched, the timestamp when the file was found; a watched entry finds the
+   * file again when it changes.
+   */
   @Override
   public long getLastModified() {
+    if (classPathEntry.isWatched()) {
+      return lastModified;
+    }
     return file.lastModified();
   }
 
   @Override
   public String getLocation() {
-    return file.getAbsoluteFile().toURI().toString();
+    // File.toURI() checks whether the file is a directory.
+    if (location == null) {
+      location = file.getAbsoluteFile().toURI().toString();
+    }
+    return location;
   }
 
   @Override
@@ -61,17 +81,10 @@ public class FileResource extends AbstractResource {
 
   @Override
   public boolean isStale() {
-    if (!file.exists()) {
-      // File was deleted. Always stale.
-      return true;
+    if (classPathEntry.isWatched()) {
+      return stale;
     }
-
-    long currentModificationSeconds = lastModifiedSeconds(file);
-    /*
-     * We use != instead of > because the point is to reflect what's actually on
-     * the file system, not to worry about freshness per se.
-     */
-    return (currentModificationSeconds != modificationSeconds);
+    return hasChanged();
   }
 
   @Override
@@ -88,6 +101,31 @@ public class FileResource extends AbstractResource {
     return false;
   }
 
+  /**
+   * Checks the file system to see whether the file has changed, and if so
+   * marks this resource stale for good.
+   */
+  boolean checkStale() {
+    if (!stale && hasChanged()) {
+      stale = true;
+    }
+    return stale;
+  }
+
+  private boolean hasChanged() {
+    if (!file.exists()) {
+      // File was deleted. Always stale.
+      return true;
+    }
+
+    long currentModificationSeconds = lastModifiedSeconds(file);
+    /*
+     * We use != instead of > because the point is to reflect what's actually on
+     * the file system, not to worry about freshness per se.
+     */
+    return (currentModificationSeconds != modificationSeconds);
+  }
+
   private long lastModifiedSeconds(File file) {
     return file.lastModified() / 1000;
   }
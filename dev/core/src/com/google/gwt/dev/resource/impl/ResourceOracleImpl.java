@@ -172,9 +172,9 @@ public class ResourceOracleImpl implements ResourceOracle {
       if (f.isDirectory()) {
         return new DirectoryClassPathEntry(f);
       } else if (f.isFile() && lowerCaseFileName.endsWith(".jar")) {
-        return new ZipFileClassPathEntry(new JarFile(f));
+        return new ZipFileClassPathEntry(f, true);
       } else if (f.isFile() && lowerCaseFileName.endsWith(".zip")) {
-        return new ZipFileClassPathEntry(new ZipFile(f));
+        return new ZipFileClassPathEntry(f, false);
       } else {
         // It's a file ending in neither jar nor zip, speculatively try to
         // open as jar/zip anyway.
@@ -262,6 +262,14 @@ public class ResourceOracleImpl implements ResourceOracle {
 
   private Map<String, ResourceData> internalMap = Collections.emptyMap();
 
+  /**
+   * The resources each class path entry found in the last refresh, and the
+   * path prefix set used.
+   */
+  private List<Map<AbstractResource, PathPrefix>> lastFound = Collections.emptyList();
+
+  private PathPrefixSet lastPathPrefixSet;
+
   private PathPrefixSet pathPrefixSet = new PathPrefixSet();
 
   /**
@@ -298,6 +306,7 @@ public class ResourceOracleImpl implements ResourceOracle {
     exposedResourceMap = Collections.emptyMap();
     exposedResources = Collections.emptySet();
     internalMap = Collections.emptyMap();
+    lastFound = Collections.emptyList();
   }
 
   public Set<String> getPathNames() {
@@ -344,12 +353,31 @@ public class ResourceOracleImpl implements ResourceOracle {
      * resources with the same path, the one with the higher-priority path
      * prefix wins.
      */
+    List<TreeLogger> branches = new ArrayList<TreeLogger>();
+    List<Map<AbstractResource, PathPrefix>> found = new ArrayList<Map<AbstractResource, PathPrefix>>();
     for (ClassPathEntry pathRoot : classPath) {
       TreeLogger branchForClassPathEntry = Messages.EXAMINING_PATH_ROOT.branch(
           refreshBranch, pathRoot.getLocation(), null);
+      branches.add(branchForClassPathEntry);
+      found.add(pathRoot.findApplicableResources(branchForClassPathEntry,
+          pathPrefixSet));
+    }
+
+    /*
+     * Entries that have not changed, such as zip files and watched
+     * directories, return the very same maps as last time. If they all did,
+     * nothing can have changed.
+     */
+    if (pathPrefixSet == lastPathPrefixSet && isSameMaps(found, lastFound)) {
+      PerfLogger.end();
+      return;
+    }
+    lastPathPrefixSet = pathPrefixSet;
+    lastFound = found;
 
-      Map<AbstractResource, PathPrefix> resourceToPrefixMap = pathRoot.findApplicableResources(
-          branchForClassPathEntry, pathPrefixSet);
+    for (int i = 0; i < found.size(); ++i) {
+      TreeLogger branchForClassPathEntry = branches.get(i);
+      Map<AbstractResource, PathPrefix> resourceToPrefixMap = found.get(i);
       for (Entry<AbstractResource, PathPrefix> entry : resourceToPrefixMap.entrySet()) {
         ResourceData newCpeData = new ResourceData(entry.getKey(),
             entry.getValue());
@@ -420,6 +448,19 @@ public class ResourceOracleImpl implements ResourceOracle {
     return classPath;
   }
 
+  private boolean isSameMaps(List<Map<AbstractResource, PathPrefix>> found,
+      List<Map<AbstractResource, PathPrefix>> previous) {
+    if (found.size() != previous.size()) {
+      return false;
+    }
+    for (int i = 0; i < found.size(); ++i) {
+      if (found.get(i) != previous.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private boolean shouldUseNewResource(TreeLogger logger, ResourceData oldData,
       ResourceData newData) {
     AbstractResource newResource = newData.resource;
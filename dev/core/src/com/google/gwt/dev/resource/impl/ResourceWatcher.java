@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.resource.impl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches directory class path entries for changes on a background thread, so
+ * that a refresh need only look at the entries that changed.
+ *
+ * Each registered entry is polled in turn; see
+ * {@link DirectoryClassPathEntry#poll()}. Once an entry has seen a change, it
+ * is not polled again until it has been rescanned. Until then, a refresh of a
+ * {@link ResourceOracleImpl} whose entries have not changed does no file
+ * system access at all.
+ *
+ * Watching is enabled by setting the <code>gwt.dev.watchResources</code>
+ * system property to <code>true</code>. The poll interval in milliseconds may
+ * be set with <code>gwt.dev.watchResourcesInterval</code>.
+ */
+final class ResourceWatcher {
+
+  private static final long INTERVAL = Long.getLong(
+      "gwt.dev.watchResourcesInterval", 500);
+
+  private static final boolean WATCH = Boolean.getBoolean("gwt.dev.watchResources");
+
+  private static ResourceWatcher instance;
+
+  /**
+   * Returns the watcher, or <code>null</code> if watching is not enabled.
+   */
+  static synchronized ResourceWatcher get() {
+    if (instance == null && WATCH) {
+      instance = new ResourceWatcher();
+      instance.start(INTERVAL);
+    }
+    return instance;
+  }
+
+  private final List<DirectoryClassPathEntry> entries = new CopyOnWriteArrayList<DirectoryClassPathEntry>();
+
+  // @VisibleForTesting
+  ResourceWatcher() {
+  }
+
+  /**
+   * Polls each registered entry once.
+   */
+  void poll() {
+    for (DirectoryClassPathEntry entry : entries) {
+      entry.poll();
+    }
+  }
+
+  void register(DirectoryClassPathEntry entry) {
+    entries.add(entry);
+  }
+
+  private void start(final long interval) {
+    Thread thread = new Thread("ResourceWatcher") {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            poll();
+            Thread.sleep(interval);
+          }
+        } catch (InterruptedException e) {
+          // Stop watching.
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+}
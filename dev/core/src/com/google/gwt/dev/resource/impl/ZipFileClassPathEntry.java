@@ -23,9 +23,12 @@ import com.google.gwt.dev.util.collect.Sets;
 import com.google.gwt.dev.util.msg.Message1String;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -50,6 +53,9 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
     static final Message1String INCLUDING_RESOURCE = new Message1String(
         TreeLogger.DEBUG, "Including $0");
 
+    static final Message1String OPEN_FAILED = new Message1String(
+        TreeLogger.WARN, "Unable to open zip file: $0");
+
     static final Message1String READ_ZIP_ENTRY = new Message1String(
         TreeLogger.DEBUG, "$0");
   }
@@ -73,12 +79,36 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
   private final Map<PathPrefixSet, ZipFileSnapshot> cachedSnapshots = new IdentityHashMap<PathPrefixSet, ZipFileSnapshot>();
 
   private String cachedLocation;
-  private final ZipFile zipFile;
+  private final File file;
+  private final ClassPathIndex index;
+  private final boolean isJar;
+  private ZipFile zipFile;
+
+  /**
+   * Creates an entry for a zip file that is opened only once its contents are
+   * needed. Its resources are listed from the {@link ClassPathIndex} when that
+   * is enabled and up to date.
+   */
+  public ZipFileClassPathEntry(File file, boolean isJar) {
+    this(file, isJar, ClassPathIndex.get());
+  }
 
   public ZipFileClassPathEntry(ZipFile zipFile) {
+    this.file = new File(zipFile.getName());
+    this.index = null;
+    // CHECKSTYLE_OFF
+    this.isJar = zipFile instanceof JarFile;
+    // CHECKSTYLE_ON
     this.zipFile = zipFile;
   }
 
+  // @VisibleForTesting
+  ZipFileClassPathEntry(File file, boolean isJar, ClassPathIndex index) {
+    this.file = file;
+    this.index = index;
+    this.isJar = isJar;
+  }
+
   /**
    * Indexes the zip file on-demand, and only once over the life of the process.
    */
@@ -87,7 +117,15 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
       TreeLogger logger, PathPrefixSet pathPrefixSet) {
     // Never re-index.
     if (allZipFileResources == null) {
-      allZipFileResources = buildIndex(logger);
+      Map<String, Long> entries = index == null ? null
+          : index.readZipFile(file);
+      if (entries == null) {
+        entries = buildIndex(logger);
+        if (index != null && entries != null) {
+          index.writeZipFile(file, entries);
+        }
+      }
+      allZipFileResources = createResources(entries);
     }
 
     ZipFileSnapshot snapshot = cachedSnapshots.get(pathPrefixSet);
@@ -102,19 +140,50 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
   @Override
   public String getLocation() {
     if (cachedLocation == null) {
-      cachedLocation = new File(zipFile.getName()).toURI().toString();
+      cachedLocation = file.toURI().toString();
     }
     return cachedLocation;
   }
 
+  /**
+   * Returns the zip file, opening it if necessary.
+   *
+   * @throws IllegalStateException if the zip file cannot be opened
+   */
   public ZipFile getZipFile() {
-    return zipFile;
+    try {
+      return openZipFile();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to open " + file, e);
+    }
   }
 
-  private Set<ZipFileResource> buildIndex(TreeLogger logger) {
-    logger = Messages.BUILDING_INDEX.branch(logger, zipFile.getName(), null);
+  boolean isJar() {
+    return isJar;
+  }
 
-    Set<ZipFileResource> results = new IdentityHashSet<ZipFileResource>();
+  synchronized ZipFile openZipFile() throws IOException {
+    if (zipFile == null) {
+      zipFile = isJar ? new JarFile(file) : new ZipFile(file);
+    }
+    return zipFile;
+  }
+
+  /**
+   * Lists the resources in the zip file along with their timestamps, or
+   * returns <code>null</code> if the zip file cannot be read.
+   */
+  private Map<String, Long> buildIndex(TreeLogger logger) {
+    logger = Messages.BUILDING_INDEX.branch(logger, file.getPath(), null);
+
+    ZipFile zipFile;
+    try {
+      zipFile = openZipFile();
+    } catch (IOException e) {
+      Messages.OPEN_FAILED.log(logger, file.getPath(), e);
+      return null;
+    }
+    Map<String, Long> results = new HashMap<String, Long>();
     Enumeration<? extends ZipEntry> e = zipFile.entries();
     while (e.hasMoreElements()) {
       ZipEntry zipEntry = e.nextElement();
@@ -126,18 +195,16 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
         // Skip META-INF since classloaders normally make this invisible.
         continue;
       }
-      ZipFileResource zipResource = new ZipFileResource(this,
-          zipEntry.getName());
-      results.add(zipResource);
+      results.put(zipEntry.getName(), zipEntry.getTime());
       Messages.READ_ZIP_ENTRY.log(logger, zipEntry.getName(), null);
     }
-    return Sets.normalize(results);
+    return results;
   }
 
   private Map<AbstractResource, PathPrefix> computeApplicableResources(
       TreeLogger logger, PathPrefixSet pathPrefixSet) {
     logger = Messages.FINDING_INCLUDED_RESOURCES.branch(logger,
-        zipFile.getName(), null);
+        file.getPath(), null);
 
     Map<AbstractResource, PathPrefix> results = new IdentityHashMap<AbstractResource, PathPrefix>();
     for (ZipFileResource r : allZipFileResources) {
@@ -152,4 +219,14 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
     }
     return IdentityMaps.normalize(results);
   }
+
+  private Set<ZipFileResource> createResources(Map<String, Long> entries) {
+    Set<ZipFileResource> results = new IdentityHashSet<ZipFileResource>();
+    if (entries != null) {
+      for (Map.Entry<String, Long> entry : entries.entrySet()) {
+        results.add(new ZipFileResource(this, entry.getKey(), entry.getValue()));
+      }
+    }
+    return Sets.normalize(results);
+  }
 }
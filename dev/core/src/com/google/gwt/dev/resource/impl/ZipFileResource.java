@@ -17,20 +17,35 @@ package com.google.gwt.dev.resource.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.jar.JarFile;
-import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Represents a resource contained in a jar or zip file.
  */
 public class ZipFileResource extends AbstractResource {
 
+  /**
+   * Marks a timestamp that has yet to be read from the zip file.
+   */
+  private static final long UNKNOWN = Long.MIN_VALUE;
+
   private final ZipFileClassPathEntry classPathEntry;
+  private long lastModified;
   private final String path;
 
   public ZipFileResource(ZipFileClassPathEntry classPathEntry, String path) {
+    this(classPathEntry, path, UNKNOWN);
+  }
+
+  /**
+   * Creates a resource whose timestamp is already known, so that the zip file
+   * need not be opened to find it.
+   */
+  ZipFileResource(ZipFileClassPathEntry classPathEntry, String path,
+      long lastModified) {
     this.classPathEntry = classPathEntry;
     this.path = path;
+    this.lastModified = lastModified;
   }
 
   @Override
@@ -40,15 +55,15 @@ public class ZipFileResource extends AbstractResource {
 
   @Override
   public long getLastModified() {
-    return getEntry().getTime();
+    if (lastModified == UNKNOWN) {
+      lastModified = classPathEntry.getZipFile().getEntry(path).getTime();
+    }
+    return lastModified;
   }
 
   @Override
   public String getLocation() {
-    // CHECKSTYLE_OFF
-    String proto = classPathEntry.getZipFile() instanceof JarFile ? "jar:"
-        : "zip:";
-    // CHECKSTYLE_ON
+    String proto = classPathEntry.isJar() ? "jar:" : "zip:";
     return proto + classPathEntry.getLocation() + "!/" + path;
   }
 
@@ -69,7 +84,8 @@ public class ZipFileResource extends AbstractResource {
   @Override
   public InputStream openContents() {
     try {
-      return classPathEntry.getZipFile().getInputStream(getEntry());
+      ZipFile zipFile = classPathEntry.openZipFile();
+      return zipFile.getInputStream(zipFile.getEntry(path));
     } catch (IOException e) {
       // The spec for this method says it can return null.
       return null;
@@ -80,8 +96,4 @@ public class ZipFileResource extends AbstractResource {
   public boolean wasRerooted() {
     return false;
   }
-
-  private ZipEntry getEntry() {
-    return classPathEntry.getZipFile().getEntry(path);
-  }
 }
@@ -29,7 +29,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.Socket;
-import java.util.Set;
 
 /**
  * 
@@ -755,7 +754,7 @@ public abstract class BrowserChannel {
       for (int id : ids) {
         stream.writeInt(id);
       }
-      stream.flush();
+      channel.flushUnlessBatching();
     }
 
     private final int ids[];
@@ -838,7 +837,7 @@ public abstract class BrowserChannel {
       for (int i = 0; i < args.length; i++) {
         getBrowserChannel().writeValue(stream, args[i]);
       }
-      stream.flush();
+      getBrowserChannel().flushUnlessBatching();
     }
   }
 
@@ -901,7 +900,7 @@ public abstract class BrowserChannel {
       for (int i = 0; i < args.length; i++) {
         getBrowserChannel().writeValue(stream, args[i]);
       }
-      stream.flush();
+      getBrowserChannel().flushUnlessBatching();
     }
   }
 
@@ -956,7 +955,7 @@ public abstract class BrowserChannel {
       for (int i = 0; i < args.length; i++) {
         getBrowserChannel().writeValue(stream, args[i]);
       }
-      stream.flush();
+      getBrowserChannel().flushUnlessBatching();
     }
   }
 
@@ -978,7 +977,7 @@ public abstract class BrowserChannel {
       DataOutputStream stream = channel.getStreamToOtherSide();
       stream.write(MessageType.LOAD_JSNI.getId());
       writeUtf8String(stream, js);
-      stream.flush();
+      channel.flushUnlessBatching();
     }
 
     private final String js;
@@ -1144,7 +1143,7 @@ public abstract class BrowserChannel {
 
     JsObjectRef getJsObjectRef(int refId);
 
-    Set<Integer> getRefIdsForCleanup();
+    int[] getRefIdsForCleanup();
   }
 
   /**
@@ -1307,7 +1306,7 @@ public abstract class BrowserChannel {
       stream.writeByte(MessageType.RETURN.getId());
       stream.writeBoolean(isException);
       channel.writeValue(stream, returnValue);
-      stream.flush();
+      channel.flushUnlessBatching();
     }
 
     public static void send(BrowserChannel channel,
@@ -1445,7 +1444,7 @@ public abstract class BrowserChannel {
   /**
    * The current version of the protocol.
    */
-  public static final int PROTOCOL_VERSION_CURRENT = 3;
+  public static final int PROTOCOL_VERSION_CURRENT = 4;
 
   /**
    * The oldest protocol version supported by this code.
@@ -1456,6 +1455,21 @@ public abstract class BrowserChannel {
    * The protocol version that added the GetIcon message.
    */
   public static final int PROTOCOL_VERSION_GET_ICON = 3;
+
+  /**
+   * The protocol version that lets each side stop flushing after every
+   * message. Once this version is negotiated, messages are buffered until the
+   * sender is about to block reading from the other side, so asynchronous
+   * messages such as {@link FreeMessage} and {@link LoadJsniMessage} travel
+   * in the same packet as the invoke or return that follows them, and the
+   * server may pipeline invocations whose result it does not need.
+   *
+   * Only {@link BrowserChannelClient} offers this version. The browser plugins
+   * still offer version 2 (<code>BROWSERCHANNEL_PROTOCOL_VERSION</code> in
+   * <code>plugins/common/BrowserChannel.h</code>), so sessions with a real
+   * browser negotiate version 2 and flush every message as before.
+   */
+  public static final int PROTOCOL_VERSION_BATCHING = 4;
   
   public static final int SPECIAL_CLIENTMETHODS_OBJECT = 0;
 
@@ -1564,6 +1578,8 @@ public abstract class BrowserChannel {
     stream.writeByte(ValueType.UNDEFINED.getTag());
   }
 
+  private boolean batching;
+
   private final ObjectRefFactory objectRefFactory;
 
   private Socket socket;
@@ -1578,6 +1594,9 @@ public abstract class BrowserChannel {
         new BufferedOutputStream(socket.getOutputStream()),
         objectRefFactory);
     this.socket = socket;
+    // Messages are already buffered until they need to be sent, so don't let
+    // the socket hold them back waiting for more.
+    socket.setTcpNoDelay(true);
   }
 
   protected BrowserChannel(InputStream inputStream, OutputStream outputStream,
@@ -1595,9 +1614,9 @@ public abstract class BrowserChannel {
   }
 
   /**
-   * @return a set of remote object reference IDs to be freed.
+   * @return the remote object reference IDs to be freed.
    */
-  public Set<Integer> getRefIdsForCleanup() {
+  public int[] getRefIdsForCleanup() {
     return objectRefFactory.getRefIdsForCleanup();
   }
 
@@ -1609,6 +1628,37 @@ public abstract class BrowserChannel {
         + socket.getPort();
   }
 
+  /**
+   * @return true if messages are buffered until the next blocking read rather
+   *         than flushed as they are sent.
+   */
+  public boolean isBatching() {
+    return batching;
+  }
+
+  /**
+   * Flush a message that was just written, unless the negotiated protocol
+   * version allows it to wait for the next blocking read. Any code that reads
+   * from the other side after sending a message must flush first.
+   */
+  protected void flushUnlessBatching() throws IOException {
+    if (!batching) {
+      streamToOtherSide.flush();
+    }
+  }
+
+  /**
+   * Flush any buffered messages if reading from the other side would block.
+   * When batching, this is what eventually sends buffered messages; if a
+   * message from the other side is already waiting, it can be handled first
+   * and its replies sent together with ours.
+   */
+  protected void flushBeforeBlockingRead() throws IOException {
+    if (!batching || streamFromOtherSide.available() == 0) {
+      streamToOtherSide.flush();
+    }
+  }
+
   protected DataInputStream getStreamFromOtherSide() {
     return streamFromOtherSide;
   }
@@ -1673,18 +1723,21 @@ public abstract class BrowserChannel {
   }
 
   protected void sendFreedValues() throws IOException {
-    Set<Integer> freed = objectRefFactory.getRefIdsForCleanup();
-    int n = freed.size();
-    if (n > 0) {
-      int[] ids = new int[n];
-      int i = 0;
-      for (Integer id : freed) {
-        ids[i++] = id;
-      }
-      FreeMessage.send(this, ids);
+    int[] freed = objectRefFactory.getRefIdsForCleanup();
+    if (freed.length > 0) {
+      FreeMessage.send(this, freed);
     }
   }
 
+  /**
+   * Set whether messages are buffered until the next blocking read. This must
+   * only be enabled once both sides have agreed on
+   * {@link #PROTOCOL_VERSION_BATCHING} or later.
+   */
+  protected void setBatching(boolean batching) {
+    this.batching = batching;
+  }
+
   protected void writeValue(DataOutputStream stream, Value value)
       throws IOException {
     if (value.isNull()) {
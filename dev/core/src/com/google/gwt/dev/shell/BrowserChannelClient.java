@@ -21,7 +21,6 @@ import com.google.gwt.dev.util.log.PrintWriterTreeLogger;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.util.Set;
 
 /**
  * Implementation of the BrowserChannel for the client side.
@@ -66,7 +65,7 @@ public class BrowserChannelClient extends BrowserChannel {
       return new JsObjectRef(refId);
     }
 
-    public Set<Integer> getRefIdsForCleanup() {
+    public int[] getRefIdsForCleanup() {
       return remoteObjectTable.getRefIdsForCleanup();
     }
   }
@@ -79,6 +78,7 @@ public class BrowserChannelClient extends BrowserChannel {
   private final String url;
   private final String versionString;
   private boolean connected = false;
+  private int maxProtocolVersion = PROTOCOL_VERSION_CURRENT;
   private int protocolVersion;
 
   public BrowserChannelClient(String addressParts[], String url,
@@ -123,6 +123,11 @@ public class BrowserChannelClient extends BrowserChannel {
     return connected;
   }
 
+  // @VisibleForTesting
+  void setMaxProtocolVersion(int maxProtocolVersion) {
+    this.maxProtocolVersion = maxProtocolVersion;
+  }
+
   // TODO (amitmanjhi): refer the state (message?) transition diagram
   /**
    * returns true iff execution completes normally.
@@ -161,12 +166,13 @@ public class BrowserChannelClient extends BrowserChannel {
     logger.log(TreeLogger.DEBUG, "sending " + MessageType.CHECK_VERSIONS
         + " message");
     new CheckVersionsMessage(this, PROTOCOL_VERSION_OLDEST,
-        PROTOCOL_VERSION_CURRENT, versionString).send();
+        maxProtocolVersion, versionString).send();
     MessageType type = Message.readMessageType(getStreamFromOtherSide());
     switch (type) {
       case PROTOCOL_VERSION:
         ProtocolVersionMessage protocolMessage = ProtocolVersionMessage.receive(this);
         protocolVersion = protocolMessage.getProtocolVersion();
+        setBatching(protocolVersion >= PROTOCOL_VERSION_BATCHING);
         logger.log(TreeLogger.DEBUG, MessageType.PROTOCOL_VERSION
             + ": protocol version = " + protocolVersion);
         break;
@@ -186,6 +192,7 @@ public class BrowserChannelClient extends BrowserChannel {
       boolean expectReturn) throws IOException, BrowserChannelException {
     while (true) {
       ExceptionOrReturnValue returnValue;
+      flushBeforeBlockingRead();
       MessageType type = Message.readMessageType(getStreamFromOtherSide());
       logger.log(TreeLogger.INFO, "client: received " + type + ", thread: "
           + Thread.currentThread().getName());
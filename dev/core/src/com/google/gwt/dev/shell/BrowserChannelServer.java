@@ -28,7 +28,6 @@ import java.net.Socket;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Server-side of the browser channel protocol.
@@ -92,7 +91,7 @@ public class BrowserChannelServer extends BrowserChannel
       return objectRef;
     }
 
-    public Set<Integer> getRefIdsForCleanup() {
+    public int[] getRefIdsForCleanup() {
       return remoteObjectTable.getRefIdsForCleanup();
     }
   }
@@ -103,6 +102,24 @@ public class BrowserChannelServer extends BrowserChannel
    */
   public static final String JSO_CLASS = "com.google.gwt.core.client.JavaScriptObject";
 
+  /**
+   * The most pipelined invocations that may be outstanding before the server
+   * waits for their results. This keeps the unread return messages well within
+   * the socket buffers, so neither side can block writing while the other is
+   * not reading.
+   */
+  private static final int MAX_PENDING_RETURNS = 256;
+
+  /**
+   * Whether void JSNI methods may be invoked without waiting for them to
+   * finish, when the client supports {@link #PROTOCOL_VERSION_BATCHING}. This
+   * is off by default, because it changes when an exception thrown by such a
+   * method is seen (at the next synchronous call instead of at the call
+   * itself) and when Java methods it calls back into actually run.
+   */
+  private static final boolean PIPELINE_VOID_CALLS = Boolean.parseBoolean(
+      System.getProperty("gwt.devmode.pipelineVoidCalls"));
+
   private static Map<String, byte[]> iconCache = new HashMap<String, byte[]>();
   
   private static final Object cacheLock = new Object();
@@ -117,6 +134,21 @@ public class BrowserChannelServer extends BrowserChannel
 
   private String moduleName;
 
+  /**
+   * The first exception returned by a pipelined invocation that has not been
+   * reported yet.
+   */
+  private ReturnMessage pendingException;
+
+  /**
+   * The number of invocations pipelined by the Java code now running whose
+   * return has not been read yet. Java code run for the browser counts its
+   * own, in {@link #handleInvoke}.
+   */
+  private int pendingReturns;
+
+  private boolean pipelineVoidCalls = PIPELINE_VOID_CALLS;
+
   private String userAgent;
 
   private int protocolVersion = -1;
@@ -148,6 +180,14 @@ public class BrowserChannelServer extends BrowserChannel
     init(initialLogger);
   }
 
+  /**
+   * @return true if void JSNI methods may be invoked with
+   *         {@link #invokeJavascriptVoid}.
+   */
+  public boolean canPipelineVoidCalls() {
+    return pipelineVoidCalls && isBatching();
+  }
+
   /**
    * Indicate that Java no longer has references to the supplied JS objects.
    * 
@@ -179,6 +219,7 @@ public class BrowserChannelServer extends BrowserChannel
 
   public ReturnMessage invoke(String methodName, Value vthis, Value[] vargs,
       SessionHandlerServer handler) throws IOException, BrowserChannelException {
+    reactToMessagesUntilReturn(handler, true);
     new InvokeOnClientMessage(this, methodName, vthis, vargs).send();
     return reactToMessagesWhileWaitingForReturn(handler);
   }
@@ -201,6 +242,12 @@ public class BrowserChannelServer extends BrowserChannel
       vargs[i] = convertFromJsValue(remoteObjects, args[i]);
     }
     try {
+      /*
+       * Wait for pipelined invocations first. If one calls back into Java, the
+       * browser would run this invocation inside that callback, and its return
+       * would reach the wrong caller.
+       */
+      reactToMessagesUntilReturn(handler, true);
       InvokeOnClientMessage invokeMessage = new InvokeOnClientMessage(this,
           methodName, vthis, vargs);
       invokeMessage.send();
@@ -208,34 +255,44 @@ public class BrowserChannelServer extends BrowserChannel
       Value returnValue = msg.getReturnValue();
       convertToJsValue(ccl, remoteObjects, returnValue, returnJsValue);
       if (msg.isException()) {
-        Object exceptionValue;
-        if (returnValue.isNull() || returnValue.isUndefined()) {
-          exceptionValue = null;
-        } else if (returnValue.isString()) {
-          exceptionValue = returnValue.getString();
-        } else if (returnValue.isJsObject()) {
-          exceptionValue = JsValueGlue.createJavaScriptObject(returnJsValue,
-              ccl);
-        } else if (returnValue.isJavaObject()) {
-          Object object = remoteObjects.get(returnValue.getJavaObject().getRefid());
-          Object target = ((JsValueOOPHM.DispatchObjectOOPHM) object).getTarget();
-          if (target instanceof Throwable) {
-            throw (Throwable) (target);
-          } else {
-            // JS throwing random Java Objects, which we'll wrap in JSException
-            exceptionValue = target;
-          }
-        } else {
-          // JS throwing random primitives, which we'll wrap as a string in
-          // JSException
-          exceptionValue = returnValue.getValue().toString();
-        }
-        RuntimeException exception = ModuleSpace.createJavaScriptException(
-            ccl, exceptionValue);
-        // reset the stack trace to here to minimize GWT infrastructure in
-        // the stack trace
-        exception.fillInStackTrace();
-        throw exception;
+        throwJavaScriptException(ccl, remoteObjects, returnValue,
+            returnJsValue);
+      }
+      throwPendingException(ccl);
+    } catch (IOException e) {
+      throw new RemoteDeathError(e);
+    } catch (BrowserChannelException e) {
+      throw new RemoteDeathError(e);
+    }
+  }
+
+  /**
+   * Invoke a JavaScript function whose return value is not needed, without
+   * waiting for it to finish. Any exception it throws is reported by a later
+   * call to {@link #invokeJavascript}. Only valid if
+   * {@link #canPipelineVoidCalls()} returns true.
+   *
+   * @param ccl
+   * @param jsthis
+   * @param methodName
+   * @param args
+   * @throws Throwable
+   */
+  public void invokeJavascriptVoid(CompilingClassLoader ccl,
+      JsValueOOPHM jsthis, String methodName, JsValueOOPHM[] args)
+      throws Throwable {
+    assert canPipelineVoidCalls();
+    final ServerObjectsTable remoteObjects = getJavaObjectsExposedInBrowser();
+    Value vthis = convertFromJsValue(remoteObjects, jsthis);
+    Value[] vargs = new Value[args.length];
+    for (int i = 0; i < args.length; ++i) {
+      vargs[i] = convertFromJsValue(remoteObjects, args[i]);
+    }
+    try {
+      new InvokeOnClientMessage(this, methodName, vthis, vargs).send();
+      if (++pendingReturns >= MAX_PENDING_RETURNS) {
+        reactToMessagesUntilReturn(handler, true);
+        throwPendingException(ccl);
       }
     } catch (IOException e) {
       throw new RemoteDeathError(e);
@@ -268,7 +325,7 @@ public class BrowserChannelServer extends BrowserChannel
   public void reactToMessages(SessionHandlerServer handler) {
     do {
       try {
-        getStreamToOtherSide().flush();
+        flushBeforeBlockingRead();
         MessageType messageType = Message.readMessageType(
             getStreamFromOtherSide());
         switch (messageType) {
@@ -277,15 +334,20 @@ public class BrowserChannelServer extends BrowserChannel
             handler.freeValue(this, freeMsg.getIds());
             break;
           case INVOKE:
-            InvokeOnServerMessage imsg = InvokeOnServerMessage.receive(this);
-            ExceptionOrReturnValue result = handler.invoke(this, imsg.getThis(),
-                imsg.getMethodDispatchId(), imsg.getArgs());
-            sendFreedValues();
-            ReturnMessage.send(this, result);
+            handleInvoke(handler);
             break;
           case INVOKE_SPECIAL:
             handleInvokeSpecial(handler);
             break;
+          case RETURN:
+            if (pendingReturns == 0) {
+              throw new RemoteDeathError(new BrowserChannelException(
+                  "Unexpected " + messageType));
+            }
+            receivePendingReturn();
+            // The Java code that made the call has already returned.
+            logPendingException();
+            break;
           case QUIT:
             return;
           default:
@@ -309,42 +371,7 @@ public class BrowserChannelServer extends BrowserChannel
    */
   public ReturnMessage reactToMessagesWhileWaitingForReturn(
       SessionHandlerServer handler) throws BrowserChannelException, RemoteDeathError {
-    do {
-      try {
-        getStreamToOtherSide().flush();
-        MessageType messageType = Message.readMessageType(
-            getStreamFromOtherSide());
-        switch (messageType) {
-          case FREE_VALUE:
-            final FreeMessage freeMsg = FreeMessage.receive(this);
-            handler.freeValue(this, freeMsg.getIds());
-            break;
-          case RETURN:
-            return ReturnMessage.receive(this);
-          case INVOKE:
-            InvokeOnServerMessage imsg = InvokeOnServerMessage.receive(this);
-            ExceptionOrReturnValue result = handler.invoke(this, imsg.getThis(),
-                imsg.getMethodDispatchId(), imsg.getArgs());
-            sendFreedValues();
-            ReturnMessage.send(this, result);
-            break;
-          case INVOKE_SPECIAL:
-            handleInvokeSpecial(handler);
-            break;
-          case QUIT:
-            // if we got an unexpected QUIT here, the remote plugin probably
-            // realized it was dying and had time to close the socket properly.
-            throw new RemoteDeathError(null);
-          default:
-            throw new BrowserChannelException("Invalid message type "
-                + messageType + " received waiting for return.");
-        }
-      } catch (IOException e) {
-        throw new RemoteDeathError(e);
-      } catch (BrowserChannelException e) {
-        throw new RemoteDeathError(e);
-      }
-    } while (true);
+    return reactToMessagesUntilReturn(handler, false);
   }
 
   public void run() {
@@ -444,6 +471,7 @@ public class BrowserChannelServer extends BrowserChannel
         }
         protocolVersion = Math.min(PROTOCOL_VERSION_CURRENT, maxVersion);
         new ProtocolVersionMessage(this, protocolVersion).send();
+        setBatching(protocolVersion >= PROTOCOL_VERSION_BATCHING);
         type = Message.readMessageType(getStreamFromOtherSide());
         
         // Optionally allow client to request switch of transports.  Inband is
@@ -632,6 +660,11 @@ public class BrowserChannelServer extends BrowserChannel
     }
   }
 
+  // @VisibleForTesting
+  void setPipelineVoidCalls(boolean pipelineVoidCalls) {
+    this.pipelineVoidCalls = pipelineVoidCalls;
+  }
+
   /**
    * Create the requested transport and return the appropriate information so
    * the client can connect to the same transport.
@@ -668,6 +701,33 @@ public class BrowserChannelServer extends BrowserChannel
     ReturnMessage.send(this, retExc);
   }
 
+  /**
+   * Runs a Java method invoked from the browser, and sends its result. Until
+   * the browser has that result, every return it sends belongs to the method,
+   * so the method's pipelined invocations are counted apart from those of the
+   * code it was called from, and waited for before its result is sent.
+   */
+  private void handleInvoke(SessionHandlerServer handler)
+      throws IOException, BrowserChannelException {
+    InvokeOnServerMessage imsg = InvokeOnServerMessage.receive(this);
+    int outerPendingReturns = pendingReturns;
+    ReturnMessage outerPendingException = pendingException;
+    pendingReturns = 0;
+    pendingException = null;
+    try {
+      ExceptionOrReturnValue result = handler.invoke(this, imsg.getThis(),
+          imsg.getMethodDispatchId(), imsg.getArgs());
+      reactToMessagesUntilReturn(handler, true);
+      // The method has already returned.
+      logPendingException();
+      sendFreedValues();
+      ReturnMessage.send(this, result);
+    } finally {
+      pendingReturns = outerPendingReturns;
+      pendingException = outerPendingException;
+    }
+  }
+
   private void init(TreeLogger initialLogger) {
     this.logger = initialLogger;
     Thread thread = new Thread(this);
@@ -676,6 +736,76 @@ public class BrowserChannelServer extends BrowserChannel
     thread.start();
   }
 
+  /**
+   * React to messages from the other side until a return value arrives that
+   * is not the result of a pipelined invocation, or if pendingOnly is true,
+   * until no pipelined invocations are outstanding.
+   *
+   * @return the return message, or null if pendingOnly is true
+   */
+  private ReturnMessage reactToMessagesUntilReturn(
+      SessionHandlerServer handler, boolean pendingOnly)
+      throws RemoteDeathError {
+    if (pendingOnly && pendingReturns == 0) {
+      return null;
+    }
+    do {
+      try {
+        flushBeforeBlockingRead();
+        MessageType messageType = Message.readMessageType(
+            getStreamFromOtherSide());
+        switch (messageType) {
+          case FREE_VALUE:
+            final FreeMessage freeMsg = FreeMessage.receive(this);
+            handler.freeValue(this, freeMsg.getIds());
+            break;
+          case RETURN:
+            if (pendingReturns == 0) {
+              return ReturnMessage.receive(this);
+            }
+            receivePendingReturn();
+            if (pendingOnly && pendingReturns == 0) {
+              return null;
+            }
+            break;
+          case INVOKE:
+            handleInvoke(handler);
+            break;
+          case INVOKE_SPECIAL:
+            handleInvokeSpecial(handler);
+            break;
+          case QUIT:
+            // if we got an unexpected QUIT here, the remote plugin probably
+            // realized it was dying and had time to close the socket properly.
+            throw new RemoteDeathError(null);
+          default:
+            throw new BrowserChannelException("Invalid message type "
+                + messageType + " received waiting for return.");
+        }
+      } catch (IOException e) {
+        throw new RemoteDeathError(e);
+      } catch (BrowserChannelException e) {
+        throw new RemoteDeathError(e);
+      }
+    } while (true);
+  }
+
+  private void logPendingException() {
+    if (pendingException != null) {
+      logger.log(TreeLogger.ERROR, "Exception thrown by a void "
+          + "JavaScript method: " + pendingException.getReturnValue());
+      pendingException = null;
+    }
+  }
+
+  private void receivePendingReturn() throws IOException {
+    ReturnMessage msg = ReturnMessage.receive(this);
+    --pendingReturns;
+    if (msg.isException() && pendingException == null) {
+      pendingException = msg;
+    }
+  }
+
   /**
    * Select a transport from those provided by the client.
    * 
@@ -686,4 +816,53 @@ public class BrowserChannelServer extends BrowserChannel
     // TODO(jat): add support for shared memory, others
     return null;
   }
+
+  private void throwJavaScriptException(CompilingClassLoader ccl,
+      ServerObjectsTable remoteObjects, Value returnValue,
+      JsValueOOPHM returnJsValue) throws Throwable {
+    Object exceptionValue;
+    if (returnValue.isNull() || returnValue.isUndefined()) {
+      exceptionValue = null;
+    } else if (returnValue.isString()) {
+      exceptionValue = returnValue.getString();
+    } else if (returnValue.isJsObject()) {
+      exceptionValue = JsValueGlue.createJavaScriptObject(returnJsValue,
+          ccl);
+    } else if (returnValue.isJavaObject()) {
+      Object object = remoteObjects.get(returnValue.getJavaObject().getRefid());
+      Object target = ((JsValueOOPHM.DispatchObjectOOPHM) object).getTarget();
+      if (target instanceof Throwable) {
+        throw (Throwable) (target);
+      } else {
+        // JS throwing random Java Objects, which we'll wrap in JSException
+        exceptionValue = target;
+      }
+    } else {
+      // JS throwing random primitives, which we'll wrap as a string in
+      // JSException
+      exceptionValue = returnValue.getValue().toString();
+    }
+    RuntimeException exception = ModuleSpace.createJavaScriptException(
+        ccl, exceptionValue);
+    // reset the stack trace to here to minimize GWT infrastructure in
+    // the stack trace
+    exception.fillInStackTrace();
+    throw exception;
+  }
+
+  /**
+   * Throw the exception returned by an earlier pipelined invocation, if any.
+   */
+  private void throwPendingException(CompilingClassLoader ccl)
+      throws Throwable {
+    if (pendingException == null) {
+      return;
+    }
+    Value returnValue = pendingException.getReturnValue();
+    pendingException = null;
+    final ServerObjectsTable remoteObjects = getJavaObjectsExposedInBrowser();
+    JsValueOOPHM returnJsValue = new JsValueOOPHM();
+    convertToJsValue(ccl, remoteObjects, returnValue, returnJsValue);
+    throwJavaScriptException(ccl, remoteObjects, returnValue, returnJsValue);
+  }
 }
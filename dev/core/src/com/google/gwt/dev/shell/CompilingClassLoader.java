@@ -27,17 +27,22 @@ import com.google.gwt.core.ext.typeinfo.JParameter;
 import com.google.gwt.core.ext.typeinfo.JPrimitiveType;
 import com.google.gwt.core.ext.typeinfo.JType;
 import com.google.gwt.core.ext.typeinfo.TypeOracle;
+import com.google.gwt.dev.asm.ClassReader;
 import com.google.gwt.dev.javac.CompilationState;
 import com.google.gwt.dev.javac.CompilationUnit;
 import com.google.gwt.dev.javac.CompiledClass;
+import com.google.gwt.dev.javac.HotSwapChanges;
 import com.google.gwt.dev.javac.JsniMethod;
 import com.google.gwt.dev.jjs.InternalCompilerException;
 import com.google.gwt.dev.shell.rewrite.HasAnnotation;
 import com.google.gwt.dev.shell.rewrite.HostedModeClassRewriter;
 import com.google.gwt.dev.shell.rewrite.HostedModeClassRewriter.InstanceMethodOracle;
 import com.google.gwt.dev.shell.rewrite.HostedModeClassRewriter.SingleJsoImplData;
+import com.google.gwt.dev.shell.rewrite.RewrittenClassCache;
 import com.google.gwt.dev.util.JsniRef;
 import com.google.gwt.dev.util.Name;
+import com.google.gwt.dev.util.PerfCounter;
+import com.google.gwt.dev.util.PerfLogger;
 import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.Name.InternalName;
 import com.google.gwt.dev.util.Name.SourceOrBinaryName;
@@ -52,6 +57,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.Instrumentation;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -61,12 +68,20 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.Stack;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * An isolated {@link ClassLoader} for running all user code. All user files are
@@ -362,6 +377,19 @@ public final class CompilingClassLoader extends ClassLoader implements
 
     private final Map<String, Set<JClassType>> signatureToDeclaringClasses = new HashMap<String, Set<JClassType>>();
 
+    /**
+     * The types in {@link #signatureToDeclaringClasses} that each type a
+     * signature might be resolved from is assignable to. Computed up front,
+     * since the type oracle fills lazy caches when asked about assignability
+     * and classes may be rewritten on several threads.
+     */
+    private final Map<JClassType, Set<JClassType>> assignableDeclaringClasses = new HashMap<JClassType, Set<JClassType>>();
+
+    /**
+     * The keys of {@link #assignableDeclaringClasses} by source name.
+     */
+    private final Map<String, JClassType> typesBySourceName = new HashMap<String, JClassType>();
+
     public MyInstanceMethodOracle(Set<JClassType> jsoTypes,
         JClassType javaLangObject, SingleJsoImplData jsoData) {
 
@@ -400,6 +428,18 @@ public final class CompilingClassLoader extends ClassLoader implements
           declaringClasses.add(javaLangObject);
         }
       }
+
+      // Only ambiguous signatures need assignability checks.
+      for (Set<JClassType> declaringClasses : signatureToDeclaringClasses.values()) {
+        if (declaringClasses.size() > 1) {
+          for (JClassType declaringClass : declaringClasses) {
+            addAssignable(declaringClass, declaringClass);
+            for (JClassType subtype : declaringClass.getSubtypes()) {
+              addAssignable(subtype, declaringClass);
+            }
+          }
+        }
+      }
     }
 
     public String findOriginalDeclaringClass(String desc, String signature) {
@@ -413,23 +453,41 @@ public final class CompilingClassLoader extends ClassLoader implements
       // Must check for assignability.
       String sourceName = desc.replace('/', '.');
       sourceName = sourceName.replace('$', '.');
-      JClassType declaredType = typeOracle.findType(sourceName);
-
-      // Check if I declare this directly.
-      if (declaringClasses.contains(declaredType)) {
-        return desc;
-      }
+      JClassType declaredType = typesBySourceName.get(sourceName);
+      if (declaredType != null) {
+        // Check if I declare this directly.
+        if (declaringClasses.contains(declaredType)) {
+          return desc;
+        }
 
-      // Check to see what type I am assignable to.
-      for (JClassType possibleSupertype : declaringClasses) {
-        if (declaredType.isAssignableTo(possibleSupertype)) {
-          return createDescriptor(possibleSupertype);
+        // Check to see what type I am assignable to.
+        Set<JClassType> assignable = assignableDeclaringClasses.get(declaredType);
+        for (JClassType possibleSupertype : declaringClasses) {
+          if (assignable.contains(possibleSupertype)) {
+            return createDescriptor(possibleSupertype);
+          }
         }
       }
       throw new IllegalArgumentException("Could not resolve signature '"
           + signature + "' from class '" + desc + "'");
     }
 
+    /**
+     * Describes everything this oracle knows, in a deterministic order.
+     */
+    public List<String> getSignatures() {
+      List<String> toReturn = new ArrayList<String>();
+      for (Map.Entry<String, Set<JClassType>> entry : signatureToDeclaringClasses.entrySet()) {
+        SortedSet<String> declaringClasses = new TreeSet<String>();
+        for (JClassType type : entry.getValue()) {
+          declaringClasses.add(createDescriptor(type));
+        }
+        toReturn.add(entry.getKey() + " " + declaringClasses);
+      }
+      Collections.sort(toReturn);
+      return toReturn;
+    }
+
     /**
      * Record that a given JSO type contains the concrete implementation of a
      * (possibly abstract) method.
@@ -444,6 +502,20 @@ public final class CompilingClassLoader extends ClassLoader implements
       declaringClasses.add(type);
     }
 
+    /**
+     * Record that <code>type</code> is assignable to
+     * <code>declaringClass</code>.
+     */
+    private void addAssignable(JClassType type, JClassType declaringClass) {
+      Set<JClassType> assignable = assignableDeclaringClasses.get(type);
+      if (assignable == null) {
+        assignable = new HashSet<JClassType>();
+        assignableDeclaringClasses.put(type, assignable);
+        typesBySourceName.put(type.getQualifiedSourceName(), type);
+      }
+      assignable.add(declaringClass);
+    }
+
     private String createDescriptor(JClassType type) {
       String jniSignature = type.getJNISignature();
       return jniSignature.substring(1, jniSignature.length() - 1);
@@ -683,13 +755,34 @@ public final class CompilingClassLoader extends ClassLoader implements
    * space (thus, they bridge across the spaces).
    */
   private static final Class<?>[] BRIDGE_CLASSES = new Class<?>[] {
-      ShellJavaScriptHost.class, GWTBridge.class};
+      ShellJavaScriptHost.class, GWTBridge.class, MemberDispatcher.class};
 
   private static final boolean CLASS_DUMP = Boolean.getBoolean("gwt.dev.classDump");
 
+  /**
+   * The tag of a class constant in a class file's constant pool.
+   */
+  private static final int CONSTANT_CLASS = 7;
+
   private static final String CLASS_DUMP_PATH = System.getProperty(
       "gwt.dev.classDumpPath", "rewritten-classes");
 
+  /**
+   * If set, classes rewritten by {@link HostedModeClassRewriter} are cached in
+   * this directory across module loads.
+   */
+  private static final String REWRITE_CACHE_DIR = System.getProperty("gwt.dev.rewriteCacheDir");
+
+  /**
+   * Rewritten classes shared by all class loaders in this JVM, keyed by
+   * rewriter hash and {@link RewrittenClassCache#computeKey}, so that browser
+   * sessions running the same module only rewrite each class once. Values are
+   * softly held, since every class can be rewritten again.
+   */
+  @SuppressWarnings("unchecked")
+  private static final Map<String, byte[]> sharedRewrittenClasses = Collections.synchronizedMap(new ReferenceMap(
+      AbstractReferenceMap.HARD, AbstractReferenceMap.SOFT));
+
   private static boolean emmaAvailable = false;
 
   private static EmmaStrategy emmaStrategy;
@@ -699,6 +792,13 @@ public final class CompilingClassLoader extends ClassLoader implements
    */
   private static byte[] javaScriptHostBytes;
 
+  /**
+   * Rewrites classes in parallel for every class loader in this JVM. Created
+   * when first needed; its threads are daemons, so they never keep the JVM
+   * running.
+   */
+  private static ExecutorService rewriteExecutor;
+
   static {
     for (Class<?> c : BRIDGE_CLASSES) {
       BRIDGE_CLASS_NAMES.put(c.getName(), c);
@@ -804,6 +904,20 @@ public final class CompilingClassLoader extends ClassLoader implements
     }
   }
 
+  private static synchronized ExecutorService getRewriteExecutor() {
+    if (rewriteExecutor == null) {
+      rewriteExecutor = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "Class rewriter");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+    return rewriteExecutor;
+  }
+
   /**
    * The set of units whose JSNI has already been injected.
    */
@@ -813,6 +927,12 @@ public final class CompilingClassLoader extends ClassLoader implements
 
   private CompilationState compilationState;
 
+  /**
+   * While loading eagerly, the JSNI methods to send to the browser together
+   * once all classes are defined.
+   */
+  private List<JsniMethod> deferredJsniMethods;
+
   private final DispatchClassInfoOracle dispClassInfoOracle = new DispatchClassInfoOracle();
 
   private Class<?> gwtClass, javaScriptHostClass;
@@ -824,6 +944,13 @@ public final class CompilingClassLoader extends ClassLoader implements
 
   private final TreeLogger logger;
 
+  private final RewrittenClassCache rewrittenClassCache;
+
+  /**
+   * Summarizes the global state {@link #classRewriter} depends on.
+   */
+  private final String rewriterHash;
+
   private final Set<String> scriptOnlyClasses = new HashSet<String>();
 
   private ClassLoader scriptOnlyClassLoader;
@@ -891,9 +1018,19 @@ public final class CompilingClassLoader extends ClassLoader implements
           typeOracle.getJavaLangObject(), singleJsoImplData);
       classRewriter = new HostedModeClassRewriter(jsoTypeNames, jsoSuperTypes,
           singleJsoImplData, mapper);
+      rewriterHash = computeRewriterHash(jsoSuperTypes, singleJsoImplData,
+          mapper);
+      if (REWRITE_CACHE_DIR != null) {
+        rewrittenClassCache = RewrittenClassCache.create(logger, new File(
+            REWRITE_CACHE_DIR), rewriterHash);
+      } else {
+        rewrittenClassCache = null;
+      }
     } else {
       // If we couldn't find the JSO class, we don't need to do any rewrites.
       classRewriter = null;
+      rewrittenClassCache = null;
+      rewriterHash = null;
     }
   }
 
@@ -1053,6 +1190,18 @@ public final class CompilingClassLoader extends ClassLoader implements
     return newClass;
   }
 
+  /**
+   * Defines a class generated in hosted space, such as a
+   * {@link MemberDispatcher}, in user space.
+   */
+  synchronized Class<?> defineGeneratedClass(String className,
+      byte[] classBytes) {
+    if (CLASS_DUMP) {
+      classDump(className, classBytes);
+    }
+    return defineClass(className, classBytes, 0, classBytes.length);
+  }
+
   void clear() {
     // Release our references to the shell.
     shellJavaScriptHost = null;
@@ -1062,6 +1211,136 @@ public final class CompilingClassLoader extends ClassLoader implements
     weakJsoCache.clear();
     weakJavaWrapperCache.clear();
     dispClassInfoOracle.clear();
+    if (rewrittenClassCache != null) {
+      int hits = rewrittenClassCache.getHits();
+      int lookups = hits + rewrittenClassCache.getMisses();
+      logger.log(TreeLogger.DEBUG, "Rewritten class cache: " + hits + " of "
+          + lookups + " classes found"
+          + (lookups == 0 ? "" : " (" + (100 * hits / lookups) + "%)"));
+    }
+  }
+
+  /**
+   * Brings the classes defined by this loader up to date with the units in the
+   * compilation state, after its module space host has hot swapped them. Loaded classes whose method bodies changed are redefined, and the
+   * JSNI methods of their units are injected again; classes that have not been
+   * loaded yet simply load the new bytes when first used. Static initializers
+   * are not run again.
+   *
+   * Must be called on this module space's own thread, since the JSNI methods
+   * are sent to its browser. Like {@link #findClass}, this locks the loader
+   * before the compilation state.
+   *
+   * @param inst the instrumentation to redefine classes with
+   * @return <code>false</code> if the JVM refused the new classes, in which
+   *         case nothing was changed
+   */
+  synchronized boolean hotSwap(TreeLogger logger, Instrumentation inst) {
+    List<CompilationUnit> replacedUnits = new ArrayList<CompilationUnit>();
+    List<CompilationUnit> changedUnits = new ArrayList<CompilationUnit>();
+    List<ClassDefinition> definitions = new ArrayList<ClassDefinition>();
+    synchronized (compilationState) {
+      Map<String, CompilationUnit> units = compilationState.getCompilationUnitMap();
+      for (CompilationUnit unit : alreadyInjected) {
+        CompilationUnit current = units.get(unit.getTypeName());
+        if (current == null || current == unit) {
+          continue;
+        }
+        replacedUnits.add(unit);
+        changedUnits.add(current);
+        addClassDefinitions(unit, current, definitions);
+      }
+    }
+    if (changedUnits.isEmpty()) {
+      return true;
+    }
+
+    try {
+      inst.redefineClasses(definitions.toArray(
+          new ClassDefinition[definitions.size()]));
+    } catch (Exception e) {
+      logger.log(TreeLogger.INFO, "Unable to hot swap changed classes", e);
+      return false;
+    } catch (LinkageError e) {
+      logger.log(TreeLogger.INFO, "Unable to hot swap changed classes", e);
+      return false;
+    }
+
+    for (int i = 0; i < replacedUnits.size(); ++i) {
+      alreadyInjected.remove(replacedUnits.get(i));
+      CompilationUnit unit = changedUnits.get(i);
+      injectJsniMethods(unit);
+      alreadyInjected.add(unit);
+    }
+    logger.log(TreeLogger.INFO, "Hot swapped " + definitions.size()
+        + " classes in " + changedUnits.size() + " changed units");
+    return true;
+  }
+
+  /**
+   * Loads every class reachable from the given types through class references
+   * up front, instead of as each class is first used. The classes are
+   * rewritten in parallel, then defined without being initialized, and the
+   * JSNI methods of all their units are sent to the browser in one message.
+   *
+   * @param rootTypeNames the source names of the types to start from, such as
+   *          the module's entry points
+   */
+  synchronized void loadEagerly(TreeLogger logger, String[] rootTypeNames) {
+    PerfLogger.start("CompilingClassLoader.loadEagerly");
+    List<String> classNames;
+    synchronized (compilationState) {
+      classNames = findReachableClasses(rootTypeNames);
+      if (classRewriter != null && !emmaAvailable) {
+        rewriteInParallel(logger, classNames);
+      }
+    }
+
+    int failed = 0;
+    deferredJsniMethods = new ArrayList<JsniMethod>();
+    try {
+      for (String className : classNames) {
+        try {
+          Class.forName(className, false, this);
+        } catch (ClassNotFoundException e) {
+          ++failed;
+        } catch (LinkageError e) {
+          // It will fail again, and be reported, if the module uses it.
+          ++failed;
+        }
+      }
+    } finally {
+      List<JsniMethod> jsniMethods = deferredJsniMethods;
+      deferredJsniMethods = null;
+      if (!jsniMethods.isEmpty()) {
+        shellJavaScriptHost.createNativeMethods(logger, jsniMethods, this);
+      }
+    }
+    logger.log(TreeLogger.DEBUG, "Loaded " + (classNames.size() - failed)
+        + " reachable classes eagerly" + (failed == 0 ? "" : "; " + failed
+        + " could not be loaded"));
+    PerfLogger.end();
+  }
+
+  /**
+   * Adds the new definitions of the loaded classes of <code>oldUnit</code>
+   * whose code differs in <code>newUnit</code>.
+   */
+  private void addClassDefinitions(CompilationUnit oldUnit,
+      CompilationUnit newUnit, List<ClassDefinition> definitions) {
+    for (String internalName : HotSwapChanges.getChangedClassNames(oldUnit,
+        newUnit)) {
+      String className = InternalName.toBinaryName(internalName);
+      if (classRewriter != null && classRewriter.isJsoIntf(className)) {
+        // The code of a JSO lives in its synthetic implementation class.
+        className += "$";
+      }
+      Class<?> target = findLoadedClass(className);
+      if (target != null) {
+        definitions.add(new ClassDefinition(target,
+            findClassBytes(target.getName())));
+      }
+    }
   }
 
   /**
@@ -1077,6 +1356,31 @@ public final class CompilingClassLoader extends ClassLoader implements
     return lookupClassName;
   }
 
+  /**
+   * Summarizes all the global state {@link HostedModeClassRewriter} depends on,
+   * for {@link RewrittenClassCache}. Any change to the JSO hierarchy, the
+   * methods JSOs declare, or the SingleJsoImpl interfaces changes the result.
+   */
+  private String computeRewriterHash(Map<String, List<String>> jsoSuperTypes,
+      SingleJsoImplData singleJsoImplData, MyInstanceMethodOracle mapper) {
+    List<String> state = new ArrayList<String>();
+    state.add("version " + HostedModeClassRewriter.VERSION + " "
+        + System.getProperty("java.class.version"));
+    for (Map.Entry<String, List<String>> entry : new TreeMap<String, List<String>>(
+        jsoSuperTypes).entrySet()) {
+      state.add("jso " + entry.getKey() + " " + entry.getValue());
+    }
+    state.addAll(mapper.getSignatures());
+    for (String mangledName : singleJsoImplData.getMangledNames()) {
+      state.add("singleJsoImpl " + mangledName + " "
+          + singleJsoImplData.getDeclarations(mangledName) + " "
+          + singleJsoImplData.getImplementations(mangledName));
+    }
+    state.add("singleJsoImplTypes "
+        + new TreeSet<String>(singleJsoImplData.getSingleJsoIntfTypes()));
+    return Util.computeStrongName(Util.getBytes(state.toArray(new String[state.size()])));
+  }
+
   @SuppressWarnings("deprecation")
   private byte[] findClassBytes(String className) {
     if (JavaScriptHost.class.getName().equals(className)) {
@@ -1151,12 +1455,8 @@ public final class CompilingClassLoader extends ClassLoader implements
       }
     }
     if (classBytes != null && classRewriter != null) {
-      Map<String, String> anonymousClassMap = Collections.emptyMap();
-      if (unit != null) {
-        anonymousClassMap = unit.getAnonymousClassMap();
-      }
-      byte[] newBytes = classRewriter.rewrite(typeOracle, className,
-          classBytes, anonymousClassMap);
+      byte[] newBytes = rewriteClass(className, classBytes,
+          unit == null ? null : unit.getAnonymousClassMap(), null);
       if (CLASS_DUMP) {
         if (!Arrays.equals(classBytes, newBytes)) {
           classDump(className, newBytes);
@@ -1167,6 +1467,125 @@ public final class CompilingClassLoader extends ClassLoader implements
     return classBytes;
   }
 
+  /**
+   * Returns the binary names of the module's classes that the given types
+   * reference directly or indirectly, through class constants in their byte
+   * code. Types only reached through deferred binding are not included.
+   */
+  private List<String> findReachableClasses(String[] rootTypeNames) {
+    Map<String, CompiledClass> classFileMap = compilationState.getClassFileMap();
+    Set<String> reachable = new LinkedHashSet<String>();
+    List<String> toVisit = new ArrayList<String>();
+    for (String rootTypeName : rootTypeNames) {
+      CompiledClass root = compilationState.getClassFileMapBySource().get(
+          rootTypeName);
+      if (root != null && reachable.add(root.getInternalName())) {
+        toVisit.add(root.getInternalName());
+      }
+    }
+    while (!toVisit.isEmpty()) {
+      byte[] classBytes = classFileMap.get(toVisit.remove(toVisit.size() - 1)).getBytes();
+      ClassReader reader = new ClassReader(classBytes);
+      char[] buf = new char[classBytes.length];
+      for (int i = 1, n = reader.readUnsignedShort(8); i < n; ++i) {
+        int offset = reader.getItem(i);
+        // The second slot of a long or double constant has no item.
+        if (offset == 0 || classBytes[offset - 1] != CONSTANT_CLASS) {
+          continue;
+        }
+        String internalName = reader.readUTF8(offset, buf);
+        if (internalName.startsWith("[")) {
+          // An array class; visit its element type.
+          int start = internalName.lastIndexOf('[') + 1;
+          if (internalName.charAt(start) != 'L') {
+            continue;
+          }
+          internalName = internalName.substring(start + 1,
+              internalName.length() - 1);
+        }
+        // JRE emulation classes are never loaded from source in hosted mode.
+        if (!internalName.startsWith("java/")
+            && classFileMap.containsKey(internalName)
+            && reachable.add(internalName)) {
+          toVisit.add(internalName);
+        }
+      }
+    }
+
+    List<String> classNames = new ArrayList<String>();
+    for (String internalName : reachable) {
+      String className = InternalName.toBinaryName(internalName);
+      classNames.add(className);
+      if (classRewriter != null && classRewriter.isJsoIntf(className)) {
+        // The code of a JSO lives in its synthetic implementation class.
+        classNames.add(className + "$");
+      }
+    }
+    return classNames;
+  }
+
+  /**
+   * Returns the SingleJsoImpl interfaces that a class implements directly or
+   * through its interfaces' supertypes, for which the rewriter may add
+   * trampolines. These depend on types other than the class itself.
+   */
+  private SortedSet<String> getSingleJsoImplInterfaces(byte[] classBytes,
+      Map<String, SortedSet<String>> singleJsoImplSupertypes) {
+    SortedSet<String> toReturn = new TreeSet<String>();
+    if (singleJsoImplTypes.isEmpty()) {
+      return toReturn;
+    }
+    for (String intfName : new ClassReader(classBytes).getInterfaces()) {
+      if (singleJsoImplSupertypes != null) {
+        SortedSet<String> supertypes = singleJsoImplSupertypes.get(intfName);
+        if (supertypes != null) {
+          toReturn.addAll(supertypes);
+        }
+        continue;
+      }
+      JClassType intf = typeOracle.findType(InternalName.toSourceName(intfName));
+      if (intf != null) {
+        toReturn.addAll(getSingleJsoImplSupertypes(intf));
+      }
+    }
+    return toReturn;
+  }
+
+  /**
+   * Maps the internal name of every interface in the type oracle to the
+   * SingleJsoImpl interfaces among its supertypes, leaving out interfaces that
+   * have none. Types fill in lazy caches as they are queried, so this is
+   * computed on one thread before classes are rewritten on several.
+   */
+  // @VisibleForTesting
+  Map<String, SortedSet<String>> getSingleJsoImplSupertypes() {
+    Map<String, SortedSet<String>> toReturn = new HashMap<String, SortedSet<String>>();
+    if (singleJsoImplTypes.isEmpty()) {
+      return toReturn;
+    }
+    for (JClassType type : typeOracle.getTypes()) {
+      if (type.isInterface() == null) {
+        continue;
+      }
+      SortedSet<String> supertypes = getSingleJsoImplSupertypes(type);
+      if (!supertypes.isEmpty()) {
+        toReturn.put(getBinaryName(type).replace('.', '/'), supertypes);
+      }
+    }
+    return toReturn;
+  }
+
+  private SortedSet<String> getSingleJsoImplSupertypes(JClassType intf) {
+    SortedSet<String> toReturn = new TreeSet<String>();
+    for (JClassType supertype : intf.getFlattenedSupertypeHierarchy()) {
+      String name = getBinaryName(supertype).replace('.', '/');
+      if (singleJsoImplTypes.contains(name)) {
+        toReturn.add(name);
+      }
+    }
+    return toReturn;
+  }
+
   private String getBinaryName(JClassType type) {
     String name = type.getPackage().getName() + '.';
     name += type.getName().replace('.', '$');
@@ -1212,6 +1631,10 @@ public final class CompilingClassLoader extends ClassLoader implements
     if (unit == null || unit.getJsniMethods() == null) {
       return;
     }
+    if (deferredJsniMethods != null) {
+      deferredJsniMethods.addAll(unit.getJsniMethods());
+      return;
+    }
     shellJavaScriptHost.createNativeMethods(logger, unit.getJsniMethods(), this);
   }
 
@@ -1222,6 +1645,96 @@ public final class CompilingClassLoader extends ClassLoader implements
     }
   }
 
+  /**
+   * Rewrites a class, or finds it already rewritten. Safe to call from several
+   * threads at once if the SingleJsoImpl supertypes of interfaces are given, so
+   * that the type oracle is not used.
+   *
+   * @param anonymousClassMap the anonymous class map of the class's unit, or
+   *          <code>null</code> if it has none
+   * @param singleJsoImplSupertypes the result of
+   *          {@link #getSingleJsoImplSupertypes()}, or <code>null</code> to
+   *          query the type oracle
+   */
+  private byte[] rewriteClass(String className, byte[] classBytes,
+      Map<String, String> anonymousClassMap,
+      Map<String, SortedSet<String>> singleJsoImplSupertypes) {
+    if (anonymousClassMap == null) {
+      anonymousClassMap = Collections.emptyMap();
+    }
+    String cacheKey = RewrittenClassCache.computeKey(className, classBytes,
+        anonymousClassMap, getSingleJsoImplInterfaces(classBytes,
+            singleJsoImplSupertypes));
+    String sharedKey = rewriterHash + cacheKey;
+    byte[] newBytes = sharedRewrittenClasses.get(sharedKey);
+    if (newBytes != null) {
+      PerfCounter.inc("CompilingClassLoader.rewriteSharedHit");
+      return newBytes;
+    }
+    if (rewrittenClassCache != null) {
+      newBytes = rewrittenClassCache.get(cacheKey);
+      PerfCounter.inc(newBytes == null
+          ? "CompilingClassLoader.rewriteCacheMiss"
+          : "CompilingClassLoader.rewriteCacheHit");
+    }
+    if (newBytes == null) {
+      PerfCounter.start("CompilingClassLoader.rewrite");
+      if (singleJsoImplSupertypes == null) {
+        newBytes = classRewriter.rewrite(typeOracle, className, classBytes,
+            anonymousClassMap);
+      } else {
+        newBytes = classRewriter.rewrite(singleJsoImplSupertypes, className,
+            classBytes, anonymousClassMap);
+      }
+      PerfCounter.end("CompilingClassLoader.rewrite");
+      if (rewrittenClassCache != null) {
+        rewrittenClassCache.put(logger, cacheKey, newBytes);
+      }
+    }
+    sharedRewrittenClasses.put(sharedKey, newBytes);
+    return newBytes;
+  }
+
+  /**
+   * Rewrites the given classes on all processors, so that defining them later
+   * finds them already rewritten. Everything the rewrite needs from the type
+   * oracle and the compilation state is gathered first, on this thread.
+   */
+  private void rewriteInParallel(TreeLogger logger, List<String> classNames) {
+    final Map<String, SortedSet<String>> singleJsoImplSupertypes = getSingleJsoImplSupertypes();
+    final List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+    for (final String className : classNames) {
+      if (classRewriter.isJsoIntf(className)) {
+        // Synthetic JSO interfaces are cheap to generate when defined.
+        continue;
+      }
+      String lookupClassName = canonicalizeClassName(className);
+      final CompiledClass compiledClass = compilationState.getClassFileMap().get(
+          lookupClassName);
+      if (compiledClass == null) {
+        continue;
+      }
+      final Map<String, String> anonymousClassMap = compiledClass.getUnit().getAnonymousClassMap();
+      tasks.add(new Callable<byte[]>() {
+        public byte[] call() {
+          return rewriteClass(className, compiledClass.getBytes(),
+              anonymousClassMap, singleJsoImplSupertypes);
+        }
+      });
+    }
+    try {
+      for (Future<byte[]> result : getRewriteExecutor().invokeAll(tasks)) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // Defining the class will rewrite it again and report the problem.
+      logger.log(TreeLogger.DEBUG, "Unable to rewrite a class in parallel",
+          e.getCause());
+    }
+  }
+
   private boolean typeHasCompilationUnit(String className) {
     return getUnitForClassName(className) != null;
   }
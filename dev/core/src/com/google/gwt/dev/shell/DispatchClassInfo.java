@@ -33,10 +33,31 @@ import java.util.Map.Entry;
  * various Java classes and assigns DISPID's to them.
  */
 public class DispatchClassInfo {
+  /**
+   * Set to access members through reflection only, rather than through a
+   * generated {@link MemberDispatcher}.
+   */
+  private static final boolean REFLECTIVE_DISPATCH = Boolean.getBoolean(
+      "gwt.dev.reflectiveDispatch");
+
+  /**
+   * Returns the member id part of a dispatch id.
+   */
+  static int getMemberId(int dispId) {
+    return dispId & 0xffff;
+  }
+
   private Class<?> cls;
 
   private final int clsId;
 
+  private MemberDispatcher dispatcher;
+
+  /**
+   * Which member ids {@link #dispatcher} handles; null until it is created.
+   */
+  private boolean[] hasDispatcher;
+
   private ArrayList<Member> memberById;
 
   private HashMap<String, Integer> memberIdByName;
@@ -50,9 +71,23 @@ public class DispatchClassInfo {
     return clsId;
   }
 
+  /**
+   * Returns a dispatcher that can access the given member without reflection,
+   * or null if the member must be accessed reflectively.
+   *
+   * @param id the dispatch id of the member
+   */
+  public synchronized MemberDispatcher getDispatcher(int id) {
+    if (hasDispatcher == null) {
+      lazyInitDispatcher();
+    }
+    id = getMemberId(id);
+    return hasDispatcher[id] ? dispatcher : null;
+  }
+
   public Member getMember(int id) {
     lazyInitTargetMembers();
-    id &= 0xffff;
+    id = getMemberId(id);
     return memberById.get(id);
   }
 
@@ -224,6 +259,50 @@ public class DispatchClassInfo {
     }
   }
 
+  /**
+   * Generates and loads the dispatcher for every member it can access directly.
+   * This is only possible for classes loaded by a {@link CompilingClassLoader},
+   * since the dispatcher must live in the same runtime package.
+   */
+  private void lazyInitDispatcher() {
+    lazyInitTargetMembers();
+    hasDispatcher = new boolean[memberById.size()];
+    ClassLoader loader = cls.getClassLoader();
+    if (REFLECTIVE_DISPATCH || !(loader instanceof CompilingClassLoader)) {
+      return;
+    }
+
+    Member[] members = new Member[memberById.size()];
+    boolean found = false;
+    for (int i = 0; i < members.length; ++i) {
+      Member member = memberById.get(i);
+      if (member != null && DispatcherGenerator.canDispatch(cls, member)) {
+        members[i] = member;
+        found = true;
+      }
+    }
+    if (!found) {
+      return;
+    }
+
+    byte[] classBytes = DispatcherGenerator.generate(cls, members);
+    try {
+      Class<?> dispatcherClass = ((CompilingClassLoader) loader).defineGeneratedClass(
+          DispatcherGenerator.getDispatcherName(cls), classBytes);
+      dispatcher = (MemberDispatcher) dispatcherClass.newInstance();
+    } catch (LinkageError e) {
+      // Fall back to reflection.
+      return;
+    } catch (InstantiationException e) {
+      return;
+    } catch (IllegalAccessException e) {
+      return;
+    }
+    for (int i = 0; i < members.length; ++i) {
+      hasDispatcher[i] = members[i] != null;
+    }
+  }
+
   private void lazyInitTargetMembers() {
     if (memberById == null) {
       memberById = new ArrayList<Member>();
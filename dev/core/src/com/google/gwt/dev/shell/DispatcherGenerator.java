@@ -0,0 +1,333 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell;
+
+import com.google.gwt.dev.asm.ClassWriter;
+import com.google.gwt.dev.asm.Label;
+import com.google.gwt.dev.asm.Opcodes;
+import com.google.gwt.dev.asm.Type;
+import com.google.gwt.dev.asm.commons.GeneratorAdapter;
+import com.google.gwt.dev.asm.commons.Method;
+import com.google.gwt.dev.asm.commons.TableSwitchGenerator;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates a {@link MemberDispatcher} for a class. The dispatcher is defined
+ * in the same package and class loader as the class, and switches on the
+ * member id to invoke each method or access each field directly. Members the
+ * dispatcher cannot legally access, such as private ones, are left to
+ * reflection.
+ */
+class DispatcherGenerator {
+
+  private static final Method GET_FIELD = Method.getMethod(
+      "Object getField(int, Object)");
+
+  private static final Type ILLEGAL_ARGUMENT_EXCEPTION = Type.getType(
+      IllegalArgumentException.class);
+
+  private static final Method INVOKE = Method.getMethod(
+      "Object invoke(int, Object, Object[])");
+
+  private static final Type OBJECT = Type.getType(Object.class);
+
+  private static final Method OBJECT_CONSTRUCTOR = Method.getMethod(
+      "void <init>()");
+
+  private static final Method SET_FIELD = Method.getMethod(
+      "void setField(int, Object, Object)");
+
+  /**
+   * Returns true if a dispatcher generated for cls can access member directly.
+   */
+  public static boolean canDispatch(Class<?> cls, Member member) {
+    int mods = member.getModifiers();
+    if (member instanceof SyntheticClassMember || Modifier.isPrivate(mods)) {
+      return false;
+    }
+    Class<?> declaringClass = member.getDeclaringClass();
+    if (!isAccessible(cls, declaringClass)
+        || !(Modifier.isPublic(mods) || isSamePackage(cls, declaringClass))) {
+      return false;
+    }
+    Class<?>[] paramTypes;
+    if (member instanceof Field) {
+      // Final fields can only be written reflectively.
+      return !Modifier.isFinal(mods)
+          && isAccessible(cls, ((Field) member).getType());
+    } else if (member instanceof java.lang.reflect.Method) {
+      paramTypes = ((java.lang.reflect.Method) member).getParameterTypes();
+    } else if (member instanceof Constructor<?>) {
+      if (Modifier.isAbstract(declaringClass.getModifiers())) {
+        return false;
+      }
+      paramTypes = ((Constructor<?>) member).getParameterTypes();
+    } else {
+      return false;
+    }
+    for (Class<?> paramType : paramTypes) {
+      if (!isAccessible(cls, paramType)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Generates the dispatcher class for cls.
+   *
+   * @param cls the class whose members are dispatched
+   * @param members the members to dispatch, indexed by member id; ids that the
+   *          dispatcher should not handle are null
+   * @return the class bytes
+   */
+  public static byte[] generate(Class<?> cls, Member[] members) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL
+        | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC,
+        getDispatcherName(cls).replace('.', '/'), null,
+        OBJECT.getInternalName(),
+        new String[] {Type.getInternalName(MemberDispatcher.class)});
+
+    GeneratorAdapter ctor = new GeneratorAdapter(Opcodes.ACC_PUBLIC,
+        OBJECT_CONSTRUCTOR, null, null, writer);
+    ctor.loadThis();
+    ctor.invokeConstructor(OBJECT, OBJECT_CONSTRUCTOR);
+    ctor.returnValue();
+    ctor.endMethod();
+
+    List<Integer> methodIds = new ArrayList<Integer>();
+    List<Integer> fieldIds = new ArrayList<Integer>();
+    for (int i = 0; i < members.length; ++i) {
+      if (members[i] instanceof Field) {
+        fieldIds.add(i);
+      } else if (members[i] != null) {
+        methodIds.add(i);
+      }
+    }
+    generateInvoke(writer, members, methodIds);
+    generateGetField(writer, members, fieldIds);
+    generateSetField(writer, members, fieldIds);
+
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  /**
+   * Returns the binary name of the dispatcher class for cls.
+   */
+  public static String getDispatcherName(Class<?> cls) {
+    return cls.getName() + "$$GwtDispatcher";
+  }
+
+  private static void box(GeneratorAdapter mg, Class<?> type) {
+    if (type == void.class) {
+      mg.push((String) null);
+    } else if (type.isPrimitive()) {
+      Type boxed = Type.getType(getBoxedClass(type));
+      mg.invokeStatic(boxed, new Method("valueOf", boxed,
+          new Type[] {Type.getType(type)}));
+    }
+  }
+
+  private static void generateGetField(ClassWriter writer,
+      final Member[] members, List<Integer> ids) {
+    final GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC,
+        GET_FIELD, null, null, writer);
+    generateSwitch(mg, ids, new TableSwitchGenerator() {
+      public void generateCase(int key, Label end) {
+        Field field = (Field) members[key];
+        Type owner = Type.getType(field.getDeclaringClass());
+        Type type = Type.getType(field.getType());
+        if (Modifier.isStatic(field.getModifiers())) {
+          mg.getStatic(owner, field.getName(), type);
+        } else {
+          mg.loadArg(1);
+          mg.checkCast(owner);
+          mg.getField(owner, field.getName(), type);
+        }
+        box(mg, field.getType());
+        mg.returnValue();
+      }
+
+      public void generateDefault() {
+        mg.throwException(ILLEGAL_ARGUMENT_EXCEPTION, "Not a field");
+      }
+    });
+    mg.endMethod();
+  }
+
+  private static void generateInvoke(ClassWriter writer,
+      final Member[] members, List<Integer> ids) {
+    final GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC,
+        INVOKE, null, null, writer);
+    generateSwitch(mg, ids, new TableSwitchGenerator() {
+      public void generateCase(int key, Label end) {
+        Member member = members[key];
+        Type owner = Type.getType(member.getDeclaringClass());
+        if (member instanceof Constructor<?>) {
+          Constructor<?> ctor = (Constructor<?>) member;
+          mg.newInstance(owner);
+          mg.dup();
+          loadArgs(mg, ctor.getParameterTypes());
+          mg.invokeConstructor(owner, new Method("<init>",
+              Type.getConstructorDescriptor(ctor)));
+        } else {
+          java.lang.reflect.Method method = (java.lang.reflect.Method) member;
+          Method asmMethod = new Method(method.getName(),
+              Type.getMethodDescriptor(method));
+          if (Modifier.isStatic(method.getModifiers())) {
+            loadArgs(mg, method.getParameterTypes());
+            mg.invokeStatic(owner, asmMethod);
+          } else {
+            mg.loadArg(1);
+            mg.checkCast(owner);
+            loadArgs(mg, method.getParameterTypes());
+            if (method.getDeclaringClass().isInterface()) {
+              mg.invokeInterface(owner, asmMethod);
+            } else {
+              mg.invokeVirtual(owner, asmMethod);
+            }
+          }
+          box(mg, method.getReturnType());
+        }
+        mg.returnValue();
+      }
+
+      public void generateDefault() {
+        mg.throwException(ILLEGAL_ARGUMENT_EXCEPTION, "Not a method");
+      }
+    });
+    mg.endMethod();
+  }
+
+  private static void generateSetField(ClassWriter writer,
+      final Member[] members, List<Integer> ids) {
+    final GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC,
+        SET_FIELD, null, null, writer);
+    generateSwitch(mg, ids, new TableSwitchGenerator() {
+      public void generateCase(int key, Label end) {
+        Field field = (Field) members[key];
+        Type owner = Type.getType(field.getDeclaringClass());
+        Type type = Type.getType(field.getType());
+        if (Modifier.isStatic(field.getModifiers())) {
+          mg.loadArg(2);
+          mg.unbox(type);
+          mg.putStatic(owner, field.getName(), type);
+        } else {
+          mg.loadArg(1);
+          mg.checkCast(owner);
+          mg.loadArg(2);
+          mg.unbox(type);
+          mg.putField(owner, field.getName(), type);
+        }
+        mg.returnValue();
+      }
+
+      public void generateDefault() {
+        mg.throwException(ILLEGAL_ARGUMENT_EXCEPTION, "Not a field");
+      }
+    });
+    mg.endMethod();
+  }
+
+  private static void generateSwitch(GeneratorAdapter mg, List<Integer> ids,
+      TableSwitchGenerator generator) {
+    int[] keys = new int[ids.size()];
+    for (int i = 0; i < keys.length; ++i) {
+      keys[i] = ids.get(i);
+    }
+    mg.loadArg(0);
+    mg.tableSwitch(keys, generator);
+  }
+
+  /**
+   * Returns true if the generated code can cast or unbox <code>value</code>
+   * to <code>type</code> without failing. Primitives must arrive as exactly
+   * their boxed class; anything else should go through reflection, which
+   * widens primitives and reports mismatches as
+   * {@link IllegalArgumentException}.
+   */
+  static boolean canConvert(Class<?> type, Object value) {
+    if (type.isPrimitive()) {
+      return value != null && value.getClass() == getBoxedClass(type);
+    }
+    return value == null || type.isInstance(value);
+  }
+
+  private static Class<?> getBoxedClass(Class<?> type) {
+    if (type == boolean.class) {
+      return Boolean.class;
+    } else if (type == byte.class) {
+      return Byte.class;
+    } else if (type == char.class) {
+      return Character.class;
+    } else if (type == double.class) {
+      return Double.class;
+    } else if (type == float.class) {
+      return Float.class;
+    } else if (type == int.class) {
+      return Integer.class;
+    } else if (type == long.class) {
+      return Long.class;
+    } else if (type == short.class) {
+      return Short.class;
+    } else {
+      throw new RuntimeException("Unexpected primitive type: "
+          + type.getName());
+    }
+  }
+
+  /**
+   * Returns true if code in the dispatcher for cls may refer to type.
+   */
+  private static boolean isAccessible(Class<?> cls, Class<?> type) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    return type.isPrimitive() || Modifier.isPublic(type.getModifiers())
+        || isSamePackage(cls, type);
+  }
+
+  /**
+   * Returns true if a and b are in the same runtime package.
+   */
+  private static boolean isSamePackage(Class<?> a, Class<?> b) {
+    if (a.getClassLoader() != b.getClassLoader()) {
+      return false;
+    }
+    String aName = a.getName();
+    String bName = b.getName();
+    int aDot = aName.lastIndexOf('.');
+    int bDot = bName.lastIndexOf('.');
+    return aDot == bDot && aName.regionMatches(0, bName, 0, Math.max(aDot, 0));
+  }
+
+  private static void loadArgs(GeneratorAdapter mg, Class<?>[] paramTypes) {
+    for (int i = 0; i < paramTypes.length; ++i) {
+      mg.loadArg(2);
+      mg.push(i);
+      mg.arrayLoad(OBJECT);
+      mg.unbox(Type.getType(paramTypes[i]));
+    }
+  }
+}
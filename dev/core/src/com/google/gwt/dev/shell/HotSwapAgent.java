@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell;
+
+import java.lang.instrument.Instrumentation;
+
+/**
+ * A Java agent that gives development mode the ability to redefine classes,
+ * which hot swapping needs. Install it by starting the JVM with
+ * <code>-javaagent:gwt-dev.jar</code>.
+ */
+public class HotSwapAgent {
+
+  private static Instrumentation instrumentation;
+
+  public static void agentmain(String args, Instrumentation inst) {
+    premain(args, inst);
+  }
+
+  /**
+   * Returns the instrumentation to redefine classes with, or <code>null</code>
+   * if the agent is not installed or the JVM cannot redefine classes.
+   */
+  public static synchronized Instrumentation getInstrumentation() {
+    if (instrumentation != null && instrumentation.isRedefineClassesSupported()) {
+      return instrumentation;
+    }
+    return null;
+  }
+
+  public static synchronized void premain(String args, Instrumentation inst) {
+    instrumentation = inst;
+  }
+}
@@ -88,6 +88,11 @@ public class JavaDispatchImpl implements JavaDispatch {
       return member.getDeclaringClass();
     }
 
+    MemberDispatcher dispatcher = getDispatcher(dispId);
+    if (dispatcher != null) {
+      return dispatcher.getField(DispatchClassInfo.getMemberId(dispId), target);
+    }
+
     Field field = (Field) member;
     try {
       return field.get(target);
@@ -104,10 +109,12 @@ public class JavaDispatchImpl implements JavaDispatch {
    */
   public MethodAdaptor getMethod(int dispId) {
     Member m = getMember(dispId);
+    MemberDispatcher dispatcher = getDispatcher(dispId);
+    int memberId = DispatchClassInfo.getMemberId(dispId);
     if (m instanceof Method) {
-      return new MethodAdaptor((Method) m);
+      return new MethodAdaptor((Method) m, dispatcher, memberId);
     } else if (m instanceof Constructor) {
-      return new MethodAdaptor((Constructor<?>) m);
+      return new MethodAdaptor((Constructor<?>) m, dispatcher, memberId);
     } else {
       throw new RuntimeException();
     }
@@ -150,6 +157,13 @@ public class JavaDispatchImpl implements JavaDispatch {
    */
   public void setFieldValue(int dispId, Object value) {
     Field field = (Field) getMember(dispId);
+    MemberDispatcher dispatcher = getDispatcher(dispId);
+    if (dispatcher != null
+        && DispatcherGenerator.canConvert(field.getType(), value)) {
+      dispatcher.setField(DispatchClassInfo.getMemberId(dispId), target, value);
+      return;
+    }
+
     try {
       field.set(target, value);
     } catch (IllegalAccessException e) {
@@ -159,6 +173,16 @@ public class JavaDispatchImpl implements JavaDispatch {
     }
   }
 
+  /**
+   * @param dispId the unique number of a method or field
+   * @return a dispatcher for the member, or null if it must be accessed
+   *         reflectively
+   */
+  protected MemberDispatcher getDispatcher(int dispId) {
+    DispatchClassInfo clsInfo = classLoader.getClassInfoByDispId(dispId);
+    return clsInfo.getDispatcher(dispId);
+  }
+
   /**
    * @param dispId the unique number of a method or field
    * @return the member
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell;
+
+/**
+ * Accesses the members of one class by the member ids assigned in
+ * {@link DispatchClassInfo}, using ordinary bytecode instead of reflection.
+ * Implementations are generated by {@link DispatcherGenerator} and defined in
+ * user space, so this interface is bridged into the
+ * {@link CompilingClassLoader}.
+ */
+public interface MemberDispatcher {
+
+  /**
+   * Reads a field.
+   *
+   * @param memberId the member id of the field
+   * @param target the instance to read from, ignored for static fields
+   * @return the field's value, boxed if primitive
+   */
+  Object getField(int memberId, Object target);
+
+  /**
+   * Invokes a method or constructor.
+   *
+   * @param memberId the member id of the method or constructor
+   * @param target the instance to invoke on, ignored for static methods and
+   *          constructors
+   * @param args the arguments, with primitives boxed
+   * @return the return value, boxed if primitive; null for void methods; or
+   *         the new instance for constructors
+   * @throws Throwable anything thrown by the invoked code, unwrapped
+   */
+  Object invoke(int memberId, Object target, Object[] args) throws Throwable;
+
+  /**
+   * Writes a field.
+   *
+   * @param memberId the member id of the field
+   * @param target the instance to write to, ignored for static fields
+   * @param value the new value, boxed if primitive
+   */
+  void setField(int memberId, Object target, Object value);
+}
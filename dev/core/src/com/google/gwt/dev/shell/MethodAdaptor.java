@@ -27,7 +27,9 @@ import java.lang.reflect.Modifier;
 public class MethodAdaptor {
   private final Constructor<?> constructor;
   private final Class<?> declaringClass;
+  private final MemberDispatcher dispatcher;
   private final int hashCode;
+  private final int memberId;
   private final Method method;
   private final String name;
   private final boolean needsThis;
@@ -35,7 +37,21 @@ public class MethodAdaptor {
   private final Class<?> returnType;
 
   public MethodAdaptor(Constructor<?> c) {
+    this(c, null, 0);
+  }
+
+  /**
+   * Creates an adaptor that invokes the constructor through a dispatcher.
+   *
+   * @param c the constructor
+   * @param dispatcher the dispatcher to use, or null to use reflection
+   * @param memberId the constructor's member id within the dispatcher
+   */
+  public MethodAdaptor(Constructor<?> c, MemberDispatcher dispatcher,
+      int memberId) {
     constructor = c;
+    this.dispatcher = dispatcher;
+    this.memberId = memberId;
     method = null;
     name = c.getName();
     needsThis = false;
@@ -45,7 +61,20 @@ public class MethodAdaptor {
   }
 
   public MethodAdaptor(Method m) {
+    this(m, null, 0);
+  }
+
+  /**
+   * Creates an adaptor that invokes the method through a dispatcher.
+   *
+   * @param m the method
+   * @param dispatcher the dispatcher to use, or null to use reflection
+   * @param memberId the method's member id within the dispatcher
+   */
+  public MethodAdaptor(Method m, MemberDispatcher dispatcher, int memberId) {
     constructor = null;
+    this.dispatcher = dispatcher;
+    this.memberId = memberId;
     declaringClass = m.getDeclaringClass();
     method = m;
     name = m.getName();
@@ -99,7 +128,13 @@ public class MethodAdaptor {
   public Object invoke(Object obj, Object... args)
       throws InstantiationException, InvocationTargetException,
       IllegalAccessException {
-    if (method != null) {
+    if (dispatcher != null && canDispatch(obj, args)) {
+      try {
+        return dispatcher.invoke(memberId, obj, args);
+      } catch (Throwable e) {
+        throw new InvocationTargetException(e);
+      }
+    } else if (method != null) {
       return method.invoke(obj, args);
     } else if (constructor != null) {
       return constructor.newInstance(args);
@@ -108,6 +143,27 @@ public class MethodAdaptor {
     }
   }
 
+  /**
+   * Returns true if the dispatcher can be handed these arguments directly. A
+   * failed cast or unboxing inside it would be indistinguishable from an
+   * exception thrown by the target, so anything else is left to reflection.
+   */
+  private boolean canDispatch(Object obj, Object[] args) {
+    if (needsThis && !declaringClass.isInstance(obj)) {
+      return false;
+    }
+    int argCount = (args == null) ? 0 : args.length;
+    if (argCount != paramTypes.length) {
+      return false;
+    }
+    for (int i = 0; i < argCount; ++i) {
+      if (!DispatcherGenerator.canConvert(paramTypes[i], args[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Indicates whether or not a "this" object is required to invoke the Method
    * or Constructor.
@@ -36,6 +36,12 @@ import java.util.ListIterator;
  */
 public abstract class ModuleSpace implements ShellJavaScriptHost {
 
+  /**
+   * Whether to load the classes reachable from the entry points before running
+   * them, rather than as they are first used.
+   */
+  private static final boolean EAGER_LOAD = Boolean.getBoolean("gwt.devmode.eagerLoad");
+
   private static ThreadLocal<Throwable> sCaughtJavaExceptionObject = new ThreadLocal<Throwable>();
 
   private static ThreadLocal<Throwable> sThrownJavaExceptionObject = new ThreadLocal<Throwable>();
@@ -174,6 +180,17 @@ public abstract class ModuleSpace implements ShellJavaScriptHost {
     return moduleName;
   }
 
+  /**
+   * Applies source changes to this running module when they only change
+   * method bodies; see {@link ModuleSpaceHost#hotSwap(TreeLogger)}.
+   *
+   * @return <code>false</code> if the module must be reloaded to pick up the
+   *         changes
+   */
+  public boolean hotSwap(TreeLogger logger) {
+    return host.hotSwap(logger);
+  }
+
   public boolean invokeNativeBoolean(String name, Object jthis,
       Class<?>[] types, Object[] args) throws Throwable {
     JsValue result = invokeNative(name, jthis, types, args);
@@ -326,6 +343,11 @@ public abstract class ModuleSpace implements ShellJavaScriptHost {
       throw new UnableToCompleteException();
     }
 
+    if (EAGER_LOAD) {
+      getIsolatedClassLoader().loadEagerly(logger,
+          host.getEntryPointTypeNames());
+    }
+
     // Actually run user code.
     //
     String entryPointTypeName = null;
@@ -32,5 +32,14 @@ public interface ModuleSpaceHost extends RebindOracle {
 
   TreeLogger getLogger();
 
+  /**
+   * Applies source changes made since the module was loaded to the running
+   * module, if they only change method bodies.
+   *
+   * @return <code>false</code> if there are changes that cannot be applied, so
+   *         the module must be reloaded to pick them up
+   */
+  boolean hotSwap(TreeLogger logger);
+
   void onModuleReady(ModuleSpace space) throws UnableToCompleteException;
 }
@@ -20,7 +20,6 @@ import com.google.gwt.dev.javac.JsniMethod;
 import com.google.gwt.dev.shell.JsValue.DispatchObject;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  */
@@ -66,18 +65,37 @@ public class ModuleSpaceOOPHM extends ModuleSpace {
     channel.loadJsni(jsni.toString());
   }
 
+  /**
+   * Invoke a JS method declared void. When the channel allows it, the
+   * invocation is pipelined instead of waiting for the browser to run it.
+   */
+  @Override
+  public void invokeNativeVoid(String name, Object jthis, Class<?>[] types,
+      Object[] args) throws Throwable {
+    if (!channel.canPipelineVoidCalls()) {
+      super.invokeNativeVoid(name, jthis, types, args);
+      return;
+    }
+    CompilingClassLoader isolatedClassLoader = getIsolatedClassLoader();
+    JsValueOOPHM jsthis = new JsValueOOPHM();
+    Class<?> jthisType = (jthis == null) ? Object.class : jthis.getClass();
+    JsValueGlue.set(jsthis, isolatedClassLoader, jthisType, jthis);
+    int argc = args.length;
+    JsValueOOPHM argv[] = new JsValueOOPHM[argc];
+    for (int i = 0; i < argc; ++i) {
+      argv[i] = new JsValueOOPHM();
+      JsValueGlue.set(argv[i], isolatedClassLoader, types[i], args[i]);
+    }
+    channel.invokeJavascriptVoid(isolatedClassLoader, jsthis, name, argv);
+  }
+
   // @Override
   protected void cleanupJsValues() {
-    Set<Integer> refIdsForCleanup = channel.getRefIdsForCleanup();
-    if (refIdsForCleanup.isEmpty()) {
+    int[] ids = channel.getRefIdsForCleanup();
+    if (ids.length == 0) {
       // nothing to do
       return;
     }
-    int[] ids = new int[refIdsForCleanup.size()];
-    int i = 0;
-    for (Integer id : refIdsForCleanup) {
-      ids[i++] = id;
-    }
     channel.freeJsValue(ids);
   }
 
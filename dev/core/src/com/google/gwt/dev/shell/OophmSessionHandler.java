@@ -33,6 +33,23 @@ import java.util.Map;
  */
 public class OophmSessionHandler extends SessionHandlerServer {
 
+  /**
+   * Whether to hot swap source changes into running modules; requires
+   * starting the JVM with <code>-javaagent:gwt-dev.jar</code>.
+   */
+  private static final boolean HOT_SWAP = Boolean.getBoolean("gwt.devmode.hotSwap");
+
+  /**
+   * How deeply the current thread is nested in calls from the browser. Hot
+   * swapping only happens for calls that no Java code is waiting on.
+   */
+  private static final ThreadLocal<int[]> invokeDepth = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+
   private BrowserWidgetHost host;
 
   private Map<BrowserChannelServer, ModuleSpace> moduleMap = Collections.synchronizedMap(new HashMap<BrowserChannelServer, ModuleSpace>());
@@ -102,6 +119,10 @@ public class OophmSessionHandler extends SessionHandlerServer {
     ModuleHandle moduleHandle = moduleHandleMap.get(channel);
     assert moduleSpace != null && moduleHandle != null;
     TreeLogger logger = moduleHandle.getLogger();
+    int[] depth = invokeDepth.get();
+    if (HOT_SWAP && depth[0] == 0) {
+      moduleSpace.hotSwap(logger);
+    }
     CompilingClassLoader cl = moduleSpace.getIsolatedClassLoader();
 
     // Treat dispatch id 0 as toString()
@@ -150,12 +171,15 @@ public class OophmSessionHandler extends SessionHandlerServer {
     jsMethod = (JsValueOOPHM) dispObj.getField(methodDispatchId);
     DispatchMethod dispMethod = jsMethod.getWrappedJavaFunction();
     boolean exception;
+    ++depth[0];
     try {
       exception = dispMethod.invoke(jsThis, jsArgs, jsRetVal);
     } catch (Throwable t) {
       exception = true;
       JsValueGlue.set(jsRetVal, moduleSpace.getIsolatedClassLoader(),
           t.getClass(), t);
+    } finally {
+      --depth[0];
     }
     Value retVal = channel.convertFromJsValue(localObjects, jsRetVal);
     return new ExceptionOrReturnValue(exception, retVal);
@@ -17,86 +17,98 @@ package com.google.gwt.dev.shell;
 
 import com.google.gwt.dev.shell.BrowserChannel.RemoteObjectRef;
 
-import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.IdentityHashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * Keeps track of references to remote objects.  When the objects are no longer
  * needed, their ids are returned in {@link #getRefIdsForCleanup()}.
+ *
+ * The table maps ids to weak references with open addressing on a primitive
+ * int array, so lookups do not box ids. Each reference remembers its own id,
+ * so ids can be recovered after the referent is garbage-collected.
  * 
  * @param <T> subtype of RemoteObjectRef contained in this table
  */
 public class RemoteObjectTable<T extends RemoteObjectRef> {
 
   /**
-   * This maps References to RemoteObjectRefs back to the original refId.
-   * Because we need the refId of the RemoteObjectRef after it's been
-   * garbage-collected, this state must be stored externally.
+   * A weak reference that remembers the id of its referent.
    */
-  private final Map<Reference<T>, Integer> idFromRemoteObject;
-  
+  private static class IdReference<T> extends WeakReference<T> {
+    private final int refId;
+
+    public IdReference(T referent, ReferenceQueue<? super T> queue, int refId) {
+      super(referent, queue);
+      this.refId = refId;
+    }
+  }
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private static final int[] NO_IDS = new int[0];
+
+  private static int[] copyOf(int[] ids, int length) {
+    int[] copy = new int[length];
+    System.arraycopy(ids, 0, copy, 0, Math.min(ids.length, length));
+    return copy;
+  }
+
+  private static int hash(int refId, int mask) {
+    int h = refId * 0x9e3779b9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
   /**
-   * This accumulates remote objects that are no longer referenced on this side
-   * of the channel.
+   * The ids in {@link #refs}, by slot.
    */
-  private final ReferenceQueue<T> refQueue;
+  private int[] keys = new int[INITIAL_CAPACITY];
 
   /**
-   * This map associates a remote object ID with a Reference to the
-   * RemoteObjectRef that currently represents that id.
+   * This accumulates remote objects that are no longer referenced on this side
+   * of the channel.
    */
-  private final Map<Integer, Reference<T>> remoteObjectFromId;
+  private final ReferenceQueue<T> refQueue = new ReferenceQueue<T>();
 
   /**
-   * Create a new RemoteObjectTable.
+   * The open-addressing table of references, kept at most half full;
+   * <code>null</code> marks an empty slot.
    */
-  public RemoteObjectTable() {
-    refQueue = new ReferenceQueue<T>();
-    remoteObjectFromId = new HashMap<Integer, Reference<T>>();
-    idFromRemoteObject = new IdentityHashMap<Reference<T>, Integer>();
-  }
+  private IdReference<T>[] refs = newTable(INITIAL_CAPACITY);
+
+  private int size = 0;
 
   /**
-   * @return the set of remote object reference IDs that should be freed.
+   * @return the remote object reference IDs that should be freed, each at most
+   *         once
    */
-  public synchronized Set<Integer> getRefIdsForCleanup() {
-    // Access to these objects is inherently synchronous
-    Map<Integer, Reference<T>> objectMap = remoteObjectFromId;
-    Map<Reference<T>, Integer> refIdMap = idFromRemoteObject;
-    Set<Integer> toReturn = new HashSet<Integer>();
+  public synchronized int[] getRefIdsForCleanup() {
+    int[] toReturn = NO_IDS;
+    int count = 0;
 
     // Find all refIds associated with previous garbage collection cycles
-    Reference<? extends RemoteObjectRef> ref;
-    while ((ref = refQueue.poll()) != null) {
-      Integer i = refIdMap.remove(ref);
-      assert i != null;
-      toReturn.add(i);
-    }
+    Object polled;
+    while ((polled = refQueue.poll()) != null) {
+      IdReference<?> ref = (IdReference<?>) polled;
 
-    /*
-     * Check for liveness. This is necessary because the last reference to a
-     * RemoteObjectRef could have been cleared and a new reference to that refId
-     * created before this method has been called.
-     */
-    for (Iterator<Integer> i = toReturn.iterator(); i.hasNext();) {
-      Integer refId = i.next();
-      if (objectMap.containsKey(refId)) {
-        if (objectMap.get(refId).get() != null) {
-          i.remove();
-        } else {
-          objectMap.remove(refId);
-        }
+      /*
+       * The last reference to a RemoteObjectRef could have been cleared and a
+       * new reference to that refId created before this method has been
+       * called. Only free the id if the table still holds this reference;
+       * otherwise the id is either live or will be freed when its newer
+       * reference is enqueued.
+       */
+      int slot = findSlot(ref.refId);
+      if (slot < 0 || refs[slot] != ref) {
+        continue;
+      }
+      removeSlot(slot);
+      if (count == toReturn.length) {
+        toReturn = copyOf(toReturn, Math.max(16, count * 2));
       }
+      toReturn[count++] = ref.refId;
     }
-
-    return toReturn;
+    return count == toReturn.length ? toReturn : copyOf(toReturn, count);
   }
 
   /**
@@ -106,14 +118,8 @@ public class RemoteObjectTable<T extends RemoteObjectRef> {
    * @return the RemoteObjectRef or null if the ID is not currently in use
    */
   public synchronized T getRemoteObjectRef(int refId) {
-    if (remoteObjectFromId.containsKey(refId)) {
-      Reference<T> ref = remoteObjectFromId.get(refId);
-      T toReturn = ref.get();
-      if (toReturn != null) {
-        return toReturn;
-      }
-    }
-    return null;
+    int slot = findSlot(refId);
+    return slot < 0 ? null : refs[slot].get();
   }
 
   /**
@@ -123,8 +129,8 @@ public class RemoteObjectTable<T extends RemoteObjectRef> {
    * @return true if this ID is not currently in use
    */
   public synchronized boolean isNewObjectId(int refId) {
-    return !remoteObjectFromId.containsKey(refId)
-    || (remoteObjectFromId.get(refId).get() == null);
+    int slot = findSlot(refId);
+    return slot < 0 || refs[slot].get() == null;
   }
 
   /**
@@ -135,8 +141,71 @@ public class RemoteObjectTable<T extends RemoteObjectRef> {
    */
   public synchronized void putRemoteObjectRef(int refId,
       T remoteObjectRef) {
-    Reference<T> ref = new WeakReference<T>(remoteObjectRef, refQueue);
-    remoteObjectFromId.put(refId, ref);
-    idFromRemoteObject.put(ref, refId);
+    IdReference<T> ref = new IdReference<T>(remoteObjectRef, refQueue, refId);
+    int slot = findSlot(refId);
+    if (slot >= 0) {
+      // Replaces a cleared reference, which is still waiting in the queue.
+      refs[slot] = ref;
+      return;
+    }
+    if (++size * 2 > refs.length) {
+      rehash(refs.length * 2);
+    }
+    insert(ref);
+  }
+
+  @SuppressWarnings("unchecked")
+  private IdReference<T>[] newTable(int capacity) {
+    return new IdReference[capacity];
+  }
+
+  private int findSlot(int refId) {
+    int mask = refs.length - 1;
+    for (int i = hash(refId, mask); refs[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == refId) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void insert(IdReference<T> ref) {
+    int mask = refs.length - 1;
+    int i = hash(ref.refId, mask);
+    while (refs[i] != null) {
+      i = (i + 1) & mask;
+    }
+    keys[i] = ref.refId;
+    refs[i] = ref;
+  }
+
+  private void rehash(int capacity) {
+    IdReference<T>[] oldRefs = refs;
+    keys = new int[capacity];
+    refs = newTable(capacity);
+    for (IdReference<T> ref : oldRefs) {
+      if (ref != null) {
+        insert(ref);
+      }
+    }
+  }
+
+  /**
+   * Empties a slot, shifting back any later entries of the same probe run so
+   * that lookups never need tombstones.
+   */
+  private void removeSlot(int hole) {
+    --size;
+    int mask = refs.length - 1;
+    for (int i = (hole + 1) & mask; refs[i] != null; i = (i + 1) & mask) {
+      int home = hash(keys[i], mask);
+      // Move the entry into the hole unless its home lies in (hole, i].
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        keys[hole] = keys[i];
+        refs[hole] = refs[i];
+        hole = i;
+      }
+    }
+    refs[hole] = null;
   }
 }
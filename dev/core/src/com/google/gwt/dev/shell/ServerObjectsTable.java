@@ -15,66 +15,156 @@
  */
 package com.google.gwt.dev.shell;
 
-import java.util.IdentityHashMap;
-import java.util.Map;
-import java.util.TreeMap;
-
 /**
  * A class that keeps track of Java objects which have been exposed to the other
  * side and assigns unique ids.
+ *
+ * Ids are small and dense, so objects are stored in an array indexed by id,
+ * with freed ids chained into a free list for reuse. The reverse lookup is an
+ * open-addressing identity table from object to id, so neither direction boxes
+ * ids.
  */
 public class ServerObjectsTable {
 
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final int NO_ID = -1;
+
+  private static int hash(Object obj, int mask) {
+    int h = System.identityHashCode(obj) * 0x9e3779b9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
   /**
-   * A type that records the next-available free id slot to use, without itself
-   * being a valid return type.
+   * For each free id, the next free id, or {@link #NO_ID}.
    */
-  private static class Tombstone {
-    private final int nextFree;
+  private int[] freeList = new int[INITIAL_CAPACITY];
 
-    public Tombstone(int nextFree) {
-      this.nextFree = nextFree;
-    }
-  }
+  /**
+   * The head of the free list.
+   */
+  private int nextFree = NO_ID;
 
-  private int nextFree = -1;
   private int nextId = 0;
-  private final Map<Integer, Object> objects = new TreeMap<Integer, Object>();
-  private final Map<Object, Integer> refMap = new IdentityHashMap<Object, Integer>();
+
+  /**
+   * Indexed by id; <code>null</code> for free ids.
+   */
+  private Object[] objects = new Object[INITIAL_CAPACITY];
+
+  /**
+   * The ids of the objects in {@link #refKeys}, by slot.
+   */
+  private int[] refIds = new int[INITIAL_CAPACITY * 2];
+
+  /**
+   * The open-addressing table of live objects, kept at most half full.
+   */
+  private Object[] refKeys = new Object[INITIAL_CAPACITY * 2];
+
+  private int size = 0;
 
   public int add(Object obj) {
+    assert obj != null;
     int id = find(obj);
     if (id >= 0) {
       return id;
     }
-    if (nextFree >= 0) {
+    if (nextFree != NO_ID) {
       id = nextFree;
-      nextFree = ((Tombstone) objects.get(id)).nextFree;
+      nextFree = freeList[id];
     } else {
       id = nextId++;
+      if (id == objects.length) {
+        Object[] newObjects = new Object[id * 2];
+        System.arraycopy(objects, 0, newObjects, 0, id);
+        objects = newObjects;
+        int[] newFreeList = new int[id * 2];
+        System.arraycopy(freeList, 0, newFreeList, 0, id);
+        freeList = newFreeList;
+      }
+    }
+    objects[id] = obj;
+    if (++size * 2 > refKeys.length) {
+      rehash(refKeys.length * 2);
     }
-    objects.put(id, obj);
-    refMap.put(obj, id);
+    insertRef(obj, id);
     return id;
   }
 
   public int find(Object obj) {
-    Integer objId = refMap.get(obj);
-    return objId != null ? objId.intValue() : -1;
+    int mask = refKeys.length - 1;
+    for (int i = hash(obj, mask); refKeys[i] != null; i = (i + 1) & mask) {
+      if (refKeys[i] == obj) {
+        return refIds[i];
+      }
+    }
+    return NO_ID;
   }
 
   public void free(int id) {
-    Object object = objects.get(id);
-    assert object != null : "Trying to free never-used id " + id;
-    assert !(object instanceof Tombstone) : "Duplicate free " + id;
-    refMap.remove(object);
-    objects.put(id, new Tombstone(nextFree));
+    assert id >= 0 && id < nextId : "Trying to free never-used id " + id;
+    Object object = objects[id];
+    assert object != null : "Duplicate free " + id;
+    removeRef(object);
+    --size;
+    objects[id] = null;
+    freeList[id] = nextFree;
     nextFree = id;
   }
 
   public Object get(int id) {
-    Object toReturn = objects.get(id);
-    assert !(toReturn instanceof Tombstone) : id + " is not an active id";
+    if (id < 0 || id >= nextId) {
+      return null;
+    }
+    Object toReturn = objects[id];
+    assert toReturn != null : id + " is not an active id";
     return toReturn;
   }
-}
\ No newline at end of file
+
+  private void insertRef(Object obj, int id) {
+    int mask = refKeys.length - 1;
+    int i = hash(obj, mask);
+    while (refKeys[i] != null) {
+      i = (i + 1) & mask;
+    }
+    refKeys[i] = obj;
+    refIds[i] = id;
+  }
+
+  private void rehash(int capacity) {
+    Object[] oldKeys = refKeys;
+    int[] oldIds = refIds;
+    refKeys = new Object[capacity];
+    refIds = new int[capacity];
+    for (int i = 0; i < oldKeys.length; ++i) {
+      if (oldKeys[i] != null) {
+        insertRef(oldKeys[i], oldIds[i]);
+      }
+    }
+  }
+
+  /**
+   * Removes an object from the identity table, shifting back any later
+   * entries of the same probe run so that lookups never need tombstones.
+   */
+  private void removeRef(Object obj) {
+    int mask = refKeys.length - 1;
+    int i = hash(obj, mask);
+    while (refKeys[i] != obj) {
+      assert refKeys[i] != null;
+      i = (i + 1) & mask;
+    }
+    int hole = i;
+    for (i = (i + 1) & mask; refKeys[i] != null; i = (i + 1) & mask) {
+      int home = hash(refKeys[i], mask);
+      // Move the entry into the hole unless its home lies in (hole, i].
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        refKeys[hole] = refKeys[i];
+        refIds[hole] = refIds[i];
+        hole = i;
+      }
+    }
+    refKeys[hole] = null;
+  }
+}
@@ -21,9 +21,13 @@ import com.google.gwt.core.ext.linker.ArtifactSet;
 import com.google.gwt.dev.cfg.ModuleDef;
 import com.google.gwt.dev.cfg.Rules;
 import com.google.gwt.dev.javac.CompilationState;
+import com.google.gwt.dev.javac.CompilationUnit;
+import com.google.gwt.dev.javac.HotSwapChanges;
 import com.google.gwt.dev.javac.StandardGeneratorContext;
 
 import java.io.File;
+import java.lang.instrument.Instrumentation;
+import java.util.Map;
 
 /**
  * Provides an environment for a {@link com.google.gwt.dev.shell.ModuleSpace}
@@ -31,6 +35,11 @@ import java.io.File;
  */
 public class ShellModuleSpaceHost implements ModuleSpaceHost {
 
+  /**
+   * How often to look for source changes while hot swapping.
+   */
+  private static final long HOT_SWAP_INTERVAL_MILLIS = 1000;
+
   // TODO(jat): hack to try and serialize rebinds
   private static final Object rebindLock = new Object[0];
 
@@ -42,6 +51,14 @@ public class ShellModuleSpaceHost implements ModuleSpaceHost {
 
   private CompilingClassLoader classLoader;
 
+  /**
+   * Set once a change could not be hot swapped; later changes cannot be
+   * applied on top of it until the module is reloaded.
+   */
+  private boolean hotSwapBlocked;
+
+  private long lastHotSwapCheck;
+
   private final TreeLogger logger;
 
   private final ModuleDef module;
@@ -78,6 +95,52 @@ public class ShellModuleSpaceHost implements ModuleSpaceHost {
     return logger;
   }
 
+  public synchronized boolean hotSwap(TreeLogger logger) {
+    checkForModuleSpace();
+    if (hotSwapBlocked) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    if (now - lastHotSwapCheck < HOT_SWAP_INTERVAL_MILLIS) {
+      return true;
+    }
+    lastHotSwapCheck = now;
+
+    Instrumentation inst = HotSwapAgent.getInstrumentation();
+    if (inst == null) {
+      logger.log(TreeLogger.WARN, "Hot swapping requires starting the JVM with "
+          + "-javaagent:gwt-dev.jar; reload the module to pick up changes");
+      hotSwapBlocked = true;
+      return false;
+    }
+    /*
+     * Changes are swapped into the compilation state, then the class loader
+     * redefines its classes to match. Lock the class loader before the
+     * compilation state, the same order as class loading. The units are built
+     * first, since the module locks itself.
+     */
+    Map<String, CompilationUnit> units = module.getCompilationUnits(logger);
+    synchronized (classLoader) {
+      synchronized (compilationState) {
+        HotSwapChanges changes = HotSwapChanges.compute(compilationState,
+            units);
+        if (!changes.isCompatible()) {
+          logger.log(TreeLogger.INFO, "Unable to hot swap: "
+              + changes.getIncompatibility() + "; reload the module to pick up "
+              + "changes");
+          hotSwapBlocked = true;
+          return false;
+        }
+        compilationState.swapUnits(changes.getChangedUnits());
+      }
+      if (!classLoader.hotSwap(logger, inst)) {
+        hotSwapBlocked = true;
+        return false;
+      }
+      return true;
+    }
+  }
+
   public void onModuleReady(ModuleSpace readySpace)
       throws UnableToCompleteException {
     this.space = readySpace;
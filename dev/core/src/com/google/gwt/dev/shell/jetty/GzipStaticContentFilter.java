@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell.jetty;
+
+import com.google.gwt.dev.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves text files in the war directory gzipped to clients that accept it.
+ * Each file is compressed once and kept in memory until it changes on disk;
+ * every request checks the file's timestamp and length first, and a file that
+ * has been deleted is dropped from memory. Everything else, including servlet
+ * responses, passes through unchanged.
+ */
+final class GzipStaticContentFilter implements Filter {
+
+  /**
+   * A compressed file, valid while the file's timestamp and length match.
+   */
+  private static class Compressed {
+    final byte[] bytes;
+    final long lastModified;
+    final long length;
+
+    Compressed(long lastModified, long length, byte[] bytes) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Smaller files do not gain enough to be worth compressing.
+   */
+  private static final int MIN_LENGTH = 256;
+
+  private static final Set<String> MIME_TYPES = new HashSet<String>(
+      Arrays.asList("text/html", "text/plain", "text/css", "text/xml",
+          "text/javascript", "application/javascript",
+          "application/x-javascript", "application/xml"));
+
+  private final ConcurrentHashMap<String, Compressed> cache = new ConcurrentHashMap<String, Compressed>();
+
+  private final AtomicLong cacheSize = new AtomicLong();
+
+  /**
+   * The maximum total size of the compressed files kept in memory.
+   */
+  private final long maxCacheSize;
+
+  private ServletContext servletContext;
+
+  /**
+   * @param maxCacheSize the maximum total size of the compressed files kept in
+   *          memory; files that do not fit are compressed on every request
+   */
+  GzipStaticContentFilter(long maxCacheSize) {
+    this.maxCacheSize = maxCacheSize;
+  }
+
+  public void destroy() {
+    cache.clear();
+    cacheSize.set(0);
+  }
+
+  public void doFilter(ServletRequest req, ServletResponse resp,
+      FilterChain chain) throws IOException, ServletException {
+    HttpServletRequest request = (HttpServletRequest) req;
+    HttpServletResponse response = (HttpServletResponse) resp;
+    File file = getStaticFile(request);
+    if (file == null) {
+      chain.doFilter(req, resp);
+      return;
+    }
+    if (!file.isFile() || file.length() < MIN_LENGTH) {
+      // Deleted, or no longer worth compressing.
+      evict(request.getRequestURI());
+      chain.doFilter(req, resp);
+      return;
+    }
+
+    long lastModified = file.lastModified() / 1000 * 1000;
+    response.setHeader("Vary", "Accept-Encoding");
+    long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+    if (ifModifiedSince >= 0 && lastModified <= ifModifiedSince) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    byte[] bytes = getCompressed(request.getRequestURI(), file);
+    if (bytes == null) {
+      chain.doFilter(req, resp);
+      return;
+    }
+    response.setContentType(servletContext.getMimeType(file.getName()));
+    response.setHeader("Content-Encoding", "gzip");
+    response.setDateHeader("Last-Modified", lastModified);
+    response.setContentLength(bytes.length);
+    response.getOutputStream().write(bytes);
+  }
+
+  public void init(FilterConfig config) {
+    servletContext = config.getServletContext();
+  }
+
+  // @VisibleForTesting
+  long getCacheSize() {
+    return cacheSize.get();
+  }
+
+  private void evict(String path) {
+    Compressed compressed = cache.remove(path);
+    if (compressed != null) {
+      cacheSize.addAndGet(-compressed.bytes.length);
+    }
+  }
+
+  private byte[] getCompressed(String path, File file) throws IOException {
+    long lastModified = file.lastModified();
+    long length = file.length();
+    Compressed compressed = cache.get(path);
+    if (compressed != null && compressed.lastModified == lastModified
+        && compressed.length == length) {
+      return compressed.bytes;
+    }
+
+    byte[] content = Util.readFileAsBytes(file);
+    if (content == null) {
+      evict(path);
+      return null;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4);
+    GZIPOutputStream gzip = new GZIPOutputStream(out);
+    gzip.write(content);
+    gzip.close();
+    byte[] bytes = out.toByteArray();
+
+    // Racing threads may both compress the file; either result will do.
+    if (compressed != null && cache.remove(path, compressed)) {
+      cacheSize.addAndGet(-compressed.bytes.length);
+    }
+    Compressed added = new Compressed(lastModified, length, bytes);
+    if (cacheSize.addAndGet(bytes.length) > maxCacheSize
+        || cache.putIfAbsent(path, added) != null) {
+      cacheSize.addAndGet(-bytes.length);
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the file a request is for, if it may be served compressed. The file
+   * may not exist.
+   */
+  private File getStaticFile(HttpServletRequest request) {
+    if (!"GET".equals(request.getMethod())) {
+      return null;
+    }
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    if (acceptEncoding == null || acceptEncoding.indexOf("gzip") < 0) {
+      return null;
+    }
+    String path = request.getServletPath();
+    if (request.getPathInfo() != null) {
+      path += request.getPathInfo();
+    }
+    String upperPath = path.toUpperCase();
+    if (upperPath.startsWith("/WEB-INF") || upperPath.startsWith("/META-INF")) {
+      return null;
+    }
+    if (!MIME_TYPES.contains(servletContext.getMimeType(path))) {
+      return null;
+    }
+    String realPath = servletContext.getRealPath(path);
+    if (realPath == null) {
+      return null;
+    }
+    return new File(realPath);
+  }
+}
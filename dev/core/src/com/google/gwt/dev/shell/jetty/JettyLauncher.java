@@ -23,6 +23,7 @@ import com.google.gwt.dev.util.InstalledHelpInfo;
 
 import org.mortbay.component.AbstractLifeCycle;
 import org.mortbay.jetty.AbstractConnector;
+import org.mortbay.jetty.Handler;
 import org.mortbay.jetty.Request;
 import org.mortbay.jetty.RequestLog;
 import org.mortbay.jetty.Response;
@@ -30,10 +31,12 @@ import org.mortbay.jetty.Server;
 import org.mortbay.jetty.HttpFields.Field;
 import org.mortbay.jetty.handler.RequestLogHandler;
 import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.jetty.servlet.FilterHolder;
 import org.mortbay.jetty.webapp.WebAppClassLoader;
 import org.mortbay.jetty.webapp.WebAppContext;
 import org.mortbay.log.Log;
 import org.mortbay.log.Logger;
+import org.mortbay.thread.QueuedThreadPool;
 
 import java.io.File;
 import java.io.IOException;
@@ -42,6 +45,20 @@ import java.util.Iterator;
 
 /**
  * A {@link ServletContainerLauncher} for an embedded Jetty server.
+ * 
+ * Accepts comma-separated tuning options, as in
+ * <code>-server com.google.gwt.dev.shell.jetty.JettyLauncher:threads=20,gzip</code>:
+ * <ul>
+ * <li><code>threads=N</code>: serve requests on a pool of at most N threads.</li>
+ * <li><code>acceptors=N</code>: accept connections on N threads.</li>
+ * <li><code>cacheSize=MB</code>, <code>cachedFileSize=KB</code>,
+ * <code>cachedFiles=N</code>: bound the in-memory cache of static files in the
+ * war directory. A cached file is re-read when it changes on disk;
+ * <code>cacheSize=0</code> disables the cache.</li>
+ * <li><code>gzip</code>: serve text files in the war directory gzipped to
+ * clients that accept it. Compressed files are kept in memory, within the
+ * cache size, until they change on disk.</li>
+ * </ul>
  */
 public class JettyLauncher extends ServletContainerLauncher {
 
@@ -454,6 +471,18 @@ public class JettyLauncher extends ServletContainerLauncher {
     }
   }
 
+  /**
+   * Prefix of the context init parameters that configure Jetty's default
+   * servlet, which serves static files.
+   */
+  private static final String DEFAULT_SERVLET_PARAM = "org.mortbay.jetty.servlet.Default.";
+
+  /**
+   * The memory the <code>gzip</code> option may use for compressed files if
+   * the cache size is not set.
+   */
+  private static final int DEFAULT_GZIP_CACHE_SIZE = 32 << 20;
+
   /**
    * System property to suppress warnings about loading web app classes from the
    * system classpath.
@@ -480,6 +509,14 @@ public class JettyLauncher extends ServletContainerLauncher {
 
   private String bindAddress = null;
 
+  // Tuning options; 0 or -1 leaves Jetty's default in place.
+  private int acceptors = 0;
+  private int cachedFiles = -1;
+  private int cachedFileSize = -1;
+  private int cacheSize = -1;
+  private boolean gzip = false;
+  private int maxThreads = 0;
+
   private final Object privateInstanceLock = new Object();
 
   @Override
@@ -487,6 +524,55 @@ public class JettyLauncher extends ServletContainerLauncher {
     return "Jetty";
   }
 
+  @Override
+  public boolean processArguments(TreeLogger logger, String arguments) {
+    for (String option : arguments.split("[,\\s]+")) {
+      if (option.length() == 0) {
+        continue;
+      }
+      if (option.equals("gzip")) {
+        gzip = true;
+        continue;
+      }
+      int eq = option.indexOf('=');
+      String name = eq < 0 ? option : option.substring(0, eq);
+      int value;
+      try {
+        value = eq < 0 ? -1 : Integer.parseInt(option.substring(eq + 1));
+      } catch (NumberFormatException e) {
+        value = -1;
+      }
+      if (value < 0) {
+        logger.log(TreeLogger.ERROR, "Expected a non-negative number in '"
+            + option + "'");
+        return false;
+      }
+      if (name.equals("threads")) {
+        maxThreads = value;
+      } else if (name.equals("acceptors")) {
+        acceptors = value;
+      } else if (name.equals("cacheSize")) {
+        if (!checkSize(logger, option, value, 20)) {
+          return false;
+        }
+        cacheSize = value << 20;
+      } else if (name.equals("cachedFileSize")) {
+        if (!checkSize(logger, option, value, 10)) {
+          return false;
+        }
+        cachedFileSize = value << 10;
+      } else if (name.equals("cachedFiles")) {
+        cachedFiles = value;
+      } else {
+        logger.log(TreeLogger.ERROR, "Unknown Jetty option '" + name
+            + "'; expected threads, acceptors, cacheSize, cachedFileSize, "
+            + "cachedFiles or gzip");
+        return false;
+      }
+    }
+    return true;
+  }
+
   /*
    * TODO: This is a hack to pass the base log level to the SCL. We'll have to
    * figure out a better way to do this for SCLs in general. Please do not
@@ -518,6 +604,9 @@ public class JettyLauncher extends ServletContainerLauncher {
     System.setProperty("org.mortbay.xml.XmlParser.Validating", "false");
 
     AbstractConnector connector = getConnector();
+    if (acceptors > 0) {
+      connector.setAcceptors(acceptors);
+    }
     if (bindAddress != null) {
       connector.setHost(bindAddress.toString());
     }
@@ -531,9 +620,17 @@ public class JettyLauncher extends ServletContainerLauncher {
 
     Server server = new Server();
     server.addConnector(connector);
+    if (maxThreads > 0) {
+      QueuedThreadPool threadPool = new QueuedThreadPool();
+      threadPool.setMaxThreads(maxThreads);
+      threadPool.setMinThreads(Math.min(2, maxThreads));
+      threadPool.setName("Jetty");
+      server.setThreadPool(threadPool);
+    }
 
     // Create a new web app in the war directory.
     WebAppContext wac = createWebAppContext(logger, appRootDir);
+    configureStaticContent(wac);
 
     RequestLogHandler logHandler = new RequestLogHandler();
     logHandler.setRequestLog(new JettyRequestLogger(logger, getBaseLogLevel()));
@@ -563,6 +660,43 @@ public class JettyLauncher extends ServletContainerLauncher {
     return new SelectChannelConnector();
   }
 
+  @SuppressWarnings("unchecked")
+  private void configureStaticContent(WebAppContext wac) {
+    if (cacheSize >= 0) {
+      wac.getInitParams().put(DEFAULT_SERVLET_PARAM + "maxCacheSize",
+          String.valueOf(cacheSize));
+    }
+    if (cachedFileSize >= 0) {
+      wac.getInitParams().put(DEFAULT_SERVLET_PARAM + "maxCachedFileSize",
+          String.valueOf(cachedFileSize));
+    }
+    if (cachedFiles >= 0) {
+      wac.getInitParams().put(DEFAULT_SERVLET_PARAM + "maxCachedFiles",
+          String.valueOf(cachedFiles));
+    }
+    if (gzip) {
+      wac.addFilter(new FilterHolder(new GzipStaticContentFilter(
+          cacheSize >= 0 ? cacheSize : DEFAULT_GZIP_CACHE_SIZE)), "/*",
+          Handler.REQUEST);
+    }
+  }
+
+  /**
+   * Returns whether a size still fits in an int once converted to bytes by
+   * shifting it left by <code>shift</code> bits, since Jetty takes sizes in
+   * bytes as ints.
+   */
+  private static boolean checkSize(TreeLogger logger, String option, int value,
+      int shift) {
+    int max = Integer.MAX_VALUE >> shift;
+    if (value > max) {
+      logger.log(TreeLogger.ERROR, "Size too large in '" + option
+          + "'; expected at most " + max);
+      return false;
+    }
+    return true;
+  }
+
   private void checkStartParams(TreeLogger logger, int port, File appRootDir) {
     if (logger == null) {
       throw new NullPointerException("logger cannot be null");
@@ -21,6 +21,7 @@ import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.MessageType;
 import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Request;
 import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Response;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -28,11 +29,12 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
@@ -84,17 +86,29 @@ public class MessageTransport {
     void onTermination(Exception e);
   }
 
-  class PendingRequest extends PendingSend {
+  /**
+   * A request waiting to be sent or for its response. It is also the future
+   * the requester uses to get the response.
+   */
+  class PendingRequest extends PendingSend implements Future<Response> {
     private final ReentrantLock lock = new ReentrantLock();
     private final Condition availableResponseCondition = lock.newCondition();
     private Response responseMessage;
     private Exception exception;
     private final Message message;
+    private boolean permitReleased;
 
     public PendingRequest(Message message) {
       this.message = message;
     }
 
+    /**
+     * Requests cannot be cancelled once queued.
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
     @Override
     public void failed(Exception e) {
       pendingRequestMap.remove(message.getMessageId());
@@ -103,6 +117,48 @@ public class MessageTransport {
       try {
         exception = e;
         availableResponseCondition.signal();
+        releasePermit();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public Response get() throws InterruptedException, ExecutionException {
+      try {
+        return get(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    public Response get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      long nanos = unit.toNanos(timeout);
+      lock.lock();
+      try {
+        while (responseMessage == null && exception == null) {
+          if (nanos <= 0) {
+            throw new TimeoutException();
+          }
+          nanos = availableResponseCondition.awaitNanos(nanos);
+        }
+        if (exception != null) {
+          throw new ExecutionException(exception);
+        }
+        return responseMessage;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public boolean isCancelled() {
+      return false;
+    }
+
+    public boolean isDone() {
+      lock.lock();
+      try {
+        return responseMessage != null || exception != null;
       } finally {
         lock.unlock();
       }
@@ -132,32 +188,20 @@ public class MessageTransport {
         }
         this.responseMessage = responseMessage;
         availableResponseCondition.signal();
+        releasePermit();
       } finally {
         lock.unlock();
       }
     }
 
     /**
-     * Waits for a response to be returned for a given request.
-     * 
-     * @return the response from the server
-     * @throws Exception if an exception occurred while processing the request
+     * Lets another request be executed, once this one has its response or has
+     * failed. Called with the lock held.
      */
-    public Response waitForResponse() throws Exception {
-      lock.lock();
-
-      try {
-        while (responseMessage == null && exception == null) {
-          availableResponseCondition.await();
-        }
-
-        if (exception != null) {
-          throw exception;
-        }
-
-        return responseMessage;
-      } finally {
-        lock.unlock();
+    private void releasePermit() {
+      if (!permitReleased) {
+        permitReleased = true;
+        requestPermits.release();
       }
     }
   }
@@ -227,14 +271,30 @@ public class MessageTransport {
     public abstract void send(OutputStream outputStream) throws IOException;
   }
 
-  private static final int DEFAULT_SERVICE_THREADS = 2;
+  /**
+   * The default number of requests that may wait to be sent or for their
+   * responses at once.
+   */
+  static final int DEFAULT_MAX_PENDING_REQUESTS = 1024;
+
+  /**
+   * The default number of milliseconds a request waits for one of the pending
+   * requests to complete before it fails instead.
+   */
+  static final long DEFAULT_PERMIT_TIMEOUT_MILLIS = 10000;
 
   private final AtomicBoolean isStarted = new AtomicBoolean(false);
   private final AtomicInteger nextMessageId = new AtomicInteger();
   private final RequestProcessor requestProcessor;
   private final LinkedBlockingQueue<PendingSend> sendQueue = new LinkedBlockingQueue<PendingSend>();
-  private final ExecutorService serverRequestExecutor;
   private final PendingRequestMap pendingRequestMap = new PendingRequestMap();
+
+  /**
+   * One for each request that may still be executed before the server catches
+   * up; this bounds the send queue and the pending request map.
+   */
+  private final Semaphore requestPermits;
+  private final long permitTimeoutMillis;
   private final TerminationCallback terminationCallback;
   private final InputStream inputStream;
   private final OutputStream outputStream;
@@ -252,38 +312,68 @@ public class MessageTransport {
   public MessageTransport(final InputStream inputStream,
       final OutputStream outputStream, RequestProcessor requestProcessor,
       TerminationCallback terminationCallback) {
+    this(inputStream, outputStream, requestProcessor, terminationCallback,
+        DEFAULT_MAX_PENDING_REQUESTS, DEFAULT_PERMIT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Create a new instance that lets at most <code>maxPendingRequests</code>
+   * requests wait to be sent or for their responses at once, and fails a
+   * request that waits more than <code>permitTimeoutMillis</code> for one of
+   * them to complete.
+   */
+  // @VisibleForTesting
+  MessageTransport(InputStream inputStream, OutputStream outputStream,
+      RequestProcessor requestProcessor,
+      TerminationCallback terminationCallback, int maxPendingRequests,
+      long permitTimeoutMillis) {
+    this.requestPermits = new Semaphore(maxPendingRequests);
+    this.permitTimeoutMillis = permitTimeoutMillis;
     this.requestProcessor = requestProcessor;
     this.terminationCallback = terminationCallback;
     this.inputStream = inputStream;
     this.outputStream = outputStream;
-    serverRequestExecutor = Executors.newFixedThreadPool(DEFAULT_SERVICE_THREADS);
   }
 
   /**
-   * Asynchronously executes the request on a remote server.
+   * Asynchronously executes the request on a remote server. Requests are sent
+   * in the order this method is called, and the caller need not wait for one
+   * response before sending the next request. If too many requests are still
+   * waiting to be sent or for their responses, this method blocks until one of
+   * them completes, so that a slow server cannot make requests pile up. If none
+   * completes in time, or the caller is interrupted, the returned future fails
+   * with a {@link TimeoutException} and the request is never sent, so that a
+   * server that stopped responding cannot block the caller for good.
    * 
    * @param requestMessage The request to execute
    * 
    * @return a {@link Future} that can be used to access the server's response
    */
   public Future<Response> executeRequestAsync(final Request requestMessage) {
-    Future<Response> responseFuture = serverRequestExecutor.submit(new Callable<Response>() {
-      public Response call() throws Exception {
-        Message.Builder messageBuilder = Message.newBuilder();
-        int messageId = nextMessageId.getAndIncrement();
-        messageBuilder.setMessageId(messageId);
-        messageBuilder.setMessageType(Message.MessageType.REQUEST);
-        messageBuilder.setRequest(requestMessage);
-
-        Message message = messageBuilder.build();
-        PendingRequest pendingRequest = new PendingRequest(message);
-        sendQueue.put(pendingRequest);
-
-        return pendingRequest.waitForResponse();
-      }
-    });
+    Message.Builder messageBuilder = Message.newBuilder();
+    int messageId = nextMessageId.getAndIncrement();
+    messageBuilder.setMessageId(messageId);
+    messageBuilder.setMessageType(Message.MessageType.REQUEST);
+    messageBuilder.setRequest(requestMessage);
 
-    return responseFuture;
+    PendingRequest pendingRequest = new PendingRequest(messageBuilder.build());
+    boolean acquired;
+    try {
+      acquired = requestPermits.tryAcquire(permitTimeoutMillis,
+          TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      acquired = false;
+    }
+    if (!acquired) {
+      // There is no permit to give back.
+      pendingRequest.permitReleased = true;
+      pendingRequest.failed(new TimeoutException(
+          "Too many requests are waiting for the server to respond"));
+      return pendingRequest;
+    }
+    sendQueue.add(pendingRequest);
+    return pendingRequest;
   }
 
   /**
@@ -317,14 +407,21 @@ public class MessageTransport {
     });
     messageProcessingThread.start();
 
-    // This thread only terminates if it is interrupted
+    /*
+     * This thread only terminates if it is interrupted. Messages queued while
+     * it is sending are written together, and flushed once the queue is empty.
+     */
     Thread sendThread = new Thread(new Runnable() {
       public void run() {
+        OutputStream bufferedStream = new BufferedOutputStream(outputStream);
         while (true) {
           try {
             PendingSend pendingSend = sendQueue.take();
             try {
-              pendingSend.send(outputStream);
+              pendingSend.send(bufferedStream);
+              if (sendQueue.isEmpty()) {
+                bufferedStream.flush();
+              }
             } catch (IOException e) {
               pendingSend.failed(e);
             }
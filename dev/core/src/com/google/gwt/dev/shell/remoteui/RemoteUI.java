@@ -94,7 +94,7 @@ public class RemoteUI extends DevModeUI implements
         ViewerServiceTreeLogger moduleLogger = (ViewerServiceTreeLogger) (getLogger());
 
         try {
-          viewerServiceClient.disconnectLog(moduleLogger.getLogHandle());
+          moduleLogger.disconnect();
         } finally {
           synchronized (modulesLock) {
             modules.remove(this);
@@ -69,7 +69,21 @@ public class ViewerServiceClient {
    */
   public int addLogBranch(Type type, String msg, Throwable caught,
       HelpInfo helpInfo, int parentLogHandle, int indexInParent) {
+    return getLogBranchHandle(addLogBranchAsync(type, msg, caught, helpInfo,
+        parentLogHandle, indexInParent));
+  }
 
+  /**
+   * Add an entry that also serves as a log branch, without waiting for the
+   * viewer to respond.
+   * 
+   * @return the viewer's response, which holds the log handle of the branch;
+   *         see {@link #getLogBranchHandle(Future)}
+   * @see #addLogBranch(Type, String, Throwable, HelpInfo, int, int)
+   */
+  public Future<Response> addLogBranchAsync(Type type, String msg,
+      Throwable caught, HelpInfo helpInfo, int parentLogHandle,
+      int indexInParent) {
     LogData.Builder logDataBuilder = generateLogData(type, msg, caught,
         helpInfo);
 
@@ -85,9 +99,7 @@ public class ViewerServiceClient {
     Request requestMessage = buildRequestMessageFromViewerRequest(
         viewerRequestBuilder).build();
 
-    Future<Response> responseFuture = transport.executeRequestAsync(requestMessage);
-
-    return waitForResponseOrThrowUncheckedException(responseFuture).getViewerResponse().getAddLogBranch().getLogHandle();
+    return transport.executeRequestAsync(requestMessage);
   }
 
   /**
@@ -104,6 +116,20 @@ public class ViewerServiceClient {
    */
   public void addLogEntry(int indexOfLogEntryWithinParentLogger, Type type,
       String msg, Throwable caught, HelpInfo helpInfo, int logHandle) {
+    waitForResponseOrThrowUncheckedException(addLogEntryAsync(
+        indexOfLogEntryWithinParentLogger, type, msg, caught, helpInfo,
+        logHandle));
+  }
+
+  /**
+   * Add a log entry without waiting for the viewer to respond.
+   * 
+   * @return the viewer's response
+   * @see #addLogEntry(int, Type, String, Throwable, HelpInfo, int)
+   */
+  public Future<Response> addLogEntryAsync(
+      int indexOfLogEntryWithinParentLogger, Type type, String msg,
+      Throwable caught, HelpInfo helpInfo, int logHandle) {
     LogData.Builder logDataBuilder = generateLogData(type, msg, caught,
         helpInfo);
 
@@ -119,8 +145,7 @@ public class ViewerServiceClient {
     Request requestMessage = buildRequestMessageFromViewerRequest(
         viewerRequestBuilder).build();
 
-    Future<Response> responseFuture = transport.executeRequestAsync(requestMessage);
-    waitForResponseOrThrowUncheckedException(responseFuture);
+    return transport.executeRequestAsync(requestMessage);
   }
 
   /**
@@ -226,6 +251,16 @@ public class ViewerServiceClient {
     waitForResponseOrThrowUncheckedException(responseFuture);
   }
 
+  /**
+   * Waits for the viewer's response to
+   * {@link #addLogBranchAsync(Type, String, Throwable, HelpInfo, int, int)}.
+   * 
+   * @return the log handle of the newly-created branch logger
+   */
+  public int getLogBranchHandle(Future<Response> addLogBranchResponse) {
+    return waitForResponseOrThrowUncheckedException(addLogBranchResponse).getViewerResponse().getAddLogBranch().getLogHandle();
+  }
+
   public void initialize(String clientId, List<String> startupURLs) {
     ViewerRequest.Initialize.Builder initializationBuilder = ViewerRequest.Initialize.newBuilder();
     initializationBuilder.setClientId(clientId);
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell.remoteui;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.TreeLogger.HelpInfo;
+import com.google.gwt.core.ext.TreeLogger.Type;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Response;
+
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ships the entries and branches of a tree of {@link ViewerServiceTreeLogger}s
+ * to the viewer on a background thread, so that logging does not wait for the
+ * viewer to respond to each entry.
+ *
+ * Entries wait in a bounded buffer. An entry that repeats the one queued just
+ * before it is coalesced into it. When the buffer is full, entries below
+ * {@link TreeLogger#INFO} are dropped and counted, and the count is logged once
+ * there is room again. More important entries and branches wait for room
+ * instead, which slows down whatever is logging them. An entry the transport
+ * gives up on, because the viewer stopped responding, is dropped.
+ *
+ * The buffer only fills up if the viewer is slow: at most a fixed number of
+ * entries may be waiting for the viewer's response, and the background thread
+ * waits for the oldest of them before shipping more. Entries that are
+ * coalesced or dropped leave no gaps in the indices the viewer sees; the
+ * indices of the entries that are shipped are renumbered instead.
+ */
+final class ViewerServiceLogQueue {
+
+  /**
+   * An entry or branch waiting to be shipped.
+   */
+  private static class QueuedEntry {
+    /**
+     * The branch this entry commits, or <code>null</code> for a plain entry.
+     */
+    final ViewerServiceTreeLogger branch;
+    final Throwable caught;
+    final HelpInfo helpInfo;
+    final int index;
+    final ViewerServiceTreeLogger logger;
+    final String msg;
+    int repeats = 1;
+    final Type type;
+
+    QueuedEntry(ViewerServiceTreeLogger logger,
+        ViewerServiceTreeLogger branch, int index, Type type, String msg,
+        Throwable caught, HelpInfo helpInfo) {
+      this.logger = logger;
+      this.branch = branch;
+      this.index = index;
+      this.type = type;
+      this.msg = msg;
+      this.caught = caught;
+      this.helpInfo = helpInfo;
+    }
+
+    boolean isRepeatedBy(ViewerServiceTreeLogger otherLogger,
+        ViewerServiceTreeLogger otherBranch, Type otherType, String otherMsg,
+        Throwable otherCaught, HelpInfo otherHelpInfo) {
+      return branch == null && otherBranch == null && caught == null
+          && otherCaught == null && helpInfo == null && otherHelpInfo == null
+          && logger == otherLogger && type == otherType && msg.equals(otherMsg);
+    }
+  }
+
+  /**
+   * The entry indices of one logger that were never shipped, because their
+   * entries were coalesced or dropped. They are kept as runs of consecutive
+   * indices, which is how entries are usually skipped. Guarded by the queue's
+   * lock.
+   */
+  static final class SkippedIndices {
+    /**
+     * The first index of each run and the index just past it, in increasing
+     * order.
+     */
+    private int[] runs = new int[8];
+    private int runCount;
+    private int total;
+
+    void add(int index) {
+      // Entries are skipped in order unless threads race, so this is usually
+      // the last run.
+      int i = runCount;
+      while (i > 0 && runs[2 * i - 2] > index) {
+        --i;
+      }
+      if (i > 0 && runs[2 * i - 1] == index) {
+        ++runs[2 * i - 1];
+        if (i < runCount && runs[2 * i] == index + 1) {
+          runs[2 * i - 1] = runs[2 * i + 1];
+          System.arraycopy(runs, 2 * i + 2, runs, 2 * i, 2 * (runCount - i - 1));
+          --runCount;
+        }
+      } else if (i < runCount && runs[2 * i] == index + 1) {
+        runs[2 * i] = index;
+      } else {
+        if (2 * runCount == runs.length) {
+          int[] newRuns = new int[runs.length * 2];
+          System.arraycopy(runs, 0, newRuns, 0, runs.length);
+          runs = newRuns;
+        }
+        System.arraycopy(runs, 2 * i, runs, 2 * i + 2, 2 * (runCount - i));
+        runs[2 * i] = index;
+        runs[2 * i + 1] = index + 1;
+        ++runCount;
+      }
+      ++total;
+    }
+
+    /**
+     * Returns the index the viewer sees for an entry: its index less the number
+     * of skipped indices before it.
+     */
+    int renumber(int index) {
+      if (runCount == 0 || index >= runs[2 * runCount - 1]) {
+        return index - total;
+      }
+      int skipped = 0;
+      for (int i = 0; i < runCount && runs[2 * i] < index; ++i) {
+        skipped += Math.min(runs[2 * i + 1], index) - runs[2 * i];
+      }
+      return index - skipped;
+    }
+  }
+
+  static final int DEFAULT_CAPACITY = 4096;
+
+  /**
+   * The default number of entries that may wait for the viewer's response.
+   */
+  static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+  private final LinkedList<QueuedEntry> buffer = new LinkedList<QueuedEntry>();
+
+  private final int capacity;
+
+  private final ViewerServiceClient client;
+
+  private boolean closed;
+
+  /**
+   * The number of entries dropped since the last summary was queued.
+   */
+  private int dropped;
+
+  /**
+   * Signalled when the buffer is empty and nothing is being shipped.
+   */
+  private final Condition idle;
+
+  /**
+   * The responses the viewer still owes, oldest first; only the shipper thread
+   * uses it.
+   */
+  private final LinkedList<Future<Response>> inFlight = new LinkedList<Future<Response>>();
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final int maxInFlight;
+
+  /**
+   * Signalled when an entry is queued.
+   */
+  private final Condition notEmpty;
+
+  /**
+   * Signalled when an entry leaves the buffer.
+   */
+  private final Condition notFull;
+
+  /**
+   * The response to the last entry shipped; only the shipper thread writes it.
+   */
+  private volatile Future<Response> lastResponse;
+
+  private Thread shipper;
+
+  /**
+   * Whether the shipper thread has taken an entry it has not yet sent.
+   */
+  private boolean shipping;
+
+  ViewerServiceLogQueue(ViewerServiceClient client, int capacity,
+      int maxInFlight) {
+    this.client = client;
+    this.capacity = capacity;
+    this.maxInFlight = maxInFlight;
+    idle = lock.newCondition();
+    notEmpty = lock.newCondition();
+    notFull = lock.newCondition();
+  }
+
+  /**
+   * Queues an entry, or a branch if <code>branch</code> is not
+   * <code>null</code>.
+   *
+   * @param logger the logger the entry or branch is logged in
+   * @param index the index of the entry or branch within <code>logger</code>
+   */
+  void add(ViewerServiceTreeLogger logger, ViewerServiceTreeLogger branch,
+      int index, Type type, String msg, Throwable caught, HelpInfo helpInfo) {
+    lock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      QueuedEntry last = buffer.isEmpty() ? null : buffer.getLast();
+      if (last != null
+          && last.isRepeatedBy(logger, branch, type, msg, caught, helpInfo)) {
+        ++last.repeats;
+        logger.skippedIndices.add(index);
+        return;
+      }
+      if (buffer.size() >= capacity) {
+        if (branch == null && type.isLowerPriorityThan(TreeLogger.INFO)) {
+          ++dropped;
+          logger.skippedIndices.add(index);
+          return;
+        }
+        while (buffer.size() >= capacity && !closed) {
+          notFull.awaitUninterruptibly();
+        }
+      }
+      if (dropped > 0) {
+        // The summary may exceed the capacity by one.
+        int summaryIndex = logger.allocateEntryIndex();
+        buffer.addLast(new QueuedEntry(logger, null,
+            logger.skippedIndices.renumber(summaryIndex), TreeLogger.WARN,
+            dropped
+                + " log entries were dropped because the viewer could not "
+                + "keep up", null, null));
+        dropped = 0;
+      }
+      buffer.addLast(new QueuedEntry(logger, branch,
+          logger.skippedIndices.renumber(index), type, msg, caught, helpInfo));
+      notEmpty.signal();
+      if (shipper == null) {
+        shipper = new Thread(new Runnable() {
+          public void run() {
+            ship();
+          }
+        }, "ViewerServiceLogQueue");
+        shipper.setDaemon(true);
+        shipper.start();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Ships what is queued, then stops; later entries are ignored.
+   */
+  void close() {
+    flush();
+    lock.lock();
+    try {
+      closed = true;
+      notFull.signalAll();
+      if (shipper != null) {
+        shipper.interrupt();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until everything queued so far has been shipped and the viewer has
+   * responded to it.
+   */
+  void flush() {
+    lock.lock();
+    try {
+      while (shipper != null && (shipping || !buffer.isEmpty())) {
+        idle.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+    Future<Response> response = lastResponse;
+    if (response != null) {
+      waitFor(response);
+    }
+  }
+
+  private void send(QueuedEntry entry) {
+    String msg = entry.msg;
+    if (entry.repeats > 1) {
+      msg += " (repeated " + entry.repeats + " times)";
+    }
+    try {
+      int logHandle = entry.logger.resolveLogHandle();
+      while (!inFlight.isEmpty()
+          && (inFlight.size() >= maxInFlight || inFlight.getFirst().isDone())) {
+        waitFor(inFlight.removeFirst());
+      }
+      Future<Response> response;
+      if (entry.branch == null) {
+        response = client.addLogEntryAsync(entry.index, entry.type, msg,
+            entry.caught, entry.helpInfo, logHandle);
+      } else {
+        response = client.addLogBranchAsync(entry.type, msg, entry.caught,
+            entry.helpInfo, logHandle, entry.index);
+        entry.branch.setPendingLogHandle(response);
+      }
+      inFlight.addLast(response);
+      lastResponse = response;
+    } catch (RuntimeException e) {
+      // The viewer is gone or rejected a branch; there is nowhere to report it.
+    }
+  }
+
+  private void waitFor(Future<Response> response) {
+    try {
+      response.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // The viewer rejected the entry; there is nowhere to report it.
+    }
+  }
+
+  private void ship() {
+    while (true) {
+      QueuedEntry entry;
+      lock.lock();
+      try {
+        shipping = false;
+        while (buffer.isEmpty()) {
+          idle.signalAll();
+          try {
+            notEmpty.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        entry = buffer.removeFirst();
+        shipping = true;
+        notFull.signal();
+      } finally {
+        lock.unlock();
+      }
+      send(entry);
+    }
+  }
+}
@@ -15,14 +15,34 @@
  */
 package com.google.gwt.dev.shell.remoteui;
 
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Response;
 import com.google.gwt.dev.util.log.AbstractTreeLogger;
 
+import java.util.concurrent.Future;
+
 /**
- * A tree logger that creates log entries using a ViewerService.
+ * A tree logger that creates log entries using a ViewerService. Entries are
+ * shipped to the viewer on a background thread, through a
+ * {@link ViewerServiceLogQueue} shared by the logger and its branches; see
+ * {@link #flush()} and {@link #disconnect()}.
  */
 public final class ViewerServiceTreeLogger extends AbstractTreeLogger {
 
-  private int logHandle = -1;
+  private volatile int logHandle = -1;
+
+  /**
+   * The viewer's response to the request that created this branch, until the
+   * handle has been read from it.
+   */
+  private volatile Future<Response> pendingLogHandle;
+
+  private final ViewerServiceLogQueue queue;
+
+  /**
+   * The indices of entries the queue never shipped to the viewer.
+   */
+  final ViewerServiceLogQueue.SkippedIndices skippedIndices = new ViewerServiceLogQueue.SkippedIndices();
+
   private final ViewerServiceClient viewerServiceClient;
 
   /**
@@ -32,43 +52,81 @@ public final class ViewerServiceTreeLogger extends AbstractTreeLogger {
    *          viewer service server.
    */
   public ViewerServiceTreeLogger(ViewerServiceClient viewerServiceClient) {
+    this(viewerServiceClient, ViewerServiceLogQueue.DEFAULT_CAPACITY,
+        ViewerServiceLogQueue.DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  /**
+   * Creates a new instance that holds at most <code>capacity</code> entries
+   * waiting to be shipped, and at most <code>maxInFlight</code> entries waiting
+   * for the viewer's response.
+   */
+  // @VisibleForTesting
+  ViewerServiceTreeLogger(ViewerServiceClient viewerServiceClient,
+      int capacity, int maxInFlight) {
+    this(viewerServiceClient, new ViewerServiceLogQueue(viewerServiceClient,
+        capacity, maxInFlight));
+  }
+
+  private ViewerServiceTreeLogger(ViewerServiceClient viewerServiceClient,
+      ViewerServiceLogQueue queue) {
     this.viewerServiceClient = viewerServiceClient;
+    this.queue = queue;
+  }
+
+  /**
+   * Ships the entries logged so far, then disconnects this logger from the
+   * viewer. Entries logged afterwards, in this logger or its branches, are
+   * ignored.
+   */
+  public void disconnect() {
+    queue.close();
+    viewerServiceClient.disconnectLog(resolveLogHandle());
   }
 
   /**
    * Creates a new logger for a branch. Note that the logger's handle has not
-   * been set as yet; it will only be set once the branch is committed.
+   * been set as yet; it will only be set once the branch is committed and
+   * shipped to the viewer.
    */
   @Override
   public AbstractTreeLogger doBranch() {
     ViewerServiceTreeLogger childLogger = new ViewerServiceTreeLogger(
-        viewerServiceClient);
+        viewerServiceClient, queue);
     return childLogger;
   }
 
   /**
-   * Commits the branch, and sets the log handle of the branch logger.
+   * Commits the branch. The log handle of the branch logger is set once the
+   * branch has been shipped to the viewer.
    */
   @Override
   public void doCommitBranch(AbstractTreeLogger childBeingCommitted, Type type,
       String msg, Throwable caught, HelpInfo helpInfo) {
-    int branchLogHandle = viewerServiceClient.addLogBranch(type, msg, caught,
-        helpInfo, getLogHandle(), childBeingCommitted.getBranchedIndex());
-    ((ViewerServiceTreeLogger) childBeingCommitted).setLogHandle(branchLogHandle);
+    queue.add(this, (ViewerServiceTreeLogger) childBeingCommitted,
+        childBeingCommitted.getBranchedIndex(), type, msg, caught, helpInfo);
   }
 
   @Override
   public void doLog(int indexOfLogEntryWithinParentLogger, Type type,
       String msg, Throwable caught, HelpInfo helpInfo) {
-    viewerServiceClient.addLogEntry(indexOfLogEntryWithinParentLogger, type,
-        msg, caught, helpInfo, getLogHandle());
+    queue.add(this, null, indexOfLogEntryWithinParentLogger, type, msg, caught,
+        helpInfo);
+  }
+
+  /**
+   * Waits until the entries logged so far, in this logger and the loggers it
+   * shares a root with, have reached the viewer.
+   */
+  public void flush() {
+    queue.flush();
   }
 
   /**
    * Get the handle of this logger. The handle is generated by the viewer
    * service when this logger is first created. If this logger was created as a
    * branch of another logger, then the handle will not be available until the
-   * branch has been committed.
+   * branch has been committed and shipped.
    * 
    * @return the handle for this logger, or -1 if it has not been set
    */
@@ -79,4 +137,28 @@ public final class ViewerServiceTreeLogger extends AbstractTreeLogger {
   public void setLogHandle(int logHandle) {
     this.logHandle = logHandle;
   }
+
+  /**
+   * Allocates an index for an entry the queue logs on its own behalf.
+   */
+  int allocateEntryIndex() {
+    return allocateNextChildIndex();
+  }
+
+  /**
+   * Returns the handle of this logger, waiting for the viewer to create it if
+   * necessary.
+   */
+  int resolveLogHandle() {
+    Future<Response> pending = pendingLogHandle;
+    if (logHandle == -1 && pending != null) {
+      logHandle = viewerServiceClient.getLogBranchHandle(pending);
+      pendingLogHandle = null;
+    }
+    return logHandle;
+  }
+
+  void setPendingLogHandle(Future<Response> pendingLogHandle) {
+    this.pendingLogHandle = pendingLogHandle;
+  }
 }
@@ -115,6 +115,13 @@ public class HostedModeClassRewriter {
     Set<String> getSingleJsoIntfTypes();
   }
 
+  /**
+   * Identifies the output of this rewriter in {@link RewrittenClassCache}.
+   * Increment this whenever a change to any of the rewriting visitors would
+   * produce different bytes for the same input.
+   */
+  public static final int VERSION = 1;
+
   static final String JAVASCRIPTOBJECT_DESC = JsValueGlue.JSO_CLASS.replace(
       '.', '/');
 
@@ -217,32 +224,27 @@ public class HostedModeClassRewriter {
    */
   public byte[] rewrite(TypeOracle typeOracle, String className,
       byte[] classBytes, Map<String, String> anonymousClassMap) {
-    String desc = toDescriptor(className);
-    assert (!jsoIntfDescs.contains(desc));
-
-    // The ASM model is to chain a bunch of visitors together.
-    ClassWriter writer = new ClassWriter(0);
-    ClassVisitor v = writer;
-
-    // v = new CheckClassAdapter(v);
-    // v = new TraceClassVisitor(v, new PrintWriter(System.out));
-
-    v = new RewriteSingleJsoImplDispatches(v, typeOracle, jsoData);
-
-    v = new RewriteRefsToJsoClasses(v, jsoIntfDescs, mapper);
-
-    if (jsoImplDescs.contains(desc)) {
-      v = WriteJsoImpl.create(v, desc, jsoIntfDescs, mapper, jsoData);
-    }
-
-    v = new RewriteJsniMethods(v, anonymousClassMap);
-
-    if (Double.parseDouble(System.getProperty("java.class.version")) < Opcodes.V1_6) {
-      v = new ForceClassVersion15(v);
-    }
+    return rewrite(typeOracle, null, className, classBytes, anonymousClassMap);
+  }
 
-    new ClassReader(classBytes).accept(v, 0);
-    return writer.toByteArray();
+  /**
+   * Performs rewriting transformations on a class without using the type
+   * oracle, so that several classes may be rewritten at once.
+   * 
+   * @param singleJsoImplSupertypes maps the internal name of each interface to
+   *          the SingleJsoImpl interfaces among its supertypes, including
+   *          itself; interfaces with none may be left out
+   * @param className the name of the class
+   * @param classBytes the bytes of the class
+   * @param anonymousClassMap a map between the anonymous class names of java
+   *          compiler used to compile code and jdt. Emma-specific.
+   */
+  public byte[] rewrite(
+      Map<String, ? extends Set<String>> singleJsoImplSupertypes,
+      String className, byte[] classBytes,
+      Map<String, String> anonymousClassMap) {
+    return rewrite(null, singleJsoImplSupertypes, className, classBytes,
+        anonymousClassMap);
   }
 
   public byte[] writeJsoIntf(String className) {
@@ -272,4 +274,42 @@ public class HostedModeClassRewriter {
     v.visitEnd();
     return writer.toByteArray();
   }
+
+  private byte[] rewrite(TypeOracle typeOracle,
+      Map<String, ? extends Set<String>> singleJsoImplSupertypes,
+      String className, byte[] classBytes,
+      Map<String, String> anonymousClassMap) {
+    String desc = toDescriptor(className);
+    assert (!jsoIntfDescs.contains(desc));
+
+    // The ASM model is to chain a bunch of visitors together.
+    ClassWriter writer = new ClassWriter(0);
+    ClassVisitor v = writer;
+
+    // v = new CheckClassAdapter(v);
+    // v = new TraceClassVisitor(v, new PrintWriter(System.out));
+
+    if (typeOracle != null) {
+      v = new RewriteSingleJsoImplDispatches(v, typeOracle, jsoData);
+    } else {
+      v = new RewriteSingleJsoImplDispatches(v, singleJsoImplSupertypes,
+          jsoData);
+    }
+
+    v = new RewriteRefsToJsoClasses(v, jsoIntfDescs, mapper);
+
+    if (jsoImplDescs.contains(desc)) {
+      v = WriteJsoImpl.create(v, desc, jsoIntfDescs, mapper, jsoData);
+    }
+
+    v = new RewriteJsniMethods(v, anonymousClassMap);
+
+    if (Double.parseDouble(System.getProperty("java.class.version")) < Opcodes.V1_6) {
+      v = new ForceClassVersion15(v);
+    }
+
+    new ClassReader(classBytes).accept(v, 0);
+    return writer.toByteArray();
+  }
+
 }
@@ -130,6 +130,7 @@ public class RewriteSingleJsoImplDispatches extends ClassAdapter {
   private boolean inSingleJsoImplInterfaceType;
   private Map<String, Set<String>> intfNamesToAllInterfaces = Maps.create();
   private final SingleJsoImplData jsoData;
+  private final Map<String, ? extends Set<String>> singleJsoImplSupertypes;
   private final TypeOracle typeOracle;
 
   public RewriteSingleJsoImplDispatches(ClassVisitor v, TypeOracle typeOracle,
@@ -137,6 +138,24 @@ public class RewriteSingleJsoImplDispatches extends ClassAdapter {
     super(v);
     this.typeOracle = typeOracle;
     this.jsoData = jsoData;
+    this.singleJsoImplSupertypes = null;
+  }
+
+  /**
+   * Creates a visitor that does not use the type oracle, so that several
+   * classes may be rewritten at once.
+   * 
+   * @param singleJsoImplSupertypes maps the internal name of each interface to
+   *          the SingleJsoImpl interfaces among its supertypes, including
+   *          itself; interfaces with none may be left out
+   */
+  public RewriteSingleJsoImplDispatches(ClassVisitor v,
+      Map<String, ? extends Set<String>> singleJsoImplSupertypes,
+      SingleJsoImplData jsoData) {
+    super(v);
+    this.typeOracle = null;
+    this.jsoData = jsoData;
+    this.singleJsoImplSupertypes = singleJsoImplSupertypes;
   }
 
   @Override
@@ -212,7 +231,16 @@ public class RewriteSingleJsoImplDispatches extends ClassAdapter {
     return new MyMethodVisitor(mv);
   }
 
+  /**
+   * Returns the interface and its superinterfaces. Callers only look at the
+   * SingleJsoImpl interfaces, which are all that is returned when the
+   * interfaces were computed up front.
+   */
   private Set<String> computeAllInterfaces(String intfName) {
+    if (singleJsoImplSupertypes != null) {
+      Set<String> toReturn = singleJsoImplSupertypes.get(intfName);
+      return toReturn == null ? Collections.<String> emptySet() : toReturn;
+    }
     Set<String> toReturn = intfNamesToAllInterfaces.get(intfName);
     if (toReturn != null) {
       return toReturn;
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell.rewrite;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An on-disk cache of the classes produced by {@link HostedModeClassRewriter},
+ * so that reloading a module whose code has not changed does not rewrite every
+ * class again.
+ *
+ * Rewriting a class depends on the class itself and on global state: the JSO
+ * type hierarchy, the methods JSOs declare, and the SingleJsoImpl interfaces.
+ * The caller summarizes the global state as a rewriter hash, and each
+ * generation of that state gets its own subdirectory. A change to the JSO
+ * hierarchy therefore starts a new generation, and entries written under the
+ * old one are never read. Generations unused for a week are deleted.
+ *
+ * A cache may be used by several threads at once.
+ */
+public class RewrittenClassCache {
+
+  private static final long STALE_GENERATION_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+  /**
+   * Creates a cache.
+   *
+   * @param logger logs problems with the cache directory
+   * @param cacheDir the directory shared by all generations
+   * @param rewriterHash summarizes all global state the rewriter depends on,
+   *          including {@link HostedModeClassRewriter#VERSION}
+   * @return the cache, or <code>null</code> if the directory is unusable
+   */
+  public static RewrittenClassCache create(TreeLogger logger, File cacheDir,
+      String rewriterHash) {
+    File generationDir = new File(cacheDir, rewriterHash);
+    if (!generationDir.isDirectory() && !generationDir.mkdirs()) {
+      logger.log(TreeLogger.WARN, "Unable to create rewritten class cache "
+          + generationDir + "; classes will not be cached");
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    generationDir.setLastModified(now);
+    File[] generations = cacheDir.listFiles();
+    if (generations != null) {
+      for (File generation : generations) {
+        if (generation.isDirectory() && !generation.equals(generationDir)
+            && generation.lastModified() < now - STALE_GENERATION_MILLIS) {
+          Util.recursiveDelete(generation, false);
+        }
+      }
+    }
+    return new RewrittenClassCache(generationDir);
+  }
+
+  /**
+   * Computes the key for one class.
+   *
+   * @param className the binary name of the class
+   * @param classBytes the bytes of the class before rewriting
+   * @param anonymousClassMap the map passed to
+   *          {@link HostedModeClassRewriter#rewrite}
+   * @param dependencies anything else about other types that affects how this
+   *          class is rewritten, in a deterministic order
+   */
+  public static String computeKey(String className, byte[] classBytes,
+      Map<String, String> anonymousClassMap, Collection<String> dependencies) {
+    List<byte[]> contents = new ArrayList<byte[]>();
+    contents.add(Util.getBytes(className));
+    contents.add(classBytes);
+    for (Map.Entry<String, String> entry : new TreeMap<String, String>(
+        anonymousClassMap).entrySet()) {
+      contents.add(Util.getBytes(entry.getKey()));
+      contents.add(Util.getBytes(entry.getValue()));
+    }
+    for (String dependency : dependencies) {
+      contents.add(Util.getBytes(dependency));
+    }
+    return Util.computeStrongName(contents.toArray(new byte[contents.size()][]));
+  }
+
+  private final File generationDir;
+
+  private final AtomicInteger hits = new AtomicInteger();
+
+  private final AtomicInteger misses = new AtomicInteger();
+
+  private RewrittenClassCache(File generationDir) {
+    this.generationDir = generationDir;
+  }
+
+  /**
+   * Returns the rewritten bytes for a key, or <code>null</code> if they are
+   * not cached.
+   */
+  public byte[] get(String key) {
+    File file = getFile(key);
+    byte[] bytes = file.isFile() ? Util.readFileAsBytes(file) : null;
+    if (bytes == null || !isClassFile(bytes)) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return bytes;
+  }
+
+  public int getHits() {
+    return hits.get();
+  }
+
+  public int getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Stores rewritten bytes. Failures are logged and otherwise ignored, since
+   * the class can always be rewritten again.
+   */
+  public void put(TreeLogger logger, String key, byte[] rewrittenBytes) {
+    File file = getFile(key);
+    File dir = file.getParentFile();
+    File tempFile = null;
+    FileOutputStream out = null;
+    try {
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException("Unable to create " + dir);
+      }
+      // Write then rename, so a concurrent reader never sees a partial file.
+      tempFile = File.createTempFile(key, ".tmp", dir);
+      out = new FileOutputStream(tempFile);
+      out.write(rewrittenBytes);
+      out.close();
+      out = null;
+      /*
+       * The rename fails on some platforms if another process has already
+       * stored the same class; either way the temp file is deleted below.
+       */
+      if (tempFile.renameTo(file)) {
+        tempFile = null;
+      }
+    } catch (IOException e) {
+      logger.log(TreeLogger.DEBUG, "Unable to cache rewritten class", e);
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          // oh well, we tried
+        }
+      }
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  private File getFile(String key) {
+    return new File(new File(generationDir, key.substring(0, 2)),
+        key.substring(2) + ".class");
+  }
+
+  private boolean isClassFile(byte[] bytes) {
+    return bytes.length >= 4 && (bytes[0] & 0xff) == 0xca
+        && (bytes[1] & 0xff) == 0xfe && (bytes[2] & 0xff) == 0xba
+        && (bytes[3] & 0xff) == 0xbe;
+  }
+}
@@ -161,24 +161,30 @@ public class DiskCache {
 
   /**
    * Reads bytes of data back from disk and writes them into the specified
-   * output stream.
+   * output stream. The cache is only locked while reading; <code>out</code>
+   * may block, for instance until another thread has written its own data from
+   * this cache.
    */
-  public synchronized void transferToStream(long token, OutputStream out) {
+  public void transferToStream(long token, OutputStream out) {
     byte[] buf = Util.takeThreadLocalBuf();
     try {
-      atEnd = false;
-      file.seek(token);
-      int length = file.readInt();
-      int bufLen = buf.length;
-      while (length > bufLen) {
-        int read = file.read(buf, 0, bufLen);
-        length -= read;
-        out.write(buf, 0, read);
+      int length;
+      synchronized (this) {
+        atEnd = false;
+        file.seek(token);
+        length = file.readInt();
       }
+      long position = token + 4;
       while (length > 0) {
-        int read = file.read(buf, 0, length);
-        length -= read;
+        int read = Math.min(length, buf.length);
+        synchronized (this) {
+          atEnd = false;
+          file.seek(position);
+          file.readFully(buf, 0, read);
+        }
         out.write(buf, 0, read);
+        position += read;
+        length -= read;
       }
     } catch (IOException e) {
       throw new RuntimeException("Unable to read from byte cache", e);
@@ -17,6 +17,7 @@ package com.google.gwt.dev.util;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -25,7 +26,7 @@ import java.util.Set;
  */
 public abstract class OutputFileSet {
   private final String pathDescription;
-  private final Set<String> pathsSeen = new HashSet<String>();
+  private final Set<String> pathsSeen = Collections.synchronizedSet(new HashSet<String>());
 
   protected OutputFileSet(String pathDescription) {
     this.pathDescription = pathDescription;
@@ -35,6 +36,16 @@ public abstract class OutputFileSet {
     return pathsSeen.contains(path);
   }
 
+  /**
+   * Returns whether several files may be open and written from several threads
+   * at once. Otherwise, each file must be closed before the next is opened.
+   * Either way, files should be opened in a stable order, since an archive
+   * keeps its entries in the order they were opened.
+   */
+  public boolean canWriteConcurrently() {
+    return false;
+  }
+
   public abstract void close() throws IOException;
 
   /**
@@ -17,10 +17,13 @@ package com.google.gwt.dev.util;
 
 import com.google.gwt.dev.util.NullOutputFileSet.NullOutputStream;
 import com.google.gwt.dev.util.collect.HashSet;
+import com.google.gwt.util.tools.Utility;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Set;
 
@@ -28,25 +31,158 @@ import java.util.Set;
  * An {@link OutputFileSet} on a directory.
  */
 public class OutputFileSetOnDirectory extends OutputFileSet {
+
+  /**
+   * Writes a file only if its new contents differ from what is already there.
+   * The new contents are compared with the existing file as they are written;
+   * at the first difference, they are redirected to a temporary file that
+   * replaces the existing one when closed. An unchanged file, including its
+   * timestamp, is left alone.
+   */
+  private static final class ChangedContentOutputStream extends OutputStream {
+    private final byte[] compareBuf = new byte[8192];
+    private InputStream existing;
+    private final File file;
+    private final long lastModifiedTime;
+    private long matched;
+    private OutputStream out;
+    private File tempFile;
+
+    ChangedContentOutputStream(File file, long lastModifiedTime)
+        throws IOException {
+      this.file = file;
+      this.lastModifiedTime = lastModifiedTime;
+      existing = new FileInputStream(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (out == null) {
+        if (existing.read() < 0) {
+          // Same contents.
+          existing.close();
+          return;
+        }
+        diverge();
+      }
+      out.close();
+      if (!tempFile.renameTo(file)) {
+        file.delete();
+        if (!tempFile.renameTo(file)) {
+          tempFile.delete();
+          throw new IOException("Unable to replace " + file);
+        }
+      }
+      if (lastModifiedTime >= 0) {
+        file.setLastModified(lastModifiedTime);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (out == null && !matches(b, off, len)) {
+        diverge();
+      }
+      if (out != null) {
+        out.write(b, off, len);
+      } else {
+        matched += len;
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    /**
+     * Starts writing the new contents to a temporary file, beginning with the
+     * part that matched the existing file.
+     */
+    private void diverge() throws IOException {
+      existing.close();
+      tempFile = File.createTempFile(file.getName(), ".tmp",
+          file.getParentFile());
+      out = new FileOutputStream(tempFile);
+      if (matched > 0) {
+        InputStream in = new FileInputStream(file);
+        try {
+          long remaining = matched;
+          int n;
+          while (remaining > 0
+              && (n = in.read(compareBuf, 0, (int) Math.min(
+                  compareBuf.length, remaining))) > 0) {
+            out.write(compareBuf, 0, n);
+            remaining -= n;
+          }
+        } finally {
+          Utility.close(in);
+        }
+      }
+    }
+
+    private boolean matches(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        int n = existing.read(compareBuf, 0, Math.min(compareBuf.length, len));
+        if (n <= 0) {
+          return false;
+        }
+        for (int i = 0; i < n; ++i) {
+          if (compareBuf[i] != b[off + i]) {
+            return false;
+          }
+        }
+        off += n;
+        len -= n;
+      }
+      return true;
+    }
+  }
+
   private final Set<String> createdDirs = new HashSet<String>();
   private final File dir;
   private final String prefix;
+  private final boolean removeUnwritten;
 
   public OutputFileSetOnDirectory(File dir, String prefix) {
+    this(dir, prefix, false);
+  }
+
+  /**
+   * @param removeUnwritten if <code>true</code>, files are rewritten only if
+   *          their contents change, and on {@link #close()} any files under
+   *          the prefix that were not written are removed, so that the
+   *          directory ends up holding exactly the files written
+   */
+  public OutputFileSetOnDirectory(File dir, String prefix,
+      boolean removeUnwritten) {
     super(dir.getAbsolutePath());
     this.dir = dir;
     this.prefix = prefix;
+    this.removeUnwritten = removeUnwritten;
+  }
+
+  @Override
+  public boolean canWriteConcurrently() {
+    return true;
   }
 
   @Override
   public void close() {
+    if (removeUnwritten) {
+      removeUnwritten(pathToFile(""), "");
+    }
   }
 
   @Override
   protected OutputStream createNewOutputStream(String path,
       final long lastModifiedTime) throws IOException {
     final File file = pathToFile(path);
-    if (file.exists() && file.lastModified() >= lastModifiedTime) {
+    if (removeUnwritten) {
+      if (file.isFile()) {
+        return new ChangedContentOutputStream(file, lastModifiedTime);
+      }
+    } else if (file.exists() && file.lastModified() >= lastModifiedTime) {
       return new NullOutputStream();
     }
 
@@ -64,7 +200,7 @@ public class OutputFileSetOnDirectory extends OutputFileSet {
    * A faster bulk version of {@link File#mkdirs()} that avoids recreating the
    * same directory multiple times.
    */
-  private void mkdirs(File dir) {
+  private synchronized void mkdirs(File dir) {
     if (dir == null) {
       return;
     }
@@ -86,4 +222,27 @@ public class OutputFileSetOnDirectory extends OutputFileSet {
     }
     return file;
   }
+
+  /**
+   * Removes the files under a directory that were not written, and then the
+   * directory itself if it is left empty.
+   */
+  private void removeUnwritten(File dir, String dirPath) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      String childPath = dirPath + child.getName();
+      if (child.isDirectory()) {
+        removeUnwritten(child, childPath + "/");
+      } else if (!alreadyContains(childPath)) {
+        child.delete();
+      }
+    }
+    if (dirPath.length() > 0) {
+      // Only succeeds if empty.
+      dir.delete();
+    }
+  }
 }
@@ -22,36 +22,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Set;
-import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 /**
- * An {@link OutputFileSet} on a jar file.
+ * An {@link OutputFileSet} on a jar file. Files may be written from several
+ * threads at once; they are compressed into the jar by a
+ * {@link StreamingJarWriter}, in the order they were opened.
  */
 public class OutputFileSetOnJar extends OutputFileSet {
-  /**
-   * An output stream on a jar entry for <code>jar</code>. It is assumed that
-   * the entry has already been written, so this class only has to forward the
-   * writes.
-   */
-  private final class OutputStreamOnJarEntry extends OutputStream {
-    @Override
-    public void close() throws IOException {
-      jar.closeEntry();
-    }
-
-    @Override
-    public void write(byte b[], int off, int len) throws IOException {
-      jar.write(b, off, len);
-    }
-
-    @Override
-    public void write(int b) throws IOException {
-      jar.write(b);
-    }
-  }
-
   /**
    * Returns the parent path of forward-slash based partial path. Assumes the
    * given path does not end with a trailing slash.
@@ -64,34 +43,38 @@ public class OutputFileSetOnJar extends OutputFileSet {
 
   private Set<String> createdDirs = new HashSet<String>();
 
-  private final JarOutputStream jar;
+  private final StreamingJarWriter jar;
 
   private final String pathPrefix;
 
   public OutputFileSetOnJar(File jarFile, String pathPrefix) throws IOException {
     super(jarFile.getAbsolutePath());
     jarFile.delete();
-    jar = new JarOutputStream(new FileOutputStream(jarFile));
+    jar = new StreamingJarWriter(new FileOutputStream(jarFile),
+        jarFile.getName());
     this.pathPrefix = pathPrefix;
   }
 
+  @Override
+  public boolean canWriteConcurrently() {
+    return true;
+  }
+
   @Override
   public void close() throws IOException {
     jar.close();
   }
 
   @Override
-  public OutputStream createNewOutputStream(String path, long lastModifiedTime)
-      throws IOException {
+  public synchronized OutputStream createNewOutputStream(String path,
+      long lastModifiedTime) throws IOException {
     mkzipDirs(getParentPath(pathPrefix + path));
 
     ZipEntry zipEntry = new ZipEntry(pathPrefix + path);
     if (lastModifiedTime >= 0) {
       zipEntry.setTime(lastModifiedTime);
     }
-    jar.putNextEntry(zipEntry);
-
-    return new OutputStreamOnJarEntry();
+    return jar.openEntry(zipEntry);
   }
 
   /**
@@ -113,7 +96,7 @@ public class OutputFileSetOnJar extends OutputFileSet {
     entry.setCompressedSize(0);
     entry.setCrc(0);
     entry.setMethod(ZipOutputStream.STORED);
-    jar.putNextEntry(entry);
+    jar.openEntry(entry).close();
     createdDirs.add(path);
   }
 }
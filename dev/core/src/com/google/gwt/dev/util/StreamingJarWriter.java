@@ -0,0 +1,265 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a jar whose entries may be written from several threads at once. The
+ * contents of each entry are handed in chunks to a single writer thread, which
+ * compresses the entries into the jar in the order they were opened, while the
+ * threads writing them go on producing their contents.
+ *
+ * Each open entry holds only a few chunks; a thread writing an entry that is
+ * not yet being compressed blocks once those are full, until the entries
+ * opened before it are closed. So memory use does not depend on the size of the
+ * entries, but every entry opened must be closed, and a thread must close each
+ * entry before it opens the next one.
+ */
+public class StreamingJarWriter {
+
+  /**
+   * A chunk of the contents of an entry.
+   */
+  private static final class Chunk {
+    private final byte[] bytes;
+    private final int length;
+
+    public Chunk(byte[] bytes, int length) {
+      this.bytes = bytes;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Forwards the contents of one entry to the writer thread.
+   */
+  private final class EntryOutputStream extends OutputStream {
+    private byte[] buf;
+    private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<Chunk>(
+        CHUNKS_PER_ENTRY);
+    private boolean closed;
+    private int count;
+    private final ZipEntry entry;
+
+    public EntryOutputStream(ZipEntry entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        if (count > 0) {
+          flushChunk();
+        }
+      } finally {
+        // The writer thread waits for the end even if the jar has failed.
+        buf = null;
+        put(END_OF_ENTRY);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      ensureOpen();
+      while (len > 0) {
+        if (buf == null) {
+          buf = takeBuffer();
+        }
+        int n = Math.min(len, buf.length - count);
+        System.arraycopy(b, off, buf, count, n);
+        count += n;
+        off += n;
+        len -= n;
+        if (count == buf.length) {
+          flushChunk();
+        }
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      ensureOpen();
+      if (buf == null) {
+        buf = takeBuffer();
+      }
+      buf[count++] = (byte) b;
+      if (count == buf.length) {
+        flushChunk();
+      }
+    }
+
+    private void ensureOpen() throws IOException {
+      if (closed) {
+        throw new IOException("Jar entry " + entry.getName()
+            + " is already closed");
+      }
+    }
+
+    private void flushChunk() throws IOException {
+      checkFailure();
+      put(new Chunk(buf, count));
+      buf = null;
+      count = 0;
+    }
+
+    private void put(Chunk chunk) throws IOException {
+      try {
+        chunks.put(chunk);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted writing jar entry "
+            + entry.getName());
+      }
+    }
+  }
+
+  private static final int CHUNK_SIZE = 32 * 1024;
+
+  private static final int CHUNKS_PER_ENTRY = 4;
+
+  private static final Chunk END_OF_ENTRY = new Chunk(new byte[0], 0);
+
+  private final BlockingQueue<EntryOutputStream> entries = new LinkedBlockingQueue<EntryOutputStream>();
+
+  /**
+   * The first error writing the jar. Later entries are still drained, so that
+   * the threads writing them do not block, but they are not written.
+   */
+  private volatile IOException failure;
+
+  private final BlockingQueue<byte[]> freeBuffers = new LinkedBlockingQueue<byte[]>();
+
+  private final JarOutputStream jar;
+
+  /**
+   * Marks the end of the entries.
+   */
+  private final EntryOutputStream endOfJar = new EntryOutputStream(null);
+
+  private final Thread writerThread;
+
+  public StreamingJarWriter(OutputStream out, String name) throws IOException {
+    jar = new JarOutputStream(new BufferedOutputStream(out, CHUNK_SIZE));
+    writerThread = new Thread("Jar writer for " + name) {
+      @Override
+      public void run() {
+        writeEntries();
+      }
+    };
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Waits for every entry to be written, and closes the jar.
+   *
+   * @throws IOException if any entry could not be written
+   */
+  public void close() throws IOException {
+    entries.add(endOfJar);
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted closing jar");
+    }
+    checkFailure();
+  }
+
+  /**
+   * Opens a new entry. Entries are written to the jar in the order they are
+   * opened.
+   */
+  public OutputStream openEntry(ZipEntry entry) throws IOException {
+    checkFailure();
+    EntryOutputStream stream = new EntryOutputStream(entry);
+    entries.add(stream);
+    return stream;
+  }
+
+  private void checkFailure() throws IOException {
+    IOException e = failure;
+    if (e != null) {
+      IOException toThrow = new IOException("Error writing jar");
+      toThrow.initCause(e);
+      throw toThrow;
+    }
+  }
+
+  private void releaseBuffer(byte[] buffer) {
+    freeBuffers.offer(buffer);
+  }
+
+  private byte[] takeBuffer() {
+    byte[] buffer = freeBuffers.poll();
+    return buffer == null ? new byte[CHUNK_SIZE] : buffer;
+  }
+
+  private void writeEntries() {
+    try {
+      EntryOutputStream stream;
+      while ((stream = entries.take()) != endOfJar) {
+        writeEntry(stream);
+      }
+    } catch (InterruptedException e) {
+      failure = new InterruptedIOException("Interrupted writing jar");
+    }
+    try {
+      jar.close();
+    } catch (IOException e) {
+      if (failure == null) {
+        failure = e;
+      }
+    }
+  }
+
+  private void writeEntry(EntryOutputStream stream)
+      throws InterruptedException {
+    try {
+      if (failure == null) {
+        jar.putNextEntry(stream.entry);
+      }
+      Chunk chunk;
+      while ((chunk = stream.chunks.take()) != END_OF_ENTRY) {
+        if (failure == null) {
+          jar.write(chunk.bytes, 0, chunk.length);
+        }
+        releaseBuffer(chunk.bytes);
+      }
+      if (failure == null) {
+        jar.closeEntry();
+      }
+    } catch (IOException e) {
+      failure = e;
+      // Drain the rest of this entry.
+      while (stream.chunks.take() != END_OF_ENTRY) {
+      }
+    }
+  }
+}
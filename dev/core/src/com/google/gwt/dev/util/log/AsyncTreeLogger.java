@@ -0,0 +1,275 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.log;
+
+import com.google.gwt.core.ext.TreeLogger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A tree logger that hands its entries and branches to another logger on a
+ * background thread, so that the threads doing the logging neither format
+ * messages nor wait for one another to write them. Entries reach the other
+ * logger in the order they were logged, and with the same branch structure.
+ *
+ * Entries of type {@link TreeLogger#ERROR} are written before
+ * {@link #log(TreeLogger.Type, String, Throwable, TreeLogger.HelpInfo)}
+ * returns, so an error is always visible by the time the caller throws
+ * {@link com.google.gwt.core.ext.UnableToCompleteException}. Call
+ * {@link #flush()} wherever other output must not overtake the log, and
+ * {@link #close()} once done with the logger, to stop its thread.
+ *
+ * At most a fixed number of entries wait to be written. Beyond that, logging
+ * blocks until the background thread catches up, so a logger that writes
+ * slowly cannot make memory fill up with entries.
+ */
+public final class AsyncTreeLogger extends TreeLogger {
+
+  /**
+   * Something logged, waiting to be written.
+   */
+  private static class Event {
+    /**
+     * The logger created by a branch event, or <code>null</code> for an entry.
+     */
+    final AsyncTreeLogger branch;
+    final Throwable caught;
+    final CountDownLatch flushed;
+    final HelpInfo helpInfo;
+    final AsyncTreeLogger logger;
+    final String msg;
+    final Type type;
+
+    Event(AsyncTreeLogger logger, AsyncTreeLogger branch, Type type,
+        String msg, Throwable caught, HelpInfo helpInfo, CountDownLatch flushed) {
+      this.logger = logger;
+      this.branch = branch;
+      this.type = type;
+      this.msg = msg;
+      this.caught = caught;
+      this.helpInfo = helpInfo;
+      this.flushed = flushed;
+    }
+  }
+
+  /**
+   * The queue and background thread shared by a logger and its branches.
+   */
+  private static class Writer implements Runnable {
+    /**
+     * Tells the thread to stop.
+     */
+    private static final Event STOP = new Event(null, null, null, null, null,
+        null, null);
+
+    /**
+     * Whether the thread has stopped, after which events are written as they
+     * are added. Guarded by this writer.
+     */
+    private boolean closed;
+
+    private final BlockingQueue<Event> queue;
+
+    private final Thread thread;
+
+    Writer(int capacity) {
+      queue = new ArrayBlockingQueue<Event>(capacity);
+      thread = new Thread(this, "AsyncTreeLogger");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    public void run() {
+      while (true) {
+        Event event;
+        try {
+          event = queue.take();
+        } catch (InterruptedException e) {
+          // Only close() stops the thread.
+          continue;
+        }
+        if (event == STOP) {
+          return;
+        }
+        write(event);
+      }
+    }
+
+    /**
+     * Queues an event, waiting for room if the queue is full. Adding is
+     * serialized so that {@link #close()} cannot strand an event in the queue.
+     */
+    synchronized void add(Event event) {
+      if (closed) {
+        write(event);
+        return;
+      }
+      putUninterruptibly(event);
+    }
+
+    /**
+     * Writes everything queued, then stops the thread.
+     */
+    synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      putUninterruptibly(STOP);
+      boolean interrupted = false;
+      while (true) {
+        try {
+          thread.join();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void putUninterruptibly(Event event) {
+      boolean interrupted = false;
+      while (true) {
+        try {
+          queue.put(event);
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void write(Event event) {
+      try {
+        if (event.flushed != null) {
+          event.flushed.countDown();
+        } else if (event.branch != null) {
+          event.branch.target = event.logger.target.branch(event.type,
+              event.msg, event.caught, event.helpInfo);
+        } else {
+          event.logger.target.log(event.type, event.msg, event.caught,
+              event.helpInfo);
+        }
+      } catch (Throwable e) {
+        // Keep writing; the logger that failed is the only place to report.
+      }
+    }
+  }
+
+  /**
+   * The default number of entries that may wait to be written.
+   */
+  static final int DEFAULT_CAPACITY = 4096;
+
+  /**
+   * The logger that decides what is loggable; the root of the target tree.
+   */
+  private final TreeLogger rootTarget;
+
+  /**
+   * The logger entries are written to. Only the writer thread uses it; for a
+   * branch, it is set when the writer thread creates the branch.
+   */
+  private TreeLogger target;
+
+  private final Writer writer;
+
+  /**
+   * Creates a logger that writes to <code>target</code>, which decides what
+   * is loggable.
+   */
+  public AsyncTreeLogger(TreeLogger target) {
+    this(target, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a logger that writes to <code>target</code> and lets at most
+   * <code>capacity</code> entries wait to be written.
+   */
+  // @VisibleForTesting
+  AsyncTreeLogger(TreeLogger target, int capacity) {
+    this(target, target, new Writer(capacity));
+  }
+
+  private AsyncTreeLogger(TreeLogger rootTarget, TreeLogger target,
+      Writer writer) {
+    this.rootTarget = rootTarget;
+    this.target = target;
+    this.writer = writer;
+  }
+
+  @Override
+  public TreeLogger branch(Type type, String msg, Throwable caught,
+      HelpInfo helpInfo) {
+    AsyncTreeLogger branch = new AsyncTreeLogger(rootTarget, null, writer);
+    writer.add(new Event(this, branch, type, msg, caught, helpInfo, null));
+    return branch;
+  }
+
+  /**
+   * Writes everything logged so far, then stops the background thread shared
+   * with the loggers this logger shares a root with. Anything logged through
+   * them afterwards is written right away, on the logging thread.
+   */
+  public void close() {
+    writer.close();
+  }
+
+  /**
+   * Waits until everything logged so far, by any thread in this logger or the
+   * loggers it shares a root with, has been written.
+   */
+  public void flush() {
+    CountDownLatch flushed = new CountDownLatch(1);
+    writer.add(new Event(this, null, null, null, null, null, flushed));
+    boolean interrupted = false;
+    while (true) {
+      try {
+        flushed.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public boolean isLoggable(Type type) {
+    return rootTarget.isLoggable(type);
+  }
+
+  @Override
+  public void log(Type type, String msg, Throwable caught, HelpInfo helpInfo) {
+    if (!isLoggable(type)) {
+      return;
+    }
+    writer.add(new Event(this, null, type, msg, caught, helpInfo, null));
+    if (!type.isLowerPriorityThan(ERROR)) {
+      flush();
+    }
+  }
+}
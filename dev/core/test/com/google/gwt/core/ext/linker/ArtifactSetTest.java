@@ -15,11 +15,19 @@
  */
 package com.google.gwt.core.ext.linker;
 
+import com.google.gwt.core.ext.Generator;
+import com.google.gwt.core.ext.linker.impl.StandardGeneratedResource;
+import com.google.gwt.core.ext.linker.impl.StandardLinkerContext;
 import com.google.gwt.core.ext.linker.impl.StandardScriptReference;
 import com.google.gwt.core.ext.linker.impl.StandardStylesheetReference;
+import com.google.gwt.dev.util.Util;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.SortedSet;
 
 /**
@@ -27,6 +35,91 @@ import java.util.SortedSet;
  */
 public class ArtifactSetTest extends TestCase {
 
+  private static StandardGeneratedResource generated(String path) {
+    return new StandardGeneratedResource(Generator.class, path,
+        Util.getBytes(path));
+  }
+
+  private static SyntheticArtifact synthetic(String path) {
+    return new SyntheticArtifact(StandardLinkerContext.class, path,
+        Util.getBytes(path));
+  }
+
+  public void testFindAcrossClasses() {
+    ArtifactSet set = new ArtifactSet();
+    set.add(synthetic("d"));
+    set.add(generated("b"));
+    set.add(synthetic("a"));
+    set.add(new StandardScriptReference("foo", 0));
+    set.add(generated("c"));
+
+    assertPaths(set.find(EmittedArtifact.class), "a", "b", "c", "d");
+    assertPaths(set.find(SyntheticArtifact.class), "a", "d");
+    assertPaths(set.find(GeneratedResource.class), "b", "c");
+    assertEquals(1, set.find(ScriptReference.class).size());
+    assertTrue(set.find(StylesheetReference.class).isEmpty());
+
+    // The result is a snapshot.
+    SortedSet<EmittedArtifact> found = set.find(EmittedArtifact.class);
+    set.add(synthetic("e"));
+    assertEquals(4, found.size());
+    found.clear();
+    assertPaths(set.find(EmittedArtifact.class), "a", "b", "c", "d", "e");
+  }
+
+  public void testFindAfterChanges() {
+    ArtifactSet set = new ArtifactSet();
+    set.add(generated("a"));
+    set.add(generated("b"));
+    set.add(synthetic("c"));
+    assertPaths(set.find(EmittedArtifact.class), "a", "b", "c");
+
+    // Replacing with an equal artifact of another class.
+    assertTrue(set.replace(synthetic("a")));
+    assertPaths(set.find(GeneratedResource.class), "b");
+    assertPaths(set.find(SyntheticArtifact.class), "a", "c");
+
+    for (Iterator<Artifact<?>> it = set.iterator(); it.hasNext();) {
+      if (it.next() instanceof GeneratedResource) {
+        it.remove();
+      }
+    }
+    assertTrue(set.find(GeneratedResource.class).isEmpty());
+    assertPaths(set.find(EmittedArtifact.class), "a", "c");
+
+    set.retainAll(Arrays.asList(synthetic("c")));
+    assertPaths(set.find(EmittedArtifact.class), "c");
+
+    // Changes made through a range view are seen as well.
+    set.addAll(Arrays.asList(generated("d"), generated("e")));
+    set.tailSet(generated("d")).clear();
+    assertPaths(set.find(EmittedArtifact.class), "c");
+
+    set.clear();
+    assertTrue(set.find(EmittedArtifact.class).isEmpty());
+  }
+
+  public void testFindFrozen() {
+    ArtifactSet set = new ArtifactSet();
+    set.add(generated("a"));
+    set.add(synthetic("b"));
+    set.freeze();
+
+    SortedSet<EmittedArtifact> found = set.find(EmittedArtifact.class);
+    assertPaths(found, "a", "b");
+
+    // Each call returns a snapshot that the caller may modify.
+    found.remove(found.first());
+    assertPaths(found, "b");
+    assertPaths(set.find(EmittedArtifact.class), "a", "b");
+    assertNotSame(found, set.find(EmittedArtifact.class));
+    try {
+      set.add(synthetic("c"));
+      fail("Expected UnsupportedOperationException");
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
   public void testScriptOrder() {
     StandardScriptReference fooScript = new StandardScriptReference("foo", 0);
     StandardScriptReference barScript = new StandardScriptReference("bar", 1);
@@ -106,4 +199,13 @@ public class ArtifactSetTest extends TestCase {
     }
 
   }
+
+  private void assertPaths(SortedSet<? extends EmittedArtifact> found,
+      String... expected) {
+    List<String> paths = new ArrayList<String>();
+    for (EmittedArtifact artifact : found) {
+      paths.add(artifact.getPartialPath());
+    }
+    assertEquals(Arrays.asList(expected), paths);
+  }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.linker;
+
+import com.google.gwt.core.ext.linker.SymbolData;
+import com.google.gwt.core.ext.linker.impl.StandardSymbolData;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Tests {@link BinarySymbolMap}.
+ */
+public class BinarySymbolMapTest extends TestCase {
+
+  private static StandardSymbolData named(String symbolName,
+      StandardSymbolData symbol) {
+    symbol.setSymbolName(symbolName);
+    return symbol;
+  }
+
+  private static byte[] write(SymbolData... symbols) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinarySymbolMap.write(out, symbols);
+    return out.toByteArray();
+  }
+
+  public void testCorruptMapIsRejected() throws IOException {
+    byte[] bytes = write(named("a", StandardSymbolData.forClass("com.A", null,
+        1, 1)));
+
+    byte[] truncated = new byte[bytes.length - 1];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    assertRejected(truncated);
+
+    byte[] badMagic = bytes.clone();
+    badMagic[0] = 'X';
+    assertRejected(badMagic);
+
+    byte[] badCount = bytes.clone();
+    badCount[8] = (byte) 0x7f;
+    assertRejected(badCount);
+
+    assertRejected(new byte[0]);
+  }
+
+  public void testDuplicateNameKeepsLast() throws IOException {
+    BinarySymbolMap map = load(write(named("dup",
+        StandardSymbolData.forClass("com.First", null, 1, 1)), named("dup",
+        StandardSymbolData.forClass("com.Second", null, 2, 2))));
+    assertEquals(1, map.size());
+    assertEquals("com.Second", map.get("dup").getClassName());
+  }
+
+  public void testEmptyMap() throws IOException {
+    BinarySymbolMap map = load(write());
+    assertEquals(0, map.size());
+    assertNull(map.get("a"));
+  }
+
+  public void testLoadFromFile() throws IOException {
+    File file = File.createTempFile("symbols", ".symbolMap.bin");
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        BinarySymbolMap.write(out, createSymbols());
+      } finally {
+        out.close();
+      }
+      assertSymbols(BinarySymbolMap.load(file));
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testLoadFromStream() throws IOException {
+    assertSymbols(load(write(createSymbols())));
+  }
+
+  private void assertRejected(byte[] bytes) {
+    try {
+      load(bytes);
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+  }
+
+  private void assertSymbols(BinarySymbolMap map) {
+    assertEquals(4, map.size());
+
+    SymbolData clazz = map.get("Lcom_A_2_classLit");
+    assertEquals("Lcom_A_2_classLit", clazz.getSymbolName());
+    assertEquals("com.A", clazz.getClassName());
+    assertNull(clazz.getJsniIdent());
+    assertNull(clazz.getMemberName());
+    assertEquals("file:/A.java", clazz.getSourceUri());
+    assertEquals(3, clazz.getSourceLine());
+    assertEquals(17, clazz.getTypeId());
+    assertTrue(clazz.isClass());
+    assertFalse(clazz.isField());
+    assertFalse(clazz.isMethod());
+
+    SymbolData field = map.get("f");
+    assertEquals("com.A::field", field.getJsniIdent());
+    assertEquals("field", field.getMemberName());
+    assertNull(field.getSourceUri());
+    assertEquals(-1, field.getSourceLine());
+    assertTrue(field.isField());
+    assertFalse(field.isClass());
+
+    SymbolData method = map.get("m");
+    assertEquals("com.A::method(ILjava/lang/String;)", method.getJsniIdent());
+    assertEquals("com.A", method.getClassName());
+    assertEquals(42, method.getSourceLine());
+    assertTrue(method.isMethod());
+
+    SymbolData unicode = map.get("\u00e9t\u00e9");
+    assertEquals("com.\u00c9t\u00e9", unicode.getClassName());
+
+    assertNull(map.get(""));
+    assertNull(map.get("g"));
+    assertNull(map.get("zzz"));
+  }
+
+  private SymbolData[] createSymbols() {
+    return new SymbolData[] {
+        named("m", StandardSymbolData.forMember("com.A", "method",
+            "(ILjava/lang/String;)", "file:/A.java", 42)),
+        named("\u00e9t\u00e9", StandardSymbolData.forClass(
+            "com.\u00c9t\u00e9", null, 1, 2)),
+        named("Lcom_A_2_classLit", StandardSymbolData.forClass("com.A",
+            "file:/A.java", 3, 17)),
+        named("f", StandardSymbolData.forMember("com.A", "field", null, null,
+            -1))};
+  }
+
+  private BinarySymbolMap load(byte[] bytes) throws IOException {
+    return BinarySymbolMap.load(new ByteArrayInputStream(bytes));
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests {@link LinkCache}.
+ */
+public class LinkCacheTest extends TestCase {
+
+  private File cacheDir;
+
+  private File resultA;
+
+  private File resultB;
+
+  public void testLinkedPermutations() throws IOException {
+    LinkCache cache = LinkCache.create(TreeLogger.NULL, cacheDir, "context");
+    File linkedA = cache.getLinkedPermutation(resultA);
+    assertFalse(linkedA.exists());
+    assertEquals(linkedA, commit(cache, linkedA, "linked A"));
+
+    // The same permutation result finds the same file.
+    cache = LinkCache.create(TreeLogger.NULL, cacheDir, "context");
+    assertEquals(linkedA, cache.getLinkedPermutation(resultA));
+    assertEquals("linked A", Util.readFileAsString(linkedA));
+
+    // A changed permutation result does not.
+    Util.writeStringAsFile(resultA, "result A, recompiled");
+    File newLinkedA = cache.getLinkedPermutation(resultA);
+    assertFalse(newLinkedA.equals(linkedA));
+    assertFalse(newLinkedA.exists());
+  }
+
+  public void testRemoveUnused() throws IOException {
+    LinkCache cache = LinkCache.create(TreeLogger.NULL, cacheDir, "context");
+    File linkedA = commit(cache, cache.getLinkedPermutation(resultA), "A");
+    File linkedB = commit(cache, cache.getLinkedPermutation(resultB), "B");
+    File leftover = cache.createTempFile();
+
+    cache = LinkCache.create(TreeLogger.NULL, cacheDir, "context");
+    assertEquals(linkedB, cache.getLinkedPermutation(resultB));
+    cache.removeUnused();
+    assertFalse(linkedA.exists());
+    assertTrue(linkedB.exists());
+    assertFalse(leftover.exists());
+  }
+
+  public void testStaleContextsAreRemoved() throws IOException {
+    LinkCache cache = LinkCache.create(TreeLogger.NULL, cacheDir, "old");
+    commit(cache, cache.getLinkedPermutation(resultA), "A");
+    File oldContext = new File(cacheDir, "old");
+    oldContext.setLastModified(System.currentTimeMillis() - 6L * 24 * 60 * 60
+        * 1000);
+
+    LinkCache.create(TreeLogger.NULL, cacheDir, "new");
+    assertTrue(oldContext.exists());
+
+    oldContext.setLastModified(System.currentTimeMillis() - 8L * 24 * 60 * 60
+        * 1000);
+    LinkCache.create(TreeLogger.NULL, cacheDir, "new");
+    assertFalse(oldContext.exists());
+    assertTrue(new File(cacheDir, "new").isDirectory());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = File.createTempFile("gwt-link-cache-test", "");
+    cacheDir.delete();
+    cacheDir.mkdir();
+    resultA = new File(cacheDir, "permA.ser");
+    Util.writeStringAsFile(resultA, "result A");
+    resultB = new File(cacheDir, "permB.ser");
+    Util.writeStringAsFile(resultB, "result B");
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(cacheDir, false);
+  }
+
+  private File commit(LinkCache cache, File linkedFile, String contents)
+      throws IOException {
+    File tempFile = cache.createTempFile();
+    Util.writeStringAsFile(tempFile, contents);
+    return cache.commit(TreeLogger.NULL, tempFile, linkedFile);
+  }
+}
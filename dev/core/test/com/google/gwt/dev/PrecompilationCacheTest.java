@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.dev.jjs.JJSOptionsImpl;
+import com.google.gwt.dev.jjs.UnifiedAst;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.TreeSet;
+
+/**
+ * Tests {@link PrecompilationCache}.
+ */
+public class PrecompilationCacheTest extends TestCase {
+
+  private File cacheDir;
+
+  public void testCorruptEntryIsRemoved() {
+    PrecompilationCache cache = PrecompilationCache.create(TreeLogger.NULL,
+        cacheDir, "key");
+    File entry = new File(cacheDir, "key.ser");
+    Util.writeStringAsFile(entry, "not a precompilation");
+    assertNull(cache.load(TreeLogger.NULL));
+    assertFalse(entry.exists());
+  }
+
+  public void testStoreAndLoad() {
+    PrecompilationCache cache = PrecompilationCache.create(TreeLogger.NULL,
+        cacheDir, "key");
+    assertNull(cache.load(TreeLogger.NULL));
+
+    TreeSet<String> rebindRequests = new TreeSet<String>();
+    rebindRequests.add("com.example.client.Foo");
+    UnifiedAst ast = new UnifiedAst(new JJSOptionsImpl(), null, false,
+        rebindRequests);
+    cache.store(TreeLogger.NULL, new Precompilation(ast,
+        Collections.<Permutation> emptyList(), 3, new ArtifactSet()));
+
+    cache = PrecompilationCache.create(TreeLogger.NULL, cacheDir, "key");
+    Precompilation loaded = cache.load(TreeLogger.NULL);
+    assertNotNull(loaded);
+    assertEquals(rebindRequests, loaded.getUnifiedAst().getRebindRequests());
+    assertEquals(0, loaded.getPermutations().length);
+    assertTrue(loaded.getGeneratedArtifacts().isEmpty());
+
+    // Only the entry itself is left behind.
+    assertEquals(1, cacheDir.list().length);
+    assertNull(PrecompilationCache.create(TreeLogger.NULL, cacheDir,
+        "otherKey").load(TreeLogger.NULL));
+  }
+
+  public void testStaleEntriesAreRemoved() {
+    File oldEntry = new File(cacheDir, "old.ser");
+    Util.writeStringAsFile(oldEntry, "old");
+    oldEntry.setLastModified(System.currentTimeMillis() - 6L * 24 * 60 * 60
+        * 1000);
+    PrecompilationCache.create(TreeLogger.NULL, cacheDir, "new");
+    assertTrue(oldEntry.exists());
+
+    oldEntry.setLastModified(System.currentTimeMillis() - 8L * 24 * 60 * 60
+        * 1000);
+    PrecompilationCache.create(TreeLogger.NULL, cacheDir, "new");
+    assertFalse(oldEntry.exists());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = File.createTempFile("gwt-precompilation-cache-test", "");
+    cacheDir.delete();
+    cacheDir.mkdir();
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(cacheDir, false);
+  }
+}
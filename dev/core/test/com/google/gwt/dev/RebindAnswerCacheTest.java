@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.BadPropertyValueException;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.RebindAnswerCache.RecordingPropertyOracle;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+
+import junit.framework.TestCase;
+
+import java.util.BitSet;
+
+/**
+ * Tests {@link RebindAnswerCache}.
+ */
+public class RebindAnswerCacheTest extends TestCase {
+
+  private BindingProperty[] props;
+
+  public void testAnswersDependOnReadProperties() {
+    RebindAnswerCache cache = new RebindAnswerCache();
+    BitSet readsUserAgent = new BitSet();
+    readsUserAgent.set(0);
+    cache.put("Foo", oracle("ie6", "en"), readsUserAgent, "FooIE");
+    cache.put("Foo", oracle("safari", "en"), readsUserAgent, "FooSafari");
+
+    assertEquals("FooIE", cache.get("Foo", oracle("ie6", "fr")));
+    assertEquals("FooSafari", cache.get("Foo", oracle("safari", "fr")));
+    assertNull(cache.get("Foo", oracle("opera", "en")));
+    assertNull(cache.get("Bar", oracle("ie6", "en")));
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    // An answer that read nothing applies to every permutation.
+    cache.put("Bar", oracle("ie6", "en"), new BitSet(), "BarImpl");
+    assertEquals("BarImpl", cache.get("Bar", oracle("opera", "fr")));
+  }
+
+  public void testRecordingOracle() throws BadPropertyValueException {
+    RecordingPropertyOracle oracle = new RecordingPropertyOracle(oracle(
+        "ie6", "en"));
+
+    // Reads before recording starts are not recorded.
+    oracle.getSelectionProperty(TreeLogger.NULL, "user.agent");
+    oracle.startRecording();
+    assertEquals("en", oracle.getSelectionProperty(TreeLogger.NULL,
+        "locale").getCurrentValue());
+    oracle.getConfigurationProperty("config");
+    try {
+      oracle.getSelectionProperty(TreeLogger.NULL, "unknown");
+      fail("Expected BadPropertyValueException");
+    } catch (BadPropertyValueException expected) {
+    }
+    BitSet reads = oracle.stopRecording();
+    assertEquals(1, reads.cardinality());
+    assertTrue(reads.get(1));
+
+    oracle.getSelectionProperty(TreeLogger.NULL, "user.agent");
+    oracle.startRecording();
+    assertTrue(oracle.stopRecording().isEmpty());
+  }
+
+  @Override
+  protected void setUp() {
+    BindingProperty userAgent = new BindingProperty("user.agent");
+    for (String value : new String[] {"ie6", "opera", "safari"}) {
+      userAgent.addDefinedValue(userAgent.getRootCondition(), value);
+    }
+    BindingProperty locale = new BindingProperty("locale");
+    for (String value : new String[] {"en", "fr"}) {
+      locale.addDefinedValue(locale.getRootCondition(), value);
+    }
+    props = new BindingProperty[] {userAgent, locale};
+  }
+
+  private StaticPropertyOracle oracle(String userAgent, String locale) {
+    ConfigurationProperty config = new ConfigurationProperty("config");
+    config.setValue("value");
+    return new StaticPropertyOracle(props, new String[] {userAgent, locale},
+        new ConfigurationProperty[] {config});
+  }
+}
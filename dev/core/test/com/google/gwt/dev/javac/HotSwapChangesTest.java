@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.javac;
+
+import com.google.gwt.dev.javac.impl.JavaResourceBase;
+import com.google.gwt.dev.javac.impl.MockJavaResource;
+
+import java.util.Map;
+
+/**
+ * Tests {@link HotSwapChanges}.
+ */
+public class HotSwapChangesTest extends CompilationStateTestBase {
+
+  private static MockJavaResource createFoo(final String members) {
+    return new MockJavaResource("test.Foo") {
+      @Override
+      protected CharSequence getContent() {
+        StringBuffer code = new StringBuffer();
+        code.append("package test;\n");
+        code.append("public class Foo {\n");
+        code.append(members);
+        code.append("}\n");
+        return code;
+      }
+    };
+  }
+
+  public void testBodyChange() {
+    oracle.add(createFoo("  public String value() { return \"Foo\"; }\n"));
+    rebuildCompilationState();
+
+    HotSwapChanges changes = computeChanges(createFoo(
+        "  public String value() { return \"Changed\"; }\n"));
+    assertTrue(changes.isCompatible());
+    assertFalse(changes.isEmpty());
+    assertEquals(1, changes.getChangedClasses().size());
+    assertTrue(changes.getChangedClasses().containsKey("test/Foo"));
+    assertEquals(1, changes.getChangedUnits().size());
+    assertSame(state.getCompilationUnitMap().get("test.Foo"),
+        changes.getReplacedUnits().get(0));
+
+    // The state serves the new classes once the units are swapped.
+    CompilationUnit newUnit = changes.getChangedUnits().get(0);
+    state.swapUnits(changes.getChangedUnits());
+    assertSame(newUnit, state.getCompilationUnitMap().get("test.Foo"));
+    assertSame(newUnit, state.getClassFileMap().get("test/Foo").getUnit());
+  }
+
+  public void testIncompatibleChanges() {
+    oracle.add(createFoo("  public String value() { return \"Foo\"; }\n"));
+    rebuildCompilationState();
+
+    assertIncompatible(createFoo("  public Object value() { return \"Foo\"; }\n"));
+    assertIncompatible(createFoo("  public String value() { return \"Foo\"; }\n"
+        + "  public int count;\n"));
+    assertIncompatible(createFoo("  public String value() { return new "
+        + "Object() { }.toString(); }\n"));
+    assertIncompatible(createFoo("  public String value() { return 1; }\n"));
+  }
+
+  public void testNoChanges() {
+    oracle.add(JavaResourceBase.FOO);
+    rebuildCompilationState();
+    HotSwapChanges changes = HotSwapChanges.compute(state,
+        isolatedBuilder.doBuildUnitsFrom(createTreeLogger(),
+            oracle.getResources()));
+    assertTrue(changes.isEmpty());
+  }
+
+  private void assertIncompatible(MockJavaResource newFoo) {
+    HotSwapChanges changes = computeChanges(newFoo);
+    assertFalse(changes.isCompatible());
+    assertNotNull(changes.getIncompatibility());
+    assertTrue(changes.getChangedClasses().isEmpty());
+  }
+
+  private HotSwapChanges computeChanges(MockJavaResource newFoo) {
+    oracle.replace(newFoo);
+    Map<String, CompilationUnit> newUnits = isolatedBuilder.doBuildUnitsFrom(
+        createTreeLogger(), oracle.getResources());
+    return HotSwapChanges.compute(state, newUnits);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs;
+
+import com.google.gwt.dev.jjs.Correlation.Axis;
+import com.google.gwt.dev.jjs.Correlation.Literal;
+import com.google.gwt.dev.jjs.CorrelationFactory.RealCorrelationFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link SourceInfoCorrelation} and {@link SourceOrigin}.
+ */
+public class SourceInfoCorrelationTest extends TestCase {
+
+  private final CorrelationFactory factory = new RealCorrelationFactory();
+
+  public void testChildIsIndependent() {
+    SourceInfoCorrelation parent = new SourceInfoCorrelation(
+        SourceOrigin.create(1, "Foo.java"));
+    Correlation string = factory.by(Literal.STRING);
+    parent.addCorrelation(string);
+
+    SourceInfo child = parent.makeChild(SourceInfoCorrelationTest.class,
+        "child");
+    Correlation origin = factory.by(SourceOrigin.create(2, "Bar.java"));
+    child.addCorrelation(origin);
+
+    assertEquals(1, parent.getAllCorrelations().size());
+    assertNull(parent.getPrimaryCorrelation(Axis.ORIGIN));
+    assertEquals(2, child.getAllCorrelations().size());
+    assertSame(string, child.getPrimaryCorrelation(Axis.LITERAL));
+    assertSame(origin, child.getPrimaryCorrelation(Axis.ORIGIN));
+  }
+
+  public void testFileNamesAreShared() {
+    String fileName = "com/example/Foo.java";
+    SourceOrigin a = SourceOrigin.create(10, 20, 1, new String(fileName));
+    SourceOrigin b = SourceOrigin.create(30, 40, 2, new String(fileName));
+    assertSame(a.getFileName(), b.getFileName());
+  }
+
+  public void testNoCorrelations() {
+    SourceInfoCorrelation info = new SourceInfoCorrelation(
+        SourceOrigin.create(1, "Foo.java"));
+    assertTrue(info.getAllCorrelations().isEmpty());
+    assertTrue(info.getPrimaryCorrelations().isEmpty());
+    assertEquals(0, info.getPrimaryCorrelationsArray().length);
+    assertNull(info.getPrimaryCorrelation(Axis.CLASS));
+
+    Correlation string = factory.by(Literal.STRING);
+    info.addCorrelation(string);
+    info.addCorrelation(string);
+    assertEquals(1, info.getAllCorrelations().size());
+    assertSame(string, info.getPrimaryCorrelation(Axis.LITERAL));
+  }
+}
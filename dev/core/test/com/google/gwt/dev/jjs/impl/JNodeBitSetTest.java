@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.SourceInfo;
+import com.google.gwt.dev.jjs.SourceOrigin;
+import com.google.gwt.dev.jjs.ast.JClassType;
+import com.google.gwt.dev.jjs.ast.JField;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JNode;
+import com.google.gwt.dev.jjs.ast.JParameter;
+import com.google.gwt.dev.jjs.ast.JPrimitiveType;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.jjs.ast.JField.Disposition;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Tests {@link JNodeBitSet}.
+ */
+public class JNodeBitSetTest extends TestCase {
+
+  private static final SourceInfo INFO = SourceOrigin.UNKNOWN;
+
+  private JClassType classFoo;
+  private JField field;
+  private JMethod method;
+  private JParameter param;
+  private JProgram program;
+
+  public void testAddContainsRemove() {
+    JNodeBitSet<JNode> set = new JNodeBitSet<JNode>(program);
+    assertTrue(set.isEmpty());
+
+    assertTrue(set.add(method));
+    assertFalse(set.add(method));
+    assertTrue(set.add(field));
+    assertTrue(set.add(classFoo));
+    assertTrue(set.add(program.getTypeNull()));
+    assertTrue(set.add(param));
+    assertFalse(set.add(param));
+    assertEquals(5, set.size());
+
+    assertTrue(set.contains(method));
+    assertTrue(set.contains(param));
+    assertFalse(set.contains(program.createClass(INFO, "Bar", false, false)));
+    assertFalse(set.contains("not a node"));
+
+    assertTrue(set.remove(method));
+    assertFalse(set.remove(method));
+    assertTrue(set.remove(param));
+    assertFalse(set.contains(method));
+    assertFalse(set.contains(param));
+    assertEquals(3, set.size());
+  }
+
+  public void testCopyIsIndependent() {
+    JNodeBitSet<JNode> set = new JNodeBitSet<JNode>(program);
+    set.add(method);
+    set.add(param);
+
+    JNodeBitSet<JNode> copy = new JNodeBitSet<JNode>(set);
+    copy.add(field);
+    copy.remove(param);
+
+    assertEquals(new HashSet<JNode>(Arrays.<JNode> asList(method, param)), set);
+    assertEquals(new HashSet<JNode>(Arrays.<JNode> asList(method, field)), copy);
+  }
+
+  public void testDenseIdsAreStable() {
+    int methodId = program.getDenseId(method);
+    int fieldId = program.getDenseId(field);
+    assertTrue(methodId != fieldId);
+    assertEquals(methodId, program.getDenseId(method));
+    assertSame(method, program.getDenseIdNode(methodId));
+    assertSame(field, program.getDenseIdNode(fieldId));
+    assertSame(program.getTypeNull(),
+        program.getDenseIdNode(program.getDenseId(program.getTypeNull())));
+  }
+
+  public void testDenseIdsAreReset() {
+    program.getDenseId(method);
+    program.getDenseId(classFoo);
+    program.resetDenseIds();
+    assertEquals(1, program.getDenseIdCount());
+
+    // Only nodes used since the reset get ids.
+    int fieldId = program.getDenseId(field);
+    assertEquals(1, fieldId);
+    assertSame(field, program.getDenseIdNode(fieldId));
+    assertEquals(2, program.getDenseId(method));
+    assertEquals(3, program.getDenseIdCount());
+  }
+
+  public void testIteratorRemove() {
+    Set<JNode> set = new JNodeBitSet<JNode>(program);
+    set.add(method);
+    set.add(field);
+    set.add(param);
+
+    Set<JNode> seen = new HashSet<JNode>();
+    for (Iterator<JNode> it = set.iterator(); it.hasNext();) {
+      JNode node = it.next();
+      seen.add(node);
+      if (node != field) {
+        it.remove();
+      }
+    }
+    assertEquals(3, seen.size());
+    assertEquals(1, set.size());
+    assertTrue(set.contains(field));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    program = new JProgram();
+    classFoo = program.createClass(INFO, "Foo", false, false);
+    field = program.createField(INFO, "field", classFoo, JPrimitiveType.INT,
+        false, Disposition.NONE);
+    method = program.createMethod(INFO, "method", classFoo,
+        JPrimitiveType.VOID, false, false, false, false, false);
+    param = JProgram.createParameter(INFO, "param", JPrimitiveType.INT, false,
+        false, method);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.js;
+
+import com.google.gwt.dev.jjs.SourceOrigin;
+import com.google.gwt.dev.js.ast.JsProgram;
+import com.google.gwt.dev.js.ast.JsScope;
+
+import java.io.StringReader;
+
+/**
+ * Tests the JsObfuscateNamer.
+ */
+public class JsObfuscateNamerTest extends OptimizerTestBase {
+
+  /**
+   * Runs the namer in frequency mode.
+   */
+  public static class FrequencyNamer {
+    public static void exec(JsProgram program) {
+      JsObfuscateNamer.exec(program, true);
+    }
+  }
+
+  private static final String PROGRAM = "function foo(){}"
+      + "function bar(x,y){return y+y} bar(); bar();";
+
+  public void testDeclarationOrder() throws Exception {
+    assertEquals("function c(){}\nfunction d(a,b){return b+b}\nd();d();",
+        optimize(PROGRAM, JsSymbolResolver.class, JsObfuscateNamer.class));
+  }
+
+  public void testFrequencyOrder() throws Exception {
+    assertEquals("function d(){}\nfunction c(b,a){return a+a}\nc();c();",
+        optimize(PROGRAM, JsSymbolResolver.class, FrequencyNamer.class));
+  }
+
+  public void testFrequencyOrderPrefersInitialFragment() throws Exception {
+    JsProgram program = new JsProgram();
+    program.setFragmentCount(2);
+    program.getFragmentBlock(0).getStatements().addAll(
+        JsParser.parse(SourceOrigin.UNKNOWN, program.getScope(),
+            new StringReader("function foo(){} function bar(){} foo();")));
+    program.getFragmentBlock(1).getStatements().addAll(
+        JsParser.parse(SourceOrigin.UNKNOWN, program.getScope(),
+            new StringReader("bar(); bar(); bar();")));
+    JsSymbolResolver.exec(program);
+    JsObfuscateNamer.exec(program, true);
+
+    // bar is used more overall, but foo is used more in the initial download.
+    JsScope scope = program.getScope();
+    assertEquals("a", scope.findExistingName("foo").getShortIdent());
+    assertEquals("b", scope.findExistingName("bar").getShortIdent());
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.resource.impl;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Tests {@link ClassPathIndex} and its use by class path entries.
+ */
+public class ClassPathIndexTest extends TestCase {
+
+  /**
+   * Old enough that listings taken now are trusted.
+   */
+  private static final long LONG_AGO = System.currentTimeMillis() - 60000;
+
+  private ClassPathIndex index;
+
+  private File tempDir;
+
+  public void testDirectoryChanges() throws IOException {
+    File dir = new File(tempDir, "classes");
+    File pkg = new File(dir, "pkg");
+    pkg.mkdirs();
+    Util.writeStringAsFile(new File(pkg, "A.java"), "class A {}");
+    Util.writeStringAsFile(new File(pkg, "B.java"), "class B {}");
+    pkg.setLastModified(LONG_AGO);
+    dir.setLastModified(LONG_AGO);
+
+    DirectoryClassPathEntry entry = new DirectoryClassPathEntry(dir, index,
+        null);
+    assertEquals(paths("pkg/A.java", "pkg/B.java"), findPaths(entry));
+
+    Util.writeStringAsFile(new File(pkg, "C.java"), "class C {}");
+    new File(pkg, "A.java").delete();
+    pkg.setLastModified(LONG_AGO + 2000);
+    assertEquals(paths("pkg/B.java", "pkg/C.java"), findPaths(entry));
+
+    // A new entry picks up the persisted listings.
+    Map<String, ClassPathIndex.DirectoryListing> listings = index.readDirectory(dir);
+    assertEquals(2, listings.size());
+    assertTrue(listings.get("pkg/").isValid(pkg.lastModified()));
+    assertEquals(paths("pkg/B.java", "pkg/C.java"), findPaths(
+        new DirectoryClassPathEntry(dir, index, null)));
+  }
+
+  public void testRecentlyChangedDirectoryIsListedAgain() throws IOException {
+    File dir = new File(tempDir, "classes");
+    dir.mkdirs();
+    Util.writeStringAsFile(new File(dir, "A.java"), "class A {}");
+
+    DirectoryClassPathEntry entry = new DirectoryClassPathEntry(dir, index,
+        null);
+    assertEquals(paths("A.java"), findPaths(entry));
+
+    // Within the timestamp resolution, so the directory's timestamp may not
+    // have changed.
+    long lastModified = dir.lastModified();
+    Util.writeStringAsFile(new File(dir, "B.java"), "class B {}");
+    dir.setLastModified(lastModified);
+    assertEquals(paths("A.java", "B.java"), findPaths(entry));
+  }
+
+  public void testZipIndex() throws IOException {
+    File jar = new File(tempDir, "test.jar");
+    writeJar(jar, "a/A.java", "a/B.java", "META-INF/MANIFEST.MF");
+    jar.setLastModified(LONG_AGO);
+    assertNull(index.readZipFile(jar));
+
+    ZipFileClassPathEntry entry = new ZipFileClassPathEntry(jar, true, index);
+    assertEquals(paths("a/A.java", "a/B.java"), findPaths(entry));
+    Map<String, Long> indexed = index.readZipFile(jar);
+    assertEquals(paths("a/A.java", "a/B.java"), indexed.keySet());
+
+    // An up-to-date index is used without reading the jar.
+    Map<String, Long> fake = new HashMap<String, Long>();
+    fake.put("a/Fake.java", 1234L);
+    index.writeZipFile(jar, fake);
+    entry = new ZipFileClassPathEntry(jar, true, index);
+    Set<String> found = findPaths(entry);
+    assertEquals(paths("a/Fake.java"), found);
+    for (AbstractResource r : entry.findApplicableResources(TreeLogger.NULL,
+        allPaths()).keySet()) {
+      assertEquals(1234L, r.getLastModified());
+      assertEquals("jar:" + jar.toURI() + "!/a/Fake.java", r.getLocation());
+    }
+
+    // A changed jar is read again.
+    writeJar(jar, "a/C.java");
+    jar.setLastModified(LONG_AGO + 2000);
+    assertNull(index.readZipFile(jar));
+    entry = new ZipFileClassPathEntry(jar, true, index);
+    assertEquals(paths("a/C.java"), findPaths(entry));
+    assertEquals(paths("a/C.java"), index.readZipFile(jar).keySet());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = File.createTempFile("gwt-classpath-index-test", "");
+    tempDir.delete();
+    tempDir.mkdir();
+    index = new ClassPathIndex(new File(tempDir, "index"));
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(tempDir, false);
+  }
+
+  private PathPrefixSet allPaths() {
+    PathPrefixSet pathPrefixSet = new PathPrefixSet();
+    pathPrefixSet.add(new PathPrefix("", null));
+    return pathPrefixSet;
+  }
+
+  private Set<String> findPaths(ClassPathEntry entry) {
+    Set<String> found = new HashSet<String>();
+    for (AbstractResource r : entry.findApplicableResources(TreeLogger.NULL,
+        allPaths()).keySet()) {
+      found.add(r.getPath());
+    }
+    return found;
+  }
+
+  private Set<String> paths(String... paths) {
+    Set<String> set = new HashSet<String>();
+    for (String path : paths) {
+      set.add(path);
+    }
+    return set;
+  }
+
+  private void writeJar(File jar, String... paths) throws IOException {
+    JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+    try {
+      for (String path : paths) {
+        out.putNextEntry(new ZipEntry(path));
+        out.write(Util.getBytes(path));
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+  }
+}
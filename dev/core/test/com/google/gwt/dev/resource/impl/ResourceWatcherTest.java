@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.resource.impl;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.resource.Resource;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests {@link ResourceWatcher} and watched {@link DirectoryClassPathEntry
+ * DirectoryClassPathEntries}.
+ */
+public class ResourceWatcherTest extends TestCase {
+
+  /**
+   * Old enough that directory listings taken now are trusted.
+   */
+  private static final long LONG_AGO = (System.currentTimeMillis() - 60000)
+      / 1000 * 1000;
+
+  private File dir;
+
+  private DirectoryClassPathEntry entry;
+
+  private File pkg;
+
+  private ResourceOracleImpl oracle;
+
+  private ResourceWatcher watcher;
+
+  public void testAddedFile() {
+    Set<Resource> before = refresh();
+
+    Util.writeStringAsFile(new File(pkg, "C.java"), "class C {}");
+    pkg.setLastModified(LONG_AGO + 2000);
+    assertSame(before, refresh());
+    watcher.poll();
+    Set<Resource> after = refresh();
+    assertEquals(3, after.size());
+    assertNotNull(oracle.getResourceMap().get("pkg/C.java"));
+  }
+
+  public void testChangedFile() {
+    Set<Resource> before = refresh();
+    Resource a = oracle.getResourceMap().get("pkg/A.java");
+    Resource b = oracle.getResourceMap().get("pkg/B.java");
+
+    File fileA = new File(pkg, "A.java");
+    Util.writeStringAsFile(fileA, "class A { int x; }");
+    fileA.setLastModified(LONG_AGO + 2000);
+    assertSame(before, refresh());
+    assertEquals(LONG_AGO, a.getLastModified());
+
+    watcher.poll();
+    assertTrue(((AbstractResource) a).isStale());
+    assertNotSame(before, refresh());
+    Resource newA = oracle.getResourceMap().get("pkg/A.java");
+    assertNotSame(a, newA);
+    assertEquals(LONG_AGO + 2000, newA.getLastModified());
+    assertSame(b, oracle.getResourceMap().get("pkg/B.java"));
+  }
+
+  public void testNoChange() {
+    Set<Resource> before = refresh();
+    assertEquals(2, before.size());
+    Map<AbstractResource, PathPrefix> found = entry.findApplicableResources(
+        TreeLogger.NULL, oracle.getPathPrefixes());
+
+    watcher.poll();
+    assertSame(before, refresh());
+    assertSame(found, entry.findApplicableResources(TreeLogger.NULL,
+        oracle.getPathPrefixes()));
+  }
+
+  public void testRemovedFile() {
+    refresh();
+
+    new File(pkg, "A.java").delete();
+    pkg.setLastModified(LONG_AGO + 2000);
+    watcher.poll();
+    Set<Resource> after = refresh();
+    assertEquals(1, after.size());
+    assertNull(oracle.getResourceMap().get("pkg/A.java"));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("gwt-resource-watcher-test", "");
+    dir.delete();
+    pkg = new File(dir, "pkg");
+    pkg.mkdirs();
+    writeOldFile(new File(pkg, "A.java"), "class A {}");
+    writeOldFile(new File(pkg, "B.java"), "class B {}");
+    pkg.setLastModified(LONG_AGO);
+    dir.setLastModified(LONG_AGO);
+
+    watcher = new ResourceWatcher();
+    entry = new DirectoryClassPathEntry(dir, null, watcher);
+    assertTrue(entry.isWatched());
+    oracle = new ResourceOracleImpl(
+        Collections.<ClassPathEntry> singletonList(entry));
+    PathPrefixSet pathPrefixSet = new PathPrefixSet();
+    pathPrefixSet.add(new PathPrefix("", null));
+    oracle.setPathPrefixes(pathPrefixSet);
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(dir, false);
+  }
+
+  private Set<Resource> refresh() {
+    oracle.refresh(TreeLogger.NULL);
+    return oracle.getResources();
+  }
+
+  private void writeOldFile(File file, String content) {
+    Util.writeStringAsFile(file, content);
+    file.setLastModified(LONG_AGO);
+  }
+}
@@ -17,6 +17,8 @@ package com.google.gwt.dev.shell;
 
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.dev.shell.BrowserChannel.CheckVersionsMessage;
+import com.google.gwt.dev.shell.BrowserChannel.InvokeOnClientMessage;
+import com.google.gwt.dev.shell.BrowserChannel.InvokeOnServerMessage;
 import com.google.gwt.dev.shell.BrowserChannel.LoadModuleMessage;
 import com.google.gwt.dev.shell.BrowserChannel.MessageType;
 import com.google.gwt.dev.shell.BrowserChannel.OldLoadModuleMessage;
@@ -181,9 +183,86 @@ public class BrowserChannelServerTest extends TestCase {
     }   
   }
 
+  /**
+   * Pipelines a void call, then makes a synchronous one, when the browser
+   * invokes method 1; makes a synchronous call when it invokes method 2.
+   */
+  private static class PipeliningSessionHandler extends TestSessionHandler {
+    private Throwable failure;
+    private final JsValueOOPHM nestedResult = new JsValueOOPHM();
+
+    @Override
+    public ExceptionOrReturnValue invoke(BrowserChannelServer channel,
+        Value thisObj, int dispId, Value[] args) {
+      try {
+        if (dispId == 1) {
+          channel.invokeJavascriptVoid(null, new JsValueOOPHM(), "pipelined",
+              new JsValueOOPHM[0]);
+          channel.invokeJavascript(null, new JsValueOOPHM(), "synchronous",
+              new JsValueOOPHM[0], new JsValueOOPHM());
+        } else {
+          channel.invokeJavascript(null, new JsValueOOPHM(), "nested",
+              new JsValueOOPHM[0], nestedResult);
+        }
+      } catch (Throwable e) {
+        failure = e;
+      }
+      return new ExceptionOrReturnValue(false, new Value());
+    }
+  }
+
   private PipedStreamPair clientToServer = new PipedStreamPair();
   private PipedStreamPair serverToClient = new PipedStreamPair();
 
+  /**
+   * A pipelined call that calls back into Java, which then makes a synchronous
+   * call, must not take that call's return for its own.
+   */
+  public void testNestedCallInsidePipelinedCall() throws IOException,
+      BrowserChannelException, InterruptedException {
+    PipeliningSessionHandler handler = new PipeliningSessionHandler();
+    TestBrowserChannelServer server = new TestBrowserChannelServer(
+        new FailErrorLogger(), clientToServer.getInputStream(),
+        serverToClient.getOutputStream(), handler);
+    server.setPipelineVoidCalls(true);
+    TestBrowserChannel client = new TestBrowserChannel(
+        serverToClient.getInputStream(), clientToServer.getOutputStream());
+    new CheckVersionsMessage(client, 2, 4,
+        HostedHtmlVersion.EXPECTED_GWT_ONLOAD_VERSION).send();
+    assertEquals(MessageType.PROTOCOL_VERSION, client.readMessageType());
+    ProtocolVersionMessage.receive(client);
+    new LoadModuleMessage(client, "url", "tabkey", "session", "testModule",
+        "userAgentNested").send();
+    assertEquals(MessageType.REQUEST_ICON, client.readMessageType());
+    RequestIconMessage.receive(client);
+    UserAgentIconMessage.send(client, null);
+    assertEquals(MessageType.RETURN, client.readMessageType());
+    ReturnMessage.receive(client);
+
+    new InvokeOnServerMessage(client, 1, new Value(), new Value[0]).send();
+    assertEquals("pipelined", readInvoke(client));
+    // The pipelined method calls back into Java.
+    new InvokeOnServerMessage(client, 2, new Value(), new Value[0]).send();
+    // The synchronous call waits until the pipelined one is done.
+    assertEquals("nested", readInvoke(client));
+    Value nestedValue = new Value();
+    nestedValue.setInt(42);
+    ReturnMessage.send(client, false, nestedValue);
+    assertEquals(MessageType.RETURN, client.readMessageType());
+    ReturnMessage.receive(client);
+    // The pipelined method returns.
+    ReturnMessage.send(client, false, new Value());
+    assertEquals("synchronous", readInvoke(client));
+    ReturnMessage.send(client, false, new Value());
+    assertEquals(MessageType.RETURN, client.readMessageType());
+    ReturnMessage.receive(client);
+
+    assertNull(handler.failure);
+    assertEquals(42, handler.nestedResult.getInt());
+    QuitMessage.send(client);
+    server.waitForClose();
+  }
+
   /**
    * Test a version 1 client interacting with the server.
    * 
@@ -301,4 +380,48 @@ public class BrowserChannelServerTest extends TestCase {
     server.waitForClose();
     assertNull(handler.getLoadedModule());
   }
+
+  /**
+   * Test a version 4 client interacting with the server.
+   * 
+   * @throws IOException 
+   * @throws BrowserChannelException 
+   * @throws InterruptedException 
+   */
+  public void testVersion4() throws IOException, BrowserChannelException,
+      InterruptedException {
+    TestSessionHandler handler = new TestSessionHandler();
+    TestBrowserChannelServer server = new TestBrowserChannelServer(
+        new FailErrorLogger(), clientToServer.getInputStream(),
+        serverToClient.getOutputStream(), handler);
+    TestBrowserChannel client = new TestBrowserChannel(
+        serverToClient.getInputStream(), clientToServer.getOutputStream());
+    new CheckVersionsMessage(client, 2, 4,
+        HostedHtmlVersion.EXPECTED_GWT_ONLOAD_VERSION).send();
+    MessageType type = client.readMessageType();
+    assertEquals(MessageType.PROTOCOL_VERSION, type);
+    ProtocolVersionMessage protocolMessage = ProtocolVersionMessage.receive(
+        client);
+    assertEquals(4, protocolMessage.getProtocolVersion());
+    new LoadModuleMessage(client, "url", "tabkey", "session", "testModule",
+        "userAgent4").send();
+    type = client.readMessageType();
+    assertEquals(MessageType.REQUEST_ICON, type);
+    RequestIconMessage.receive(client);
+    UserAgentIconMessage.send(client, null);
+    type = client.readMessageType();
+    assertEquals("testModule", handler.getModuleName());
+    assertTrue(server.isBatching());
+    assertEquals(MessageType.RETURN, type);
+    ReturnMessage.receive(client);
+    QuitMessage.send(client);
+    server.waitForClose();
+    assertNull(handler.getLoadedModule());
+  }
+
+  private String readInvoke(TestBrowserChannel client) throws IOException,
+      BrowserChannelException {
+    assertEquals(MessageType.INVOKE, client.readMessageType());
+    return InvokeOnClientMessage.receive(client).getMethodName();
+  }
 }
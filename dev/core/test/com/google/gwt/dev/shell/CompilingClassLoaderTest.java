@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell;
+
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.javac.CompilationStateTestBase;
+import com.google.gwt.dev.javac.CompilationUnit;
+import com.google.gwt.dev.javac.HotSwapChanges;
+import com.google.gwt.dev.javac.JsniMethod;
+import com.google.gwt.dev.javac.impl.MockJavaResource;
+
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Tests hot swapping in {@link CompilingClassLoader}, with several loaders
+ * sharing one compilation state.
+ */
+public class CompilingClassLoaderTest extends CompilationStateTestBase {
+
+  /**
+   * Records the JSNI methods injected by a loader.
+   */
+  private static class RecordingHost implements InvocationHandler {
+    private final List<List<JsniMethod>> injected = new ArrayList<List<JsniMethod>>();
+
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      if (method.getName().equals("createNativeMethods")) {
+        injected.add((List<JsniMethod>) args[1]);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Records the classes redefined by a loader, or refuses to redefine them.
+   */
+  private static class RecordingInstrumentation implements InvocationHandler {
+    private final List<Class<?>> redefined = new ArrayList<Class<?>>();
+    private boolean refuse;
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      if (method.getName().equals("redefineClasses")) {
+        if (refuse) {
+          throw new UnsupportedOperationException("Refused");
+        }
+        for (ClassDefinition definition : (ClassDefinition[]) args[0]) {
+          assertNotNull(definition.getDefinitionClassFile());
+          redefined.add(definition.getDefinitionClass());
+        }
+      }
+      return null;
+    }
+  }
+
+  private static MockJavaResource create(String typeName,
+      final String... lines) {
+    return new MockJavaResource(typeName) {
+      @Override
+      protected CharSequence getContent() {
+        StringBuffer code = new StringBuffer();
+        code.append("package test;\n");
+        for (String line : lines) {
+          code.append(line).append("\n");
+        }
+        return code;
+      }
+    };
+  }
+
+  private static MockJavaResource createFoo(final String value) {
+    return new MockJavaResource("test.Foo") {
+      @Override
+      protected CharSequence getContent() {
+        StringBuffer code = new StringBuffer();
+        code.append("package test;\n");
+        code.append("public class Foo {\n");
+        code.append("  public static native String jsni() /*-{ return \""
+            + value + "\"; }-*/;\n");
+        code.append("  public String value() { return \"" + value + "\"; }\n");
+        code.append("}\n");
+        return code;
+      }
+    };
+  }
+
+  public void testHotSwapRedefinesLoadedClasses() throws Exception {
+    oracle.add(createFoo("Foo"));
+    rebuildCompilationState();
+    RecordingHost hostA = new RecordingHost();
+    CompilingClassLoader loaderA = createLoader(hostA);
+    Class<?> fooA = Class.forName("test.Foo", false, loaderA);
+    assertEquals(1, hostA.injected.size());
+
+    // Swap a change into the state, as the module space host does.
+    oracle.replace(createFoo("Changed"));
+    HotSwapChanges changes = HotSwapChanges.compute(state,
+        isolatedBuilder.doBuildUnitsFrom(createTreeLogger(),
+            oracle.getResources()));
+    assertTrue(changes.isCompatible());
+    state.swapUnits(changes.getChangedUnits());
+    CompilationUnit newUnit = state.getCompilationUnitMap().get("test.Foo");
+
+    RecordingInstrumentation instA = new RecordingInstrumentation();
+    assertTrue(loaderA.hotSwap(createTreeLogger(), createProxy(instA)));
+    assertEquals(Arrays.asList(fooA), instA.redefined);
+    assertEquals(2, hostA.injected.size());
+    assertSame(newUnit.getJsniMethods(), hostA.injected.get(1));
+
+    // Nothing is left to do once the loader is up to date.
+    assertTrue(loaderA.hotSwap(createTreeLogger(), createProxy(instA)));
+    assertEquals(1, instA.redefined.size());
+    assertEquals(2, hostA.injected.size());
+  }
+
+  public void testEagerLoadAddsSingleJsoImplTrampolines() throws Exception {
+    oracle.add(create("test.IA", "public interface IA { String foo(); }"));
+    oracle.add(create("test.IB", "public interface IB extends IA { }"));
+    oracle.add(create("test.JA",
+        "import com.google.gwt.core.client.JavaScriptObject;",
+        "public class JA extends JavaScriptObject implements IA {",
+        "  protected JA() { }",
+        "  public final String foo() { return \"ja\"; }", "}"));
+    oracle.add(create("test.Impl", "public class Impl implements IB {",
+        "  public String foo() { return \"impl\"; }", "}"));
+    rebuildCompilationState();
+    CompilingClassLoader loader = createLoader(new RecordingHost());
+    Map<String, SortedSet<String>> supertypes = loader.getSingleJsoImplSupertypes();
+    assertEquals(new TreeSet<String>(Arrays.asList("test/IA")),
+        supertypes.get("test/IA"));
+    assertEquals(supertypes.get("test/IA"), supertypes.get("test/IB"));
+
+    // Rewrites the classes in parallel before defining them.
+    loader.loadEagerly(createTreeLogger(), new String[] {"test.Impl"});
+    Class<?> impl = Class.forName("test.Impl", false, loader);
+    assertEquals(String.class,
+        impl.getDeclaredMethod("test_IA_foo").getReturnType());
+  }
+
+  public void testEagerLoadResolvesInheritedJsoMethods() throws Exception {
+    oracle.add(create("test.JA",
+        "import com.google.gwt.core.client.JavaScriptObject;",
+        "public class JA extends JavaScriptObject {",
+        "  protected JA() { }",
+        "  public final String foo() { return \"ja\"; }", "}"));
+    oracle.add(create("test.JB",
+        "import com.google.gwt.core.client.JavaScriptObject;",
+        "public class JB extends JavaScriptObject {",
+        "  protected JB() { }",
+        "  public final String foo() { return \"jb\"; }", "}"));
+    oracle.add(create("test.JC", "public class JC extends JA {",
+        "  protected JC() { }", "}"));
+    oracle.add(create("test.Caller", "public class Caller {",
+        "  public static String call(JC jc) { return jc.foo(); }", "}"));
+    rebuildCompilationState();
+    CompilingClassLoader loader = createLoader(new RecordingHost());
+
+    /*
+     * foo() is declared by two JSOs, so rewriting the call must work out that
+     * JC inherits it from JA; the class fails to load otherwise.
+     */
+    loader.loadEagerly(createTreeLogger(), new String[] {"test.Caller"});
+    Class<?> caller = Class.forName("test.Caller", false, loader);
+    assertEquals("call", caller.getDeclaredMethods()[0].getName());
+  }
+
+  public void testRefusedHotSwapChangesNothing() throws Exception {
+    oracle.add(createFoo("Foo"));
+    rebuildCompilationState();
+    RecordingHost host = new RecordingHost();
+    CompilingClassLoader loader = createLoader(host);
+    Class<?> foo = Class.forName("test.Foo", false, loader);
+
+    oracle.replace(createFoo("Changed"));
+    state.swapUnits(HotSwapChanges.compute(state,
+        isolatedBuilder.doBuildUnitsFrom(createTreeLogger(),
+            oracle.getResources())).getChangedUnits());
+
+    RecordingInstrumentation inst = new RecordingInstrumentation();
+    inst.refuse = true;
+    assertFalse(loader.hotSwap(createTreeLogger(), createProxy(inst)));
+    assertEquals(1, host.injected.size());
+
+    // The loader still knows its classes are out of date.
+    inst.refuse = false;
+    assertTrue(loader.hotSwap(createTreeLogger(), createProxy(inst)));
+    assertEquals(Arrays.asList(foo), inst.redefined);
+    assertEquals(2, host.injected.size());
+  }
+
+  private CompilingClassLoader createLoader(RecordingHost host)
+      throws UnableToCompleteException {
+    return new CompilingClassLoader(createTreeLogger(), state,
+        (ShellJavaScriptHost) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {ShellJavaScriptHost.class}, host));
+  }
+
+  private Instrumentation createProxy(RecordingInstrumentation inst) {
+    return (Instrumentation) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {Instrumentation.class},
+        inst);
+  }
+}
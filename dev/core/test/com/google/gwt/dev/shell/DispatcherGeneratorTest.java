@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+
+/**
+ * Tests {@link DispatcherGenerator}.
+ */
+public class DispatcherGeneratorTest extends TestCase {
+
+  /**
+   * The class whose members are dispatched.
+   */
+  public static class Target {
+    public static int staticField;
+
+    public static String concat(String a, String b) {
+      return a + b;
+    }
+
+    public final int finalField = 1;
+
+    public double field;
+
+    private int privateField;
+
+    public Target() {
+    }
+
+    public Target(double field) {
+      this.field = field;
+    }
+
+    public long add(int a, long b) {
+      return a + b;
+    }
+
+    public void fail() {
+      throw new IllegalStateException("fail");
+    }
+
+    int packagePrivateMethod() {
+      return privateField;
+    }
+  }
+
+  /**
+   * Defines a dispatcher in its own class loader.
+   */
+  private static class DispatcherLoader extends ClassLoader {
+    public DispatcherLoader() {
+      super(DispatcherGeneratorTest.class.getClassLoader());
+    }
+
+    public MemberDispatcher define(Class<?> cls, Member[] members)
+        throws Exception {
+      byte[] bytes = DispatcherGenerator.generate(cls, members);
+      Class<?> dispatcherClass = defineClass(
+          DispatcherGenerator.getDispatcherName(cls), bytes, 0, bytes.length);
+      return (MemberDispatcher) dispatcherClass.newInstance();
+    }
+  }
+
+  public void testCanDispatch() throws Exception {
+    assertTrue(DispatcherGenerator.canDispatch(Target.class,
+        Target.class.getField("field")));
+    assertTrue(DispatcherGenerator.canDispatch(Target.class,
+        Target.class.getMethod("add", int.class, long.class)));
+    assertTrue(DispatcherGenerator.canDispatch(Target.class,
+        Target.class.getDeclaredMethod("packagePrivateMethod")));
+    assertFalse(DispatcherGenerator.canDispatch(Target.class,
+        Target.class.getField("finalField")));
+    assertFalse(DispatcherGenerator.canDispatch(Target.class,
+        Target.class.getDeclaredField("privateField")));
+    assertFalse(DispatcherGenerator.canDispatch(Target.class,
+        new SyntheticClassMember(Target.class)));
+
+    // Package-private members need the same class loader.
+    assertFalse(DispatcherGenerator.canDispatch(String.class,
+        Target.class.getDeclaredMethod("packagePrivateMethod")));
+  }
+
+  public void testDispatch() throws Throwable {
+    Member[] members = new Member[] {
+        null, Target.class.getField("field"),
+        Target.class.getField("staticField"),
+        Target.class.getMethod("add", int.class, long.class),
+        Target.class.getMethod("concat", String.class, String.class),
+        Target.class.getConstructor(double.class),
+        Target.class.getMethod("fail")};
+    MemberDispatcher dispatcher = new DispatcherLoader().define(Target.class,
+        members);
+
+    Target target = (Target) dispatcher.invoke(5, null, new Object[] {2.5});
+    assertEquals(2.5, target.field);
+    assertEquals(2.5, dispatcher.getField(1, target));
+    dispatcher.setField(1, target, 4.0);
+    assertEquals(4.0, target.field);
+
+    dispatcher.setField(2, null, 7);
+    assertEquals(7, Target.staticField);
+    assertEquals(7, dispatcher.getField(2, null));
+
+    assertEquals(Long.valueOf(5L), dispatcher.invoke(3, target,
+        new Object[] {2, 3L}));
+    assertEquals("ab", dispatcher.invoke(4, null, new Object[] {"a", "b"}));
+
+    try {
+      dispatcher.invoke(6, target, new Object[0]);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+      assertEquals("fail", expected.getMessage());
+    }
+
+    try {
+      dispatcher.invoke(1, target, new Object[0]);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  /**
+   * Bad arguments must be reported the way reflection reports them, not as
+   * exceptions thrown by the target.
+   */
+  public void testMethodAdaptorArguments() throws Exception {
+    Method add = Target.class.getMethod("add", int.class, long.class);
+    Method fail = Target.class.getMethod("fail");
+    MemberDispatcher dispatcher = new DispatcherLoader().define(Target.class,
+        new Member[] {add, fail});
+    MethodAdaptor addAdaptor = new MethodAdaptor(add, dispatcher, 0);
+    MethodAdaptor failAdaptor = new MethodAdaptor(fail, dispatcher, 1);
+    Target target = new Target();
+
+    assertEquals(Long.valueOf(5L), addAdaptor.invoke(target, 2, 3L));
+    // Widened by reflection rather than rejected by the dispatcher.
+    assertEquals(Long.valueOf(5L), addAdaptor.invoke(target, 2, 3));
+
+    Object[][] badArgs = {
+        {null, 3L}, {"2", 3L}, {2.5, 3L}, {2}, {2, 3L, 4L}};
+    for (Object[] args : badArgs) {
+      try {
+        addAdaptor.invoke(target, args);
+        fail("Expected IllegalArgumentException");
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+    try {
+      addAdaptor.invoke("not a target", 2, 3L);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    try {
+      failAdaptor.invoke(target);
+      fail("Expected InvocationTargetException");
+    } catch (InvocationTargetException expected) {
+      assertTrue(expected.getCause() instanceof IllegalStateException);
+    }
+  }
+}
@@ -19,8 +19,6 @@ import com.google.gwt.dev.shell.BrowserChannel.RemoteObjectRef;
 
 import junit.framework.TestCase;
 
-import java.util.Set;
-
 /**
  * Test RemoteObjectTable.
  */
@@ -47,13 +45,35 @@ public class RemoteObjectTableTest extends TestCase {
         MockRemoteObjectRef>();
     MockRemoteObjectRef ref = new MockRemoteObjectRef(1);
     table.putRemoteObjectRef(1, ref);
-    Set<Integer> freed = table.getRefIdsForCleanup();
+    int[] freed = table.getRefIdsForCleanup();
     ensureGC();
-    assertEquals(0, freed.size());
+    assertEquals(0, freed.length);
     ref = null;
     ensureGC();
     freed = table.getRefIdsForCleanup();
-    assertEquals(1, freed.size());
+    assertEquals(1, freed.length);
+    assertEquals(1, freed[0]);
+  }
+
+  public void testReplacedReference() throws InterruptedException {
+    RemoteObjectTable<MockRemoteObjectRef> table = new RemoteObjectTable<
+        MockRemoteObjectRef>();
+    table.putRemoteObjectRef(1, new MockRemoteObjectRef(1));
+    ensureGC();
+    assertTrue(table.isNewObjectId(1));
+
+    // The other side sends id 1 again before the old reference is cleaned up.
+    MockRemoteObjectRef ref = new MockRemoteObjectRef(1);
+    table.putRemoteObjectRef(1, ref);
+    assertEquals(0, table.getRefIdsForCleanup().length);
+    assertSame(ref, table.getRemoteObjectRef(1));
+
+    ref = null;
+    ensureGC();
+    int[] freed = table.getRefIdsForCleanup();
+    assertEquals(1, freed.length);
+    assertEquals(1, freed[0]);
+    assertNull(table.getRemoteObjectRef(1));
   }
 
   /**
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Test ServerObjectsTable.
+ */
+public class ServerObjectsTableTest extends TestCase {
+
+  public void testAddAndFree() {
+    ServerObjectsTable table = new ServerObjectsTable();
+    Object a = new Object();
+    Object b = new Object();
+    assertEquals(0, table.add(a));
+    assertEquals(1, table.add(b));
+    assertEquals(0, table.add(a));
+    assertSame(b, table.get(1));
+    assertEquals(1, table.find(b));
+
+    table.free(0);
+    assertEquals(-1, table.find(a));
+    assertEquals(1, table.find(b));
+
+    // Freed ids are reused.
+    Object c = new Object();
+    assertEquals(0, table.add(c));
+    assertSame(c, table.get(0));
+    assertNull(table.get(2));
+  }
+
+  /**
+   * Checks the table against a reference map through growth and many frees.
+   */
+  public void testChurn() {
+    ServerObjectsTable table = new ServerObjectsTable();
+    Map<Object, Integer> expected = new IdentityHashMap<Object, Integer>();
+    List<Object> live = new ArrayList<Object>();
+    Random random = new Random(42);
+    for (int i = 0; i < 20000; ++i) {
+      if (live.isEmpty() || random.nextInt(3) != 0) {
+        Object obj = new Object();
+        int id = table.add(obj);
+        assertFalse(expected.containsValue(id));
+        expected.put(obj, id);
+        live.add(obj);
+      } else {
+        Object obj = live.remove(random.nextInt(live.size()));
+        table.free(expected.remove(obj));
+        assertEquals(-1, table.find(obj));
+      }
+    }
+    for (Map.Entry<Object, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue().intValue(), table.find(entry.getKey()));
+      assertSame(entry.getKey(), table.get(entry.getValue()));
+    }
+  }
+}
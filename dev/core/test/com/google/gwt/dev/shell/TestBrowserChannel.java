@@ -18,8 +18,6 @@ package com.google.gwt.dev.shell;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Collections;
-import java.util.Set;
 
 /**
  * A test channel that mocks out Java/JS object references.
@@ -36,8 +34,8 @@ class TestBrowserChannel extends BrowserChannel {
         return new JsObjectRef(refId);
       }
 
-      public Set<Integer> getRefIdsForCleanup() {
-        return Collections.emptySet();
+      public int[] getRefIdsForCleanup() {
+        return new int[0];
       }
     });
   }
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell.jetty;
+
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Tests {@link GzipStaticContentFilter} against files in a temporary war
+ * directory.
+ */
+public class GzipStaticContentFilterTest extends TestCase {
+
+  /**
+   * Records whether a request was passed on to the rest of the chain.
+   */
+  private static class RecordingChain implements FilterChain {
+    boolean called;
+
+    public void doFilter(ServletRequest request, ServletResponse response) {
+      called = true;
+    }
+  }
+
+  /**
+   * Records the status, headers and body of a response.
+   */
+  private static class RecordingResponse implements InvocationHandler {
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    final Map<String, Object> headers = new HashMap<String, Object>();
+    int status = HttpServletResponse.SC_OK;
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      String name = method.getName();
+      if (name.equals("setStatus")) {
+        status = (Integer) args[0];
+      } else if (name.equals("setHeader") || name.equals("setDateHeader")) {
+        headers.put((String) args[0], args[1]);
+      } else if (name.equals("getOutputStream")) {
+        return new ServletOutputStream() {
+          @Override
+          public void write(int b) {
+            body.write(b);
+          }
+        };
+      }
+      return null;
+    }
+
+    byte[] getUncompressedBody() throws IOException {
+      assertEquals("gzip", headers.get("Content-Encoding"));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Util.copy(new GZIPInputStream(new ByteArrayInputStream(
+          body.toByteArray())), out);
+      return out.toByteArray();
+    }
+  }
+
+  private static String content(String text) {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < 1000) {
+      sb.append(text).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private GzipStaticContentFilter filter;
+
+  private File war;
+
+  public void testChangedFileIsCompressedAgain() throws Exception {
+    File file = new File(war, "app.js");
+    Util.writeStringAsFile(file, content("first"));
+    assertEquals(content("first"),
+        Util.toString(get("/app.js", -1).getUncompressedBody()));
+    long firstSize = filter.getCacheSize();
+    assertTrue(firstSize > 0);
+
+    Util.writeStringAsFile(file, content("second version"));
+    assertTrue(file.setLastModified(file.lastModified() + 10000));
+    assertEquals(content("second version"),
+        Util.toString(get("/app.js", -1).getUncompressedBody()));
+    assertTrue(filter.getCacheSize() != firstSize);
+  }
+
+  public void testDeletedFileIsEvicted() throws Exception {
+    File file = new File(war, "app.js");
+    Util.writeStringAsFile(file, content("first"));
+    get("/app.js", -1);
+    assertTrue(filter.getCacheSize() > 0);
+
+    assertTrue(file.delete());
+    RecordingChain chain = new RecordingChain();
+    RecordingResponse response = filter("/app.js", -1, chain);
+    assertTrue(chain.called);
+    assertFalse(response.headers.containsKey("Content-Encoding"));
+    assertEquals(0, filter.getCacheSize());
+  }
+
+  public void testNotModified() throws Exception {
+    File file = new File(war, "app.js");
+    Util.writeStringAsFile(file, content("first"));
+    long lastModified = file.lastModified() / 1000 * 1000;
+
+    RecordingChain chain = new RecordingChain();
+    RecordingResponse response = filter("/app.js", lastModified, chain);
+    assertFalse(chain.called);
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.status);
+    assertEquals(0, response.body.size());
+
+    // Modified since the client's copy.
+    response = get("/app.js", lastModified - 1000);
+    assertEquals(HttpServletResponse.SC_OK, response.status);
+    assertEquals(lastModified, response.headers.get("Last-Modified"));
+    assertEquals(content("first"), Util.toString(response.getUncompressedBody()));
+  }
+
+  public void testSmallAndUnknownFilesPassThrough() throws Exception {
+    Util.writeStringAsFile(new File(war, "small.js"), "var x;");
+    Util.writeStringAsFile(new File(war, "image.png"), content("not text"));
+    for (String path : new String[] {"/small.js", "/image.png", "/missing.js"}) {
+      RecordingChain chain = new RecordingChain();
+      filter(path, -1, chain);
+      assertTrue(path, chain.called);
+    }
+    assertEquals(0, filter.getCacheSize());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    war = File.createTempFile("war", "");
+    assertTrue(war.delete());
+    assertTrue(war.mkdir());
+    filter = new GzipStaticContentFilter(1024 * 1024);
+    filter.init((FilterConfig) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {FilterConfig.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            return createContext();
+          }
+        }));
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(war, false);
+  }
+
+  private ServletContext createContext() {
+    return (ServletContext) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {ServletContext.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String path = (String) args[0];
+            if (method.getName().equals("getRealPath")) {
+              return new File(war, path).getPath();
+            } else if (method.getName().equals("getMimeType")) {
+              return path.endsWith(".js") ? "text/javascript" : "image/png";
+            }
+            return null;
+          }
+        });
+  }
+
+  private HttpServletRequest createRequest(final String path,
+      final long ifModifiedSince) {
+    return (HttpServletRequest) Proxy.newProxyInstance(
+        getClass().getClassLoader(),
+        new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("getMethod")) {
+              return "GET";
+            } else if (name.equals("getHeader")) {
+              return "Accept-Encoding".equals(args[0]) ? "gzip, deflate"
+                  : null;
+            } else if (name.equals("getDateHeader")) {
+              return "If-Modified-Since".equals(args[0]) ? ifModifiedSince
+                  : -1L;
+            } else if (name.equals("getServletPath")
+                || name.equals("getRequestURI")) {
+              return path;
+            }
+            return null;
+          }
+        });
+  }
+
+  private RecordingResponse filter(String path, long ifModifiedSince,
+      FilterChain chain) throws Exception {
+    RecordingResponse response = new RecordingResponse();
+    filter.doFilter(createRequest(path, ifModifiedSince),
+        (HttpServletResponse) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {HttpServletResponse.class}, response), chain);
+    return response;
+  }
+
+  /**
+   * Requests a file that the filter should serve itself.
+   */
+  private RecordingResponse get(String path, long ifModifiedSince)
+      throws Exception {
+    RecordingChain chain = new RecordingChain();
+    RecordingResponse response = filter(path, ifModifiedSince, chain);
+    assertFalse(chain.called);
+    return response;
+  }
+}
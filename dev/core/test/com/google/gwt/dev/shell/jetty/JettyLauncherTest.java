@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the tuning options of {@link JettyLauncher}.
+ */
+public class JettyLauncherTest extends TestCase {
+
+  public void testProcessArguments() {
+    assertTrue(new JettyLauncher().processArguments(TreeLogger.NULL,
+        "threads=20,acceptors=2,cacheSize=64,cachedFileSize=512,"
+            + "cachedFiles=100,gzip"));
+    assertFalse(new JettyLauncher().processArguments(TreeLogger.NULL,
+        "threads=-1"));
+    assertFalse(new JettyLauncher().processArguments(TreeLogger.NULL,
+        "unknown=1"));
+  }
+
+  public void testSizesMustFitInAnInt() {
+    assertTrue(new JettyLauncher().processArguments(TreeLogger.NULL,
+        "cacheSize=2047"));
+    assertFalse(new JettyLauncher().processArguments(TreeLogger.NULL,
+        "cacheSize=2048"));
+    assertTrue(new JettyLauncher().processArguments(TreeLogger.NULL,
+        "cachedFileSize=2097151"));
+    assertFalse(new JettyLauncher().processArguments(TreeLogger.NULL,
+        "cachedFileSize=2097152"));
+  }
+}
@@ -310,6 +310,103 @@ public class MessageTransportTest extends TestCase {
     network.shutdown();
   }
 
+  /**
+   * Tests that executing a request blocks while too many requests are waiting
+   * for their responses, until the server responds to one of them.
+   */
+  public void testPendingRequestsAreBounded() throws InterruptedException,
+      ExecutionException, IOException, TimeoutException {
+    MockNetwork network = createMockNetwork();
+
+    RequestProcessor requestProcessor = new RequestProcessor() {
+      public Response execute(Request request) throws Exception {
+        fail("Should not reach here.");
+        return null;
+      }
+    };
+
+    // Set up a transport on the client side that allows two pending requests
+    final MessageTransport messageTransport = new MessageTransport(
+        network.getClientSocket().getInputStream(),
+        network.getClientSocket().getOutputStream(), requestProcessor, null, 2,
+        MessageTransport.DEFAULT_PERMIT_TIMEOUT_MILLIS);
+    messageTransport.start();
+
+    Message.Request.Builder requestMessageBuilder = Message.Request.newBuilder();
+    requestMessageBuilder.setServiceType(Message.Request.ServiceType.DEV_MODE);
+    final Message.Request request = requestMessageBuilder.build();
+
+    Future<Response> first = messageTransport.executeRequestAsync(request);
+    messageTransport.executeRequestAsync(request);
+    ExecutorService executorService = Executors.newFixedThreadPool(1);
+    Future<Future<Response>> third = executorService.submit(new Callable<Future<Response>>() {
+      public Future<Response> call() {
+        return messageTransport.executeRequestAsync(request);
+      }
+    });
+    try {
+      third.get(500, TimeUnit.MILLISECONDS);
+      fail("Should have waited for a response");
+    } catch (TimeoutException expected) {
+    }
+
+    // Respond to the first request on the server
+    Message receivedRequest = Message.parseDelimitedFrom(network.getServerSocket().getInputStream());
+    Response response = Response.newBuilder().build();
+    Message.Builder responseMsgBuilder = Message.newBuilder();
+    responseMsgBuilder.setMessageType(Message.MessageType.RESPONSE);
+    responseMsgBuilder.setMessageId(receivedRequest.getMessageId());
+    responseMsgBuilder.setResponse(response);
+    responseMsgBuilder.build().writeDelimitedTo(
+        network.getServerSocket().getOutputStream());
+
+    assertEquals(response, first.get(2, TimeUnit.SECONDS));
+    assertNotNull(third.get(2, TimeUnit.SECONDS));
+
+    executorService.shutdown();
+    network.shutdown();
+  }
+
+  /**
+   * Tests that a request fails rather than waiting for good when the server
+   * never responds to the pending requests.
+   */
+  public void testPendingRequestTimesOut() throws InterruptedException,
+      ExecutionException, IOException {
+    MockNetwork network = createMockNetwork();
+
+    RequestProcessor requestProcessor = new RequestProcessor() {
+      public Response execute(Request request) throws Exception {
+        fail("Should not reach here.");
+        return null;
+      }
+    };
+
+    // Set up a transport on the client side that allows one pending request
+    MessageTransport messageTransport = new MessageTransport(
+        network.getClientSocket().getInputStream(),
+        network.getClientSocket().getOutputStream(), requestProcessor, null, 1,
+        100);
+    messageTransport.start();
+
+    Message.Request.Builder requestMessageBuilder = Message.Request.newBuilder();
+    requestMessageBuilder.setServiceType(Message.Request.ServiceType.DEV_MODE);
+    Message.Request request = requestMessageBuilder.build();
+
+    Future<Response> first = messageTransport.executeRequestAsync(request);
+    Future<Response> second = messageTransport.executeRequestAsync(request);
+    assertTrue(second.isDone());
+    try {
+      second.get();
+      fail("Should have timed out");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof TimeoutException);
+    }
+    assertFalse(first.isDone());
+
+    network.shutdown();
+  }
+
   /**
    * Tests that a client request is successfully received by the
    * RequestProcessor, and the response generated by the RequestProcessor is
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell.remoteui;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.TreeLogger.HelpInfo;
+import com.google.gwt.core.ext.TreeLogger.Type;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Response;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests {@link ViewerServiceTreeLogger} against a viewer that records what it
+ * is sent.
+ */
+public class ViewerServiceTreeLoggerTest extends TestCase {
+
+  /**
+   * Records the entries it is sent as "handle:index:level:summary". It can hold
+   * back the handles of new branches, which stalls the logger's queue, or
+   * answer entries slowly.
+   */
+  static class FakeViewer extends ViewerServiceClient {
+    final CountDownLatch branchArrived = new CountDownLatch(1);
+    final List<String> entries = Collections.synchronizedList(new ArrayList<String>());
+    int maxUnanswered;
+    final CountDownLatch releaseBranches;
+    private int nextLogHandle = 100;
+    private BlockingQueue<FutureTask<Response>> unanswered;
+    private final AtomicInteger unansweredCount = new AtomicInteger();
+
+    FakeViewer(boolean holdBranches) {
+      super(null);
+      releaseBranches = new CountDownLatch(holdBranches ? 1 : 0);
+    }
+
+    @Override
+    public Future<Response> addLogBranchAsync(Type type, String msg,
+        Throwable caught, HelpInfo helpInfo, int parentLogHandle,
+        int indexInParent) {
+      entries.add(parentLogHandle + ":" + indexInParent + ":" + type + ":"
+          + msg);
+      branchArrived.countDown();
+      return new BranchResponse(nextLogHandle++);
+    }
+
+    @Override
+    public Future<Response> addLogEntryAsync(
+        int indexOfLogEntryWithinParentLogger, Type type, String msg,
+        Throwable caught, HelpInfo helpInfo, int logHandle) {
+      entries.add(logHandle + ":" + indexOfLogEntryWithinParentLogger + ":"
+          + type + ":" + msg);
+      FutureTask<Response> response = new FutureTask<Response>(NO_RESPONSE);
+      if (unanswered == null) {
+        response.run();
+      } else {
+        maxUnanswered = Math.max(maxUnanswered,
+            unansweredCount.incrementAndGet());
+        unanswered.add(response);
+      }
+      return response;
+    }
+
+    /**
+     * Answers each entry a millisecond after the one before it.
+     */
+    void answerSlowly() {
+      unanswered = new LinkedBlockingQueue<FutureTask<Response>>();
+      Thread responder = new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (true) {
+              FutureTask<Response> response = unanswered.take();
+              Thread.sleep(1);
+              unansweredCount.decrementAndGet();
+              response.run();
+            }
+          } catch (InterruptedException e) {
+          }
+        }
+      };
+      responder.setDaemon(true);
+      responder.start();
+    }
+
+    @Override
+    public int getLogBranchHandle(Future<Response> addLogBranchResponse) {
+      try {
+        releaseBranches.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return ((BranchResponse) addLogBranchResponse).logHandle;
+    }
+  }
+
+  private static class BranchResponse extends FutureTask<Response> {
+    final int logHandle;
+
+    BranchResponse(int logHandle) {
+      super(NO_RESPONSE);
+      this.logHandle = logHandle;
+      run();
+    }
+  }
+
+  private static final Callable<Response> NO_RESPONSE = new Callable<Response>() {
+    public Response call() {
+      return null;
+    }
+  };
+
+  private static final Pattern DROPPED = Pattern.compile(":WARN:(\\d+) log entries were dropped.*");
+
+  private static final Pattern REPEATED = Pattern.compile(".*:SPAM:again(?: \\(repeated (\\d+) times\\))?");
+
+  private static final Pattern SPAM = Pattern.compile(":SPAM:spam \\d+(?: \\(repeated (\\d+) times\\))?$");
+
+  /**
+   * Asserts that the entries logged with a handle have the indices 0, 1, 2...
+   * in some order. The viewer places entries by index, and a summary of dropped
+   * entries is shipped before the entry that made room for it.
+   */
+  private static void assertContiguousIndices(List<String> entries,
+      int logHandle) {
+    List<Integer> indices = new ArrayList<Integer>();
+    for (String entry : entries) {
+      String[] fields = entry.split(":", 3);
+      if (Integer.parseInt(fields[0]) == logHandle) {
+        indices.add(Integer.parseInt(fields[1]));
+      }
+    }
+    Collections.sort(indices);
+    assertFalse(indices.isEmpty());
+    for (int i = 0; i < indices.size(); ++i) {
+      assertEquals(i, indices.get(i).intValue());
+    }
+  }
+
+  public void testBranchesAndEntriesArriveInOrder() throws InterruptedException {
+    FakeViewer viewer = new FakeViewer(false);
+    ViewerServiceTreeLogger root = createLogger(viewer,
+        ViewerServiceLogQueue.DEFAULT_CAPACITY);
+
+    root.log(TreeLogger.INFO, "one");
+    TreeLogger branch = root.branch(TreeLogger.INFO, "two");
+    branch.log(TreeLogger.WARN, "three");
+    root.log(TreeLogger.INFO, "four");
+    root.flush();
+
+    List<String> expected = new ArrayList<String>();
+    expected.add("1:0:INFO:one");
+    expected.add("1:1:INFO:two");
+    expected.add("100:0:WARN:three");
+    expected.add("1:2:INFO:four");
+    assertEquals(expected, viewer.entries);
+    assertEquals(100, ((ViewerServiceTreeLogger) branch).getLogHandle());
+  }
+
+  public void testDropsLowPriorityEntriesWhenFull() throws InterruptedException {
+    FakeViewer viewer = new FakeViewer(true);
+    ViewerServiceTreeLogger root = createLogger(viewer, 4);
+    TreeLogger branch = stall(viewer, root);
+
+    for (int i = 0; i < 100; ++i) {
+      branch.log(TreeLogger.SPAM, "spam " + i);
+    }
+    viewer.releaseBranches.countDown();
+    branch.log(TreeLogger.INFO, "done");
+    root.flush();
+
+    int dropped = 0;
+    int shipped = 0;
+    for (String entry : viewer.entries) {
+      Matcher matcher = DROPPED.matcher(entry);
+      if (matcher.find()) {
+        dropped += Integer.parseInt(matcher.group(1));
+      } else if (entry.contains(":SPAM:spam ")) {
+        ++shipped;
+      }
+    }
+    assertTrue(dropped > 0);
+    assertEquals(100, dropped + shipped);
+    String last = viewer.entries.get(viewer.entries.size() - 1);
+    assertTrue(last, last.endsWith(":INFO:done"));
+    assertContiguousIndices(viewer.entries, 100);
+  }
+
+  public void testRepeatedEntriesAreCoalesced() throws InterruptedException {
+    FakeViewer viewer = new FakeViewer(true);
+    ViewerServiceTreeLogger root = createLogger(viewer,
+        ViewerServiceLogQueue.DEFAULT_CAPACITY);
+    TreeLogger branch = stall(viewer, root);
+
+    for (int i = 0; i < 50; ++i) {
+      branch.log(TreeLogger.SPAM, "again");
+    }
+    viewer.releaseBranches.countDown();
+    root.flush();
+
+    int messages = 0;
+    int repeats = 0;
+    for (String entry : viewer.entries) {
+      Matcher matcher = REPEATED.matcher(entry);
+      if (matcher.matches()) {
+        ++messages;
+        repeats += matcher.group(1) == null ? 1
+            : Integer.parseInt(matcher.group(1));
+      }
+    }
+    assertEquals(50, repeats);
+    assertTrue(messages <= 2);
+    assertContiguousIndices(viewer.entries, 100);
+  }
+
+  public void testSkippedIndices() {
+    ViewerServiceLogQueue.SkippedIndices skipped = new ViewerServiceLogQueue.SkippedIndices();
+    assertEquals(5, skipped.renumber(5));
+    skipped.add(2);
+    skipped.add(3);
+    skipped.add(7);
+    assertEquals(1, skipped.renumber(1));
+    assertEquals(2, skipped.renumber(4));
+    assertEquals(5, skipped.renumber(8));
+
+    // Out of order, as when threads race; fills the gap between two runs.
+    skipped.add(5);
+    skipped.add(6);
+    skipped.add(4);
+    assertEquals(2, skipped.renumber(8));
+    assertEquals(1, skipped.renumber(1));
+    skipped.add(0);
+    assertEquals(0, skipped.renumber(1));
+    assertEquals(1, skipped.renumber(8));
+  }
+
+  public void testSlowViewerBoundsUnansweredEntries()
+      throws InterruptedException {
+    FakeViewer viewer = new FakeViewer(false);
+    viewer.answerSlowly();
+    ViewerServiceTreeLogger root = createLogger(viewer, 16, 4);
+
+    for (int i = 0; i < 1000; ++i) {
+      root.log(TreeLogger.SPAM, "spam " + i);
+      root.log(TreeLogger.SPAM, "spam " + i);
+    }
+    root.log(TreeLogger.INFO, "done");
+    root.flush();
+
+    int dropped = 0;
+    int shipped = 0;
+    for (String entry : viewer.entries) {
+      Matcher matcher = DROPPED.matcher(entry);
+      if (matcher.find()) {
+        dropped += Integer.parseInt(matcher.group(1));
+      } else if ((matcher = SPAM.matcher(entry)).find()) {
+        shipped += matcher.group(1) == null ? 1
+            : Integer.parseInt(matcher.group(1));
+      }
+    }
+    assertTrue(dropped > 0);
+    assertEquals(2000, dropped + shipped);
+    assertTrue(viewer.maxUnanswered <= 4);
+    String last = viewer.entries.get(viewer.entries.size() - 1);
+    assertTrue(last, last.endsWith(":INFO:done"));
+    assertContiguousIndices(viewer.entries, 1);
+  }
+
+  private ViewerServiceTreeLogger createLogger(FakeViewer viewer, int capacity) {
+    return createLogger(viewer, capacity,
+        ViewerServiceLogQueue.DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  private ViewerServiceTreeLogger createLogger(FakeViewer viewer,
+      int capacity, int maxInFlight) {
+    ViewerServiceTreeLogger logger = new ViewerServiceTreeLogger(viewer,
+        capacity, maxInFlight);
+    logger.setLogHandle(1);
+    logger.setMaxDetail(TreeLogger.ALL);
+    return logger;
+  }
+
+  /**
+   * Logs in a new branch, and waits until the queue is stuck waiting for the
+   * viewer to create it.
+   */
+  private TreeLogger stall(FakeViewer viewer, ViewerServiceTreeLogger root)
+      throws InterruptedException {
+    TreeLogger branch = root.branch(TreeLogger.INFO, "branch");
+    branch.log(TreeLogger.INFO, "first");
+    assertTrue(viewer.branchArrived.await(10, TimeUnit.SECONDS));
+    return branch;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell.rewrite;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link RewrittenClassCache}.
+ */
+public class RewrittenClassCacheTest extends TestCase {
+
+  private static final byte[] CLASS_BYTES = new byte[] {
+      (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe, 0, 0, 0, 49};
+
+  private static final List<String> NO_DEPENDENCIES = Collections.emptyList();
+
+  private static final Map<String, String> NO_MAPPINGS = Collections.emptyMap();
+
+  private File cacheDir;
+
+  public void testComputeKey() {
+    String key = RewrittenClassCache.computeKey("a.B", CLASS_BYTES,
+        NO_MAPPINGS, NO_DEPENDENCIES);
+    assertEquals(key, RewrittenClassCache.computeKey("a.B",
+        CLASS_BYTES.clone(), NO_MAPPINGS, NO_DEPENDENCIES));
+
+    byte[] otherBytes = CLASS_BYTES.clone();
+    otherBytes[7] = 50;
+    assertFalse(key.equals(RewrittenClassCache.computeKey("a.B", otherBytes,
+        NO_MAPPINGS, NO_DEPENDENCIES)));
+    assertFalse(key.equals(RewrittenClassCache.computeKey("a.C", CLASS_BYTES,
+        NO_MAPPINGS, NO_DEPENDENCIES)));
+
+    Map<String, String> mappings = new HashMap<String, String>();
+    mappings.put("a/B$1", "a/B$2");
+    assertFalse(key.equals(RewrittenClassCache.computeKey("a.B", CLASS_BYTES,
+        mappings, NO_DEPENDENCIES)));
+    assertFalse(key.equals(RewrittenClassCache.computeKey("a.B", CLASS_BYTES,
+        NO_MAPPINGS, Arrays.asList("a/I"))));
+  }
+
+  public void testGenerations() {
+    String key = RewrittenClassCache.computeKey("a.B", CLASS_BYTES,
+        NO_MAPPINGS, NO_DEPENDENCIES);
+    RewrittenClassCache cache = RewrittenClassCache.create(TreeLogger.NULL,
+        cacheDir, "hierarchy1");
+    cache.put(TreeLogger.NULL, key, CLASS_BYTES);
+
+    // A changed JSO hierarchy must not see entries from the old one.
+    cache = RewrittenClassCache.create(TreeLogger.NULL, cacheDir, "hierarchy2");
+    assertNull(cache.get(key));
+    assertTrue(new File(cacheDir, "hierarchy1").isDirectory());
+
+    // Stale generations are deleted.
+    new File(cacheDir, "hierarchy1").setLastModified(0);
+    RewrittenClassCache.create(TreeLogger.NULL, cacheDir, "hierarchy2");
+    assertFalse(new File(cacheDir, "hierarchy1").exists());
+  }
+
+  public void testGetAndPut() {
+    RewrittenClassCache cache = RewrittenClassCache.create(TreeLogger.NULL,
+        cacheDir, "hierarchy");
+    String key = RewrittenClassCache.computeKey("a.B", CLASS_BYTES,
+        NO_MAPPINGS, NO_DEPENDENCIES);
+    assertNull(cache.get(key));
+    cache.put(TreeLogger.NULL, key, CLASS_BYTES);
+    assertTrue(Arrays.equals(CLASS_BYTES, cache.get(key)));
+
+    // A new cache over the same directory, as after a module reload.
+    cache = RewrittenClassCache.create(TreeLogger.NULL, cacheDir, "hierarchy");
+    assertTrue(Arrays.equals(CLASS_BYTES, cache.get(key)));
+    assertNull(cache.get(RewrittenClassCache.computeKey("a.C", CLASS_BYTES,
+        NO_MAPPINGS, NO_DEPENDENCIES)));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  public void testTempFileDeletedWhenRenameFails() {
+    RewrittenClassCache cache = RewrittenClassCache.create(TreeLogger.NULL,
+        cacheDir, "hierarchy");
+    String key = RewrittenClassCache.computeKey("a.B", CLASS_BYTES,
+        NO_MAPPINGS, NO_DEPENDENCIES);
+    File dir = new File(new File(cacheDir, "hierarchy"), key.substring(0, 2));
+    // A non-empty directory in the way makes the rename fail.
+    File blocker = new File(dir, key.substring(2) + ".class");
+    new File(blocker, "child").mkdirs();
+
+    cache.put(TreeLogger.NULL, key, CLASS_BYTES);
+    assertNull(cache.get(key));
+    assertEquals(Arrays.asList(blocker.getName()), Arrays.asList(dir.list()));
+  }
+
+  @Override
+  protected void setUp() throws IOException {
+    cacheDir = File.createTempFile("RewrittenClassCacheTest", "");
+    cacheDir.delete();
+    cacheDir.mkdir();
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(cacheDir, false);
+  }
+}
@@ -17,6 +17,7 @@ package com.google.gwt.dev.util;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 
 /**
@@ -49,6 +50,40 @@ public class DiskCacheTest extends TestCase {
     }
   }
 
+  public void testTransferToBlockingStream() throws Exception {
+    final long first = diskCache.writeString("first");
+    final long second = diskCache.writeString("second");
+    final ByteArrayOutputStream secondOut = new ByteArrayOutputStream();
+    final boolean[] secondDoneFirst = new boolean[1];
+    final Thread secondThread = new Thread() {
+      @Override
+      public void run() {
+        diskCache.transferToStream(second, secondOut);
+      }
+    };
+
+    // Like a jar entry waiting for the entries before it.
+    ByteArrayOutputStream firstOut = new ByteArrayOutputStream() {
+      @Override
+      public synchronized void write(byte[] b, int off, int len) {
+        super.write(b, off, len);
+        if (!secondThread.isAlive() && secondOut.size() == 0) {
+          secondThread.start();
+          try {
+            secondThread.join(10000);
+            secondDoneFirst[0] = !secondThread.isAlive();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }
+    };
+    diskCache.transferToStream(first, firstOut);
+    assertEquals("first", Util.toString(firstOut.toByteArray()));
+    assertTrue(secondDoneFirst[0]);
+    assertEquals("second", Util.toString(secondOut.toByteArray()));
+  }
+
   public void testStrings() {
     String a = "";
     String b = "abjdsfkl;jasdf";
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Tests {@link OutputFileSetOnDirectory} when it removes unwritten files.
+ */
+public class OutputFileSetOnDirectoryTest extends TestCase {
+
+  private static final long LONG_AGO = (System.currentTimeMillis() - 60000)
+      / 1000 * 1000;
+
+  private File dir;
+
+  public void testChangedFilesAreReplaced() throws IOException {
+    writeOldFile("longer.txt", "abc");
+    writeOldFile("prefix.txt", "abcdef");
+    writeOldFile("shorter.txt", "abcdef");
+
+    OutputFileSet out = new OutputFileSetOnDirectory(dir, "", true);
+    write(out, "longer.txt", "abcdef");
+    write(out, "prefix.txt", "abcxyz");
+    write(out, "shorter.txt", "abc");
+    out.close();
+
+    assertContents("longer.txt", "abcdef");
+    assertContents("prefix.txt", "abcxyz");
+    assertContents("shorter.txt", "abc");
+    assertEquals(3, dir.list().length);
+  }
+
+  public void testUnchangedFileIsLeftAlone() throws IOException {
+    File file = writeOldFile("same.txt", "unchanged");
+
+    OutputFileSet out = new OutputFileSetOnDirectory(dir, "", true);
+    assertTrue(out.canWriteConcurrently());
+    write(out, "same.txt", "unchanged");
+    out.close();
+
+    assertContents("same.txt", "unchanged");
+    assertEquals(LONG_AGO, file.lastModified());
+  }
+
+  public void testUnwrittenFilesAreRemoved() throws IOException {
+    writeOldFile("keep.txt", "keep");
+    writeOldFile("stale.txt", "stale");
+    File sub = new File(dir, "sub");
+    sub.mkdir();
+    writeOldFile("sub/stale.txt", "stale");
+
+    OutputFileSet out = new OutputFileSetOnDirectory(dir, "", true);
+    write(out, "keep.txt", "keep");
+    write(out, "new/new.txt", "new");
+    out.close();
+
+    assertContents("keep.txt", "keep");
+    assertContents("new/new.txt", "new");
+    assertFalse(new File(dir, "stale.txt").exists());
+    assertFalse(sub.exists());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("gwt-output-file-set-test", "");
+    dir.delete();
+    dir.mkdir();
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(dir, false);
+  }
+
+  private void assertContents(String path, String expected) {
+    assertEquals(expected, Util.readFileAsString(new File(dir, path)));
+  }
+
+  private void write(OutputFileSet out, String path, String contents)
+      throws IOException {
+    OutputStream stream = out.openForWrite(path, LONG_AGO + 2000);
+    stream.write(Util.getBytes(contents));
+    stream.close();
+  }
+
+  private File writeOldFile(String path, String contents) {
+    File file = new File(dir, path);
+    Util.writeStringAsFile(file, contents);
+    file.setLastModified(LONG_AGO);
+    return file;
+  }
+}
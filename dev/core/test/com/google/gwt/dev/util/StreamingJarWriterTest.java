@@ -0,0 +1,174 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Tests {@link StreamingJarWriter}.
+ */
+public class StreamingJarWriterTest extends TestCase {
+
+  /**
+   * Fails after a number of bytes are written.
+   */
+  private static class FailingOutputStream extends OutputStream {
+    private int remaining;
+
+    public FailingOutputStream(int remaining) {
+      this.remaining = remaining;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (--remaining < 0) {
+        throw new IOException("Disk full");
+      }
+    }
+  }
+
+  private static void assertWriteFails(OutputStream entry, byte[] bytes) {
+    try {
+      entry.write(bytes);
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+    try {
+      // Closing still ends the entry, so that the writer does not wait for it.
+      entry.close();
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+  }
+
+  private static byte[] contents(int seed, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; ++i) {
+      bytes[i] = (byte) ((i * 31 + seed) ^ (i >> 7));
+    }
+    return bytes;
+  }
+
+  private static byte[] readEntry(JarInputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Util.copyNoClose(in, out);
+    return out.toByteArray();
+  }
+
+  public void testConcurrentEntries() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final StreamingJarWriter jar = new StreamingJarWriter(out, "test.jar");
+    final List<String> opened = new ArrayList<String>();
+    final IOException[] failure = new IOException[1];
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; ++t) {
+      final int thread = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 5; ++i) {
+              String name = "t" + thread + "/" + i;
+              OutputStream entry;
+              synchronized (opened) {
+                entry = jar.openEntry(new ZipEntry(name));
+                opened.add(name);
+              }
+              // Larger than all of the chunks an entry may hold.
+              byte[] bytes = contents(thread * 10 + i, 300000 + i);
+              entry.write(bytes, 0, 1000);
+              entry.write(bytes[1000]);
+              entry.write(bytes, 1001, bytes.length - 1001);
+              entry.close();
+            }
+          } catch (IOException e) {
+            failure[0] = e;
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    jar.close();
+    assertNull(failure[0]);
+
+    JarInputStream in = new JarInputStream(new ByteArrayInputStream(
+        out.toByteArray()));
+    for (String name : opened) {
+      JarEntry entry = in.getNextJarEntry();
+      assertEquals(name, entry.getName());
+      int thread = name.charAt(1) - '0';
+      int i = name.charAt(3) - '0';
+      assertTrue(name, Arrays.equals(contents(thread * 10 + i, 300000 + i),
+          readEntry(in)));
+    }
+    assertNull(in.getNextJarEntry());
+  }
+
+  public void testEmptyEntry() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamingJarWriter jar = new StreamingJarWriter(out, "test.jar");
+    jar.openEntry(new ZipEntry("empty")).close();
+    OutputStream entry = jar.openEntry(new ZipEntry("full"));
+    entry.write(Util.getBytes("full"));
+    entry.close();
+    try {
+      entry.write(0);
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+    jar.close();
+
+    JarInputStream in = new JarInputStream(new ByteArrayInputStream(
+        out.toByteArray()));
+    assertEquals("empty", in.getNextJarEntry().getName());
+    assertEquals(0, readEntry(in).length);
+    assertEquals("full", in.getNextJarEntry().getName());
+    assertEquals("full", Util.toString(readEntry(in)));
+  }
+
+  public void testWriteFailure() throws IOException {
+    StreamingJarWriter jar = new StreamingJarWriter(new FailingOutputStream(
+        1000), "test.jar");
+    OutputStream first = jar.openEntry(new ZipEntry("first"));
+    OutputStream second = jar.openEntry(new ZipEntry("second"));
+    // Random, so that it does not compress.
+    byte[] bytes = new byte[1000000];
+    new Random(0).nextBytes(bytes);
+    assertWriteFails(first, bytes);
+    assertWriteFails(second, bytes);
+    try {
+      jar.close();
+      fail("Expected IOException");
+    } catch (IOException expected) {
+      assertEquals("Disk full", expected.getCause().getMessage());
+    }
+  }
+}
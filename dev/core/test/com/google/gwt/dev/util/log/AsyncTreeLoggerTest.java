@@ -0,0 +1,185 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.log;
+
+import com.google.gwt.core.ext.TreeLogger;
+
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests {@link AsyncTreeLogger}.
+ */
+public class AsyncTreeLoggerTest extends TestCase {
+
+  private StringWriter sw;
+
+  private PrintWriterTreeLogger target;
+
+  public void testBranchStructure() {
+    AsyncTreeLogger logger = new AsyncTreeLogger(target);
+    logger.log(TreeLogger.INFO, "one", null);
+    TreeLogger branch = logger.branch(TreeLogger.INFO, "two", null);
+    branch.log(TreeLogger.INFO, "three", null);
+    branch.branch(TreeLogger.INFO, "four", null).log(TreeLogger.WARN, "five",
+        null);
+    logger.log(TreeLogger.INFO, "six", null);
+    logger.flush();
+
+    assertEquals(lines("one", "two", "   three", "   four",
+        "      [WARN] five", "six"), sw.toString());
+  }
+
+  public void testCloseWritesEverything() {
+    AsyncTreeLogger logger = new AsyncTreeLogger(target);
+    TreeLogger branch = logger.branch(TreeLogger.INFO, "one", null);
+    branch.log(TreeLogger.INFO, "two", null);
+    logger.close();
+    assertEquals(lines("one", "   two"), sw.toString());
+
+    // Entries logged after closing are written right away.
+    branch.log(TreeLogger.INFO, "three", null);
+    assertEquals(lines("one", "   two", "   three"), sw.toString());
+    logger.close();
+  }
+
+  public void testErrorsAreWrittenImmediately() {
+    AsyncTreeLogger logger = new AsyncTreeLogger(target);
+    TreeLogger branch = logger.branch(TreeLogger.DEBUG, "debug", null);
+    branch.log(TreeLogger.ERROR, "error", null);
+
+    // The lazily committed branch comes out along with the error.
+    assertEquals(lines("debug", "   [ERROR] error"), sw.toString());
+  }
+
+  public void testFullQueueBlocks() throws InterruptedException {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    TreeLogger slowTarget = new TreeLogger() {
+      @Override
+      public TreeLogger branch(Type type, String msg, Throwable caught,
+          HelpInfo helpInfo) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public boolean isLoggable(Type type) {
+        return true;
+      }
+
+      @Override
+      public void log(Type type, String msg, Throwable caught,
+          HelpInfo helpInfo) {
+        writing.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        target.log(type, msg, caught, helpInfo);
+      }
+    };
+    final AsyncTreeLogger logger = new AsyncTreeLogger(slowTarget, 1);
+    logger.log(TreeLogger.INFO, "one", null);
+    writing.await();
+    // The writer is stuck on "one"; "two" fills the queue.
+    logger.log(TreeLogger.INFO, "two", null);
+
+    Thread third = new Thread() {
+      @Override
+      public void run() {
+        logger.log(TreeLogger.INFO, "three", null);
+      }
+    };
+    third.start();
+    third.join(200);
+    assertTrue(third.isAlive());
+
+    release.countDown();
+    third.join();
+    logger.close();
+    assertEquals(lines("one", "two", "three"), sw.toString());
+  }
+
+  public void testManyThreads() throws InterruptedException {
+    final AsyncTreeLogger logger = new AsyncTreeLogger(target);
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; ++i) {
+      final TreeLogger branch = logger.branch(TreeLogger.INFO, "thread " + i,
+          null);
+      final int thread = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 1000; ++j) {
+            branch.log(TreeLogger.INFO, thread + " " + j, null);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    logger.flush();
+
+    String[] lines = sw.toString().split("\n");
+    assertEquals(threads.length * 1001, lines.length);
+    // Each thread's entries are in the order it logged them.
+    int[] next = new int[threads.length];
+    for (String line : lines) {
+      if (line.startsWith("   ")) {
+        String[] parts = line.trim().split(" ");
+        int thread = Integer.parseInt(parts[0]);
+        assertEquals(next[thread]++, Integer.parseInt(parts[1]));
+      }
+    }
+    for (int count : next) {
+      assertEquals(1000, count);
+    }
+  }
+
+  public void testUnloggableEntriesAreFiltered() {
+    target.setMaxDetail(TreeLogger.WARN);
+    AsyncTreeLogger logger = new AsyncTreeLogger(target);
+    assertFalse(logger.isLoggable(TreeLogger.INFO));
+    logger.log(TreeLogger.INFO, "info", null);
+    logger.log(TreeLogger.WARN, "warn", null);
+    logger.flush();
+
+    assertEquals(lines("[WARN] warn"), sw.toString());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    sw = new StringWriter();
+    target = new PrintWriterTreeLogger(new PrintWriter(sw, true));
+    target.setMaxDetail(TreeLogger.ALL);
+  }
+
+  private String lines(String... lines) {
+    StringWriter expected = new StringWriter();
+    PrintWriter pw = new PrintWriter(expected);
+    for (String line : lines) {
+      pw.println(line);
+    }
+    pw.flush();
+    return expected.toString();
+  }
+}
@@ -66,6 +66,50 @@ public class PropertyPermutationsTest extends TestCase {
     }
   }
 
+  /**
+   * A property with no allowed values under some condition removes the
+   * permutations that satisfy it, rather than producing partial ones.
+   */
+  public void testNoAllowedValues() {
+    ModuleDef md = new ModuleDef("testNoAllowedValues");
+    Properties props = md.getProperties();
+
+    {
+      BindingProperty prop = props.createBinding("user.agent");
+      prop.addDefinedValue(prop.getRootCondition(), "ie6");
+      prop.addDefinedValue(prop.getRootCondition(), "moz");
+      prop.addDefinedValue(prop.getRootCondition(), "opera");
+    }
+
+    {
+      BindingProperty prop = props.createBinding("stackTraces");
+      prop.addDefinedValue(prop.getRootCondition(), "false");
+      prop.addDefinedValue(prop.getRootCondition(), "true");
+      prop.setAllowedValues(new ConditionWhenPropertyIs("user.agent", "moz"));
+    }
+
+    PropertyPermutations perms = new PropertyPermutations(props,
+        md.getActiveLinkerNames());
+    Iterator<String[]> it = perms.iterator();
+    assertEquals(Arrays.asList("ie6", "false"), Arrays.asList(it.next()));
+    assertEquals(Arrays.asList("ie6", "true"), Arrays.asList(it.next()));
+    assertEquals(Arrays.asList("opera", "false"), Arrays.asList(it.next()));
+    assertEquals(Arrays.asList("opera", "true"), Arrays.asList(it.next()));
+    assertFalse(it.hasNext());
+    assertEquals(4, perms.size());
+  }
+
+  public void testNoProperties() {
+    ModuleDef md = new ModuleDef("testNoProperties");
+    PropertyPermutations perms = new PropertyPermutations(md.getProperties(),
+        md.getActiveLinkerNames());
+    Iterator<String[]> it = perms.iterator();
+    assertEquals(0, it.next().length);
+    assertFalse(it.hasNext());
+    assertEquals(1, perms.size());
+    assertEquals(1, perms.collapseProperties().size());
+  }
+
   public void testOneDimensionPerm() {
     ModuleDef md = new ModuleDef("testOneDimensionPerm");
     Properties props = md.getProperties();
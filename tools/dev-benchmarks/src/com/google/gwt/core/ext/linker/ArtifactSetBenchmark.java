@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.ext.linker;
+
+import com.google.gwt.core.ext.linker.impl.StandardLinkerContext;
+import com.google.gwt.core.ext.linker.impl.StandardScriptReference;
+import com.google.gwt.core.ext.linker.impl.StandardStylesheetReference;
+import com.google.gwt.dev.benchmarks.Benchmarks;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Measures {@link ArtifactSet#find(Class)} the way a chain of linkers uses it:
+ * each linker looks up a few artifact types in a large set and adds an
+ * artifact of its own. Compares against scanning the whole set, which is what
+ * <code>find</code> used to do.
+ *
+ * <p>Usage: ArtifactSetBenchmark [artifacts [linkers [iterations]]]
+ */
+public class ArtifactSetBenchmark {
+
+  private static final byte[] NO_BYTES = new byte[0];
+
+  public static void main(String[] args) throws Exception {
+    final int artifacts = Benchmarks.intArg(args, 0, 50000);
+    final int linkers = Benchmarks.intArg(args, 1, 50);
+    int iterations = Benchmarks.intArg(args, 2, 5);
+
+    Benchmarks.report("%d artifacts, %d linkers, %d iterations", artifacts,
+        linkers, iterations);
+    report("scan", Benchmarks.best(iterations, new Benchmarks.Trial() {
+      public long run() {
+        return ArtifactSetBenchmark.run(artifacts, linkers, false);
+      }
+    }), linkers);
+    report("indexed", Benchmarks.best(iterations, new Benchmarks.Trial() {
+      public long run() {
+        return ArtifactSetBenchmark.run(artifacts, linkers, true);
+      }
+    }), linkers);
+  }
+
+  private static ArtifactSet createArtifacts(int artifacts) {
+    ArtifactSet set = new ArtifactSet();
+    for (int i = 0; i < artifacts; ++i) {
+      set.add(new SyntheticArtifact(StandardLinkerContext.class, "file" + i
+          + ".js", NO_BYTES, 0));
+      if (i % 100 == 0) {
+        set.add(new StandardScriptReference("script" + i + ".js", i));
+        set.add(new StandardStylesheetReference("style" + i + ".css", i));
+      }
+    }
+    return set;
+  }
+
+  private static <T extends Artifact<? super T>> SortedSet<T> find(
+      ArtifactSet set, Class<T> artifactType, boolean indexed) {
+    if (indexed) {
+      return set.find(artifactType);
+    }
+    SortedSet<T> toReturn = new TreeSet<T>();
+    for (Artifact<?> artifact : set) {
+      if (artifactType.isInstance(artifact)) {
+        toReturn.add(artifactType.cast(artifact));
+      }
+    }
+    return toReturn;
+  }
+
+  private static void report(String name, long nanos, int linkers) {
+    Benchmarks.report("%-10s %8.1f ms %8.2f ms/linker", name, nanos / 1e6,
+        nanos / 1e6 / linkers);
+  }
+
+  private static long run(int artifacts, int linkers, boolean indexed) {
+    ArtifactSet set = createArtifacts(artifacts);
+    long check = 0;
+
+    long start = System.nanoTime();
+    for (int i = 0; i < linkers; ++i) {
+      check += find(set, ScriptReference.class, indexed).size();
+      check += find(set, StylesheetReference.class, indexed).size();
+      check += find(set, CompilationResult.class, indexed).size();
+      check += find(set, GeneratedResource.class, indexed).size();
+      if (i % 5 == 0) {
+        check += find(set, EmittedArtifact.class, indexed).size();
+      }
+      set.add(new SyntheticArtifact(StandardLinkerContext.class, "linker" + i
+          + ".txt", NO_BYTES, 0));
+    }
+    long elapsed = System.nanoTime() - start;
+    if (check == 0) {
+      throw new RuntimeException("Nothing was found");
+    }
+    return elapsed;
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.linker;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.linker.SymbolData;
+import com.google.gwt.core.ext.linker.impl.StandardSymbolData;
+import com.google.gwt.dev.benchmarks.Benchmarks;
+import com.google.gwt.dev.util.Util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a server holding symbol maps for several permutations as parsed
+ * text, the way JUnitHostImpl reads them, with holding them as
+ * {@link BinarySymbolMap}s, read into memory or mapped from a file: load
+ * time, heap retained after loading, and lookup time.
+ *
+ * <p>Usage: BinarySymbolMapBenchmark [symbols [permutations [iterations]]]
+ */
+public class BinarySymbolMapBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int symbols = Benchmarks.intArg(args, 0, 50000);
+    int permutations = Benchmarks.intArg(args, 1, 6);
+    int iterations = Benchmarks.intArg(args, 2, 5);
+
+    SymbolData[] data = createSymbols(symbols);
+    byte[] text = writeText(data);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinarySymbolMap.write(out, data);
+    byte[] binary = out.toByteArray();
+    String[] names = new String[symbols];
+    for (int i = 0; i < symbols; ++i) {
+      names[i] = data[(int) ((i * 7919L) % symbols)].getSymbolName();
+    }
+
+    Benchmarks.report("%d symbols, %d permutations, %d iterations", symbols,
+        permutations, iterations);
+    Benchmarks.report("text map %d bytes, binary map %d bytes", text.length,
+        binary.length);
+
+    long bestLoad = Long.MAX_VALUE;
+    long bestLookup = Long.MAX_VALUE;
+    long heap = 0;
+    for (int i = 0; i < iterations; ++i) {
+      long before = Benchmarks.usedMemory();
+      long start = System.nanoTime();
+      List<Map<String, String>> maps = new ArrayList<Map<String, String>>();
+      for (int p = 0; p < permutations; ++p) {
+        maps.add(loadText(text));
+      }
+      bestLoad = Math.min(bestLoad, System.nanoTime() - start);
+      heap = Benchmarks.usedMemory() - before;
+      bestLookup = Math.min(bestLookup, lookupText(maps, names));
+    }
+    report("text", bestLoad, heap, bestLookup, names.length);
+
+    bestLoad = Long.MAX_VALUE;
+    bestLookup = Long.MAX_VALUE;
+    for (int i = 0; i < iterations; ++i) {
+      long before = Benchmarks.usedMemory();
+      long start = System.nanoTime();
+      BinarySymbolMap[] maps = new BinarySymbolMap[permutations];
+      for (int p = 0; p < permutations; ++p) {
+        maps[p] = BinarySymbolMap.load(new ByteArrayInputStream(binary));
+      }
+      bestLoad = Math.min(bestLoad, System.nanoTime() - start);
+      heap = Benchmarks.usedMemory() - before;
+      bestLookup = Math.min(bestLookup, lookupBinary(maps, names));
+    }
+    report("binary", bestLoad, heap, bestLookup, names.length);
+
+    File file = File.createTempFile("benchmark", ".symbolMap.bin");
+    try {
+      Util.writeBytesToFile(TreeLogger.NULL, file, binary);
+      bestLoad = Long.MAX_VALUE;
+      bestLookup = Long.MAX_VALUE;
+      for (int i = 0; i < iterations; ++i) {
+        long before = Benchmarks.usedMemory();
+        long start = System.nanoTime();
+        BinarySymbolMap[] maps = new BinarySymbolMap[permutations];
+        for (int p = 0; p < permutations; ++p) {
+          maps[p] = BinarySymbolMap.load(file);
+        }
+        bestLoad = Math.min(bestLoad, System.nanoTime() - start);
+        heap = Benchmarks.usedMemory() - before;
+        bestLookup = Math.min(bestLookup, lookupBinary(maps, names));
+      }
+      report("mapped", bestLoad, heap, bestLookup, names.length);
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static SymbolData[] createSymbols(int symbols) {
+    SymbolData[] data = new SymbolData[symbols];
+    for (int i = 0; i < symbols; ++i) {
+      String className = "com.example.client.package" + (i % 97) + ".Type"
+          + (i / 10);
+      String uri = "file:/home/user/src/" + className.replace('.', '/')
+          + ".java";
+      StandardSymbolData symbol;
+      if (i % 10 == 0) {
+        symbol = StandardSymbolData.forClass(className, uri, 1, i / 10);
+      } else {
+        symbol = StandardSymbolData.forMember(className, "member" + i,
+            "(Ljava/lang/String;I)", uri, i % 500);
+      }
+      symbol.setSymbolName(Integer.toString(i, 36) + "_g$");
+      data[i] = symbol;
+    }
+    return data;
+  }
+
+  private static Map<String, String> loadText(byte[] text) throws IOException {
+    Map<String, String> map = new HashMap<String, String>();
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        new ByteArrayInputStream(text), "UTF-8"));
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (line.charAt(0) == '#') {
+        continue;
+      }
+      int idx = line.indexOf(',');
+      map.put(line.substring(0, idx), line.substring(idx + 1));
+    }
+    return map;
+  }
+
+  private static long lookupBinary(BinarySymbolMap[] maps, String[] names) {
+    long check = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < names.length; ++i) {
+      SymbolData symbol = maps[i % maps.length].get(names[i]);
+      check += symbol.getSourceLine();
+    }
+    long elapsed = System.nanoTime() - start;
+    if (check == 0) {
+      throw new RuntimeException("Nothing was found");
+    }
+    return elapsed;
+  }
+
+  private static long lookupText(List<Map<String, String>> maps,
+      String[] names) {
+    long check = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < names.length; ++i) {
+      String symbol = maps.get(i % maps.size()).get(names[i]);
+      String[] parts = symbol.split(",");
+      check += Integer.parseInt(parts[4]);
+    }
+    long elapsed = System.nanoTime() - start;
+    if (check == 0) {
+      throw new RuntimeException("Nothing was found");
+    }
+    return elapsed;
+  }
+
+  private static void report(String name, long loadNanos, long heap,
+      long lookupNanos, int lookups) {
+    Benchmarks.report("%-8s load %8.1f ms  heap %8.1f MB  lookup %8.1f ns/op",
+        name, loadNanos / 1e6, heap / 1048576.0, (double) lookupNanos / lookups);
+  }
+
+  private static byte[] writeText(SymbolData[] data) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("# jsName, jsniIdent, className, memberName, sourceUri, "
+        + "sourceLine\n");
+    for (SymbolData symbol : data) {
+      sb.append(symbol.getSymbolName()).append(',');
+      if (symbol.getJsniIdent() != null) {
+        sb.append(symbol.getJsniIdent());
+      }
+      sb.append(',').append(symbol.getClassName()).append(',');
+      if (symbol.getMemberName() != null) {
+        sb.append(symbol.getMemberName());
+      }
+      sb.append(',').append(symbol.getSourceUri()).append(',');
+      sb.append(symbol.getSourceLine()).append('\n');
+    }
+    try {
+      return sb.toString().getBytes("UTF-8");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
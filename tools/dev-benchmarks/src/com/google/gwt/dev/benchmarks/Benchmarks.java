@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.benchmarks;
+
+/**
+ * Shared plumbing for the command-line benchmarks of the dev tools: reading
+ * positional arguments, timing repeated trials, measuring the heap, and
+ * printing results.
+ */
+public final class Benchmarks {
+
+  /**
+   * One measured run of a benchmark.
+   */
+  public interface Trial {
+    /**
+     * Runs the trial once and returns the time it took, in nanoseconds. A
+     * trial times only the part it measures, leaving out its setup.
+     */
+    long run() throws Exception;
+  }
+
+  /**
+   * Returns the fastest of <code>iterations</code> runs of a trial, in
+   * nanoseconds.
+   */
+  public static long best(int iterations, Trial trial) throws Exception {
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < iterations; ++i) {
+      best = Math.min(best, trial.run());
+    }
+    return best;
+  }
+
+  /**
+   * Returns the positional argument at <code>index</code> as an int, or
+   * <code>defaultValue</code> if there are fewer arguments.
+   */
+  public static int intArg(String[] args, int index, int defaultValue) {
+    return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+  }
+
+  /**
+   * Prints one line of results, formatted as by
+   * {@link String#format(String, Object...)}.
+   */
+  public static void report(String format, Object... args) {
+    System.out.println(String.format(format, args));
+  }
+
+  /**
+   * Returns the positional argument at <code>index</code>, or
+   * <code>defaultValue</code> if there are fewer arguments.
+   */
+  public static String stringArg(String[] args, int index, String defaultValue) {
+    return args.length > index ? args[index] : defaultValue;
+  }
+
+  /**
+   * Returns the number of bytes in use on the heap, after collecting as much
+   * garbage as the collector will give back.
+   */
+  public static long usedMemory() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; ++i) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private Benchmarks() {
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.benchmarks.Benchmarks;
+import com.google.gwt.dev.shell.BrowserChannel.InvokeOnServerMessage;
+import com.google.gwt.dev.shell.BrowserChannel.SessionHandler.ExceptionOrReturnValue;
+import com.google.gwt.dev.shell.BrowserChannel.Value;
+import com.google.gwt.dev.shell.BrowserChannelClient.SessionHandlerClient;
+import com.google.gwt.dev.shell.BrowserChannelServer.SessionHandlerServer;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Measures DevMode round trips over a loopback socket, with a
+ * {@link BrowserChannelClient} standing in for the browser plugin. Each
+ * iteration makes one call from the client into Java, which builds a table by
+ * invoking a void JavaScript method once per cell, the way DOM-heavy code
+ * does.
+ *
+ * <p>Usage: BrowserChannelBenchmark [rows [columns [iterations]]]
+ */
+public class BrowserChannelBenchmark {
+
+  /**
+   * The stand-in browser, which counts the invocations it receives.
+   */
+  private static class ClientHandler extends SessionHandlerClient {
+    private int invocations;
+
+    @Override
+    public void freeValue(BrowserChannelClient channel, int[] ids) {
+    }
+
+    @Override
+    public Object getSynchronizationObject() {
+      return this;
+    }
+
+    @Override
+    public String getUserAgent() {
+      return "BrowserChannelBenchmark";
+    }
+
+    @Override
+    public ExceptionOrReturnValue invoke(BrowserChannelClient channel,
+        Value thisObj, String methodName, Value[] args) {
+      ++invocations;
+      return new ExceptionOrReturnValue(false, new Value());
+    }
+
+    @Override
+    public void loadJsni(BrowserChannelClient channel, String jsniString) {
+    }
+  }
+
+  /**
+   * Fills in the table whenever the client invokes any Java method.
+   */
+  private static class ServerHandler extends SessionHandlerServer {
+    private final int columns;
+    private final boolean pipeline;
+    private final int rows;
+
+    public ServerHandler(int rows, int columns, boolean pipeline) {
+      this.rows = rows;
+      this.columns = columns;
+      this.pipeline = pipeline;
+    }
+
+    @Override
+    public void freeValue(BrowserChannelServer channel, int[] ids) {
+    }
+
+    @Override
+    public ExceptionOrReturnValue getProperty(BrowserChannelServer channel,
+        int refId, int dispId) {
+      return new ExceptionOrReturnValue(false, new Value());
+    }
+
+    @Override
+    public ExceptionOrReturnValue invoke(BrowserChannelServer channel,
+        Value thisObj, int dispId, Value[] args) {
+      JsValueOOPHM jsthis = new JsValueOOPHM();
+      jsthis.setUndefined();
+      try {
+        for (int row = 0; row < rows; ++row) {
+          for (int column = 0; column < columns; ++column) {
+            JsValueOOPHM[] argv = new JsValueOOPHM[3];
+            for (int i = 0; i < argv.length; ++i) {
+              argv[i] = new JsValueOOPHM();
+            }
+            argv[0].setInt(row);
+            argv[1].setInt(column);
+            argv[2].setString("cell " + row + "," + column);
+            if (pipeline) {
+              channel.invokeJavascriptVoid(null, jsthis, "setCell", argv);
+            } else {
+              channel.invokeJavascript(null, jsthis, "setCell", argv,
+                  new JsValueOOPHM());
+            }
+          }
+        }
+      } catch (Throwable e) {
+        throw new RuntimeException(e);
+      }
+      return new ExceptionOrReturnValue(false, new Value());
+    }
+
+    @Override
+    public TreeLogger loadModule(BrowserChannelServer channel,
+        String moduleName, String userAgent, String url, String tabKey,
+        String sessionKey, byte[] userAgentIcon) {
+      channel.setPipelineVoidCalls(pipeline);
+      return TreeLogger.NULL;
+    }
+
+    @Override
+    public ExceptionOrReturnValue setProperty(BrowserChannelServer channel,
+        int refId, int dispId, Value newValue) {
+      return new ExceptionOrReturnValue(false, new Value());
+    }
+
+    @Override
+    public void unloadModule(BrowserChannelServer channel, String moduleName) {
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int rows = Benchmarks.intArg(args, 0, 1000);
+    int columns = Benchmarks.intArg(args, 1, 10);
+    int iterations = Benchmarks.intArg(args, 2, 5);
+
+    Benchmarks.report("Building a %dx%d table, %d iterations", rows, columns,
+        iterations);
+    run("version 3", BrowserChannel.PROTOCOL_VERSION_GET_ICON, false, rows,
+        columns, iterations);
+    run("batched", BrowserChannel.PROTOCOL_VERSION_BATCHING, false, rows,
+        columns, iterations);
+    run("batched, pipelined", BrowserChannel.PROTOCOL_VERSION_BATCHING, true,
+        rows, columns, iterations);
+  }
+
+  private static void run(String name, int maxProtocolVersion,
+      boolean pipeline, int rows, int columns, int iterations)
+      throws Exception {
+    ServerSocket serverSocket = new ServerSocket(0);
+    final ClientHandler clientHandler = new ClientHandler();
+    final BrowserChannelClient client = new BrowserChannelClient(new String[] {
+        "localhost", String.valueOf(serverSocket.getLocalPort())}, "url",
+        "session", "module", HostedHtmlVersion.EXPECTED_GWT_ONLOAD_VERSION,
+        clientHandler);
+    client.setMaxProtocolVersion(maxProtocolVersion);
+    Socket socket = serverSocket.accept();
+    serverSocket.close();
+    new BrowserChannelServer(TreeLogger.NULL, socket, new ServerHandler(rows,
+        columns, pipeline), true);
+    if (!client.process()) {
+      throw new RuntimeException("Failed to load the module");
+    }
+
+    long best = Benchmarks.best(iterations, new Benchmarks.Trial() {
+      public long run() throws Exception {
+        long start = System.nanoTime();
+        new InvokeOnServerMessage(client, 1, new Value(), new Value[0]).send();
+        client.reactToMessagesWhileWaitingForReturn(clientHandler);
+        return System.nanoTime() - start;
+      }
+    });
+    client.disconnectFromHost();
+
+    int cells = rows * columns;
+    if (clientHandler.invocations != cells * iterations) {
+      throw new RuntimeException("Expected " + cells * iterations
+          + " invocations, got " + clientHandler.invocations);
+    }
+    Benchmarks.report("%-20s %8.1f ms %10.0f calls/s", name, best / 1e6,
+        cells / (best / 1e9));
+  }
+}
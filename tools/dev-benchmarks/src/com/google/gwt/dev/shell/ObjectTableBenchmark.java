@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell;
+
+import com.google.gwt.dev.benchmarks.Benchmarks;
+import com.google.gwt.dev.shell.BrowserChannel.JsObjectRef;
+
+/**
+ * Measures the DevMode object tables under high churn: many short-lived
+ * objects crossing the channel while a window of them stays alive, the way
+ * widget-heavy code behaves.
+ *
+ * <p>Usage: ObjectTableBenchmark [operations [live objects [iterations]]]
+ */
+public class ObjectTableBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final int operations = Benchmarks.intArg(args, 0, 2000000);
+    final int live = Benchmarks.intArg(args, 1, 10000);
+    int iterations = Benchmarks.intArg(args, 2, 5);
+
+    Benchmarks.report("%d operations, %d live objects, %d iterations",
+        operations, live, iterations);
+    report("ServerObjectsTable", Benchmarks.best(iterations,
+        new Benchmarks.Trial() {
+          public long run() {
+            return runServerObjects(operations, live);
+          }
+        }), operations);
+    report("RemoteObjectTable", Benchmarks.best(iterations,
+        new Benchmarks.Trial() {
+          public long run() {
+            return runRemoteObjects(operations, live);
+          }
+        }), operations);
+  }
+
+  private static void report(String name, long nanos, int operations) {
+    Benchmarks.report("%-20s %8.1f ms %8.1f ns/op", name, nanos / 1e6,
+        (double) nanos / operations);
+  }
+
+  /**
+   * Each operation receives a new JS object id from the other side, looks it
+   * up, and drops the oldest live reference. Cleanup runs as it would before
+   * each return to the other side, and freed ids are reused.
+   */
+  private static long runRemoteObjects(int operations, int live) {
+    RemoteObjectTable<JsObjectRef> table = new RemoteObjectTable<JsObjectRef>();
+    JsObjectRef[] window = new JsObjectRef[live];
+    int[] freeIds = new int[operations + 1];
+    int numFree = 0;
+    int nextId = 1;
+    long freed = 0;
+
+    long start = System.nanoTime();
+    for (int i = 0; i < operations; ++i) {
+      int refId = numFree > 0 ? freeIds[--numFree] : nextId++;
+      JsObjectRef ref = table.getRemoteObjectRef(refId);
+      if (ref == null) {
+        ref = new JsObjectRef(refId);
+        table.putRemoteObjectRef(refId, ref);
+      }
+      window[i % live] = ref;
+      if (i % 100 == 0) {
+        for (int id : table.getRefIdsForCleanup()) {
+          freeIds[numFree++] = id;
+          ++freed;
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    if (freed == 0) {
+      throw new RuntimeException("Nothing was freed");
+    }
+    return elapsed;
+  }
+
+  /**
+   * Each operation exposes a new Java object, looks up an existing one both
+   * ways, and frees the oldest.
+   */
+  private static long runServerObjects(int operations, int live) {
+    ServerObjectsTable table = new ServerObjectsTable();
+    Object[] objects = new Object[live];
+    int[] ids = new int[live];
+    long check = 0;
+
+    long start = System.nanoTime();
+    for (int i = 0; i < operations; ++i) {
+      int slot = i % live;
+      if (objects[slot] != null) {
+        table.free(ids[slot]);
+      }
+      Object obj = new Object();
+      objects[slot] = obj;
+      ids[slot] = table.add(obj);
+      int other = (slot * 7919) % live;
+      if (objects[other] != null) {
+        check += table.find(objects[other]);
+        check += table.get(ids[other]) == objects[other] ? 1 : 0;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    if (check == 0) {
+      throw new RuntimeException("Nothing was found");
+    }
+    return elapsed;
+  }
+}
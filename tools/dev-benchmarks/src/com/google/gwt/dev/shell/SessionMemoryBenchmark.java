@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.benchmarks.Benchmarks;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.ModuleDefLoader;
+import com.google.gwt.dev.javac.CompilationState;
+import com.google.gwt.dev.util.log.PrintWriterTreeLogger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the memory and time each additional DevMode session of the same
+ * module costs. Each session loads every class of the module into its own class
+ * loader, as a session that exercises the whole application would.
+ *
+ * <p>Usage: SessionMemoryBenchmark module [sessions]; the module's source must
+ * be on the classpath.
+ */
+public class SessionMemoryBenchmark {
+
+  /**
+   * Stands in for the browser; JSNI methods are never called.
+   */
+  private static final ShellJavaScriptHost NULL_HOST = (ShellJavaScriptHost) Proxy.newProxyInstance(
+      SessionMemoryBenchmark.class.getClassLoader(),
+      new Class<?>[] {ShellJavaScriptHost.class}, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          return null;
+        }
+      });
+
+  public static void main(String[] args) throws Exception {
+    String moduleName = args[0];
+    int sessions = Benchmarks.intArg(args, 1, 4);
+    PrintWriterTreeLogger logger = new PrintWriterTreeLogger();
+    logger.setMaxDetail(TreeLogger.WARN);
+    ModuleDef module = ModuleDefLoader.loadFromClassPath(logger, moduleName);
+
+    Benchmarks.report("%s, %d sessions", moduleName, sessions);
+    run(logger, module, sessions);
+  }
+
+  private static void run(TreeLogger logger, ModuleDef module, int sessions)
+      throws Exception {
+    // Keep every session alive, as open browser tabs would.
+    List<Object> live = new ArrayList<Object>();
+    startSession(logger, module, live);
+    long before = Benchmarks.usedMemory();
+    long start = System.nanoTime();
+    for (int i = 1; i < sessions; ++i) {
+      startSession(logger, module, live);
+    }
+    long elapsed = System.nanoTime() - start;
+    long used = Benchmarks.usedMemory() - before;
+    int extra = Math.max(1, sessions - 1);
+    Benchmarks.report("%8.1f MB %8.1f ms per extra session", used
+        / (double) extra / (1 << 20), elapsed / 1e6 / extra);
+    live.clear();
+  }
+
+  private static void startSession(TreeLogger logger, ModuleDef module,
+      List<Object> live) throws UnableToCompleteException {
+    CompilationState state = module.getCompilationState(logger);
+    CompilingClassLoader classLoader = new CompilingClassLoader(logger, state,
+        NULL_HOST);
+    for (String internalName : state.getClassFileMap().keySet()) {
+      try {
+        Class.forName(internalName.replace('/', '.'), false, classLoader);
+      } catch (Throwable e) {
+        // Script-only and other unloadable classes do not matter here.
+      }
+    }
+    live.add(state);
+    live.add(classLoader);
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell.jetty;
+
+import com.google.gwt.core.ext.ServletContainer;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.benchmarks.Benchmarks;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.dev.util.log.PrintWriterTreeLogger;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long a local client takes to load a page made of many static
+ * resources from the embedded Jetty server, with the launcher's default
+ * settings and with the given tuning options.
+ *
+ * <p>Usage: JettyLauncherBenchmark [options] [resources] [client threads],
+ * where options are as for {@link JettyLauncher}, e.g.
+ * <code>threads=20,gzip,cacheSize=64</code>.
+ */
+public class JettyLauncherBenchmark {
+
+  private static final String[] EXTENSIONS = {".js", ".css", ".html"};
+
+  private static final int PAGE_LOADS = 20;
+
+  public static void main(String[] args) throws Exception {
+    String options = Benchmarks.stringArg(args, 0,
+        "threads=20,gzip,cacheSize=64");
+    int resources = Benchmarks.intArg(args, 1, 300);
+    int clients = Benchmarks.intArg(args, 2, 6);
+
+    File warDir = File.createTempFile("gwt-jetty-benchmark", "");
+    warDir.delete();
+    warDir.mkdir();
+    try {
+      for (int i = 0; i < resources; ++i) {
+        String ext = EXTENSIONS[i % EXTENSIONS.length];
+        StringBuilder content = new StringBuilder();
+        for (int j = 0; j < 200 * (1 + i % 5); ++j) {
+          content.append("/* resource ").append(i).append(" line ").append(j).append(
+              " */ var x").append(j).append(" = 'some text';\n");
+        }
+        Util.writeStringAsFile(new File(warDir, "r" + i + ext),
+            content.toString());
+      }
+
+      PrintWriterTreeLogger logger = new PrintWriterTreeLogger();
+      logger.setMaxDetail(TreeLogger.WARN);
+      Benchmarks.report("%d resources, %d client threads, %d page loads",
+          resources, clients, PAGE_LOADS);
+      for (int round = 0; round < 2; ++round) {
+        run(logger, warDir, null, resources, clients);
+        run(logger, warDir, options, resources, clients);
+      }
+    } finally {
+      Util.recursiveDelete(warDir, false);
+    }
+  }
+
+  private static void loadPage(final int port, final int resources,
+      int clients, final AtomicLong bytes) throws Exception {
+    final AtomicInteger next = new AtomicInteger();
+    Thread[] threads = new Thread[clients];
+    for (int i = 0; i < clients; ++i) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          byte[] buf = new byte[8192];
+          int i;
+          while ((i = next.getAndIncrement()) < resources) {
+            try {
+              URL url = new URL("http://localhost:" + port + "/r" + i
+                  + EXTENSIONS[i % EXTENSIONS.length]);
+              HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+              conn.setRequestProperty("Accept-Encoding", "gzip");
+              InputStream in = conn.getInputStream();
+              int read;
+              while ((read = in.read(buf)) > 0) {
+                bytes.addAndGet(read);
+              }
+              in.close();
+            } catch (Exception e) {
+              throw new RuntimeException(e);
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  private static void run(TreeLogger logger, File warDir, String options,
+      int resources, int clients) throws Exception {
+    JettyLauncher launcher = new JettyLauncher();
+    launcher.setBaseRequestLogLevel(TreeLogger.SPAM);
+    if (options != null && !launcher.processArguments(logger, options)) {
+      throw new IllegalArgumentException(options);
+    }
+    ServletContainer container = launcher.start(logger, 0, warDir);
+    try {
+      AtomicLong bytes = new AtomicLong();
+      // Warm up.
+      loadPage(container.getPort(), resources, clients, bytes);
+      bytes.set(0);
+      long start = System.nanoTime();
+      for (int i = 0; i < PAGE_LOADS; ++i) {
+        loadPage(container.getPort(), resources, clients, bytes);
+      }
+      long elapsed = System.nanoTime() - start;
+      Benchmarks.report(
+          "%-30s %8.1f ms per page load, %8.1f KB transferred per page load",
+          options == null ? "(defaults)" : options, elapsed / 1e6 / PAGE_LOADS,
+          bytes.get() / 1024.0 / PAGE_LOADS);
+    } finally {
+      container.stop();
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.shell.remoteui;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.benchmarks.Benchmarks;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Request;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Response;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Request.ViewerRequest;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Response.ViewerResponse;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures what logging at {@link TreeLogger#SPAM} costs the thread that logs,
+ * when every entry is sent to a remote viewer over a socket. It compares
+ * waiting for the viewer to acknowledge each entry with queueing entries in a
+ * {@link ViewerServiceTreeLogger}.
+ *
+ * <p>Usage: ViewerServiceLoggerBenchmark [entries] [viewer delay in
+ * microseconds]
+ */
+public class ViewerServiceLoggerBenchmark {
+
+  /**
+   * Acknowledges every entry after a fixed delay, as a busy viewer would.
+   */
+  private static class SlowViewer implements RequestProcessor {
+    final AtomicInteger entries = new AtomicInteger();
+    private final long delayNanos;
+    private int nextLogHandle = 1;
+
+    SlowViewer(long delayNanos) {
+      this.delayNanos = delayNanos;
+    }
+
+    public Response execute(Request request) {
+      long end = System.nanoTime() + delayNanos;
+      while (System.nanoTime() < end) {
+        // Spin; sleeping is too coarse.
+      }
+      ViewerResponse.Builder viewerResponse = ViewerResponse.newBuilder();
+      if (request.getViewerRequest().getRequestType() == ViewerRequest.RequestType.ADD_LOG_BRANCH) {
+        viewerResponse.setResponseType(ViewerResponse.ResponseType.ADD_LOG_BRANCH);
+        viewerResponse.setAddLogBranch(ViewerResponse.AddLogBranch.newBuilder().setLogHandle(
+            nextLogHandle++));
+      } else {
+        entries.incrementAndGet();
+      }
+      return Response.newBuilder().setViewerResponse(viewerResponse).build();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int entries = Benchmarks.intArg(args, 0, 20000);
+    long delayNanos = Benchmarks.intArg(args, 1, 20) * 1000L;
+
+    Benchmarks.report("%d SPAM entries, viewer takes %d us per entry",
+        entries, delayNanos / 1000);
+    for (int round = 0; round < 3; ++round) {
+      run(entries, delayNanos, false);
+      run(entries, delayNanos, true);
+    }
+  }
+
+  private static ViewerServiceClient connect(SlowViewer viewer)
+      throws Exception {
+    ServerSocket listenSocket = new ServerSocket(0);
+    Socket clientSocket = new Socket("localhost", listenSocket.getLocalPort());
+    Socket serverSocket = listenSocket.accept();
+    listenSocket.close();
+
+    MessageTransport.TerminationCallback ignore = new MessageTransport.TerminationCallback() {
+      public void onTermination(Exception e) {
+      }
+    };
+    new MessageTransport(serverSocket.getInputStream(),
+        serverSocket.getOutputStream(), viewer, ignore).start();
+    MessageTransport transport = new MessageTransport(
+        clientSocket.getInputStream(), clientSocket.getOutputStream(),
+        new SlowViewer(0), ignore);
+    transport.start();
+    return new ViewerServiceClient(transport);
+  }
+
+  private static void run(int entries, long delayNanos, boolean queued)
+      throws Exception {
+    SlowViewer viewer = new SlowViewer(delayNanos);
+    ViewerServiceClient client = connect(viewer);
+    ViewerServiceTreeLogger logger = new ViewerServiceTreeLogger(client);
+    logger.setLogHandle(0);
+    logger.setMaxDetail(TreeLogger.ALL);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < entries; ++i) {
+      String msg = "Generated entry " + (i / 8);
+      if (queued) {
+        logger.log(TreeLogger.SPAM, msg);
+      } else {
+        client.addLogEntry(i, TreeLogger.SPAM, msg, null, null, 0);
+      }
+    }
+    long logged = System.nanoTime() - start;
+    logger.flush();
+    long flushed = System.nanoTime() - start;
+
+    Benchmarks.report("%-8s %8.2f us per entry logged, %8.1f ms until flushed, "
+        + "%d requests reached the viewer", queued ? "queued" : "direct",
+        logged / 1e3 / entries, flushed / 1e6, viewer.entries.get());
+  }
+}
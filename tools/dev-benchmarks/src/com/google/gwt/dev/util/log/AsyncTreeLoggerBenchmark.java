@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.log;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.benchmarks.Benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+/**
+ * Measures how long several threads, each logging in its own branch as
+ * permutation workers do, spend logging to a file through a
+ * {@link PrintWriterTreeLogger}, directly and through an
+ * {@link AsyncTreeLogger}.
+ *
+ * <p>Usage: AsyncTreeLoggerBenchmark [threads] [entries per thread]
+ */
+public class AsyncTreeLoggerBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int threads = Benchmarks.intArg(args, 0, 4);
+    int entries = Benchmarks.intArg(args, 1, 50000);
+
+    Benchmarks.report("%d threads, %d entries each", threads, entries);
+    for (int round = 0; round < 3; ++round) {
+      run(threads, entries, false);
+      run(threads, entries, true);
+    }
+  }
+
+  private static void run(int threadCount, final int entries, boolean async)
+      throws Exception {
+    File logFile = File.createTempFile("gwt-log-benchmark", ".txt");
+    logFile.deleteOnExit();
+    PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(
+        logFile)));
+    PrintWriterTreeLogger target = new PrintWriterTreeLogger(out);
+    target.setMaxDetail(TreeLogger.SPAM);
+    TreeLogger logger = async ? new AsyncTreeLogger(target) : target;
+
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; ++i) {
+      final TreeLogger branch = logger.branch(TreeLogger.INFO,
+          "Compiling permutation " + i, null);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < entries; ++j) {
+            TreeLogger.Type type = j % 100 == 0 ? TreeLogger.DEBUG
+                : TreeLogger.SPAM;
+            branch.log(type, "Visiting node " + j, null);
+          }
+        }
+      };
+    }
+
+    long start = System.nanoTime();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long logged = System.nanoTime() - start;
+    if (async) {
+      ((AsyncTreeLogger) logger).close();
+    }
+    out.flush();
+    long written = System.nanoTime() - start;
+    out.close();
+    logFile.delete();
+
+    long total = (long) threadCount * entries;
+    Benchmarks.report(
+        "%-6s %8.3f us per entry on the logging threads, %8.1f ms until written",
+        async ? "async" : "direct", logged / 1e3 / total, written / 1e6);
+  }
+}
@@ -31,6 +31,20 @@ import java.io.ByteArrayOutputStream;
  */
 @Shardable
 public class JUnitSymbolMapsLinker extends SymbolMapsLinker {
+  @Override
+  protected void doEmitBinarySymbolMap(TreeLogger logger,
+      ArtifactSet artifacts, CompilationResult result,
+      ByteArrayOutputStream out) throws UnableToCompleteException {
+    // Collaborate with JUnitHostImpl.loadBinarySymbolMap
+    String partialPath = ".junit_symbolMaps/" + result.getStrongName()
+        + BINARY_STRONG_NAME_SUFFIX;
+
+    EmittedArtifact symbolMapArtifact = emitBytes(logger, out.toByteArray(),
+        partialPath);
+
+    artifacts.add(symbolMapArtifact);
+  }
+
   @Override
   protected void doEmitSymbolMap(TreeLogger logger, ArtifactSet artifacts,
       CompilationResult result, ByteArrayOutputStream out)
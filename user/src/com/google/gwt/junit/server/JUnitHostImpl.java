@@ -15,6 +15,8 @@
  */
 package com.google.gwt.junit.server;
 
+import com.google.gwt.core.ext.linker.SymbolData;
+import com.google.gwt.core.linker.BinarySymbolMap;
 import com.google.gwt.dev.util.JsniRef;
 import com.google.gwt.dev.util.StringKey;
 import com.google.gwt.junit.JUnitFatalLaunchException;
@@ -106,6 +108,8 @@ public class JUnitHostImpl extends HybridServiceServlet implements JUnitHost {
     fld.set(obj, value);
   }
 
+  private Map<StrongName, BinarySymbolMap> binarySymbolMaps = new HashMap<StrongName, BinarySymbolMap>();
+
   private Map<StrongName, Map<SymbolName, String>> symbolMaps = new HashMap<StrongName, Map<SymbolName, String>>();
 
   public InitialResponse getTestBlock(int blockIndex, ClientInfo clientInfo)
@@ -294,6 +298,34 @@ public class JUnitHostImpl extends HybridServiceServlet implements JUnitHost {
     result.setHost(machine);
   }
 
+  private synchronized BinarySymbolMap loadBinarySymbolMap(
+      StrongName strongName) {
+    if (binarySymbolMaps.containsKey(strongName)) {
+      return binarySymbolMaps.get(strongName);
+    }
+
+    // Collaborate with JUnitSymbolMapsLinker for the location
+    String path = getRequestModuleBasePath() + "/.junit_symbolMaps/"
+        + strongName.get() + ".symbolMap.bin";
+    InputStream in = getServletContext().getResourceAsStream(path);
+    BinarySymbolMap toReturn = null;
+    if (in != null) {
+      try {
+        toReturn = BinarySymbolMap.load(in);
+      } catch (IOException e) {
+        // Fall back to the text symbol map
+      } finally {
+        try {
+          in.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+
+    binarySymbolMaps.put(strongName, toReturn);
+    return toReturn;
+  }
+
   private synchronized Map<SymbolName, String> loadSymbolMap(
       StrongName strongName) {
     Map<SymbolName, String> toReturn = symbolMaps.get(strongName);
@@ -339,17 +371,28 @@ public class JUnitHostImpl extends HybridServiceServlet implements JUnitHost {
   private Object[] resymbolize(StackTraceWrapper stw) {
     Object[] toReturn;
     StrongName strongName = new StrongName(getPermutationStrongName());
-    Map<SymbolName, String> map = loadSymbolMap(strongName);
-    String symbolData = map == null ? null : map.get(new SymbolName(
-        stw.methodName));
-
-    if (symbolData != null) {
-      // jsniIdent, className, memberName, sourceUri, sourceLine
-      String[] parts = symbolData.split(",");
-      assert parts.length == 5 : "Expected 5, have " + parts.length;
+    String jsniIdent = null;
+    BinarySymbolMap binaryMap = loadBinarySymbolMap(strongName);
+    if (binaryMap != null) {
+      SymbolData symbol = binaryMap.get(stw.methodName);
+      if (symbol != null && symbol.getJsniIdent() != null) {
+        jsniIdent = symbol.getJsniIdent();
+      }
+    } else {
+      Map<SymbolName, String> map = loadSymbolMap(strongName);
+      String symbolData = map == null ? null : map.get(new SymbolName(
+          stw.methodName));
+      if (symbolData != null) {
+        // jsniIdent, className, memberName, sourceUri, sourceLine
+        String[] parts = symbolData.split(",");
+        assert parts.length == 5 : "Expected 5, have " + parts.length;
+        jsniIdent = parts[0];
+      }
+    }
 
-      JsniRef ref = JsniRef.parse(parts[0].substring(0,
-          parts[0].lastIndexOf(')') + 1));
+    if (jsniIdent != null) {
+      JsniRef ref = JsniRef.parse(jsniIdent.substring(0,
+          jsniIdent.lastIndexOf(')') + 1));
       toReturn = new Object[]{
           ref.className(), ref.memberName(), stw.fileName, stw.lineNumber};
 
@@ -24,15 +24,27 @@ import com.google.gwt.core.ext.linker.ConfigurationProperty;
 import com.google.gwt.core.ext.linker.EmittedArtifact;
 import com.google.gwt.core.ext.linker.LinkerOrder;
 import com.google.gwt.core.ext.linker.Shardable;
+import com.google.gwt.core.ext.linker.SyntheticArtifact;
 import com.google.gwt.core.ext.linker.LinkerOrder.Order;
 import com.google.gwt.dev.util.collect.HashSet;
 import com.google.gwt.util.regexfilter.RegexFilter;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -54,10 +66,60 @@ import java.util.zip.GZIPOutputStream;
  * are left in the artifact set. If the configuration property
  * <code>precompress.leave.originals</code> is set to <code>false</code>,
  * however, then the uncompressed version is removed.
+ * 
+ * <p>
+ * The configuration property <code>precompress.compression</code> chooses how
+ * hard to compress: a gzip level from <code>1</code> to <code>9</code>,
+ * or <code>default</code> for gzip's default level. Artifacts are compressed
+ * in parallel, each streamed through a temporary file rather than held in
+ * memory.
  */
 @Shardable
 @LinkerOrder(Order.POST)
 public class PrecompressLinker extends AbstractLinker {
+  /**
+   * The result of compressing an artifact: a temporary file holding the gzip
+   * data.
+   */
+  private static class Compressed {
+    final File file;
+    final long originalLength;
+
+    Compressed(File file, long originalLength) {
+      this.file = file;
+      this.originalLength = originalLength;
+    }
+  }
+
+  /**
+   * Counts the bytes read through it.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        ++count;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+  }
+
   private static class PrecompressFilter extends RegexFilter {
     public PrecompressFilter(TreeLogger logger, List<String> regexes)
         throws UnableToCompleteException {
@@ -81,18 +143,112 @@ public class PrecompressLinker extends AbstractLinker {
    */
   private static final int BUF_SIZE = 10000;
 
+  private static final String PROP_COMPRESSION = "precompress.compression";
+
   private static final String PROP_LEAVE_ORIGINALS = "precompress.leave.originals";
 
   private static final String PROP_PATH_REGEXES = "precompress.path.regexes";
 
+  /**
+   * Writes the contents of <code>in</code> to a temporary file in gzip format.
+   */
+  private static Compressed compress(InputStream in, final int level)
+      throws IOException {
+    File file = File.createTempFile("precompress", ".gz");
+    boolean ok = false;
+    try {
+      CountingInputStream originalBytes = new CountingInputStream(in);
+      GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(file),
+          BUF_SIZE) {
+        {
+          def.setLevel(level);
+        }
+      };
+      try {
+        byte[] buf = new byte[BUF_SIZE];
+        int n;
+        while ((n = originalBytes.read(buf)) > 0) {
+          gzip.write(buf, 0, n);
+        }
+      } finally {
+        gzip.close();
+      }
+      ok = true;
+      return new Compressed(file, originalBytes.count);
+    } finally {
+      if (!ok) {
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * Returns the gzip level named by a value of
+   * <code>precompress.compression</code>.
+   */
+  private static int parseLevel(TreeLogger logger, String compression)
+      throws UnableToCompleteException {
+    if (compression == null || compression.equals("default")) {
+      return Deflater.DEFAULT_COMPRESSION;
+    }
+    try {
+      int level = Integer.parseInt(compression);
+      if (level >= 1 && level <= 9) {
+        return level;
+      }
+    } catch (NumberFormatException e) {
+      // Fall through.
+    }
+    logger.log(TreeLogger.ERROR, "Invalid value for " + PROP_COMPRESSION
+        + ": '" + compression + "'; expected 1-9 or default");
+    throw new UnableToCompleteException();
+  }
+
+  /**
+   * Deletes the temporary files of compressions that {@link #link} gave up on,
+   * once the executor, which must be shut down, has finished the ones that were
+   * running. Compressions that never started are left alone:
+   * {@link ExecutorService#shutdownNow()} drops them without completing their
+   * futures.
+   */
+  private static void deleteUncollected(ExecutorService executor,
+      List<Future<Compressed>> results) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        if (executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+          break;
+        }
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    for (Future<Compressed> result : results) {
+      if (!result.isDone()) {
+        continue;
+      }
+      try {
+        // Already deleted if the result was collected.
+        result.get().file.delete();
+      } catch (ExecutionException e) {
+        // No file was left behind.
+      } catch (InterruptedException e) {
+        // Cannot happen, since the result is done.
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   private static ConfigurationProperty findProperty(
       TreeLogger logger,
       Iterable<com.google.gwt.core.ext.linker.ConfigurationProperty> properties,
       String propName) throws UnableToCompleteException {
-    for (ConfigurationProperty prop : properties) {
-      if (prop.getName().equals(propName)) {
-        return prop;
-      }
+    ConfigurationProperty prop = tryFindProperty(properties, propName);
+    if (prop != null) {
+      return prop;
     }
 
     logger.log(TreeLogger.ERROR, "Could not find configuration property "
@@ -100,6 +256,17 @@ public class PrecompressLinker extends AbstractLinker {
     throw new UnableToCompleteException();
   }
 
+  private static ConfigurationProperty tryFindProperty(
+      Iterable<com.google.gwt.core.ext.linker.ConfigurationProperty> properties,
+      String propName) {
+    for (ConfigurationProperty prop : properties) {
+      if (prop.getName().equals(propName)) {
+        return prop;
+      }
+    }
+    return null;
+  }
+
   @Override
   public String getDescription() {
     return "PrecompressLinker";
@@ -124,56 +291,91 @@ public class PrecompressLinker extends AbstractLinker {
       allPaths.add(art.getPartialPath());
     }
 
-    try {
-      // Buffer for streaming data to be compressed
-      byte[] buf = new byte[BUF_SIZE];
+    ConfigurationProperty compressionProp = tryFindProperty(
+        context.getConfigurationProperties(), PROP_COMPRESSION);
+    final int level = parseLevel(logger,
+        compressionProp == null ? null : compressionProp.getValues().get(0));
 
-      ArtifactSet updated = new ArtifactSet(artifacts);
-      for (EmittedArtifact art : artifacts.find(EmittedArtifact.class)) {
-        if (art.isPrivate()) {
-          continue;
-        }
-        if (art.getPartialPath().endsWith(".gz")) {
-          // Already a compressed artifact
-          continue;
-        }
-        if (allPaths.contains(art.getPartialPath() + ".gz")) {
-          // It's already been compressed
-          continue;
-        }
-        if (!filter.isIncluded(logger.branch(TreeLogger.TRACE,
-            "Checking the path patterns"), art.getPartialPath())) {
-          continue;
-        }
+    List<EmittedArtifact> toCompress = new ArrayList<EmittedArtifact>();
+    for (EmittedArtifact art : artifacts.find(EmittedArtifact.class)) {
+      if (art.isPrivate()) {
+        continue;
+      }
+      if (art.getPartialPath().endsWith(".gz")) {
+        // Already a compressed artifact
+        continue;
+      }
+      if (allPaths.contains(art.getPartialPath() + ".gz")) {
+        // It's already been compressed
+        continue;
+      }
+      if (!filter.isIncluded(logger.branch(TreeLogger.TRACE,
+          "Checking the path patterns"), art.getPartialPath())) {
+        continue;
+      }
+      toCompress.add(art);
+    }
 
-        TreeLogger compressBranch = logger.branch(TreeLogger.TRACE,
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+        Math.min(Runtime.getRuntime().availableProcessors(),
+            toCompress.size())));
+    List<Future<Compressed>> results = new ArrayList<Future<Compressed>>();
+    try {
+      for (final EmittedArtifact art : toCompress) {
+        final TreeLogger compressBranch = logger.branch(TreeLogger.TRACE,
             "Compressing " + art.getPartialPath());
+        results.add(executor.submit(new Callable<Compressed>() {
+          public Compressed call() throws IOException,
+              UnableToCompleteException {
+            InputStream in = art.getContents(compressBranch);
+            try {
+              return compress(in, level);
+            } finally {
+              in.close();
+            }
+          }
+        }));
+      }
 
-        InputStream originalBytes = art.getContents(compressBranch);
-        ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
-        GZIPOutputStream gzip = new GZIPOutputStream(compressedBytes);
-
-        int originalLength = 0;
-        int n;
-        while ((n = originalBytes.read(buf)) > 0) {
-          originalLength += n;
-          gzip.write(buf, 0, n);
-        }
-        gzip.close();
-
-        byte[] compressed = compressedBytes.toByteArray();
-        if (compressed.length < originalLength) {
-          updated.add(emitBytes(compressBranch, compressed,
-              art.getPartialPath() + ".gz"));
-          if (!leaveOriginals) {
-            updated.remove(art);
+      ArtifactSet updated = new ArtifactSet(artifacts);
+      for (int i = 0; i < toCompress.size(); ++i) {
+        EmittedArtifact art = toCompress.get(i);
+        Compressed compressed = results.get(i).get();
+        try {
+          if (compressed.file.length() < compressed.originalLength) {
+            InputStream in = new FileInputStream(compressed.file);
+            try {
+              updated.add(new SyntheticArtifact(PrecompressLinker.class,
+                  art.getPartialPath() + ".gz", in));
+            } finally {
+              in.close();
+            }
+            if (!leaveOriginals) {
+              updated.remove(art);
+            }
           }
+        } finally {
+          compressed.file.delete();
         }
       }
       return updated;
     } catch (IOException e) {
-      logger.log(TreeLogger.ERROR, "Unexpected exception", e);
+      logger.log(TreeLogger.ERROR, "Unable to read compressed artifact", e);
+      throw new UnableToCompleteException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UnableToCompleteException) {
+        throw (UnableToCompleteException) cause;
+      }
+      logger.log(TreeLogger.ERROR, "Unexpected exception", cause);
+      throw new UnableToCompleteException();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(TreeLogger.ERROR, "Interrupted while compressing", e);
       throw new UnableToCompleteException();
+    } finally {
+      executor.shutdownNow();
+      deleteUncollected(executor, results);
     }
   }
 }
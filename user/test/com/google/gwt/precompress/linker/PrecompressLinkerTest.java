@@ -83,8 +83,12 @@ public class PrecompressLinkerTest extends TestCase {
 
   private class MockLinkerContext implements LinkerContext {
     public SortedSet<ConfigurationProperty> getConfigurationProperties() {
-      return new TreeSet<ConfigurationProperty>(Arrays.asList(
-          propLeaveOriginals, propPathRegexes));
+      SortedSet<ConfigurationProperty> props = new TreeSet<ConfigurationProperty>(
+          Arrays.asList(propLeaveOriginals, propPathRegexes));
+      if (propCompression != null) {
+        props.add(propCompression);
+      }
+      return props;
     }
 
     public String getModuleFunctionName() {
@@ -223,6 +227,8 @@ public class PrecompressLinkerTest extends TestCase {
   private ArtifactSet artifacts;
   private LinkerContext context = new MockLinkerContext();
 
+  private MockConfigurationProperty propCompression;
+
   private MockConfigurationProperty propLeaveOriginals;
 
   private MockConfigurationProperty propPathRegexes;
@@ -250,6 +256,36 @@ public class PrecompressLinkerTest extends TestCase {
         uncompressibleGz);
   }
 
+  /**
+   * Test that each compression setting produces valid gzip data, and that
+   * trying harder does not make the data larger.
+   */
+  public void testCompressionSettings() throws UnableToCompleteException,
+      IOException {
+    int previousLength = Integer.MAX_VALUE;
+    for (String compression : new String[] {"1", "default", "9"}) {
+      propCompression = new MockConfigurationProperty(
+          "precompress.compression", false);
+      propCompression.setValue(compression);
+      ArtifactSet updated = linkArtifacts();
+
+      EmittedArtifact foo = findArtifact(updated, "foo.js");
+      byte[] fooGz = contents(findArtifact(updated, "foo.js.gz"));
+      assertEqualBytes(contents(foo), decompress(fooGz));
+      assertTrue(compression, fooGz.length <= previousLength);
+      previousLength = fooGz.length;
+    }
+
+    for (String invalid : new String[] {"11", "max"}) {
+      propCompression.setValue(invalid);
+      try {
+        linkArtifacts();
+        fail("Expected UnableToCompleteException for " + invalid);
+      } catch (UnableToCompleteException expected) {
+      }
+    }
+  }
+
   /**
    * Test that the blacklist takes effect.
    */
@@ -266,6 +302,56 @@ public class PrecompressLinkerTest extends TestCase {
     assertNull("foo.js should not have been compressed", fooGz);
   }
 
+  /**
+   * Test that a failed compression fails the link without waiting for the
+   * compressions that never started.
+   */
+  public void testFailureWithQueuedArtifacts() throws InterruptedException {
+    artifacts = new ArtifactSet();
+    artifacts.add(new SyntheticArtifact(PrecompressLinker.class, "a.js",
+        new byte[0]) {
+      @Override
+      public InputStream getContents(TreeLogger logger)
+          throws UnableToCompleteException {
+        throw new UnableToCompleteException();
+      }
+    });
+    // More artifacts than threads, so that some are still queued.
+    int queued = Runtime.getRuntime().availableProcessors() * 4;
+    for (int i = 0; i < queued; ++i) {
+      artifacts.add(new SyntheticArtifact(PrecompressLinker.class, "b" + i
+          + ".js", fooFileContents().getBytes()) {
+        @Override
+        public InputStream getContents(TreeLogger logger)
+            throws UnableToCompleteException {
+          try {
+            Thread.sleep(20);
+          } catch (InterruptedException e) {
+            // Compress anyway.
+          }
+          return super.getContents(logger);
+        }
+      });
+    }
+    artifacts.freeze();
+
+    final boolean[] failed = new boolean[1];
+    Thread linkThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          linkArtifacts();
+        } catch (UnableToCompleteException expected) {
+          failed[0] = true;
+        }
+      }
+    };
+    linkThread.start();
+    linkThread.join(10000);
+    assertFalse("The link should not hang", linkThread.isAlive());
+    assertTrue(failed[0]);
+  }
+
   /**
    * Tests that if precompress.leave.original if false, the originals are
    * removed.